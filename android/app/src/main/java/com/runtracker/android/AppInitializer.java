@@ -0,0 +1,227 @@
+package com.runtracker.android;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.runtracker.android.data.AchievementManager;
+import com.runtracker.android.data.BestEffortManager;
+import com.runtracker.android.data.CoachingManager;
+import com.runtracker.android.data.DistributionManager;
+import com.runtracker.android.data.RecordsManager;
+import com.runtracker.android.data.RouteMatcher;
+import com.runtracker.android.data.SpatialIndex;
+import com.runtracker.android.data.TrainingLoadManager;
+import com.runtracker.android.data.repositories.RunRepository;
+import com.runtracker.android.services.AudioCueManager;
+import com.runtracker.android.services.VoiceCoach;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Warms the application's shared components on background threads at startup.
+ *
+ * Loading run history, achievements and coaching plans all involve JSON parsing or
+ * plan generation, so they are started in parallel off the main thread as soon as the
+ * process starts. The components themselves are owned by {@link RunTrackerApplication};
+ * callers can wait for a single one with its future, or observe {@link #getReadyState()}
+ * to know when everything has loaded. If a component fails to load, {@link #getState()}
+ * reports it and {@link #retry()} starts loading again.
+ */
+public class AppInitializer {
+
+    private static final String TAG = "AppInitializer";
+    private static final int THREAD_COUNT = 3;
+
+    // Initialization states
+    public static final int STATE_LOADING = 0;
+    public static final int STATE_READY = 1;
+    public static final int STATE_FAILED = 2;
+
+    private final RunTrackerApplication application;
+    private final ExecutorService executor;
+
+    // Replaced by retry(), so these are read through volatile fields
+    private volatile CompletableFuture<RunRepository> runRepository;
+    private volatile CompletableFuture<RecordsManager> recordsManager;
+    private volatile CompletableFuture<DistributionManager> distributionManager;
+    private volatile CompletableFuture<TrainingLoadManager> trainingLoadManager;
+    private volatile CompletableFuture<BestEffortManager> bestEffortManager;
+    private volatile CompletableFuture<SpatialIndex> spatialIndex;
+    private volatile CompletableFuture<RouteMatcher> routeMatcher;
+    private volatile CompletableFuture<AchievementManager> achievementManager;
+    private volatile CompletableFuture<CoachingManager> coachingManager;
+    private volatile CompletableFuture<AudioCueManager> audioCueManager;
+    private volatile CompletableFuture<VoiceCoach> voiceCoach;
+    private volatile CompletableFuture<Void> ready;
+
+    private final MutableLiveData<Boolean> readyState = new MutableLiveData<>(false);
+    private final MutableLiveData<Integer> state = new MutableLiveData<>(STATE_LOADING);
+
+    /**
+     * Constructor, starts all initialization tasks
+     * @param application Application that owns the components
+     */
+    AppInitializer(RunTrackerApplication application) {
+        this.application = application;
+        executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        startAll();
+    }
+
+    /**
+     * Start loading every component. Components that already loaded are returned
+     * straight away by the application, so this is also how a failed start is retried.
+     */
+    private synchronized void startAll() {
+        long startTime = SystemClock.elapsedRealtime();
+
+        // Data components have no dependencies on each other, so load them in parallel
+        runRepository = start("RunRepository", application::getRunRepository);
+        achievementManager = start("AchievementManager", application::getAchievementManager);
+        coachingManager = start("CoachingManager", application::getCoachingManager);
+
+        // Components derived from run history must be listening before the first run completes
+        recordsManager = runRepository.thenApplyAsync(
+                repository -> application.getRecordsManager(), executor);
+        distributionManager = runRepository.thenApplyAsync(
+                repository -> application.getDistributionManager(), executor);
+        trainingLoadManager = runRepository.thenApplyAsync(
+                repository -> application.getTrainingLoadManager(), executor);
+        bestEffortManager = runRepository.thenApplyAsync(
+                repository -> application.getBestEffortManager(), executor);
+        spatialIndex = runRepository.thenApplyAsync(
+                repository -> application.getSpatialIndex(), executor);
+        routeMatcher = spatialIndex.thenApplyAsync(index -> application.getRouteMatcher(), executor);
+
+        // Speech components are cheap to construct; their TTS engines start with the first run.
+        // Voice coaching follows workouts from the coaching plans, so it waits for those.
+        audioCueManager = start("AudioCueManager", application::getAudioCueManager);
+        voiceCoach = coachingManager.thenApplyAsync(manager -> application.getVoiceCoach(), executor);
+
+        ready = CompletableFuture.allOf(runRepository, recordsManager, distributionManager,
+                trainingLoadManager, bestEffortManager, spatialIndex, routeMatcher, achievementManager,
+                coachingManager, audioCueManager, voiceCoach);
+        ready.whenComplete((result, error) -> {
+            if (error != null) {
+                Log.e(TAG, "Initialization failed", error);
+                state.postValue(STATE_FAILED);
+                return;
+            }
+            long sinceInit = SystemClock.elapsedRealtime() - startTime;
+            long sinceProcessStart = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+            Log.i(TAG, "All components ready in " + sinceInit + " ms ("
+                    + sinceProcessStart + " ms since process start)");
+            state.postValue(STATE_READY);
+            readyState.postValue(true);
+        });
+    }
+
+    /**
+     * Start loading again after a component failed to load
+     */
+    public synchronized void retry() {
+        if (!ready.isCompletedExceptionally()) {
+            return;
+        }
+        Log.i(TAG, "Retrying initialization");
+        state.postValue(STATE_LOADING);
+        startAll();
+    }
+
+    /**
+     * Run a component factory on the background executor, logging how long it took
+     * @param name Component name for logging
+     * @param factory Component factory
+     * @return Future for the component
+     */
+    private <T> CompletableFuture<T> start(String name, Supplier<T> factory) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = SystemClock.elapsedRealtime();
+            T component = factory.get();
+            Log.d(TAG, name + " initialized in " + (SystemClock.elapsedRealtime() - start) + " ms");
+            return component;
+        }, executor);
+    }
+
+    /**
+     * Observe whether all components have finished loading
+     * @return LiveData that becomes true once everything is ready
+     */
+    public LiveData<Boolean> getReadyState() {
+        return readyState;
+    }
+
+    /**
+     * Observe the initialization state, e.g. to report a failure to the user
+     * @return LiveData holding STATE_LOADING, STATE_READY or STATE_FAILED
+     */
+    public LiveData<Integer> getState() {
+        return state;
+    }
+
+    /**
+     * Check if all components have finished loading
+     * @return true if ready
+     */
+    public boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+
+    /**
+     * Get a future that completes when all components have loaded
+     * @return Ready future
+     */
+    public CompletableFuture<Void> getReadyFuture() {
+        return ready;
+    }
+
+    public CompletableFuture<RunRepository> getRunRepositoryFuture() {
+        return runRepository;
+    }
+
+    public CompletableFuture<RecordsManager> getRecordsManagerFuture() {
+        return recordsManager;
+    }
+
+    public CompletableFuture<DistributionManager> getDistributionManagerFuture() {
+        return distributionManager;
+    }
+
+    public CompletableFuture<TrainingLoadManager> getTrainingLoadManagerFuture() {
+        return trainingLoadManager;
+    }
+
+    public CompletableFuture<BestEffortManager> getBestEffortManagerFuture() {
+        return bestEffortManager;
+    }
+
+    public CompletableFuture<SpatialIndex> getSpatialIndexFuture() {
+        return spatialIndex;
+    }
+
+    public CompletableFuture<RouteMatcher> getRouteMatcherFuture() {
+        return routeMatcher;
+    }
+
+    public CompletableFuture<AchievementManager> getAchievementManagerFuture() {
+        return achievementManager;
+    }
+
+    public CompletableFuture<CoachingManager> getCoachingManagerFuture() {
+        return coachingManager;
+    }
+
+    public CompletableFuture<AudioCueManager> getAudioCueManagerFuture() {
+        return audioCueManager;
+    }
+
+    public CompletableFuture<VoiceCoach> getVoiceCoachFuture() {
+        return voiceCoach;
+    }
+}
@@ -0,0 +1,267 @@
+package com.runtracker.android;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.runtracker.android.data.AchievementManager;
+import com.runtracker.android.data.BestEffortManager;
+import com.runtracker.android.data.CoachingManager;
+import com.runtracker.android.data.DistributionManager;
+import com.runtracker.android.data.RacePredictor;
+import com.runtracker.android.data.RecordsManager;
+import com.runtracker.android.data.RouteMatcher;
+import com.runtracker.android.data.RunProfileCache;
+import com.runtracker.android.data.SettingsManager;
+import com.runtracker.android.data.SpatialIndex;
+import com.runtracker.android.data.StatisticsCache;
+import com.runtracker.android.data.TrainingLoadManager;
+import com.runtracker.android.data.repositories.RunRepository;
+import com.runtracker.android.services.AudioCueManager;
+import com.runtracker.android.services.CueEngine;
+import com.runtracker.android.services.SpeechEngine;
+import com.runtracker.android.services.VoiceCoach;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Application class that owns the single instance of each shared component.
+ *
+ * The activity, its fragments and the tracking service all get their repository,
+ * managers and speech components from here, so run history is parsed once, only one
+ * TTS engine exists, and every screen sees the same in-memory run state.
+ */
+public class RunTrackerApplication extends Application {
+
+    // Route matching queries the spatial index, so both update runs on the same thread
+    private final Executor trackIndexExecutor = Executors.newSingleThreadExecutor();
+
+    private final Lazy<SettingsManager> settingsManager =
+            new Lazy<>(() -> new SettingsManager(this));
+    private final Lazy<RunRepository> runRepository =
+            new Lazy<>(() -> RunRepository.getInstance(this));
+    private final Lazy<StatisticsCache> statisticsCache =
+            new Lazy<>(() -> new StatisticsCache(getRunRepository(), Executors.newSingleThreadExecutor()));
+    private final Lazy<RunProfileCache> runProfileCache =
+            new Lazy<>(() -> new RunProfileCache(getRunRepository(), Executors.newSingleThreadExecutor()));
+    private final Lazy<RecordsManager> recordsManager =
+            new Lazy<>(() -> new RecordsManager(getRunRepository()));
+    private final Lazy<DistributionManager> distributionManager =
+            new Lazy<>(() -> new DistributionManager(getRunRepository()));
+    private final Lazy<TrainingLoadManager> trainingLoadManager =
+            new Lazy<>(() -> new TrainingLoadManager(getRunRepository()));
+    private final Lazy<BestEffortManager> bestEffortManager =
+            new Lazy<>(() -> new BestEffortManager(this, getRunRepository(), Executors.newSingleThreadExecutor()));
+    private final Lazy<SpatialIndex> spatialIndex =
+            new Lazy<>(() -> new SpatialIndex(this, getRunRepository(), trackIndexExecutor));
+    private final Lazy<RouteMatcher> routeMatcher =
+            new Lazy<>(() -> new RouteMatcher(this, getRunRepository(), getSpatialIndex(), trackIndexExecutor));
+    private final Lazy<RacePredictor> racePredictor =
+            new Lazy<>(() -> new RacePredictor(getBestEffortManager()));
+    private final Lazy<AchievementManager> achievementManager =
+            new Lazy<>(() -> new AchievementManager(this));
+    private final Lazy<CoachingManager> coachingManager =
+            new Lazy<>(() -> new CoachingManager(this, this::getTrainingLoadManager, this::getRacePredictor));
+    private final Lazy<SpeechEngine> speechEngine =
+            new Lazy<>(() -> new SpeechEngine(this));
+    private final Lazy<CueEngine> cueEngine =
+            new Lazy<>(() -> new CueEngine(SystemClock::elapsedRealtime, getSpeechEngine()));
+    private final Lazy<AudioCueManager> audioCueManager =
+            new Lazy<>(() -> new AudioCueManager(this, getSpeechEngine(), getCueEngine(),
+                    getSettingsManager()));
+    private final Lazy<VoiceCoach> voiceCoach =
+            new Lazy<>(() -> new VoiceCoach(this, getSpeechEngine(), getCueEngine(),
+                    getSettingsManager()));
+
+    private AppInitializer appInitializer;
+
+    /**
+     * Get the application instance from any context
+     * @param context Any context
+     * @return Application instance
+     */
+    public static RunTrackerApplication from(Context context) {
+        return (RunTrackerApplication) context.getApplicationContext();
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Start loading components in the background so they are warm by first use
+        appInitializer = new AppInitializer(this);
+    }
+
+    /**
+     * Get the startup initializer
+     * @return App initializer
+     */
+    public AppInitializer getAppInitializer() {
+        return appInitializer;
+    }
+
+    /**
+     * Get the settings manager, creating it on first use
+     * @return Settings manager
+     */
+    public SettingsManager getSettingsManager() {
+        return settingsManager.get();
+    }
+
+    /**
+     * Get the run repository, creating it on first use
+     * @return Run repository
+     */
+    public RunRepository getRunRepository() {
+        return runRepository.get();
+    }
+
+    /**
+     * Get the statistics shared by all screens, creating the cache on first use
+     * @return Statistics cache
+     */
+    public StatisticsCache getStatisticsCache() {
+        return statisticsCache.get();
+    }
+
+    /**
+     * Get the cache of run profile charts, creating it on first use
+     * @return Run profile cache
+     */
+    public RunProfileCache getRunProfileCache() {
+        return runProfileCache.get();
+    }
+
+    /**
+     * Get the records boards, building them on first use
+     * @return Records manager
+     */
+    public RecordsManager getRecordsManager() {
+        return recordsManager.get();
+    }
+
+    /**
+     * Get the metric distributions by month, building them on first use
+     * @return Distribution manager
+     */
+    public DistributionManager getDistributionManager() {
+        return distributionManager.get();
+    }
+
+    /**
+     * Get the training load series, building it on first use
+     * @return Training load manager
+     */
+    public TrainingLoadManager getTrainingLoadManager() {
+        return trainingLoadManager.get();
+    }
+
+    /**
+     * Get the personal-best effort manager, creating it on first use
+     * @return Best effort manager
+     */
+    public BestEffortManager getBestEffortManager() {
+        return bestEffortManager.get();
+    }
+
+    /**
+     * Get the spatial index of run tracks, loading it on first use
+     * @return Spatial index
+     */
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex.get();
+    }
+
+    /**
+     * Get the route matcher that groups runs into courses, loading it on first use
+     * @return Route matcher
+     */
+    public RouteMatcher getRouteMatcher() {
+        return routeMatcher.get();
+    }
+
+    /**
+     * Get the race time predictor, creating it on first use
+     * @return Race predictor
+     */
+    public RacePredictor getRacePredictor() {
+        return racePredictor.get();
+    }
+
+    /**
+     * Get the achievement manager, creating it on first use
+     * @return Achievement manager
+     */
+    public AchievementManager getAchievementManager() {
+        return achievementManager.get();
+    }
+
+    /**
+     * Get the coaching manager, creating it on first use
+     * @return Coaching manager
+     */
+    public CoachingManager getCoachingManager() {
+        return coachingManager.get();
+    }
+
+    /**
+     * Get the speech engine shared by audio cues and voice coaching, creating it on first use
+     * @return Speech engine
+     */
+    public SpeechEngine getSpeechEngine() {
+        return speechEngine.get();
+    }
+
+    /**
+     * Get the engine that arbitrates spoken cues, creating it on first use
+     * @return Cue engine
+     */
+    public CueEngine getCueEngine() {
+        return cueEngine.get();
+    }
+
+    /**
+     * Get the audio cue manager, creating it on first use
+     * @return Audio cue manager
+     */
+    public AudioCueManager getAudioCueManager() {
+        return audioCueManager.get();
+    }
+
+    /**
+     * Get the voice coach, creating it on first use
+     * @return Voice coach
+     */
+    public VoiceCoach getVoiceCoach() {
+        return voiceCoach.get();
+    }
+
+    /**
+     * Thread-safe lazily created value. Each holder locks only itself, so
+     * different components can be created in parallel.
+     */
+    private static final class Lazy<T> {
+        private final Supplier<T> factory;
+        private volatile T value;
+
+        Lazy(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        T get() {
+            T result = value;
+            if (result == null) {
+                synchronized (this) {
+                    result = value;
+                    if (result == null) {
+                        result = factory.get();
+                        value = result;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
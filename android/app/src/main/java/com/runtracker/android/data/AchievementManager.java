@@ -2,32 +2,90 @@ package com.runtracker.android.data;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.preference.PreferenceManager;
+import android.util.Log;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.runtracker.android.R;
+import com.runtracker.android.data.metrics.HistoryAccumulator;
 import com.runtracker.android.data.models.Achievement;
 import com.runtracker.android.data.models.Run;
 import com.runtracker.android.data.models.RunStatistics;
+import com.runtracker.android.services.AchievementBackfillJobService;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
 
 /**
  * Manager class for handling achievements
+ *
+ * Achievements are defined by a table of rules. The rules are indexed by metric type
+ * with their thresholds sorted, so a metric update finds the newly crossed tiers with
+ * a binary search. All unlocks from one update are saved in a single write, and
+ * listeners are notified once the write is done.
  */
 public class AchievementManager {
     
+    private static final String TAG = "AchievementManager";
     private static final String PREF_ACHIEVEMENTS = "achievements";
+    private static final String PREF_BACKFILL_PENDING = "achievements_backfill_pending";
+    
+    // Achievement definitions
+    private static final Rule[] RULES = {
+            // Distance achievements
+            new Rule("distance_bronze", R.string.achievement_distance_bronze_title, R.string.achievement_distance_bronze_desc,
+                    Achievement.TYPE_DISTANCE, Achievement.LEVEL_BRONZE, 10.0), // 10 km
+            new Rule("distance_silver", R.string.achievement_distance_silver_title, R.string.achievement_distance_silver_desc,
+                    Achievement.TYPE_DISTANCE, Achievement.LEVEL_SILVER, 50.0), // 50 km
+            new Rule("distance_gold", R.string.achievement_distance_gold_title, R.string.achievement_distance_gold_desc,
+                    Achievement.TYPE_DISTANCE, Achievement.LEVEL_GOLD, 100.0), // 100 km
+
+            // Run count achievements
+            new Rule("runs_bronze", R.string.achievement_runs_bronze_title, R.string.achievement_runs_bronze_desc,
+                    Achievement.TYPE_RUNS, Achievement.LEVEL_BRONZE, 5.0), // 5 runs
+            new Rule("runs_silver", R.string.achievement_runs_silver_title, R.string.achievement_runs_silver_desc,
+                    Achievement.TYPE_RUNS, Achievement.LEVEL_SILVER, 20.0), // 20 runs
+            new Rule("runs_gold", R.string.achievement_runs_gold_title, R.string.achievement_runs_gold_desc,
+                    Achievement.TYPE_RUNS, Achievement.LEVEL_GOLD, 50.0), // 50 runs
+
+            // Streak achievements
+            new Rule("streak_bronze", R.string.achievement_streak_bronze_title, R.string.achievement_streak_bronze_desc,
+                    Achievement.TYPE_STREAK, Achievement.LEVEL_BRONZE, 3.0), // 3 day streak
+            new Rule("streak_silver", R.string.achievement_streak_silver_title, R.string.achievement_streak_silver_desc,
+                    Achievement.TYPE_STREAK, Achievement.LEVEL_SILVER, 7.0), // 7 day streak
+            new Rule("streak_gold", R.string.achievement_streak_gold_title, R.string.achievement_streak_gold_desc,
+                    Achievement.TYPE_STREAK, Achievement.LEVEL_GOLD, 14.0), // 14 day streak
+
+            // Pace achievements, lower is better
+            new Rule("pace_bronze", R.string.achievement_pace_bronze_title, R.string.achievement_pace_bronze_desc,
+                    Achievement.TYPE_PACE, Achievement.LEVEL_BRONZE, 7.0), // 7 min/km pace
+            new Rule("pace_silver", R.string.achievement_pace_silver_title, R.string.achievement_pace_silver_desc,
+                    Achievement.TYPE_PACE, Achievement.LEVEL_SILVER, 6.0), // 6 min/km pace
+            new Rule("pace_gold", R.string.achievement_pace_gold_title, R.string.achievement_pace_gold_desc,
+                    Achievement.TYPE_PACE, Achievement.LEVEL_GOLD, 5.0), // 5 min/km pace
+
+            // Duration achievements
+            new Rule("duration_bronze", R.string.achievement_duration_bronze_title, R.string.achievement_duration_bronze_desc,
+                    Achievement.TYPE_DURATION, Achievement.LEVEL_BRONZE, 1800.0), // 30 minutes
+            new Rule("duration_silver", R.string.achievement_duration_silver_title, R.string.achievement_duration_silver_desc,
+                    Achievement.TYPE_DURATION, Achievement.LEVEL_SILVER, 3600.0), // 60 minutes
+            new Rule("duration_gold", R.string.achievement_duration_gold_title, R.string.achievement_duration_gold_desc,
+                    Achievement.TYPE_DURATION, Achievement.LEVEL_GOLD, 7200.0) // 120 minutes
+    };
     
     private final Context context;
     private final SharedPreferences preferences;
-    private Map<String, Achievement> achievements;
-    private List<AchievementUpdateListener> listeners;
+    private final Gson gson = new Gson();
+    private final Map<String, Achievement> achievements = new HashMap<>();
+    private final Map<Integer, MetricTiers> tiersByType = new HashMap<>();
+    private final List<AchievementUpdateListener> listeners = new CopyOnWriteArrayList<>();
     
     /**
      * Interface for listening to achievement updates
@@ -47,10 +105,14 @@ public class AchievementManager {
     public AchievementManager(Context context) {
         this.context = context;
         this.preferences = android.preference.PreferenceManager.getDefaultSharedPreferences(context);
-        this.listeners = new ArrayList<>();
         
         // Load or initialize achievements
         loadAchievements();
+        
+        // Also covers a backfill that was interrupted before it finished
+        if (preferences.getBoolean(PREF_BACKFILL_PENDING, false)) {
+            AchievementBackfillJobService.schedule(context);
+        }
     }
     
     /**
@@ -72,181 +134,88 @@ public class AchievementManager {
     }
     
     /**
-     * Load achievements from preferences, or initialize if not found
+     * Load achievements from preferences and build them from the rules, keeping the
+     * stored unlock state
      */
-    private void loadAchievements() {
+    private synchronized void loadAchievements() {
+        Map<String, Achievement> stored = null;
         String json = preferences.getString(PREF_ACHIEVEMENTS, null);
-        
         if (json != null) {
-            Gson gson = new Gson();
             Type type = new TypeToken<Map<String, Achievement>>(){}.getType();
-            achievements = gson.fromJson(json, type);
-        } else {
-            initializeAchievements();
+            stored = gson.fromJson(json, type);
+        }
+        
+        boolean newRules = false;
+        for (Rule rule : RULES) {
+            Achievement previous = stored != null ? stored.get(rule.id) : null;
+            newRules |= previous == null;
+            Achievement achievement = new Achievement(
+                    rule.id,
+                    context.getString(rule.titleResId),
+                    context.getString(rule.descriptionResId),
+                    rule.type,
+                    rule.level,
+                    rule.targetValue,
+                    previous != null && previous.isUnlocked(),
+                    previous != null ? previous.getUnlockedDate() : 0L);
+            if (previous != null) {
+                achievement.setUnlockedRunId(previous.getUnlockedRunId());
+            }
+            achievements.put(achievement.getId(), achievement);
+        }
+        buildIndex();
+        
+        if (newRules) {
+            // Save the initialized achievements and find out which ones history already earned
+            saveAchievements();
+            preferences.edit().putBoolean(PREF_BACKFILL_PENDING, true).apply();
         }
     }
     
     /**
-     * Save achievements to preferences
+     * Group the achievements by metric type, sorted from the easiest tier to the hardest
      */
-    private void saveAchievements() {
-        Gson gson = new Gson();
-        String json = gson.toJson(achievements);
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.putString(PREF_ACHIEVEMENTS, json);
-        editor.apply();
+    private void buildIndex() {
+        Map<Integer, List<Achievement>> byType = new HashMap<>();
+        for (Achievement achievement : achievements.values()) {
+            List<Achievement> list = byType.get(achievement.getType());
+            if (list == null) {
+                list = new ArrayList<>();
+                byType.put(achievement.getType(), list);
+            }
+            list.add(achievement);
+        }
+        
+        tiersByType.clear();
+        for (Map.Entry<Integer, List<Achievement>> entry : byType.entrySet()) {
+            tiersByType.put(entry.getKey(), new MetricTiers(entry.getValue(), isLowerBetter(entry.getKey())));
+        }
     }
     
     /**
-     * Initialize the achievement list with default achievements
+     * Check if a lower value is better for a metric
+     * @param type Achievement type
+     * @return true for pace
      */
-    private void initializeAchievements() {
-        achievements = new HashMap<>();
-        
-        // Distance achievements
-        addAchievement(new Achievement(
-                "distance_bronze", 
-                context.getString(R.string.achievement_distance_bronze_title), 
-                context.getString(R.string.achievement_distance_bronze_desc), 
-                Achievement.TYPE_DISTANCE, 
-                Achievement.LEVEL_BRONZE,
-                10.0)); // 10 km
-        
-        addAchievement(new Achievement(
-                "distance_silver", 
-                context.getString(R.string.achievement_distance_silver_title), 
-                context.getString(R.string.achievement_distance_silver_desc), 
-                Achievement.TYPE_DISTANCE, 
-                Achievement.LEVEL_SILVER,
-                50.0)); // 50 km
-        
-        addAchievement(new Achievement(
-                "distance_gold", 
-                context.getString(R.string.achievement_distance_gold_title), 
-                context.getString(R.string.achievement_distance_gold_desc), 
-                Achievement.TYPE_DISTANCE, 
-                Achievement.LEVEL_GOLD,
-                100.0)); // 100 km
-        
-        // Run count achievements
-        addAchievement(new Achievement(
-                "runs_bronze", 
-                context.getString(R.string.achievement_runs_bronze_title), 
-                context.getString(R.string.achievement_runs_bronze_desc), 
-                Achievement.TYPE_RUNS, 
-                Achievement.LEVEL_BRONZE,
-                5.0)); // 5 runs
-        
-        addAchievement(new Achievement(
-                "runs_silver", 
-                context.getString(R.string.achievement_runs_silver_title), 
-                context.getString(R.string.achievement_runs_silver_desc), 
-                Achievement.TYPE_RUNS, 
-                Achievement.LEVEL_SILVER,
-                20.0)); // 20 runs
-        
-        addAchievement(new Achievement(
-                "runs_gold", 
-                context.getString(R.string.achievement_runs_gold_title), 
-                context.getString(R.string.achievement_runs_gold_desc), 
-                Achievement.TYPE_RUNS, 
-                Achievement.LEVEL_GOLD,
-                50.0)); // 50 runs
-        
-        // Streak achievements
-        addAchievement(new Achievement(
-                "streak_bronze", 
-                context.getString(R.string.achievement_streak_bronze_title), 
-                context.getString(R.string.achievement_streak_bronze_desc), 
-                Achievement.TYPE_STREAK, 
-                Achievement.LEVEL_BRONZE,
-                3.0)); // 3 day streak
-        
-        addAchievement(new Achievement(
-                "streak_silver", 
-                context.getString(R.string.achievement_streak_silver_title), 
-                context.getString(R.string.achievement_streak_silver_desc), 
-                Achievement.TYPE_STREAK, 
-                Achievement.LEVEL_SILVER,
-                7.0)); // 7 day streak
-        
-        addAchievement(new Achievement(
-                "streak_gold", 
-                context.getString(R.string.achievement_streak_gold_title), 
-                context.getString(R.string.achievement_streak_gold_desc), 
-                Achievement.TYPE_STREAK, 
-                Achievement.LEVEL_GOLD,
-                14.0)); // 14 day streak
-        
-        // Pace achievements
-        addAchievement(new Achievement(
-                "pace_bronze", 
-                context.getString(R.string.achievement_pace_bronze_title), 
-                context.getString(R.string.achievement_pace_bronze_desc), 
-                Achievement.TYPE_PACE, 
-                Achievement.LEVEL_BRONZE,
-                7.0)); // 7 min/km pace
-        
-        addAchievement(new Achievement(
-                "pace_silver", 
-                context.getString(R.string.achievement_pace_silver_title), 
-                context.getString(R.string.achievement_pace_silver_desc), 
-                Achievement.TYPE_PACE, 
-                Achievement.LEVEL_SILVER,
-                6.0)); // 6 min/km pace
-        
-        addAchievement(new Achievement(
-                "pace_gold", 
-                context.getString(R.string.achievement_pace_gold_title), 
-                context.getString(R.string.achievement_pace_gold_desc), 
-                Achievement.TYPE_PACE, 
-                Achievement.LEVEL_GOLD,
-                5.0)); // 5 min/km pace
-        
-        // Duration achievements
-        addAchievement(new Achievement(
-                "duration_bronze", 
-                context.getString(R.string.achievement_duration_bronze_title), 
-                context.getString(R.string.achievement_duration_bronze_desc), 
-                Achievement.TYPE_DURATION, 
-                Achievement.LEVEL_BRONZE,
-                1800.0)); // 30 minutes
-        
-        addAchievement(new Achievement(
-                "duration_silver", 
-                context.getString(R.string.achievement_duration_silver_title), 
-                context.getString(R.string.achievement_duration_silver_desc), 
-                Achievement.TYPE_DURATION, 
-                Achievement.LEVEL_SILVER,
-                3600.0)); // 60 minutes
-        
-        addAchievement(new Achievement(
-                "duration_gold", 
-                context.getString(R.string.achievement_duration_gold_title), 
-                context.getString(R.string.achievement_duration_gold_desc), 
-                Achievement.TYPE_DURATION, 
-                Achievement.LEVEL_GOLD,
-                7200.0)); // 120 minutes
-        
-        // Save the initialized achievements
-        saveAchievements();
+    private static boolean isLowerBetter(int type) {
+        return type == Achievement.TYPE_PACE;
     }
     
     /**
-     * Add an achievement to the map
-     * @param achievement Achievement to add
+     * Save achievements to preferences
      */
-    private void addAchievement(Achievement achievement) {
-        if (achievement != null && !achievements.containsKey(achievement.getId())) {
-            achievements.put(achievement.getId(), achievement);
-        }
+    private void saveAchievements() {
+        String json = gson.toJson(achievements);
+        SharedPreferences.Editor editor = preferences.edit();
+        editor.putString(PREF_ACHIEVEMENTS, json);
+        editor.apply();
     }
     
     /**
      * Get all achievements
      * @return List of all achievements
      */
-    public List<Achievement> getAllAchievements() {
+    public synchronized List<Achievement> getAllAchievements() {
         return new ArrayList<>(achievements.values());
     }
     
@@ -254,7 +223,7 @@ public class AchievementManager {
      * Get all unlocked achievements
      * @return List of unlocked achievements
      */
-    public List<Achievement> getUnlockedAchievements() {
+    public synchronized List<Achievement> getUnlockedAchievements() {
         List<Achievement> unlocked = new ArrayList<>();
         for (Achievement achievement : achievements.values()) {
             if (achievement.isUnlocked()) {
@@ -269,7 +238,7 @@ public class AchievementManager {
      * @param id Achievement ID
      * @return Achievement or null if not found
      */
-    public Achievement getAchievementById(String id) {
+    public synchronized Achievement getAchievementById(String id) {
         return achievements.get(id);
     }
     
@@ -280,14 +249,19 @@ public class AchievementManager {
     public void updateAchievementsForRun(Run run) {
         if (run == null) return;
         
-        // Check pace achievements (only for completed runs with sufficient distance)
-        if (run.getStatus() == Run.STATUS_COMPLETED && run.getTotalDistance() >= 1.0) {
-            double pace = run.getPace();
-            checkPaceAchievements(pace);
+        List<Achievement> unlocked = new ArrayList<>();
+        synchronized (this) {
+            // Check pace achievements (only for completed runs with sufficient distance)
+            if (run.isFinished() && run.getTotalDistance() >= 1.0 && run.getPace() > 0) {
+                evaluate(Achievement.TYPE_PACE, run.getPace(), unlocked);
+            }
+            
+            // Check duration achievements for this run; thresholds are in seconds
+            evaluate(Achievement.TYPE_DURATION, run.getActiveDuration() / 1000.0, unlocked);
+            
+            commit(unlocked, System.currentTimeMillis(), run.getId());
         }
-        
-        // Check duration achievements for this run
-        checkDurationAchievements(run.getActiveDuration());
+        notifyUnlocked(unlocked);
     }
     
     /**
@@ -297,133 +271,165 @@ public class AchievementManager {
     public void updateAchievementsForStats(RunStatistics stats) {
         if (stats == null) return;
         
-        // Check distance achievements
-        checkDistanceAchievements(stats.getTotalDistance());
-        
-        // Check run count achievements
-        checkRunCountAchievements(stats.getTotalRuns());
-        
-        // Check streak achievements
-        checkStreakAchievements(stats.getLongestStreak());
-    }
-    
-    /**
-     * Check and update distance achievements
-     * @param totalDistance Total distance in km
-     */
-    private void checkDistanceAchievements(double totalDistance) {
-        checkAchievement("distance_bronze", totalDistance);
-        checkAchievement("distance_silver", totalDistance);
-        checkAchievement("distance_gold", totalDistance);
+        List<Achievement> unlocked = new ArrayList<>();
+        synchronized (this) {
+            evaluate(Achievement.TYPE_DISTANCE, stats.getTotalDistance(), unlocked);
+            evaluate(Achievement.TYPE_RUNS, stats.getTotalRuns(), unlocked);
+            evaluate(Achievement.TYPE_STREAK, stats.getLongestStreak(), unlocked);
+            
+            commit(unlocked, System.currentTimeMillis(), null);
+        }
+        notifyUnlocked(unlocked);
     }
     
     /**
-     * Check and update run count achievements
-     * @param runCount Number of runs
+     * Collect the achievements of a metric that a value newly unlocks
+     * @param type Achievement type
+     * @param value Current value of the metric
+     * @param unlocked List the newly unlocked achievements are added to
      */
-    private void checkRunCountAchievements(int runCount) {
-        checkAchievement("runs_bronze", runCount);
-        checkAchievement("runs_silver", runCount);
-        checkAchievement("runs_gold", runCount);
+    private void evaluate(int type, double value, List<Achievement> unlocked) {
+        MetricTiers tiers = tiersByType.get(type);
+        if (tiers != null) {
+            tiers.collectCrossed(value, unlocked);
+        }
     }
     
     /**
-     * Check and update streak achievements
-     * @param longestStreak Longest streak in days
+     * Mark achievements as unlocked and save them in a single write
+     * @param unlocked Newly unlocked achievements
+     * @param date Unlock date
+     * @param runId Run that earned the achievements, or null if unknown
      */
-    private void checkStreakAchievements(int longestStreak) {
-        checkAchievement("streak_bronze", longestStreak);
-        checkAchievement("streak_silver", longestStreak);
-        checkAchievement("streak_gold", longestStreak);
+    private void commit(List<Achievement> unlocked, long date, String runId) {
+        if (unlocked.isEmpty()) return;
+        
+        for (Achievement achievement : unlocked) {
+            achievement.setUnlocked(true);
+            achievement.setUnlockedDate(date);
+            achievement.setUnlockedRunId(runId);
+        }
+        saveAchievements();
     }
     
     /**
-     * Check and update pace achievements
-     * @param pace Pace in min/km
+     * Recompute when each achievement was first earned by replaying the run history.
+     * Only running totals and one entry per achievement are kept, so memory does not
+     * depend on the number of runs. Nothing is saved if the backfill is cancelled.
+     * Safe to call from a background thread.
+     * @param runs Completed runs, oldest first
+     * @param cancelled Checked between runs; stops the backfill when it returns true
+     * @return True if the whole history was replayed, false if cancelled first
      */
-    private void checkPaceAchievements(double pace) {
-        // For pace, lower is better, so we invert the check
-        if (pace <= 0) return;
+    public boolean backfillFromHistory(Iterable<Run> runs, BooleanSupplier cancelled) {
+        Map<Integer, MetricTiers> tiers;
+        synchronized (this) {
+            tiers = new HashMap<>(tiersByType);
+        }
         
-        Achievement bronze = achievements.get("pace_bronze");
-        Achievement silver = achievements.get("pace_silver");
-        Achievement gold = achievements.get("pace_gold");
+        HistoryAccumulator history = new HistoryAccumulator(TimeZone.getDefault());
+        Map<Integer, Integer> reached = new HashMap<>();
+        Map<Achievement, Run> earned = new HashMap<>();
+        int replayed = 0;
         
-        if (pace <= gold.getTargetValue() && !gold.isUnlocked()) {
-            unlockAchievement(gold);
+        for (Run run : runs) {
+            if (cancelled.getAsBoolean()) {
+                Log.i(TAG, "Achievement backfill stopped after " + replayed + " runs");
+                return false;
+            }
+            
+            history.add(run);
+            if (run.getTotalDistance() >= 1.0 && run.getPace() > 0) {
+                replay(tiers, reached, Achievement.TYPE_PACE, run.getPace(), run, earned);
+            }
+            replay(tiers, reached, Achievement.TYPE_DURATION, run.getActiveDuration() / 1000.0, run, earned);
+            replay(tiers, reached, Achievement.TYPE_DISTANCE, history.getTotalDistance(), run, earned);
+            replay(tiers, reached, Achievement.TYPE_RUNS, history.getTotalRuns(), run, earned);
+            replay(tiers, reached, Achievement.TYPE_STREAK, history.getLongestStreak(), run, earned);
+            replayed++;
         }
         
-        if (pace <= silver.getTargetValue() && !silver.isUnlocked()) {
-            unlockAchievement(silver);
+        synchronized (this) {
+            // Achievements that history does not explain, e.g. from deleted runs, stay as they are
+            for (Map.Entry<Achievement, Run> entry : earned.entrySet()) {
+                Run run = entry.getValue();
+                Achievement achievement = entry.getKey();
+                achievement.setUnlocked(true);
+                achievement.setUnlockedDate(run.getEndTime() > 0 ? run.getEndTime() : run.getStartTime());
+                achievement.setUnlockedRunId(run.getId());
+            }
+            buildIndex();
+            saveAchievements();
+            preferences.edit().putBoolean(PREF_BACKFILL_PENDING, false).apply();
         }
         
-        if (pace <= bronze.getTargetValue() && !bronze.isUnlocked()) {
-            unlockAchievement(bronze);
-        }
+        Log.i(TAG, "Achievement backfill replayed " + replayed + " runs, " + earned.size() + " achievements earned");
+        return true;
     }
     
     /**
-     * Check and update duration achievements
-     * @param duration Duration in seconds
-     */
-    private void checkDurationAchievements(long duration) {
-        checkAchievement("duration_bronze", duration);
-        checkAchievement("duration_silver", duration);
-        checkAchievement("duration_gold", duration);
-    }
-    
-    /**
-     * Check and update a single achievement
-     * @param id Achievement ID
-     * @param currentValue Current value to check
+     * Record the tiers of a metric that a run reaches for the first time
+     * @param tiers Tiers by metric type
+     * @param reached Number of tiers reached so far, by metric type
+     * @param type Achievement type
+     * @param value Value of the metric after the run
+     * @param run The run
+     * @param earned Map the first run to reach each achievement is added to
      */
-    private void checkAchievement(String id, double currentValue) {
-        Achievement achievement = achievements.get(id);
-        if (achievement != null && !achievement.isUnlocked() && 
-            achievement.checkIsAchieved(currentValue)) {
-            unlockAchievement(achievement);
+    private static void replay(Map<Integer, MetricTiers> tiers, Map<Integer, Integer> reached,
+                               int type, double value, Run run, Map<Achievement, Run> earned) {
+        MetricTiers metric = tiers.get(type);
+        if (metric == null) return;
+        
+        int from = reached.containsKey(type) ? reached.get(type) : 0;
+        int crossed = metric.countCrossed(value);
+        for (int i = from; i < crossed; i++) {
+            earned.put(metric.get(i), run);
+        }
+        if (crossed > from) {
+            reached.put(type, crossed);
         }
     }
     
     /**
-     * Unlock an achievement
-     * @param achievement Achievement to unlock
+     * Notify listeners of unlocked achievements, after they have been saved
+     * @param unlocked Newly unlocked achievements
      */
-    private void unlockAchievement(Achievement achievement) {
-        if (achievement == null || achievement.isUnlocked()) return;
-        
-        // Set unlocked status
-        achievement.setUnlocked(true);
-        achievement.setUnlockedDate(System.currentTimeMillis());
-        
-        // Update in the map
-        achievements.put(achievement.getId(), achievement);
-        
-        // Save changes
-        saveAchievements();
-        
-        // Notify listeners
-        for (AchievementUpdateListener listener : listeners) {
-            listener.onAchievementUnlocked(achievement);
+    private void notifyUnlocked(List<Achievement> unlocked) {
+        for (Achievement achievement : unlocked) {
+            for (AchievementUpdateListener listener : listeners) {
+                listener.onAchievementUnlocked(achievement);
+            }
         }
     }
     
     /**
      * Reset all achievements (for testing)
      */
-    public void resetAchievements() {
+    public synchronized void resetAchievements() {
         for (Achievement achievement : achievements.values()) {
             achievement.setUnlocked(false);
             achievement.setUnlockedDate(0L);
+            achievement.setUnlockedRunId(null);
         }
+        buildIndex();
         saveAchievements();
     }
     
+    /**
+     * Reset all achievements and recompute them from the run history in the background
+     */
+    public void recomputeAchievements() {
+        resetAchievements();
+        preferences.edit().putBoolean(PREF_BACKFILL_PENDING, true).apply();
+        AchievementBackfillJobService.schedule(context);
+    }
+    
     /**
      * Get the total number of achievements
      * @return Total achievement count
      */
-    public int getTotalAchievementCount() {
+    public synchronized int getTotalAchievementCount() {
         return achievements.size();
     }
     
@@ -431,7 +437,7 @@ public class AchievementManager {
      * Get the number of unlocked achievements
      * @return Unlocked achievement count
      */
-    public int getUnlockedAchievementCount() {
+    public synchronized int getUnlockedAchievementCount() {
         int count = 0;
         for (Achievement achievement : achievements.values()) {
             if (achievement.isUnlocked()) {
@@ -440,4 +446,105 @@ public class AchievementManager {
         }
         return count;
     }
+    
+    /**
+     * Definition of an achievement
+     */
+    private static class Rule {
+        final String id;
+        final int titleResId;
+        final int descriptionResId;
+        final int type;
+        final int level;
+        final double targetValue;
+        
+        Rule(String id, int titleResId, int descriptionResId, int type, int level, double targetValue) {
+            this.id = id;
+            this.titleResId = titleResId;
+            this.descriptionResId = descriptionResId;
+            this.type = type;
+            this.level = level;
+            this.targetValue = targetValue;
+        }
+    }
+    
+    /**
+     * The achievements of one metric, sorted by threshold. Thresholds are negated for
+     * metrics where lower is better, so crossing a tier always means reaching a value
+     * at or above its key.
+     */
+    private static class MetricTiers {
+        private final double[] keys;
+        private final Achievement[] tiers;
+        private final boolean lowerIsBetter;
+        
+        // Number of leading tiers that are known to be unlocked
+        private int unlockedPrefix;
+        
+        MetricTiers(List<Achievement> achievements, boolean lowerIsBetter) {
+            this.lowerIsBetter = lowerIsBetter;
+            this.tiers = achievements.toArray(new Achievement[0]);
+            Arrays.sort(tiers, (a, b) -> Double.compare(key(a.getTargetValue()), key(b.getTargetValue())));
+            
+            this.keys = new double[tiers.length];
+            for (int i = 0; i < tiers.length; i++) {
+                keys[i] = key(tiers[i].getTargetValue());
+            }
+            
+            while (unlockedPrefix < tiers.length && tiers[unlockedPrefix].isUnlocked()) {
+                unlockedPrefix++;
+            }
+        }
+        
+        private double key(double value) {
+            return lowerIsBetter ? -value : value;
+        }
+        
+        /**
+         * Collect the locked tiers a value reaches
+         * @param value Current value of the metric
+         * @param out List the tiers are added to
+         */
+        void collectCrossed(double value, List<Achievement> out) {
+            int crossed = countCrossed(value);
+            for (int i = unlockedPrefix; i < crossed; i++) {
+                if (!tiers[i].isUnlocked()) {
+                    out.add(tiers[i]);
+                }
+            }
+            unlockedPrefix = Math.max(unlockedPrefix, crossed);
+        }
+        
+        /**
+         * Count the tiers a value reaches
+         * @param value Value of the metric
+         * @return Number of leading tiers reached
+         */
+        int countCrossed(double value) {
+            return upperBound(key(value));
+        }
+        
+        Achievement get(int index) {
+            return tiers[index];
+        }
+        
+        /**
+         * Binary search for the number of keys at or below a value
+         * @param key Search key
+         * @return Index of the first key above the value
+         */
+        private int upperBound(double key) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] <= key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
 }
\ No newline at end of file
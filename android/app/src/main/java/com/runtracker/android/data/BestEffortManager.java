@@ -0,0 +1,320 @@
+package com.runtracker.android.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.runtracker.android.data.metrics.BestEffortCalculator;
+import com.runtracker.android.data.models.BestEffort;
+import com.runtracker.android.data.models.Run;
+import com.runtracker.android.data.repositories.RunRepository;
+import com.runtracker.android.services.BestEffortBackfillJobService;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Manager class for personal-best efforts over the standard distances.
+ *
+ * Each distance has a small leaderboard of the fastest efforts, one per run, stored as
+ * its own preference so a new run only rewrites the boards it changed. Completed runs
+ * are scanned on a background executor as they are saved. Existing history is covered
+ * by a one-off backfill job, which is also used to refill a full board after one of its
+ * runs is deleted, since the effort that should move up is not known.
+ */
+public class BestEffortManager implements RunRepository.RunListener {
+
+    private static final String TAG = "BestEffortManager";
+    private static final String PREF_NAME = "best_efforts";
+    private static final String PREF_BOARD_PREFIX = "board_";
+    private static final String PREF_BACKFILL_PENDING = "backfill_pending";
+
+    // Number of efforts kept per distance
+    public static final int LEADERBOARD_SIZE = 5;
+
+    private final Context context;
+    private final RunRepository runRepository;
+    private final Executor executor;
+    private final SharedPreferences preferences;
+    private final Gson gson = new Gson();
+    private final Map<Integer, List<BestEffort>> boards = new HashMap<>();
+
+    // Current personal bests, to tell when one changes
+    private final Map<Integer, BestEffort> personalBests = new HashMap<>();
+    private long personalBestVersion;
+
+    /**
+     * Constructor
+     * @param context The application context
+     * @param runRepository Repository whose completed runs are tracked
+     * @param executor Executor that completed runs are scanned on
+     */
+    public BestEffortManager(Context context, RunRepository runRepository, Executor executor) {
+        this.context = context;
+        this.runRepository = runRepository;
+        this.executor = executor;
+        this.preferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+
+        loadBoards();
+        runRepository.addListener(this);
+
+        // No flag stored yet means history has never been scanned. The flag also covers a
+        // backfill that was interrupted before it finished.
+        if (!preferences.contains(PREF_BACKFILL_PENDING)) {
+            preferences.edit().putBoolean(PREF_BACKFILL_PENDING, true).apply();
+        }
+        if (preferences.getBoolean(PREF_BACKFILL_PENDING, false)) {
+            BestEffortBackfillJobService.schedule(context);
+        }
+    }
+
+    /**
+     * Load the leaderboards from preferences
+     */
+    private synchronized void loadBoards() {
+        Type type = new TypeToken<ArrayList<BestEffort>>(){}.getType();
+        for (int distance : BestEffortCalculator.DISTANCES) {
+            List<BestEffort> board = null;
+            String json = preferences.getString(PREF_BOARD_PREFIX + distance, null);
+            if (json != null) {
+                try {
+                    board = gson.fromJson(json, type);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error loading best efforts for " + distance + " m", e);
+                }
+            }
+            boards.put(distance, board != null ? board : new ArrayList<>());
+            personalBests.put(distance, getPersonalBest(distance));
+        }
+    }
+
+    /**
+     * Get the fastest efforts over a distance
+     * @param distance One of {@link BestEffortCalculator#DISTANCES}, in meters
+     * @return Efforts, fastest first
+     */
+    public synchronized List<BestEffort> getLeaderboard(int distance) {
+        List<BestEffort> board = boards.get(distance);
+        return board != null ? new ArrayList<>(board) : new ArrayList<>();
+    }
+
+    /**
+     * Get the personal best over a distance
+     * @param distance One of {@link BestEffortCalculator#DISTANCES}, in meters
+     * @return Fastest effort or null if no run has covered the distance
+     */
+    public synchronized BestEffort getPersonalBest(int distance) {
+        List<BestEffort> board = boards.get(distance);
+        return board != null && !board.isEmpty() ? board.get(0) : null;
+    }
+
+    /**
+     * Get a counter that changes whenever a personal best changes, e.g. to key caches
+     * @return Version
+     */
+    public synchronized long getPersonalBestVersion() {
+        return personalBestVersion;
+    }
+
+    @Override
+    public void onRunCompleted(Run run) {
+        executor.execute(() -> addRun(run));
+    }
+
+    @Override
+    public void onRunDeleted(Run run) {
+        executor.execute(() -> removeRun(run.getId()));
+    }
+
+    /**
+     * Scan a run and add its efforts to the leaderboards
+     * @param run Completed run
+     */
+    private void addRun(Run run) {
+        BestEffort[] efforts = BestEffortCalculator.findBestEfforts(run);
+
+        synchronized (this) {
+            SharedPreferences.Editor editor = preferences.edit();
+            boolean changed = false;
+            for (BestEffort effort : efforts) {
+                if (effort != null && offer(boards.get(effort.getDistance()), effort)) {
+                    putBoard(editor, effort.getDistance());
+                    changed = true;
+                }
+            }
+            if (changed) {
+                editor.apply();
+            }
+        }
+    }
+
+    /**
+     * Remove the efforts of a deleted run from the leaderboards
+     * @param runId ID of the deleted run
+     */
+    private void removeRun(String runId) {
+        boolean refill = false;
+
+        synchronized (this) {
+            SharedPreferences.Editor editor = preferences.edit();
+            boolean changed = false;
+            for (Map.Entry<Integer, List<BestEffort>> entry : boards.entrySet()) {
+                List<BestEffort> board = entry.getValue();
+                boolean full = board.size() == LEADERBOARD_SIZE;
+                if (removeRunFrom(board, runId)) {
+                    putBoard(editor, entry.getKey());
+                    changed = true;
+                    // A run that was not on the board may now belong on it
+                    refill |= full;
+                }
+            }
+            if (refill) {
+                editor.putBoolean(PREF_BACKFILL_PENDING, true);
+            }
+            if (changed) {
+                editor.apply();
+            }
+        }
+
+        if (refill) {
+            BestEffortBackfillJobService.schedule(context);
+        }
+    }
+
+    /**
+     * Rebuild all leaderboards from the run history. Only one run's track is held in
+     * memory at a time. Safe to call from a background thread.
+     * @param runs Completed runs
+     * @param cancelled Checked between runs; stops the backfill when it returns true
+     * @return True if the boards were rebuilt, false if cancelled first or if a run was
+     *         deleted meanwhile and the boards need refilling
+     */
+    public boolean backfill(Iterable<Run> runs, BooleanSupplier cancelled) {
+        Map<Integer, List<BestEffort>> rebuilt = new HashMap<>();
+        for (int distance : BestEffortCalculator.DISTANCES) {
+            rebuilt.put(distance, new ArrayList<>());
+        }
+
+        int scanned = 0;
+        for (Run run : runs) {
+            if (cancelled.getAsBoolean()) {
+                Log.i(TAG, "Best effort backfill stopped after " + scanned + " runs");
+                return false;
+            }
+
+            for (BestEffort effort : BestEffortCalculator.findBestEfforts(run)) {
+                if (effort != null) {
+                    offer(rebuilt.get(effort.getDistance()), effort);
+                }
+            }
+            scanned++;
+        }
+
+        boolean refill = false;
+        synchronized (this) {
+            SharedPreferences.Editor editor = preferences.edit();
+            for (Map.Entry<Integer, List<BestEffort>> entry : boards.entrySet()) {
+                List<BestEffort> board = rebuilt.get(entry.getKey());
+
+                // Drop efforts from runs deleted while the backfill was running. Their
+                // removal has already been applied to the live board, not to this one.
+                boolean full = board.size() == LEADERBOARD_SIZE;
+                Iterator<BestEffort> iterator = board.iterator();
+                while (iterator.hasNext()) {
+                    if (runRepository.getRunById(iterator.next().getRunId()) == null) {
+                        iterator.remove();
+                        // A run that was not on the board may now belong on it
+                        refill |= full;
+                    }
+                }
+
+                // Keep efforts from runs completed while the backfill was running
+                for (BestEffort effort : entry.getValue()) {
+                    if (runRepository.getRunById(effort.getRunId()) != null) {
+                        offer(board, effort);
+                    }
+                }
+                entry.setValue(board);
+                putBoard(editor, entry.getKey());
+            }
+            editor.putBoolean(PREF_BACKFILL_PENDING, refill);
+            editor.apply();
+        }
+
+        Log.i(TAG, "Best effort backfill scanned " + scanned + " runs");
+        return !refill;
+    }
+
+    /**
+     * Write a leaderboard to the editor and note a new personal best
+     * @param editor Preferences editor
+     * @param distance Effort distance in meters
+     */
+    private void putBoard(SharedPreferences.Editor editor, int distance) {
+        editor.putString(PREF_BOARD_PREFIX + distance, gson.toJson(boards.get(distance)));
+
+        BestEffort best = getPersonalBest(distance);
+        if (best != personalBests.get(distance)) {
+            personalBests.put(distance, best);
+            personalBestVersion++;
+        }
+    }
+
+    /**
+     * Insert an effort into a leaderboard if it is fast enough, keeping one effort per run
+     * @param board Leaderboard, fastest first
+     * @param effort Candidate effort
+     * @return True if the board changed
+     */
+    private static boolean offer(List<BestEffort> board, BestEffort effort) {
+        for (int i = 0; i < board.size(); i++) {
+            BestEffort existing = board.get(i);
+            if (existing.getRunId().equals(effort.getRunId())) {
+                if (existing.getDuration() <= effort.getDuration()) {
+                    return false;
+                }
+                board.remove(i);
+                break;
+            }
+        }
+
+        int index = 0;
+        while (index < board.size() && board.get(index).getDuration() <= effort.getDuration()) {
+            index++;
+        }
+        if (index >= LEADERBOARD_SIZE) {
+            return false;
+        }
+
+        board.add(index, effort);
+        if (board.size() > LEADERBOARD_SIZE) {
+            board.remove(board.size() - 1);
+        }
+        return true;
+    }
+
+    /**
+     * Remove the effort of a run from a leaderboard
+     * @param board Leaderboard
+     * @param runId Run ID
+     * @return True if the board changed
+     */
+    private static boolean removeRunFrom(List<BestEffort> board, String runId) {
+        Iterator<BestEffort> iterator = board.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getRunId().equals(runId)) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -8,30 +8,62 @@ import androidx.preference.PreferenceManager;
 
 import com.runtracker.android.data.models.CoachingPlan;
 import com.runtracker.android.data.models.CoachingWorkout;
+import com.runtracker.android.data.models.PlanTemplate;
+import com.runtracker.android.data.models.TrainingLoad;
 import com.runtracker.android.utils.Constants;
 
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
  * Manager for coaching plans and workouts
+ *
+ * Built-in plans are registered as templates and only materialized when opened or
+ * activated. The active plan stays in memory; other materialized plans are kept in a
+ * small LRU cache.
  */
 public class CoachingManager {
 
     private static final String TAG = "CoachingManager";
     
+    // Workout progress, one entry per workout that is not scheduled
+    private static final String PROGRESS_PREF_NAME = "coaching_progress";
+    private static final String PREF_SCHEDULE_START_PREFIX = "schedule_start_";
+    
+    // Start shared by all built-in plans before each plan had its own
+    private static final String PREF_LEGACY_SCHEDULE_START = "schedule_start";
+    
+    // Number of inactive built-in plans kept materialized
+    private static final int MAX_CACHED_PLANS = 2;
+    
+    // Form below which hard workouts are postponed in favor of easy ones
+    private static final double FATIGUE_BALANCE = -30;
+    
     // Context
     private final Context context;
+    private final Supplier<TrainingLoadManager> trainingLoad;
+    private final Supplier<RacePredictor> racePredictor;
     
     // Data storage
+    private final Map<String, PlanTemplate> templates = new LinkedHashMap<>();
     private final Map<String, CoachingPlan> plans = new HashMap<>();
+    private final Map<String, CoachingPlan> cachedPlans =
+            new LinkedHashMap<String, CoachingPlan>(MAX_CACHED_PLANS + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CoachingPlan> eldest) {
+                    if (size() > MAX_CACHED_PLANS) {
+                        unindexPlan(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
     private final Map<String, CoachingWorkout> workouts = new HashMap<>();
+    private final Map<String, PlanSchedule> schedules = new HashMap<>();
     
     // Active data
     private String activePlanId;
@@ -39,21 +71,28 @@ public class CoachingManager {
     
     // Preferences
     private final SharedPreferences preferences;
+    private final SharedPreferences progressPreferences;
     
     /**
      * Constructor
      * @param context Application context
+     * @param trainingLoad Source of the training load, only read when a workout is recommended
+     * @param racePredictor Source of the target paces, only read when a workout is recommended
      */
-    public CoachingManager(Context context) {
+    public CoachingManager(Context context, Supplier<TrainingLoadManager> trainingLoad,
+                           Supplier<RacePredictor> racePredictor) {
         this.context = context;
+        this.trainingLoad = trainingLoad;
+        this.racePredictor = racePredictor;
         this.preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        this.progressPreferences = context.getSharedPreferences(PROGRESS_PREF_NAME, Context.MODE_PRIVATE);
         
         // Load data
         loadData();
-        loadActivePlan();
         
-        // Create sample data if needed
-        createSampleDataIfNeeded();
+        // Register the built-in plans; their workouts are generated on first use
+        registerSampleTemplates();
+        loadActivePlan();
     }
     
     /**
@@ -65,305 +104,124 @@ public class CoachingManager {
     }
     
     /**
-     * Load active plan
+     * Load the active plan ID; the plan itself is materialized when first needed
      */
     private void loadActivePlan() {
         activePlanId = preferences.getString(Constants.PREF_ACTIVE_PLAN_ID, null);
-        if (activePlanId != null) {
-            activePlan = plans.get(activePlanId);
-        }
     }
     
     /**
-     * Create sample coaching plans and workouts if none exist
+     * Register the sample coaching plan templates
      */
-    private void createSampleDataIfNeeded() {
-        if (plans.isEmpty()) {
-            createSamplePlans();
+    private void registerSampleTemplates() {
+        addTemplate(new PlanTemplate("sample_beginner_5k", "Beginner 5K Plan",
+                "An 8-week plan designed for beginners to complete their first 5K race.",
+                CoachingPlan.DIFFICULTY_BEGINNER, CoachingPlan.GOAL_5K, 8, 3));
+        addTemplate(new PlanTemplate("sample_intermediate_10k", "Intermediate 10K Plan",
+                "A 10-week plan for runners who want to improve their 10K time.",
+                CoachingPlan.DIFFICULTY_INTERMEDIATE, CoachingPlan.GOAL_10K, 10, 4));
+        addTemplate(new PlanTemplate("sample_advanced_half", "Advanced Half Marathon",
+                "A 12-week plan for experienced runners training for a half marathon.",
+                CoachingPlan.DIFFICULTY_ADVANCED, CoachingPlan.GOAL_HALF_MARATHON, 12, 5));
+    }
+    
+    /**
+     * Register a built-in plan template
+     * @param template The template
+     */
+    public synchronized void addTemplate(PlanTemplate template) {
+        templates.put(template.getId(), template);
+    }
+    
+    /**
+     * Get the built-in plan templates, e.g. to list plans without materializing them
+     * @return List of templates in registration order
+     */
+    public synchronized List<PlanTemplate> getPlanTemplates() {
+        return new ArrayList<>(templates.values());
+    }
+    
+    /**
+     * Get the start of a built-in plan's schedule
+     * @param planId Plan ID
+     * @return Timestamp in milliseconds stored when the plan was activated, or now if it
+     *         has not been activated
+     */
+    private long getScheduleStart(String planId) {
+        long scheduleStart = progressPreferences.getLong(PREF_SCHEDULE_START_PREFIX + planId, 0);
+        if (scheduleStart == 0 && planId.equals(activePlanId)) {
+            // Activated before starts were stored per plan; keep its dates where they were
+            scheduleStart = progressPreferences.getLong(PREF_LEGACY_SCHEDULE_START, 0);
         }
+        return scheduleStart != 0 ? scheduleStart : System.currentTimeMillis();
     }
     
     /**
-     * Create sample coaching plans
+     * Start a built-in plan's schedule now, as it is being activated
+     * @param plan The plan
+     * @return Plan with its workouts dated from now; plans that are not built in are
+     *         returned unchanged
      */
-    private void createSamplePlans() {
-        // Create beginner 5K plan
-        CoachingPlan beginner5k = new CoachingPlan();
-        beginner5k.setName("Beginner 5K Plan");
-        beginner5k.setDescription("An 8-week plan designed for beginners to complete their first 5K race.");
-        beginner5k.setDifficulty(CoachingPlan.DIFFICULTY_BEGINNER);
-        beginner5k.setGoal(CoachingPlan.GOAL_5K);
-        beginner5k.setDurationWeeks(8);
-        beginner5k.setWorkoutsPerWeek(3);
-        addSampleWorkoutsToPlan(beginner5k);
-        
-        // Create intermediate 10K plan
-        CoachingPlan intermediate10k = new CoachingPlan();
-        intermediate10k.setName("Intermediate 10K Plan");
-        intermediate10k.setDescription("A 10-week plan for runners who want to improve their 10K time.");
-        intermediate10k.setDifficulty(CoachingPlan.DIFFICULTY_INTERMEDIATE);
-        intermediate10k.setGoal(CoachingPlan.GOAL_10K);
-        intermediate10k.setDurationWeeks(10);
-        intermediate10k.setWorkoutsPerWeek(4);
-        addSampleWorkoutsToPlan(intermediate10k);
+    private CoachingPlan startSchedule(CoachingPlan plan) {
+        PlanTemplate template = templates.get(plan.getId());
+        if (template == null) {
+            return plan;
+        }
         
-        // Create advanced half marathon plan
-        CoachingPlan advancedHalf = new CoachingPlan();
-        advancedHalf.setName("Advanced Half Marathon");
-        advancedHalf.setDescription("A 12-week plan for experienced runners training for a half marathon.");
-        advancedHalf.setDifficulty(CoachingPlan.DIFFICULTY_ADVANCED);
-        advancedHalf.setGoal(CoachingPlan.GOAL_HALF_MARATHON);
-        advancedHalf.setDurationWeeks(12);
-        advancedHalf.setWorkoutsPerWeek(5);
-        addSampleWorkoutsToPlan(advancedHalf);
+        long scheduleStart = System.currentTimeMillis();
+        progressPreferences.edit().putLong(PREF_SCHEDULE_START_PREFIX + plan.getId(), scheduleStart).apply();
         
-        // Add plans to map
-        addPlan(beginner5k);
-        addPlan(intermediate10k);
-        addPlan(advancedHalf);
+        // Any materialized copy is dated from an earlier start
+        CoachingPlan cached = cachedPlans.remove(plan.getId());
+        if (cached != null) {
+            unindexPlan(cached);
+        }
+        Log.d(TAG, "Started plan " + plan.getId());
+        return template.materialize(scheduleStart);
     }
     
     /**
-     * Add sample workouts to a plan
-     * @param plan The coaching plan
+     * Find a plan in memory, materializing a built-in plan into the cache if needed
+     * @param planId Plan ID
+     * @return Coaching plan or null if not found
      */
-    private void addSampleWorkoutsToPlan(CoachingPlan plan) {
-        int weeks = plan.getDurationWeeks();
-        int workoutsPerWeek = plan.getWorkoutsPerWeek();
+    private CoachingPlan resolvePlan(String planId) {
+        if (activePlan != null && activePlan.getId().equals(planId)) {
+            return activePlan;
+        }
         
-        for (int week = 1; week <= weeks; week++) {
-            for (int day = 1; day <= workoutsPerWeek; day++) {
-                // Create workout
-                CoachingWorkout workout = new CoachingWorkout();
-                
-                // Set basic properties
-                workout.setWeek(week);
-                workout.setDayOfWeek(day);
-                
-                // Set type based on day of week
-                if (day == 1) {
-                    // Monday: Easy run
-                    workout.setName("Easy Run");
-                    workout.setType(CoachingWorkout.TYPE_ENDURANCE);
-                    
-                    // Add warm-up segment
-                    CoachingWorkout.WorkoutSegment warmup = new CoachingWorkout.WorkoutSegment();
-                    warmup.setType(CoachingWorkout.WorkoutSegment.TYPE_WARMUP);
-                    warmup.setDuration(5 * 60); // 5 minutes
-                    warmup.setInstructions("Start with a gentle warm-up");
-                    workout.addSegment(warmup);
-                    
-                    // Add main segment
-                    CoachingWorkout.WorkoutSegment main = new CoachingWorkout.WorkoutSegment();
-                    main.setType(CoachingWorkout.WorkoutSegment.TYPE_ACTIVE);
-                    main.setDuration((20 + (week * 2)) * 60); // Increases with weeks
-                    main.setTargetPaceMin(6.0); // 6:00 min/km
-                    main.setTargetPaceMax(7.0); // 7:00 min/km
-                    main.setIntensity(CoachingWorkout.WorkoutSegment.INTENSITY_EASY);
-                    main.setInstructions("Keep a conversational pace");
-                    workout.addSegment(main);
-                    
-                    // Add cool-down segment
-                    CoachingWorkout.WorkoutSegment cooldown = new CoachingWorkout.WorkoutSegment();
-                    cooldown.setType(CoachingWorkout.WorkoutSegment.TYPE_COOLDOWN);
-                    cooldown.setDuration(5 * 60); // 5 minutes
-                    cooldown.setInstructions("Cool down with a gentle jog or walk");
-                    workout.addSegment(cooldown);
-                    
-                } else if (day == workoutsPerWeek - 1) {
-                    // Second-to-last day: Tempo or interval run
-                    if (week % 2 == 0) {
-                        // Even weeks: Tempo run
-                        workout.setName("Tempo Run");
-                        workout.setType(CoachingWorkout.TYPE_TEMPO);
-                        
-                        // Add warm-up segment
-                        CoachingWorkout.WorkoutSegment warmup = new CoachingWorkout.WorkoutSegment();
-                        warmup.setType(CoachingWorkout.WorkoutSegment.TYPE_WARMUP);
-                        warmup.setDuration(10 * 60); // 10 minutes
-                        warmup.setInstructions("Start with a gentle warm-up");
-                        workout.addSegment(warmup);
-                        
-                        // Add tempo segment
-                        CoachingWorkout.WorkoutSegment tempo = new CoachingWorkout.WorkoutSegment();
-                        tempo.setType(CoachingWorkout.WorkoutSegment.TYPE_ACTIVE);
-                        tempo.setDuration((15 + (week)) * 60); // Increases with weeks
-                        tempo.setTargetPaceMin(5.0); // 5:00 min/km
-                        tempo.setTargetPaceMax(5.5); // 5:30 min/km
-                        tempo.setIntensity(CoachingWorkout.WorkoutSegment.INTENSITY_MODERATE);
-                        tempo.setInstructions("Maintain a challenging but sustainable pace");
-                        workout.addSegment(tempo);
-                        
-                        // Add cool-down segment
-                        CoachingWorkout.WorkoutSegment cooldown = new CoachingWorkout.WorkoutSegment();
-                        cooldown.setType(CoachingWorkout.WorkoutSegment.TYPE_COOLDOWN);
-                        cooldown.setDuration(10 * 60); // 10 minutes
-                        cooldown.setInstructions("Cool down with a gentle jog or walk");
-                        workout.addSegment(cooldown);
-                        
-                    } else {
-                        // Odd weeks: Interval run
-                        workout.setName("Interval Training");
-                        workout.setType(CoachingWorkout.TYPE_INTERVAL);
-                        
-                        // Add warm-up segment
-                        CoachingWorkout.WorkoutSegment warmup = new CoachingWorkout.WorkoutSegment();
-                        warmup.setType(CoachingWorkout.WorkoutSegment.TYPE_WARMUP);
-                        warmup.setDuration(10 * 60); // 10 minutes
-                        warmup.setInstructions("Start with a gentle warm-up");
-                        workout.addSegment(warmup);
-                        
-                        // Add intervals
-                        int intervals = 4 + (week / 2); // Increases with weeks
-                        for (int i = 0; i < intervals; i++) {
-                            // Active interval
-                            CoachingWorkout.WorkoutSegment active = new CoachingWorkout.WorkoutSegment();
-                            active.setType(CoachingWorkout.WorkoutSegment.TYPE_ACTIVE);
-                            active.setDuration(60); // 1 minute
-                            active.setTargetPaceMin(4.0); // 4:00 min/km
-                            active.setTargetPaceMax(4.5); // 4:30 min/km
-                            active.setIntensity(CoachingWorkout.WorkoutSegment.INTENSITY_HARD);
-                            active.setInstructions("Push hard for this interval");
-                            workout.addSegment(active);
-                            
-                            // Recovery interval
-                            CoachingWorkout.WorkoutSegment recovery = new CoachingWorkout.WorkoutSegment();
-                            recovery.setType(CoachingWorkout.WorkoutSegment.TYPE_RECOVERY);
-                            recovery.setDuration(90); // 1.5 minutes
-                            recovery.setTargetPaceMin(7.0); // 7:00 min/km
-                            recovery.setTargetPaceMax(8.0); // 8:00 min/km
-                            recovery.setIntensity(CoachingWorkout.WorkoutSegment.INTENSITY_EASY);
-                            recovery.setInstructions("Recover with a gentle jog");
-                            workout.addSegment(recovery);
-                        }
-                        
-                        // Add cool-down segment
-                        CoachingWorkout.WorkoutSegment cooldown = new CoachingWorkout.WorkoutSegment();
-                        cooldown.setType(CoachingWorkout.WorkoutSegment.TYPE_COOLDOWN);
-                        cooldown.setDuration(10 * 60); // 10 minutes
-                        cooldown.setInstructions("Cool down with a gentle jog or walk");
-                        workout.addSegment(cooldown);
-                    }
-                } else if (day == workoutsPerWeek) {
-                    // Last day: Long run
-                    workout.setName("Long Run");
-                    workout.setType(CoachingWorkout.TYPE_ENDURANCE);
-                    
-                    // Add warm-up segment
-                    CoachingWorkout.WorkoutSegment warmup = new CoachingWorkout.WorkoutSegment();
-                    warmup.setType(CoachingWorkout.WorkoutSegment.TYPE_WARMUP);
-                    warmup.setDuration(10 * 60); // 10 minutes
-                    warmup.setInstructions("Start with a gentle warm-up");
-                    workout.addSegment(warmup);
-                    
-                    // Add main segment
-                    CoachingWorkout.WorkoutSegment main = new CoachingWorkout.WorkoutSegment();
-                    main.setType(CoachingWorkout.WorkoutSegment.TYPE_ACTIVE);
-                    // Duration increases with weeks, longer for more advanced plans
-                    int baseDuration = 30;
-                    if (plan.getDifficulty() == CoachingPlan.DIFFICULTY_INTERMEDIATE) {
-                        baseDuration = 40;
-                    } else if (plan.getDifficulty() == CoachingPlan.DIFFICULTY_ADVANCED) {
-                        baseDuration = 50;
-                    }
-                    main.setDuration((baseDuration + (week * 5)) * 60);
-                    main.setTargetPaceMin(6.0); // 6:00 min/km
-                    main.setTargetPaceMax(7.0); // 7:00 min/km
-                    main.setIntensity(CoachingWorkout.WorkoutSegment.INTENSITY_EASY);
-                    main.setInstructions("Keep a comfortable, sustainable pace");
-                    workout.addSegment(main);
-                    
-                    // Add cool-down segment
-                    CoachingWorkout.WorkoutSegment cooldown = new CoachingWorkout.WorkoutSegment();
-                    cooldown.setType(CoachingWorkout.WorkoutSegment.TYPE_COOLDOWN);
-                    cooldown.setDuration(10 * 60); // 10 minutes
-                    cooldown.setInstructions("Cool down with a gentle jog or walk");
-                    workout.addSegment(cooldown);
-                    
-                } else {
-                    // Other days: Recovery or speed work
-                    if (week % 2 == 0) {
-                        // Even weeks: Recovery run
-                        workout.setName("Recovery Run");
-                        workout.setType(CoachingWorkout.TYPE_RECOVERY);
-                        
-                        // Add warm-up segment
-                        CoachingWorkout.WorkoutSegment warmup = new CoachingWorkout.WorkoutSegment();
-                        warmup.setType(CoachingWorkout.WorkoutSegment.TYPE_WARMUP);
-                        warmup.setDuration(5 * 60); // 5 minutes
-                        warmup.setInstructions("Start with a gentle warm-up");
-                        workout.addSegment(warmup);
-                        
-                        // Add main segment
-                        CoachingWorkout.WorkoutSegment main = new CoachingWorkout.WorkoutSegment();
-                        main.setType(CoachingWorkout.WorkoutSegment.TYPE_ACTIVE);
-                        main.setDuration(25 * 60); // 25 minutes
-                        main.setTargetPaceMin(6.5); // 6:30 min/km
-                        main.setTargetPaceMax(7.5); // 7:30 min/km
-                        main.setIntensity(CoachingWorkout.WorkoutSegment.INTENSITY_EASY);
-                        main.setInstructions("Keep it very easy, focus on recovery");
-                        workout.addSegment(main);
-                        
-                        // Add cool-down segment
-                        CoachingWorkout.WorkoutSegment cooldown = new CoachingWorkout.WorkoutSegment();
-                        cooldown.setType(CoachingWorkout.WorkoutSegment.TYPE_COOLDOWN);
-                        cooldown.setDuration(5 * 60); // 5 minutes
-                        cooldown.setInstructions("Cool down with a gentle jog or walk");
-                        workout.addSegment(cooldown);
-                        
-                    } else {
-                        // Odd weeks: Speed work
-                        workout.setName("Speed Work");
-                        workout.setType(CoachingWorkout.TYPE_SPEED);
-                        
-                        // Add warm-up segment
-                        CoachingWorkout.WorkoutSegment warmup = new CoachingWorkout.WorkoutSegment();
-                        warmup.setType(CoachingWorkout.WorkoutSegment.TYPE_WARMUP);
-                        warmup.setDuration(10 * 60); // 10 minutes
-                        warmup.setInstructions("Start with a thorough warm-up");
-                        workout.addSegment(warmup);
-                        
-                        // Add main segment with strides
-                        CoachingWorkout.WorkoutSegment main = new CoachingWorkout.WorkoutSegment();
-                        main.setType(CoachingWorkout.WorkoutSegment.TYPE_ACTIVE);
-                        main.setDuration(20 * 60); // 20 minutes
-                        main.setTargetPaceMin(6.0); // 6:00 min/km
-                        main.setTargetPaceMax(6.5); // 6:30 min/km
-                        main.setIntensity(CoachingWorkout.WorkoutSegment.INTENSITY_MODERATE);
-                        main.setInstructions("Include 6-8 strides of 20 seconds during this run");
-                        workout.addSegment(main);
-                        
-                        // Add cool-down segment
-                        CoachingWorkout.WorkoutSegment cooldown = new CoachingWorkout.WorkoutSegment();
-                        cooldown.setType(CoachingWorkout.WorkoutSegment.TYPE_COOLDOWN);
-                        cooldown.setDuration(10 * 60); // 10 minutes
-                        cooldown.setInstructions("Cool down with a gentle jog or walk");
-                        workout.addSegment(cooldown);
-                    }
-                }
-                
-                // Calculate scheduled date (hypothetical - actual implementation would be more complex)
-                // For this example, we'll just set it based on current date plus offset
-                Calendar cal = Calendar.getInstance();
-                cal.add(Calendar.WEEK_OF_YEAR, week - 1);
-                cal.set(Calendar.DAY_OF_WEEK, day + 1); // +1 because Calendar.SUNDAY is 1
-                workout.setScheduledDate(cal.getTimeInMillis());
-                
-                // Add workout to plan
-                plan.addWorkout(workout);
-                
-                // Also add to workouts map
-                workouts.put(workout.getId(), workout);
+        CoachingPlan plan = plans.get(planId);
+        if (plan == null) {
+            plan = cachedPlans.get(planId);
+        }
+        if (plan == null) {
+            PlanTemplate template = templates.get(planId);
+            if (template != null) {
+                plan = template.materialize(getScheduleStart(planId));
+                indexPlan(plan);
+                cachedPlans.put(planId, plan);
+                Log.d(TAG, "Materialized plan " + planId);
             }
         }
+        return plan;
     }
     
     /**
-     * Get all coaching plans
+     * Get all coaching plans. This materializes every built-in plan; use
+     * {@link #getPlanTemplates()} to list them.
      * @return List of coaching plans
      */
-    public List<CoachingPlan> getAllPlans() {
-        return new ArrayList<>(plans.values());
+    public synchronized List<CoachingPlan> getAllPlans() {
+        List<CoachingPlan> allPlans = new ArrayList<>();
+        for (String planId : templates.keySet()) {
+            allPlans.add(resolvePlan(planId));
+        }
+        for (CoachingPlan plan : plans.values()) {
+            if (!templates.containsKey(plan.getId())) {
+                allPlans.add(plan);
+            }
+        }
+        return allPlans;
     }
     
     /**
@@ -371,48 +229,129 @@ public class CoachingManager {
      * @param planId Plan ID
      * @return Coaching plan or null if not found
      */
-    public CoachingPlan getPlan(String planId) {
-        return plans.get(planId);
+    public synchronized CoachingPlan getPlan(String planId) {
+        return resolvePlan(planId);
     }
     
     /**
      * Add a coaching plan
      * @param plan Coaching plan to add
      */
-    public void addPlan(CoachingPlan plan) {
+    public synchronized void addPlan(CoachingPlan plan) {
         plans.put(plan.getId(), plan);
-        
-        // Add all workouts to workouts map
+        indexPlan(plan);
+    }
+    
+    /**
+     * Add a plan's workouts to the lookup maps and restore their stored progress
+     * @param plan The plan
+     */
+    private void indexPlan(CoachingPlan plan) {
         for (CoachingWorkout workout : plan.getWorkouts()) {
             workouts.put(workout.getId(), workout);
+            restoreProgress(workout);
+        }
+        
+        schedules.put(plan.getId(), new PlanSchedule(plan));
+    }
+    
+    /**
+     * Remove a plan's workouts from the lookup maps
+     * @param plan The plan
+     */
+    private void unindexPlan(CoachingPlan plan) {
+        for (CoachingWorkout workout : plan.getWorkouts()) {
+            workouts.remove(workout.getId());
+        }
+        schedules.remove(plan.getId());
+    }
+    
+    /**
+     * Apply the stored state of a workout, if any
+     * @param workout The workout
+     */
+    private void restoreProgress(CoachingWorkout workout) {
+        String value = progressPreferences.getString(workout.getId(), null);
+        if (value == null) {
+            return;
+        }
+        
+        // Stored as "<state>" or "<state>:<run id>"
+        int separator = value.indexOf(':');
+        try {
+            int state = Integer.parseInt(separator < 0 ? value : value.substring(0, separator));
+            workout.setState(state);
+            if (separator >= 0) {
+                workout.setCompletedRunId(value.substring(separator + 1));
+            }
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid progress for workout " + workout.getId() + ": " + value);
         }
     }
     
+    /**
+     * Update the state of a workout in memory, in its plan schedule and in storage
+     * @param workout The workout
+     * @param state New state
+     * @param runId Completed run ID, or null
+     */
+    private void updateProgress(CoachingWorkout workout, int state, String runId) {
+        PlanSchedule schedule = schedules.get(workout.getPlanId());
+        if (schedule != null) {
+            schedule.setState(workout, state);
+        } else {
+            workout.setState(state);
+        }
+        workout.setCompletedRunId(runId);
+        
+        // Only this workout's entry is written, not the whole plan
+        String value = runId != null ? state + ":" + runId : String.valueOf(state);
+        progressPreferences.edit().putString(workout.getId(), value).apply();
+    }
+    
     /**
      * Get a workout by ID
      * @param workoutId Workout ID
      * @return Coaching workout or null if not found
      */
-    public CoachingWorkout getWorkout(String workoutId) {
-        return workouts.get(workoutId);
+    public synchronized CoachingWorkout getWorkout(String workoutId) {
+        CoachingWorkout workout = workouts.get(workoutId);
+        if (workout == null) {
+            // The workout may belong to a built-in plan that is not materialized
+            String planId = PlanTemplate.getPlanId(workoutId);
+            if (planId != null && templates.containsKey(planId)) {
+                resolvePlan(planId);
+                workout = workouts.get(workoutId);
+            }
+        }
+        return workout;
     }
     
     /**
      * Get the active plan
      * @return Active coaching plan or null if none set
      */
-    public CoachingPlan getActivePlan() {
+    public synchronized CoachingPlan getActivePlan() {
+        if (activePlan == null && activePlanId != null) {
+            activePlan = pinPlan(activePlanId, resolvePlan(activePlanId));
+        }
         return activePlan;
     }
     
     /**
-     * Set the active plan
+     * Set the active plan. A built-in plan that was not already active is scheduled from
+     * now, so the plan returned by {@link #getActivePlan()} may be a new copy of it.
      * @param plan Coaching plan to set as active
      */
-    public void setActivePlan(CoachingPlan plan) {
+    public synchronized void setActivePlan(CoachingPlan plan) {
         if (plan != null) {
+            boolean started = !plan.getId().equals(activePlanId);
+            releaseActivePlan();
+            if (started) {
+                plan = startSchedule(plan);
+            }
             activePlanId = plan.getId();
-            activePlan = plan;
+            activePlan = pinPlan(activePlanId, plan);
             
             // Save to preferences
             SharedPreferences.Editor editor = preferences.edit();
@@ -424,7 +363,8 @@ public class CoachingManager {
     /**
      * Clear the active plan
      */
-    public void clearActivePlan() {
+    public synchronized void clearActivePlan() {
+        releaseActivePlan();
         activePlanId = null;
         activePlan = null;
         
@@ -434,49 +374,134 @@ public class CoachingManager {
         editor.apply();
     }
     
+    /**
+     * Take a plan out of the cache so it stays materialized while it is active
+     * @param planId Plan ID
+     * @param plan The plan, may be null
+     * @return The plan
+     */
+    private CoachingPlan pinPlan(String planId, CoachingPlan plan) {
+        CoachingPlan cached = cachedPlans.remove(planId);
+        if (plan != null && cached != plan) {
+            if (cached != null) {
+                unindexPlan(cached);
+            }
+            if (!plans.containsKey(planId)) {
+                indexPlan(plan);
+            }
+        }
+        return plan;
+    }
+    
+    /**
+     * Return the active plan to the cache, or drop it if it is not a stored plan
+     */
+    private void releaseActivePlan() {
+        if (activePlan == null) {
+            return;
+        }
+        
+        if (templates.containsKey(activePlan.getId())) {
+            cachedPlans.put(activePlan.getId(), activePlan);
+        } else if (!plans.containsKey(activePlan.getId())) {
+            unindexPlan(activePlan);
+        }
+        activePlan = null;
+    }
+    
     /**
      * Get the next scheduled workout
      * @return Next scheduled workout or null if none
      */
-    public CoachingWorkout getNextScheduledWorkout() {
-        if (activePlan == null) {
+    public synchronized CoachingWorkout getNextScheduledWorkout() {
+        PlanSchedule schedule = getActiveSchedule();
+        if (schedule == null) {
             return null;
         }
         
-        // Get current time
-        long now = System.currentTimeMillis();
+        return schedule.next(System.currentTimeMillis());
+    }
+    
+    /**
+     * Get the workout to do next, taking training load into account. When fatigue
+     * clearly outweighs fitness, a hard workout is swapped for the next easy one in the
+     * same week; the hard workout stays scheduled. Target paces are set from the
+     * runner's predicted race paces once there are personal bests.
+     * @return Recommended workout or null if none
+     */
+    public synchronized CoachingWorkout getRecommendedWorkout() {
+        CoachingWorkout workout = chooseRecommendedWorkout();
+        if (workout != null) {
+            racePredictor.get().applyTargetPaces(workout);
+        }
+        return workout;
+    }
+    
+    /**
+     * Choose the workout to do next, swapping a hard workout for an easy one if fatigued
+     * @return Workout or null if none
+     */
+    private CoachingWorkout chooseRecommendedWorkout() {
+        CoachingWorkout next = getNextScheduledWorkout();
+        if (next == null || !isHard(next)) {
+            return next;
+        }
         
-        // Get all workouts from active plan that are scheduled and not completed/skipped
-        List<CoachingWorkout> scheduledWorkouts = new ArrayList<>();
-        for (CoachingWorkout workout : activePlan.getWorkouts()) {
-            if (workout.getState() == CoachingWorkout.STATE_SCHEDULED && 
-                    workout.getScheduledDate() >= now) {
-                scheduledWorkouts.add(workout);
-            }
+        TrainingLoad load = trainingLoad.get().getCurrent();
+        if (load.getBalance() >= FATIGUE_BALANCE) {
+            return next;
         }
         
-        // Sort by scheduled date
-        Collections.sort(scheduledWorkouts, new Comparator<CoachingWorkout>() {
-            @Override
-            public int compare(CoachingWorkout w1, CoachingWorkout w2) {
-                return Long.compare(w1.getScheduledDate(), w2.getScheduledDate());
+        PlanSchedule schedule = getActiveSchedule();
+        for (CoachingWorkout candidate = schedule.after(next);
+             candidate != null && candidate.getWeek() == next.getWeek();
+             candidate = schedule.after(candidate)) {
+            if (!isHard(candidate)) {
+                Log.d(TAG, "Form " + load.getBalance() + ", recommending " + candidate.getId()
+                        + " instead of " + next.getId());
+                return candidate;
             }
-        });
-        
-        // Return the first one, or null if none
-        return scheduledWorkouts.isEmpty() ? null : scheduledWorkouts.get(0);
+        }
+        return next;
+    }
+    
+    /**
+     * Check if a workout is a hard session
+     * @param workout Workout
+     * @return True for interval, tempo, speed and race workouts
+     */
+    private static boolean isHard(CoachingWorkout workout) {
+        switch (workout.getType()) {
+            case CoachingWorkout.TYPE_INTERVAL:
+            case CoachingWorkout.TYPE_TEMPO:
+            case CoachingWorkout.TYPE_SPEED:
+            case CoachingWorkout.TYPE_RACE:
+                return true;
+            default:
+                return false;
+        }
     }
     
     /**
      * Get workout progress for the active plan
      * @return Completion percentage (0-100)
      */
-    public int getWorkoutProgress() {
-        if (activePlan == null) {
+    public synchronized int getWorkoutProgress() {
+        PlanSchedule schedule = getActiveSchedule();
+        if (schedule == null) {
             return 0;
         }
         
-        return activePlan.getCompletionPercentage();
+        return schedule.getCompletionPercentage();
+    }
+    
+    /**
+     * Get the schedule index of the active plan
+     * @return Schedule or null if no plan is active
+     */
+    private PlanSchedule getActiveSchedule() {
+        CoachingPlan plan = getActivePlan();
+        return plan != null ? schedules.get(plan.getId()) : null;
     }
     
     /**
@@ -484,13 +509,10 @@ public class CoachingManager {
      * @param workoutId Workout ID
      * @param runId Run ID
      */
-    public void markWorkoutCompleted(String workoutId, String runId) {
-        CoachingWorkout workout = workouts.get(workoutId);
+    public synchronized void markWorkoutCompleted(String workoutId, String runId) {
+        CoachingWorkout workout = getWorkout(workoutId);
         if (workout != null) {
-            workout.setCompletedRunId(runId);
-            workout.setState(CoachingWorkout.STATE_COMPLETED);
-            
-            // In a real app, this would save to a database
+            updateProgress(workout, CoachingWorkout.STATE_COMPLETED, runId);
             Log.d(TAG, "Workout " + workoutId + " marked as completed with run " + runId);
         }
     }
@@ -499,12 +521,10 @@ public class CoachingManager {
      * Mark a workout as skipped
      * @param workoutId Workout ID
      */
-    public void markWorkoutSkipped(String workoutId) {
-        CoachingWorkout workout = workouts.get(workoutId);
+    public synchronized void markWorkoutSkipped(String workoutId) {
+        CoachingWorkout workout = getWorkout(workoutId);
         if (workout != null) {
-            workout.setState(CoachingWorkout.STATE_SKIPPED);
-            
-            // In a real app, this would save to a database
+            updateProgress(workout, CoachingWorkout.STATE_SKIPPED, null);
             Log.d(TAG, "Workout " + workoutId + " marked as skipped");
         }
     }
@@ -0,0 +1,174 @@
+package com.runtracker.android.data;
+
+import com.runtracker.android.data.metrics.QuantileSketch;
+import com.runtracker.android.data.metrics.SplitCalculator;
+import com.runtracker.android.data.models.Run;
+import com.runtracker.android.data.repositories.RunRepository;
+import com.runtracker.android.utils.Constants;
+
+import java.util.Calendar;
+import java.util.TreeMap;
+
+/**
+ * Manager class for the distributions of run metrics over time, e.g. the median pace
+ * this month or the 10th-90th percentile band of run distances last year.
+ *
+ * Each calendar month has one quantile sketch per metric, so memory per month is
+ * bounded no matter how many runs it has. A question about a range of months merges
+ * the sketches of those months rather than going back to the runs. Sketches cannot
+ * forget a value, so deleting a run rebuilds the sketches of its month only.
+ */
+public class DistributionManager implements RunRepository.RunListener {
+
+    // Metrics
+    public static final int METRIC_PACE = 0; // min/km
+    public static final int METRIC_DISTANCE = 1; // km
+    public static final int METRIC_DURATION = 2; // seconds
+    public static final int METRIC_SPLIT_PACE = 3; // min/km, full kilometers only
+    private static final int METRIC_COUNT = 4;
+
+    // Shorter runs don't have a meaningful pace
+    private static final double MIN_PACE_DISTANCE = 0.5; // km
+
+    private final RunRepository runRepository;
+
+    // Sketches by month, keyed by year * 12 + month
+    private final TreeMap<Integer, QuantileSketch[]> months = new TreeMap<>();
+
+    /**
+     * Constructor, builds the sketches from the run history
+     * @param runRepository Repository whose completed runs are tracked
+     */
+    public DistributionManager(RunRepository runRepository) {
+        this.runRepository = runRepository;
+
+        synchronized (this) {
+            for (Run run : runRepository.getCompletedRuns()) {
+                addRun(run);
+            }
+        }
+        runRepository.addListener(this);
+    }
+
+    /**
+     * Get the combined distribution of a metric over a range of months
+     * @param metric METRIC_PACE, METRIC_DISTANCE, METRIC_DURATION or METRIC_SPLIT_PACE
+     * @param from Start of the range in milliseconds
+     * @param to End of the range in milliseconds, exclusive
+     * @return New sketch covering every month that overlaps the range
+     */
+    public synchronized QuantileSketch getDistribution(int metric, long from, long to) {
+        QuantileSketch merged = new QuantileSketch();
+        if (to <= from) {
+            return merged;
+        }
+        for (QuantileSketch[] sketches : months.subMap(getMonthKey(from), true, getMonthKey(to - 1), true).values()) {
+            merged.merge(sketches[metric]);
+        }
+        return merged;
+    }
+
+    /**
+     * Estimate quantiles of a metric over a range of months, e.g. {0.1, 0.5, 0.9} for
+     * the median and a percentile band
+     * @param metric METRIC_PACE, METRIC_DISTANCE, METRIC_DURATION or METRIC_SPLIT_PACE
+     * @param from Start of the range in milliseconds
+     * @param to End of the range in milliseconds, exclusive
+     * @param quantiles Quantiles between 0 and 1
+     * @return Estimated values in the order of the quantiles; NaN if there are no values
+     */
+    public double[] getQuantiles(int metric, long from, long to, double... quantiles) {
+        QuantileSketch sketch = getDistribution(metric, from, to);
+        double[] values = new double[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            values[i] = sketch.quantile(quantiles[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Estimate the median of a metric over a range of months
+     * @param metric METRIC_PACE, METRIC_DISTANCE, METRIC_DURATION or METRIC_SPLIT_PACE
+     * @param from Start of the range in milliseconds
+     * @param to End of the range in milliseconds, exclusive
+     * @return Estimated median, or NaN if there are no values
+     */
+    public double getMedian(int metric, long from, long to) {
+        return getDistribution(metric, from, to).quantile(0.5);
+    }
+
+    @Override
+    public synchronized void onRunCompleted(Run run) {
+        addRun(run);
+    }
+
+    @Override
+    public synchronized void onRunDeleted(Run run) {
+        // The repository no longer has the deleted run
+        rebuildMonth(getMonthKey(run.getStartTime()));
+    }
+
+    @Override
+    public synchronized void onRunUpdated(Run previousRun, Run run) {
+        // Backfilled splits add split paces; the repository already has the updated run
+        int month = getMonthKey(run.getStartTime());
+        int previousMonth = getMonthKey(previousRun.getStartTime());
+        if (previousMonth != month) {
+            rebuildMonth(previousMonth);
+        }
+        rebuildMonth(month);
+    }
+
+    /**
+     * Rebuild the sketches of a month from the repository's runs
+     * @param month Key of the month, see {@link #getMonthKey(long)}
+     */
+    private void rebuildMonth(int month) {
+        months.remove(month);
+        for (Run other : runRepository.getCompletedRuns()) {
+            if (getMonthKey(other.getStartTime()) == month) {
+                addRun(other);
+            }
+        }
+    }
+
+    /**
+     * Add the metrics of a run to the sketches of its month
+     * @param run Completed run
+     */
+    private void addRun(Run run) {
+        int month = getMonthKey(run.getStartTime());
+        QuantileSketch[] sketches = months.get(month);
+        if (sketches == null) {
+            sketches = new QuantileSketch[METRIC_COUNT];
+            for (int i = 0; i < METRIC_COUNT; i++) {
+                sketches[i] = new QuantileSketch();
+            }
+            months.put(month, sketches);
+        }
+
+        if (run.getTotalDistance() >= MIN_PACE_DISTANCE && run.getPace() > 0) {
+            sketches[METRIC_PACE].add(run.getPace());
+        }
+        sketches[METRIC_DISTANCE].add(run.getTotalDistance());
+        sketches[METRIC_DURATION].add(run.getActiveDuration() / 1000.0);
+
+        for (Run.Split split : run.getSplits(Constants.UNIT_KILOMETERS)) {
+            // The last split is usually partial and its pace is mostly noise
+            if (split.getDistance() >= SplitCalculator.KILOMETER && split.getPace() > 0) {
+                sketches[METRIC_SPLIT_PACE].add(split.getPace());
+            }
+        }
+    }
+
+    /**
+     * Get the key of the month containing a time
+     * @param time Timestamp in milliseconds
+     * @return Year * 12 + month
+     */
+    private static int getMonthKey(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        return calendar.get(Calendar.YEAR) * 12 + calendar.get(Calendar.MONTH);
+    }
+}
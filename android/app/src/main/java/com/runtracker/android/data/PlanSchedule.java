@@ -0,0 +1,128 @@
+package com.runtracker.android.data;
+
+import com.runtracker.android.data.models.CoachingPlan;
+import com.runtracker.android.data.models.CoachingWorkout;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * Schedule index for one coaching plan.
+ *
+ * Workouts that are still scheduled are kept in a set ordered by scheduled date, and
+ * completed and skipped workouts are only counted. Finding the next workout is a
+ * ceiling lookup and progress is read from the counts, so neither scans the plan.
+ * State changes must go through {@link #setState(CoachingWorkout, int)} to keep the
+ * index in sync.
+ */
+public class PlanSchedule {
+
+    // Order by date; the ID keeps workouts on the same date apart
+    private static final Comparator<CoachingWorkout> BY_DATE =
+            Comparator.comparingLong(CoachingWorkout::getScheduledDate)
+                    .thenComparing(CoachingWorkout::getId);
+
+    private final TreeSet<CoachingWorkout> scheduled = new TreeSet<>(BY_DATE);
+    private final CoachingWorkout probe = new CoachingWorkout("");
+    private int total;
+    private int completed;
+    private int skipped;
+
+    /**
+     * Constructor
+     * @param plan The plan to index
+     */
+    public PlanSchedule(CoachingPlan plan) {
+        for (CoachingWorkout workout : plan.getWorkouts()) {
+            total++;
+            count(workout.getState(), 1);
+            if (workout.getState() == CoachingWorkout.STATE_SCHEDULED) {
+                scheduled.add(workout);
+            }
+        }
+    }
+
+    /**
+     * Get the first scheduled workout at or after a time
+     * @param time Timestamp in milliseconds
+     * @return Next scheduled workout or null if none
+     */
+    public CoachingWorkout next(long time) {
+        // The empty ID sorts before any real ID on the same date
+        probe.setScheduledDate(time);
+        return scheduled.ceiling(probe);
+    }
+
+    /**
+     * Get the scheduled workout that follows another one
+     * @param workout A workout in this plan
+     * @return Next scheduled workout or null if none
+     */
+    public CoachingWorkout after(CoachingWorkout workout) {
+        return scheduled.higher(workout);
+    }
+
+    /**
+     * Change the state of a workout and update the index
+     * @param workout Workout in this plan
+     * @param state New state
+     */
+    public void setState(CoachingWorkout workout, int state) {
+        int previous = workout.getState();
+        if (previous == state) {
+            return;
+        }
+
+        if (previous == CoachingWorkout.STATE_SCHEDULED) {
+            scheduled.remove(workout);
+        }
+        count(previous, -1);
+
+        workout.setState(state);
+
+        if (state == CoachingWorkout.STATE_SCHEDULED) {
+            scheduled.add(workout);
+        }
+        count(state, 1);
+    }
+
+    /**
+     * Get completion percentage
+     * @return Completion percentage (0-100)
+     */
+    public int getCompletionPercentage() {
+        if (total == 0) {
+            return 0;
+        }
+        return (int) ((float) completed / total * 100);
+    }
+
+    public int getTotalCount() {
+        return total;
+    }
+
+    public int getScheduledCount() {
+        return scheduled.size();
+    }
+
+    public int getCompletedCount() {
+        return completed;
+    }
+
+    public int getSkippedCount() {
+        return skipped;
+    }
+
+    /**
+     * Adjust the count for a state
+     * @param state Workout state
+     * @param delta Amount to add
+     */
+    private void count(int state, int delta) {
+        if (state == CoachingWorkout.STATE_COMPLETED) {
+            completed += delta;
+        } else if (state == CoachingWorkout.STATE_SKIPPED) {
+            skipped += delta;
+        }
+    }
+}
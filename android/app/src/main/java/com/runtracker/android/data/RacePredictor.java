@@ -0,0 +1,140 @@
+package com.runtracker.android.data;
+
+import com.runtracker.android.data.metrics.BestEffortCalculator;
+import com.runtracker.android.data.metrics.RacePredictionModel;
+import com.runtracker.android.data.models.BestEffort;
+import com.runtracker.android.data.models.CoachingPlan;
+import com.runtracker.android.data.models.CoachingWorkout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Predicts race times and training paces from the personal-best leaderboard.
+ *
+ * The prediction model is cached and only rebuilt when a personal best changes, so
+ * predictions never go back to the run history.
+ */
+public class RacePredictor {
+
+    // Race distance whose predicted pace sets the target for each intensity, in meters
+    private static final int EASY_REFERENCE = 42195;
+    private static final int MODERATE_REFERENCE = 21097;
+    private static final int HARD_REFERENCE = 5000;
+    private static final int MAX_REFERENCE = 1000;
+
+    // Target range around the reference pace, as factors of it
+    private static final double[][] PACE_RANGES = {
+            {1.10, 1.25}, // Easy: well slower than marathon pace
+            {0.98, 1.03}, // Moderate: around half marathon pace
+            {0.97, 1.03}, // Hard: around 5K pace
+            {0.97, 1.03}  // Max: around 1K pace
+    };
+
+    private final BestEffortManager bestEffortManager;
+    private RacePredictionModel model;
+    private long modelVersion = -1;
+
+    /**
+     * Constructor
+     * @param bestEffortManager Source of the personal bests
+     */
+    public RacePredictor(BestEffortManager bestEffortManager) {
+        this.bestEffortManager = bestEffortManager;
+    }
+
+    /**
+     * Get the prediction model, rebuilding it if a personal best has changed
+     * @return Model, or null if there are no personal bests yet
+     */
+    public synchronized RacePredictionModel getModel() {
+        // Read the version first so a change during the rebuild triggers another one
+        long version = bestEffortManager.getPersonalBestVersion();
+        if (version != modelVersion) {
+            List<BestEffort> personalBests = new ArrayList<>();
+            for (int distance : BestEffortCalculator.DISTANCES) {
+                BestEffort best = bestEffortManager.getPersonalBest(distance);
+                if (best != null) {
+                    personalBests.add(best);
+                }
+            }
+            model = RacePredictionModel.fit(personalBests);
+            modelVersion = version;
+        }
+        return model;
+    }
+
+    /**
+     * Get the race distance of a plan goal
+     * @param goal CoachingPlan goal
+     * @return Distance in meters, or 0 for goals that are not a race
+     */
+    public static int getGoalDistance(int goal) {
+        switch (goal) {
+            case CoachingPlan.GOAL_5K:
+                return 5000;
+            case CoachingPlan.GOAL_10K:
+                return 10000;
+            case CoachingPlan.GOAL_HALF_MARATHON:
+                return 21097;
+            case CoachingPlan.GOAL_MARATHON:
+                return 42195;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Predict the finish time for a plan goal
+     * @param goal CoachingPlan goal
+     * @return Predicted time in milliseconds, or 0 if the goal is not a race or there
+     *         are no personal bests yet
+     */
+    public long predictGoalTime(int goal) {
+        int distance = getGoalDistance(goal);
+        RacePredictionModel current = getModel();
+        return distance > 0 && current != null ? current.predictTime(distance) : 0;
+    }
+
+    /**
+     * Set the target paces of a workout's paced segments from the predicted race paces.
+     * Segments without a target pace, such as warm-ups, are left alone.
+     * @param workout Workout to update
+     * @return True if the paces were set, false if there are no personal bests yet
+     */
+    public boolean applyTargetPaces(CoachingWorkout workout) {
+        RacePredictionModel current = getModel();
+        if (current == null) {
+            return false;
+        }
+
+        for (CoachingWorkout.WorkoutSegment segment : workout.getSegments()) {
+            if (segment.getTargetPaceMin() <= 0 && segment.getTargetPaceMax() <= 0) {
+                continue;
+            }
+            int intensity = Math.max(0, Math.min(PACE_RANGES.length - 1, segment.getIntensity()));
+            double pace = current.predictPace(getReferenceDistance(intensity));
+            segment.setTargetPaceMin(pace * PACE_RANGES[intensity][0]);
+            segment.setTargetPaceMax(pace * PACE_RANGES[intensity][1]);
+        }
+        return true;
+    }
+
+    /**
+     * Get the race distance whose pace sets the target for an intensity
+     * @param intensity WorkoutSegment intensity
+     * @return Distance in meters
+     */
+    private static int getReferenceDistance(int intensity) {
+        switch (intensity) {
+            case CoachingWorkout.WorkoutSegment.INTENSITY_MODERATE:
+                return MODERATE_REFERENCE;
+            case CoachingWorkout.WorkoutSegment.INTENSITY_HARD:
+                return HARD_REFERENCE;
+            case CoachingWorkout.WorkoutSegment.INTENSITY_MAX:
+                return MAX_REFERENCE;
+            default:
+                return EASY_REFERENCE;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.runtracker.android.data;
+
+import com.runtracker.android.data.metrics.Leaderboard;
+import com.runtracker.android.data.models.PersonalRecord;
+import com.runtracker.android.data.models.Run;
+import com.runtracker.android.data.repositories.RunRepository;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manager class for the records boards: longest runs by distance and duration, fastest
+ * pace, and biggest weeks and months by distance.
+ *
+ * The boards are built once from the run history and then kept up to date as runs are
+ * completed and deleted. Adding a run is a binary search per board. Deleting a run that
+ * is on a full board rebuilds only that board, since the entry that moves up into the
+ * freed place was not kept.
+ */
+public class RecordsManager implements RunRepository.RunListener {
+
+    // Number of entries kept per board
+    public static final int BOARD_SIZE = 10;
+
+    // Shorter runs don't count for the pace board
+    public static final double MIN_PACE_DISTANCE = 1.0; // km
+
+    private final RunRepository runRepository;
+    private final Map<Integer, Leaderboard<PersonalRecord>> boards = new HashMap<>();
+    private final Map<Long, Period> weeks = new HashMap<>();
+    private final Map<Long, Period> months = new HashMap<>();
+
+    /**
+     * Constructor, builds the boards from the run history
+     * @param runRepository Repository whose completed runs are tracked
+     */
+    public RecordsManager(RunRepository runRepository) {
+        this.runRepository = runRepository;
+
+        synchronized (this) {
+            for (int type = PersonalRecord.TYPE_LONGEST_DISTANCE; type <= PersonalRecord.TYPE_BIGGEST_MONTH; type++) {
+                boards.put(type, new Leaderboard<>(BOARD_SIZE));
+            }
+            for (Run run : runRepository.getCompletedRuns()) {
+                addRun(run);
+            }
+        }
+        runRepository.addListener(this);
+    }
+
+    /**
+     * Get the entries of a records board
+     * @param type PersonalRecord type
+     * @return Records, best first
+     */
+    public synchronized List<PersonalRecord> getRecords(int type) {
+        return boards.get(type).getValues();
+    }
+
+    /**
+     * Get the best entry of a records board
+     * @param type PersonalRecord type
+     * @return Record or null if there are no runs
+     */
+    public synchronized PersonalRecord getRecord(int type) {
+        List<PersonalRecord> records = boards.get(type).getValues();
+        return records.isEmpty() ? null : records.get(0);
+    }
+
+    @Override
+    public synchronized void onRunCompleted(Run run) {
+        addRun(run);
+    }
+
+    @Override
+    public synchronized void onRunDeleted(Run run) {
+        removeRun(run, PersonalRecord.TYPE_LONGEST_DISTANCE);
+        removeRun(run, PersonalRecord.TYPE_LONGEST_DURATION);
+        removeRun(run, PersonalRecord.TYPE_FASTEST_PACE);
+
+        removeFromPeriod(weeks, PersonalRecord.TYPE_BIGGEST_WEEK,
+                getPeriodStart(run.getStartTime(), Calendar.WEEK_OF_YEAR), run.getTotalDistance());
+        removeFromPeriod(months, PersonalRecord.TYPE_BIGGEST_MONTH,
+                getPeriodStart(run.getStartTime(), Calendar.MONTH), run.getTotalDistance());
+    }
+
+    /**
+     * Add a completed run to every board
+     * @param run The run
+     */
+    private void addRun(Run run) {
+        offerRun(run, PersonalRecord.TYPE_LONGEST_DISTANCE);
+        offerRun(run, PersonalRecord.TYPE_LONGEST_DURATION);
+        offerRun(run, PersonalRecord.TYPE_FASTEST_PACE);
+
+        addToPeriod(weeks, PersonalRecord.TYPE_BIGGEST_WEEK,
+                getPeriodStart(run.getStartTime(), Calendar.WEEK_OF_YEAR), run.getTotalDistance());
+        addToPeriod(months, PersonalRecord.TYPE_BIGGEST_MONTH,
+                getPeriodStart(run.getStartTime(), Calendar.MONTH), run.getTotalDistance());
+    }
+
+    /**
+     * Offer a run to one of the per-run boards
+     * @param run The run
+     * @param type TYPE_LONGEST_DISTANCE, TYPE_LONGEST_DURATION or TYPE_FASTEST_PACE
+     */
+    private void offerRun(Run run, int type) {
+        Leaderboard<PersonalRecord> board = boards.get(type);
+        switch (type) {
+            case PersonalRecord.TYPE_LONGEST_DISTANCE:
+                board.offer(run.getId(), run.getTotalDistance(), new PersonalRecord(type,
+                        run.getTotalDistance(), run.getId(), run.getStartTime()));
+                break;
+            case PersonalRecord.TYPE_LONGEST_DURATION:
+                board.offer(run.getId(), run.getActiveDuration(), new PersonalRecord(type,
+                        run.getActiveDuration(), run.getId(), run.getStartTime()));
+                break;
+            case PersonalRecord.TYPE_FASTEST_PACE:
+                // Lower pace is better
+                if (run.getTotalDistance() >= MIN_PACE_DISTANCE && run.getPace() > 0) {
+                    board.offer(run.getId(), -run.getPace(), new PersonalRecord(type,
+                            run.getPace(), run.getId(), run.getStartTime()));
+                }
+                break;
+        }
+    }
+
+    /**
+     * Remove a deleted run from one of the per-run boards
+     * @param run The deleted run
+     * @param type TYPE_LONGEST_DISTANCE, TYPE_LONGEST_DURATION or TYPE_FASTEST_PACE
+     */
+    private void removeRun(Run run, int type) {
+        Leaderboard<PersonalRecord> board = boards.get(type);
+        boolean full = board.isFull();
+        if (board.remove(run.getId()) && full) {
+            // The repository no longer has the deleted run
+            board.clear();
+            for (Run other : runRepository.getCompletedRuns()) {
+                offerRun(other, type);
+            }
+        }
+    }
+
+    /**
+     * Add a run's distance to its week or month
+     * @param periods Totals by period start
+     * @param type TYPE_BIGGEST_WEEK or TYPE_BIGGEST_MONTH
+     * @param start Period start
+     * @param distance Run distance in kilometers
+     */
+    private void addToPeriod(Map<Long, Period> periods, int type, long start, double distance) {
+        Period period = periods.get(start);
+        if (period == null) {
+            period = new Period();
+            periods.put(start, period);
+        }
+        period.distance += distance;
+        period.runs++;
+
+        // Totals only grow here, so the period can only move up
+        offerPeriod(boards.get(type), type, start, period);
+    }
+
+    /**
+     * Take a deleted run's distance off its week or month
+     * @param periods Totals by period start
+     * @param type TYPE_BIGGEST_WEEK or TYPE_BIGGEST_MONTH
+     * @param start Period start
+     * @param distance Run distance in kilometers
+     */
+    private void removeFromPeriod(Map<Long, Period> periods, int type, long start, double distance) {
+        Period period = periods.get(start);
+        if (period == null) {
+            return;
+        }
+        period.distance -= distance;
+        period.runs--;
+        if (period.runs <= 0) {
+            periods.remove(start);
+        }
+
+        Leaderboard<PersonalRecord> board = boards.get(type);
+        boolean full = board.isFull();
+        if (!board.remove(String.valueOf(start))) {
+            return;
+        }
+
+        if (full) {
+            // Another period may now rank above this one
+            board.clear();
+            for (Map.Entry<Long, Period> entry : periods.entrySet()) {
+                offerPeriod(board, type, entry.getKey(), entry.getValue());
+            }
+        } else if (period.runs > 0) {
+            // Every period is on a board that isn't full, so it keeps its place in the order
+            offerPeriod(board, type, start, period);
+        }
+    }
+
+    private static void offerPeriod(Leaderboard<PersonalRecord> board, int type, long start, Period period) {
+        board.offer(String.valueOf(start), period.distance,
+                new PersonalRecord(type, period.distance, null, start));
+    }
+
+    /**
+     * Get the start of the week or month containing a time
+     * @param time Timestamp in milliseconds
+     * @param field Calendar.WEEK_OF_YEAR or Calendar.MONTH
+     * @return Start of the period in milliseconds
+     */
+    private static long getPeriodStart(long time, int field) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        if (field == Calendar.WEEK_OF_YEAR) {
+            calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
+        } else {
+            calendar.set(Calendar.DAY_OF_MONTH, 1);
+        }
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Distance and number of runs in a week or month
+     */
+    private static final class Period {
+        double distance;
+        int runs;
+    }
+}
@@ -0,0 +1,379 @@
+package com.runtracker.android.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.runtracker.android.data.metrics.FrechetDistance;
+import com.runtracker.android.data.metrics.Geohash;
+import com.runtracker.android.data.metrics.TrackSimplifier;
+import com.runtracker.android.data.models.Course;
+import com.runtracker.android.data.models.RouteFingerprint;
+import com.runtracker.android.data.models.Run;
+import com.runtracker.android.data.models.RunFootprint;
+import com.runtracker.android.data.repositories.RunRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Groups runs that follow the same route into courses and ranks the attempts at each.
+ *
+ * Each completed run is fingerprinted and compared only with the courses of runs that
+ * the spatial index finds near its start. Candidates are filtered by their start and end
+ * cells, their distance and the coarse cells they share before the expensive check, a
+ * Fréchet distance test that gives up as soon as the tracks diverge. Matching a new run
+ * therefore depends on how many courses start nearby, not on the size of the history.
+ * Attempts are ranked by pace. Fingerprints are stored in preferences with their course,
+ * one entry per run.
+ */
+public class RouteMatcher implements RunRepository.RunListener {
+
+    private static final String TAG = "RouteMatcher";
+    private static final String PREF_NAME = "route_matcher";
+    private static final String PREF_RUN_PREFIX = "run_";
+
+    // Shorter runs are usually warm-ups or aborted runs, not a course
+    private static final double MIN_COURSE_DISTANCE = 0.5; // kilometers
+
+    // Candidate runs must pass this close to the start of the new run
+    private static final double START_RADIUS = 0.2; // kilometers
+
+    // A course must start and end this close to where the new run starts and ends
+    private static final double ENDPOINT_RADIUS = 0.2; // kilometers
+
+    // Largest difference in distance between attempts, as a fraction of the course
+    private static final double MAX_DISTANCE_DIFFERENCE = 0.1;
+
+    // Share of coarse cells (about 1 km) that two attempts must have in common
+    private static final int COARSE_PRECISION = 6;
+    private static final double MIN_SHARED_CELLS = 0.8;
+
+    // Tracks must stay this close to each other all the way along
+    private static final double MATCH_DISTANCE = 0.1; // kilometers
+    private static final double MATCH_SPACING = 0.04; // kilometers
+
+    private final RunRepository runRepository;
+    private final SpatialIndex spatialIndex;
+    private final Executor executor;
+    private final SharedPreferences preferences;
+    private final Gson gson = new Gson();
+
+    private final Map<String, RouteFingerprint> fingerprints = new HashMap<>();
+    private final Map<String, List<RouteFingerprint>> courses = new LinkedHashMap<>();
+
+    /**
+     * Constructor, loads the stored fingerprints and matches any runs missing from them
+     * @param context The application context
+     * @param runRepository Repository whose completed runs are matched
+     * @param spatialIndex Index used to find candidate runs
+     * @param executor Executor for matching; should be the spatial index's executor, so
+     *                 the index is up to date whenever a run is matched
+     */
+    public RouteMatcher(Context context, RunRepository runRepository, SpatialIndex spatialIndex,
+                        Executor executor) {
+        this.runRepository = runRepository;
+        this.spatialIndex = spatialIndex;
+        this.executor = executor;
+        this.preferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+
+        loadFingerprints();
+        runRepository.addListener(this);
+        executor.execute(this::catchUp);
+    }
+
+    /**
+     * Load the stored fingerprints and rebuild the courses from them
+     */
+    private synchronized void loadFingerprints() {
+        for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+            if (!entry.getKey().startsWith(PREF_RUN_PREFIX) || !(entry.getValue() instanceof String)) {
+                continue;
+            }
+            try {
+                RouteFingerprint fingerprint = gson.fromJson((String) entry.getValue(), RouteFingerprint.class);
+                if (fingerprint != null && fingerprint.getCourseId() != null) {
+                    put(fingerprint);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading fingerprint " + entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Match completed runs that have no fingerprint yet, oldest first so earlier runs
+     * define the courses, and drop fingerprints of runs that no longer exist
+     */
+    private void catchUp() {
+        Set<String> live = new HashSet<>();
+        SharedPreferences.Editor editor = preferences.edit();
+        for (Run run : runRepository.getCompletedRunsOldestFirst()) {
+            live.add(run.getId());
+            if (getFingerprint(run.getId()) == null) {
+                addRun(run, editor);
+            }
+        }
+
+        synchronized (this) {
+            for (String runId : new ArrayList<>(fingerprints.keySet())) {
+                if (!live.contains(runId)) {
+                    remove(runId);
+                    editor.remove(PREF_RUN_PREFIX + runId);
+                }
+            }
+        }
+        editor.apply();
+    }
+
+    @Override
+    public void onRunCompleted(Run run) {
+        executor.execute(() -> {
+            SharedPreferences.Editor editor = preferences.edit();
+            addRun(run, editor);
+            editor.apply();
+        });
+    }
+
+    @Override
+    public void onRunDeleted(Run run) {
+        executor.execute(() -> {
+            synchronized (this) {
+                remove(run.getId());
+            }
+            preferences.edit().remove(PREF_RUN_PREFIX + run.getId()).apply();
+        });
+    }
+
+    /**
+     * Fingerprint a run and assign it to a matching course, or start a new one
+     * @param run Completed run
+     * @param editor Editor to store the fingerprint with
+     */
+    private void addRun(Run run, SharedPreferences.Editor editor) {
+        RouteFingerprint fingerprint = RouteFingerprint.of(run);
+        if (fingerprint == null) {
+            return;
+        }
+
+        String courseId = fingerprint.getDistance() >= MIN_COURSE_DISTANCE ? findCourse(fingerprint) : null;
+        fingerprint = fingerprint.withCourse(courseId != null ? courseId : run.getId());
+        synchronized (this) {
+            remove(run.getId());
+            put(fingerprint);
+        }
+        editor.putString(PREF_RUN_PREFIX + run.getId(), gson.toJson(fingerprint));
+    }
+
+    /**
+     * Find the course a fingerprint follows
+     * @param fingerprint Fingerprint of a new run
+     * @return Course ID, or null if it matches no existing course
+     */
+    private String findCourse(RouteFingerprint fingerprint) {
+        double startLatitude = fingerprint.getLatitudes()[0];
+        double startLongitude = fingerprint.getLongitudes()[0];
+        double[][] track = null;
+
+        Set<String> checked = new HashSet<>();
+        for (RunFootprint candidate : spatialIndex.findRunsNear(startLatitude, startLongitude, START_RADIUS)) {
+            RouteFingerprint other = getFingerprint(candidate.getRunId());
+            if (other == null || other.getRunId().equals(fingerprint.getRunId())
+                    || !checked.add(other.getCourseId())) {
+                continue;
+            }
+
+            RouteFingerprint route = getRoute(other.getCourseId());
+            if (route == null || !isSimilar(fingerprint, route)) {
+                continue;
+            }
+
+            // Only candidates that got this far are worth resampling for
+            if (track == null) {
+                track = TrackSimplifier.resample(fingerprint.getLatitudes(), fingerprint.getLongitudes(),
+                        MATCH_SPACING);
+            }
+            double[][] routeTrack = TrackSimplifier.resample(route.getLatitudes(), route.getLongitudes(),
+                    MATCH_SPACING);
+            if (FrechetDistance.isWithin(track[0], track[1], routeTrack[0], routeTrack[1], MATCH_DISTANCE)) {
+                return other.getCourseId();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cheap checks that two fingerprints could be the same course
+     * @param fingerprint Fingerprint of a new run
+     * @param route Fingerprint that defines a course
+     * @return True if the endpoints are close, the distances are similar and most coarse
+     *         cells are shared
+     */
+    private static boolean isSimilar(RouteFingerprint fingerprint, RouteFingerprint route) {
+        // Runs that only pass the start, or that end elsewhere, are not the same course
+        int last = fingerprint.getLatitudes().length - 1;
+        if (!isNear(route.getStartCell(), fingerprint.getLatitudes()[0], fingerprint.getLongitudes()[0])
+                || !isNear(route.getEndCell(), fingerprint.getLatitudes()[last],
+                fingerprint.getLongitudes()[last])) {
+            return false;
+        }
+
+        if (route.getDistance() < MIN_COURSE_DISTANCE
+                || Math.abs(fingerprint.getDistance() - route.getDistance())
+                > route.getDistance() * MAX_DISTANCE_DIFFERENCE) {
+            return false;
+        }
+
+        Set<String> cells = coarseCells(fingerprint);
+        Set<String> routeCells = coarseCells(route);
+        return sharedFraction(cells, routeCells) >= MIN_SHARED_CELLS
+                && sharedFraction(routeCells, cells) >= MIN_SHARED_CELLS;
+    }
+
+    /**
+     * Check if a cell is close to a location
+     * @param cell Geohash, may be null
+     * @param latitude Latitude
+     * @param longitude Longitude
+     * @return True if the cell lies within ENDPOINT_RADIUS of the location
+     */
+    private static boolean isNear(String cell, double latitude, double longitude) {
+        return cell != null && Geohash.bounds(cell).distanceTo(latitude, longitude) <= ENDPOINT_RADIUS;
+    }
+
+    /**
+     * Get the coarse cells of a fingerprint
+     * @param fingerprint Fingerprint
+     * @return Cells at COARSE_PRECISION
+     */
+    private static Set<String> coarseCells(RouteFingerprint fingerprint) {
+        Set<String> cells = new HashSet<>();
+        for (String cell : fingerprint.getCells()) {
+            cells.add(cell.substring(0, Math.min(COARSE_PRECISION, cell.length())));
+        }
+        return cells;
+    }
+
+    /**
+     * Get the fraction of one set of cells found in another
+     * @param cells Cells to look for
+     * @param other Cells to look in
+     * @return Fraction between 0 and 1
+     */
+    private static double sharedFraction(Set<String> cells, Set<String> other) {
+        if (cells.isEmpty()) {
+            return 0;
+        }
+        int shared = 0;
+        for (String cell : cells) {
+            if (other.contains(cell)) {
+                shared++;
+            }
+        }
+        return (double) shared / cells.size();
+    }
+
+    /**
+     * Get the fingerprint of a run
+     * @param runId Run ID
+     * @return Fingerprint, or null if the run has not been matched
+     */
+    public synchronized RouteFingerprint getFingerprint(String runId) {
+        return fingerprints.get(runId);
+    }
+
+    /**
+     * Get the course a run belongs to
+     * @param runId Run ID
+     * @return Course, or null if the run has not been matched
+     */
+    public synchronized Course getCourseForRun(String runId) {
+        RouteFingerprint fingerprint = fingerprints.get(runId);
+        return fingerprint != null ? buildCourse(fingerprint.getCourseId()) : null;
+    }
+
+    /**
+     * Get the courses that have been run repeatedly
+     * @param minAttempts Minimum number of attempts
+     * @return Courses, most attempted first
+     */
+    public synchronized List<Course> getCourses(int minAttempts) {
+        List<Course> result = new ArrayList<>();
+        for (Map.Entry<String, List<RouteFingerprint>> entry : courses.entrySet()) {
+            if (entry.getValue().size() >= minAttempts) {
+                result.add(buildCourse(entry.getKey()));
+            }
+        }
+        result.sort((a, b) -> Integer.compare(b.getAttempts().size(), a.getAttempts().size()));
+        return result;
+    }
+
+    /**
+     * Build a snapshot of a course
+     * @param courseId Course ID
+     * @return Course with its attempts ranked by pace
+     */
+    private Course buildCourse(String courseId) {
+        List<RouteFingerprint> attempts = new ArrayList<>(courses.get(courseId));
+        attempts.sort((a, b) -> Double.compare(a.getPace(), b.getPace()));
+        return new Course(courseId, getRoute(courseId), attempts);
+    }
+
+    /**
+     * Get the fingerprint that defines a course, which is its earliest attempt
+     * @param courseId Course ID
+     * @return Fingerprint, or null if the course does not exist
+     */
+    private synchronized RouteFingerprint getRoute(String courseId) {
+        List<RouteFingerprint> attempts = courses.get(courseId);
+        if (attempts == null) {
+            return null;
+        }
+        RouteFingerprint route = null;
+        for (RouteFingerprint attempt : attempts) {
+            if (route == null || attempt.getStartTime() < route.getStartTime()) {
+                route = attempt;
+            }
+        }
+        return route;
+    }
+
+    /**
+     * Add a fingerprint to its course
+     * @param fingerprint Fingerprint with a course
+     */
+    private void put(RouteFingerprint fingerprint) {
+        fingerprints.put(fingerprint.getRunId(), fingerprint);
+        List<RouteFingerprint> attempts = courses.get(fingerprint.getCourseId());
+        if (attempts == null) {
+            attempts = new ArrayList<>();
+            courses.put(fingerprint.getCourseId(), attempts);
+        }
+        attempts.add(fingerprint);
+    }
+
+    /**
+     * Remove a run's fingerprint from its course, dropping the course if it was the last
+     * @param runId Run ID
+     */
+    private void remove(String runId) {
+        RouteFingerprint fingerprint = fingerprints.remove(runId);
+        if (fingerprint == null) {
+            return;
+        }
+        List<RouteFingerprint> attempts = courses.get(fingerprint.getCourseId());
+        if (attempts != null) {
+            attempts.remove(fingerprint);
+            if (attempts.isEmpty()) {
+                courses.remove(fingerprint.getCourseId());
+            }
+        }
+    }
+}
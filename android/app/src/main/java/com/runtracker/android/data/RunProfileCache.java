@@ -0,0 +1,79 @@
+package com.runtracker.android.data;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.runtracker.android.data.metrics.RunProfileCalculator;
+import com.runtracker.android.data.models.Run;
+import com.runtracker.android.data.models.RunProfile;
+import com.runtracker.android.data.repositories.RunRepository;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Cache of downsampled pace and elevation profiles of finished runs.
+ *
+ * Profiles are computed on a background executor and kept per run and chart width, so
+ * reopening a run or rotating the screen shows the chart without recomputing it. Only
+ * the most recently viewed runs are kept, and a run's profiles are dropped when it is
+ * deleted.
+ */
+public class RunProfileCache implements RunRepository.RunListener {
+
+    private static final int MAX_CACHED_RUNS = 8;
+
+    private final Executor executor;
+    private final Map<String, Map<Integer, MutableLiveData<RunProfile>>> profiles =
+            new LinkedHashMap<String, Map<Integer, MutableLiveData<RunProfile>>>(MAX_CACHED_RUNS + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<Integer, MutableLiveData<RunProfile>>> eldest) {
+                    return size() > MAX_CACHED_RUNS;
+                }
+            };
+
+    /**
+     * Constructor
+     * @param runRepository Repository whose deleted runs are dropped from the cache
+     * @param executor Executor for the computation
+     */
+    public RunProfileCache(RunRepository runRepository, Executor executor) {
+        this.executor = executor;
+        runRepository.addListener(this);
+    }
+
+    /**
+     * Observe the profile of a finished run, computing it first if needed
+     * @param run Finished run
+     * @param width Maximum number of points per series, e.g. the chart width in pixels
+     * @return LiveData that receives the profile once it is computed
+     */
+    public synchronized LiveData<RunProfile> getProfile(Run run, int width) {
+        Map<Integer, MutableLiveData<RunProfile>> byWidth = profiles.get(run.getId());
+        if (byWidth == null) {
+            byWidth = new HashMap<>();
+            profiles.put(run.getId(), byWidth);
+        }
+
+        MutableLiveData<RunProfile> profile = byWidth.get(width);
+        if (profile == null) {
+            MutableLiveData<RunProfile> computed = new MutableLiveData<>();
+            executor.execute(() -> computed.postValue(RunProfileCalculator.calculate(run, width)));
+            byWidth.put(width, computed);
+            profile = computed;
+        }
+        return profile;
+    }
+
+    @Override
+    public void onRunCompleted(Run run) {
+        // New runs have no profile yet
+    }
+
+    @Override
+    public synchronized void onRunDeleted(Run run) {
+        profiles.remove(run.getId());
+    }
+}
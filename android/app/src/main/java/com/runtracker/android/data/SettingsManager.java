@@ -0,0 +1,49 @@
+package com.runtracker.android.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.preference.PreferenceManager;
+
+import com.runtracker.android.data.models.Settings;
+
+/**
+ * Manager class that keeps the current settings snapshot.
+ *
+ * The snapshot is rebuilt only when a preference changes and published through a
+ * volatile reference, so any thread can read settings without touching SharedPreferences.
+ */
+public class SettingsManager {
+
+    private final SharedPreferences preferences;
+    private final SharedPreferences.OnSharedPreferenceChangeListener preferenceListener;
+    private volatile Settings settings;
+
+    /**
+     * Constructor
+     * @param context The application context
+     */
+    public SettingsManager(Context context) {
+        this.preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        this.settings = Settings.from(preferences);
+
+        // SharedPreferences only keeps a weak reference, so the listener is held here
+        this.preferenceListener = (prefs, key) -> reload();
+        preferences.registerOnSharedPreferenceChangeListener(preferenceListener);
+    }
+
+    /**
+     * Get the current settings
+     * @return Settings snapshot
+     */
+    public Settings get() {
+        return settings;
+    }
+
+    /**
+     * Rebuild the snapshot after a preference change
+     */
+    private void reload() {
+        settings = Settings.from(preferences);
+    }
+}
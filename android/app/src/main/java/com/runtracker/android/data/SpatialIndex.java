@@ -0,0 +1,312 @@
+package com.runtracker.android.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.runtracker.android.data.metrics.Geohash;
+import com.runtracker.android.data.models.BoundingBox;
+import com.runtracker.android.data.models.Run;
+import com.runtracker.android.data.models.RunFootprint;
+import com.runtracker.android.data.repositories.RunRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Persistent spatial index of where runs went, for "runs near here" and route search.
+ *
+ * Every run's footprint (bounding box and the ~150 m geohash cells its track passes
+ * through) is stored in preferences, one entry per run, and kept up to date from the
+ * repository as runs are completed and deleted. In memory, each cell at the indexed
+ * precisions maps to the runs passing through it. A query covers the search area with
+ * the finest cells that keep the lookup small, so its cost depends on the cells
+ * around the area and the runs found there, not on the size of the run history.
+ */
+public class SpatialIndex implements RunRepository.RunListener {
+
+    private static final String TAG = "SpatialIndex";
+    private static final String PREF_NAME = "spatial_index";
+    private static final String PREF_RUN_PREFIX = "run_";
+
+    // Cell sizes of about 5 km, 1 km and 150 m
+    private static final int[] PRECISIONS = {5, 6, RunFootprint.CELL_PRECISION};
+
+    // Most cells looked up for one query before falling back to coarser cells
+    private static final int MAX_QUERY_CELLS = 64;
+
+    private final RunRepository runRepository;
+    private final Executor executor;
+    private final SharedPreferences preferences;
+    private final Gson gson = new Gson();
+
+    private final Map<String, RunFootprint> footprints = new HashMap<>();
+    private final Map<String, Set<String>> cellRuns = new HashMap<>();
+
+    /**
+     * Constructor, loads the stored footprints and indexes any runs missing from them
+     * @param context The application context
+     * @param runRepository Repository whose completed runs are indexed
+     * @param executor Executor for indexing; should run tasks one at a time
+     */
+    public SpatialIndex(Context context, RunRepository runRepository, Executor executor) {
+        this.runRepository = runRepository;
+        this.executor = executor;
+        this.preferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+
+        loadFootprints();
+        runRepository.addListener(this);
+        executor.execute(this::catchUp);
+    }
+
+    /**
+     * Load the stored footprints and build the cell map from them
+     */
+    private synchronized void loadFootprints() {
+        for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+            if (!entry.getKey().startsWith(PREF_RUN_PREFIX) || !(entry.getValue() instanceof String)) {
+                continue;
+            }
+            try {
+                RunFootprint footprint = gson.fromJson((String) entry.getValue(), RunFootprint.class);
+                if (footprint != null) {
+                    put(footprint);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading footprint " + entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Index completed runs that have no footprint yet, e.g. runs recorded before the
+     * index existed, and drop footprints of runs that no longer exist
+     */
+    private void catchUp() {
+        Set<String> live = new HashSet<>();
+        SharedPreferences.Editor editor = preferences.edit();
+        for (Run run : runRepository.getCompletedRuns()) {
+            live.add(run.getId());
+            if (getFootprint(run.getId()) == null) {
+                addRun(run, editor);
+            }
+        }
+
+        synchronized (this) {
+            for (String runId : new ArrayList<>(footprints.keySet())) {
+                if (!live.contains(runId)) {
+                    remove(runId);
+                    editor.remove(PREF_RUN_PREFIX + runId);
+                }
+            }
+        }
+        editor.apply();
+    }
+
+    @Override
+    public void onRunCompleted(Run run) {
+        executor.execute(() -> {
+            SharedPreferences.Editor editor = preferences.edit();
+            addRun(run, editor);
+            editor.apply();
+        });
+    }
+
+    @Override
+    public void onRunDeleted(Run run) {
+        executor.execute(() -> {
+            synchronized (this) {
+                remove(run.getId());
+            }
+            preferences.edit().remove(PREF_RUN_PREFIX + run.getId()).apply();
+        });
+    }
+
+    /**
+     * Build a run's footprint and add it to the index
+     * @param run Completed run
+     * @param editor Editor to store the footprint with
+     */
+    private void addRun(Run run, SharedPreferences.Editor editor) {
+        RunFootprint footprint = RunFootprint.of(run);
+        if (footprint == null) {
+            return;
+        }
+        synchronized (this) {
+            remove(run.getId());
+            put(footprint);
+        }
+        editor.putString(PREF_RUN_PREFIX + run.getId(), gson.toJson(footprint));
+    }
+
+    /**
+     * Get the footprint of a run
+     * @param runId Run ID
+     * @return Footprint, or null if the run is not indexed
+     */
+    public synchronized RunFootprint getFootprint(String runId) {
+        return footprints.get(runId);
+    }
+
+    /**
+     * Find the runs passing through an area
+     * @param box Area to search; must not cross the antimeridian
+     * @return Footprints of the runs, newest first
+     */
+    public synchronized List<RunFootprint> findRuns(BoundingBox box) {
+        int precision = choosePrecision(box);
+        if (precision == 0) {
+            // The area is huge, so most runs are in it anyway
+            List<RunFootprint> result = new ArrayList<>();
+            for (RunFootprint footprint : footprints.values()) {
+                if (footprint.getBounds().intersects(box)) {
+                    result.add(footprint);
+                }
+            }
+            return sortNewestFirst(result);
+        }
+
+        Set<String> runIds = new HashSet<>();
+        for (String cell : Geohash.covering(box, precision)) {
+            addRunsIn(cell, runIds);
+        }
+
+        // Coarse cells reach past the area, so check the runs' own cells against it
+        List<RunFootprint> result = new ArrayList<>();
+        for (String runId : runIds) {
+            RunFootprint footprint = footprints.get(runId);
+            if (footprint.getBounds().intersects(box)
+                    && (precision == RunFootprint.CELL_PRECISION || passesThrough(footprint, box))) {
+                result.add(footprint);
+            }
+        }
+        return sortNewestFirst(result);
+    }
+
+    /**
+     * Find the runs passing within a distance of a location
+     * @param latitude Latitude
+     * @param longitude Longitude
+     * @param radius Radius in kilometers
+     * @return Footprints of the runs, newest first
+     */
+    public synchronized List<RunFootprint> findRunsNear(double latitude, double longitude, double radius) {
+        List<RunFootprint> result = new ArrayList<>();
+        for (RunFootprint footprint : findRuns(BoundingBox.around(latitude, longitude, radius))) {
+            for (String cell : footprint.getCells()) {
+                if (Geohash.bounds(cell).distanceTo(latitude, longitude) <= radius) {
+                    result.add(footprint);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of indexed runs
+     * @return Number of runs
+     */
+    public synchronized int size() {
+        return footprints.size();
+    }
+
+    /**
+     * Choose the finest precision whose cells cover an area with few lookups
+     * @param box Area
+     * @return Precision, or 0 if even the coarsest cells would need too many lookups
+     */
+    private static int choosePrecision(BoundingBox box) {
+        for (int i = PRECISIONS.length - 1; i >= 0; i--) {
+            if (Geohash.countCovering(box, PRECISIONS[i]) <= MAX_QUERY_CELLS) {
+                return PRECISIONS[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Check if any of a run's cells overlaps an area
+     * @param footprint Run footprint
+     * @param box Area
+     * @return True if the track passes through the area, to cell precision
+     */
+    private static boolean passesThrough(RunFootprint footprint, BoundingBox box) {
+        for (String cell : footprint.getCells()) {
+            if (Geohash.bounds(cell).intersects(box)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add the runs passing through a cell to a set
+     * @param cell Geohash
+     * @param runIds Set to add to
+     */
+    private void addRunsIn(String cell, Set<String> runIds) {
+        Set<String> runs = cellRuns.get(cell);
+        if (runs != null) {
+            runIds.addAll(runs);
+        }
+    }
+
+    /**
+     * Add a footprint to the maps
+     * @param footprint Footprint
+     */
+    private void put(RunFootprint footprint) {
+        footprints.put(footprint.getRunId(), footprint);
+        for (String cell : footprint.getCells()) {
+            for (int precision : PRECISIONS) {
+                String key = cell.substring(0, Math.min(precision, cell.length()));
+                Set<String> runs = cellRuns.get(key);
+                if (runs == null) {
+                    runs = new HashSet<>();
+                    cellRuns.put(key, runs);
+                }
+                runs.add(footprint.getRunId());
+            }
+        }
+    }
+
+    /**
+     * Remove a run's footprint from the maps
+     * @param runId Run ID
+     */
+    private void remove(String runId) {
+        RunFootprint footprint = footprints.remove(runId);
+        if (footprint == null) {
+            return;
+        }
+        for (String cell : footprint.getCells()) {
+            for (int precision : PRECISIONS) {
+                String key = cell.substring(0, Math.min(precision, cell.length()));
+                Set<String> runs = cellRuns.get(key);
+                if (runs != null) {
+                    runs.remove(runId);
+                    if (runs.isEmpty()) {
+                        cellRuns.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sort footprints by start time, newest first
+     * @param footprints Footprints
+     * @return The same list, sorted
+     */
+    private static List<RunFootprint> sortNewestFirst(List<RunFootprint> footprints) {
+        footprints.sort((a, b) -> Long.compare(b.getStartTime(), a.getStartTime()));
+        return footprints;
+    }
+}
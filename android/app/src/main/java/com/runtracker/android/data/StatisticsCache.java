@@ -0,0 +1,105 @@
+package com.runtracker.android.data;
+
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.runtracker.android.data.models.RunStatistics;
+import com.runtracker.android.data.repositories.RunRepository;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Process-wide cache of the statistics over all completed runs.
+ *
+ * The statistics are keyed by the run repository's modification count and computed on
+ * a background executor at most once per change to the run history. Every screen
+ * observes the same {@link RunStatistics} instance, which is never modified after it
+ * is published, so it must be treated as read-only.
+ */
+public class StatisticsCache {
+
+    private static final String TAG = "StatisticsCache";
+
+    private final RunRepository runRepository;
+    private final Executor executor;
+    private final MutableLiveData<RunStatistics> statistics = new MutableLiveData<>();
+
+    // Version of the latest computation started and of the published statistics
+    private long requestedVersion = -1;
+    private long publishedVersion = -1;
+    private RunStatistics published;
+
+    /**
+     * Constructor
+     * @param runRepository Source of completed runs
+     * @param executor Executor for the computation; should run tasks one at a time
+     */
+    public StatisticsCache(RunRepository runRepository, Executor executor) {
+        this.runRepository = runRepository;
+        this.executor = executor;
+    }
+
+    /**
+     * Observe the statistics, refreshing them first if the run history changed
+     * @return LiveData with the latest statistics
+     */
+    public LiveData<RunStatistics> getStatistics() {
+        refresh();
+        return statistics;
+    }
+
+    /**
+     * Get the statistics if they match the current run history
+     * @return Statistics, or null if they are missing or out of date
+     */
+    public synchronized RunStatistics getIfCurrent() {
+        return publishedVersion == runRepository.getModificationCount() ? published : null;
+    }
+
+    /**
+     * Start recomputing the statistics if the run history changed since the last
+     * computation. Cheap to call, e.g. from every onResume.
+     */
+    public synchronized void refresh() {
+        long version = runRepository.getModificationCount();
+        if (version == requestedVersion) {
+            return;
+        }
+        requestedVersion = version;
+        executor.execute(() -> compute(version));
+    }
+
+    /**
+     * Compute and publish the statistics for a version of the run history
+     * @param version Repository modification count read before the runs
+     */
+    private void compute(long version) {
+        // The runs are an immutable snapshot at least as new as the version, so at worst
+        // the result is labelled older than it is and gets recomputed on the next refresh
+        RunStatistics result = new RunStatistics();
+        try {
+            result.calculateStats(runRepository.getCompletedRuns());
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error computing statistics", e);
+            synchronized (this) {
+                // Let the next refresh try again instead of waiting for the runs to change
+                if (requestedVersion == version) {
+                    requestedVersion = -1;
+                }
+            }
+            return;
+        }
+
+        synchronized (this) {
+            // A newer computation may have finished first
+            if (version < publishedVersion) {
+                return;
+            }
+            published = result;
+            publishedVersion = version;
+        }
+        statistics.postValue(result);
+    }
+}
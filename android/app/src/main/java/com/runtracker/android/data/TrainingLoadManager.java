@@ -0,0 +1,112 @@
+package com.runtracker.android.data;
+
+import com.runtracker.android.data.metrics.TrainingLoadSeries;
+import com.runtracker.android.data.models.Run;
+import com.runtracker.android.data.models.TrainingLoad;
+import com.runtracker.android.data.repositories.RunRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Manager class for training load: fatigue, fitness and form over time.
+ *
+ * Each run adds a load based on how long it was and how hard it was, where intensity
+ * is the run's average pace relative to a threshold pace. An hour at threshold pace is
+ * a load of 100. The daily series is built once from history and then updated from the
+ * repository when runs are completed or deleted.
+ */
+public class TrainingLoadManager implements RunRepository.RunListener {
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    // Pace that can be held for about an hour by a recreational runner
+    private static final double THRESHOLD_PACE = 5.0; // min/km
+
+    // Intensity range, so GPS glitches can't produce extreme loads
+    private static final double MIN_INTENSITY = 0.5;
+    private static final double MAX_INTENSITY = 1.5;
+
+    private final TimeZone timeZone;
+    private final TrainingLoadSeries series = new TrainingLoadSeries();
+
+    /**
+     * Constructor, builds the series from the run history
+     * @param runRepository Repository whose completed runs are tracked
+     */
+    public TrainingLoadManager(RunRepository runRepository) {
+        this.timeZone = TimeZone.getDefault();
+
+        synchronized (this) {
+            for (Run run : runRepository.getCompletedRunsOldestFirst()) {
+                series.addLoad(getDay(run.getStartTime()), getRunLoad(run));
+            }
+        }
+        runRepository.addListener(this);
+    }
+
+    /**
+     * Calculate the training load of a run
+     * @param run The run
+     * @return Load; an hour at threshold pace is 100
+     */
+    public static double getRunLoad(Run run) {
+        double hours = run.getActiveDuration() / 3600000.0;
+        double pace = run.getPace();
+        double intensity = pace > 0 ? THRESHOLD_PACE / pace : MIN_INTENSITY;
+        intensity = Math.max(MIN_INTENSITY, Math.min(MAX_INTENSITY, intensity));
+        return hours * intensity * intensity * 100;
+    }
+
+    @Override
+    public synchronized void onRunCompleted(Run run) {
+        series.addLoad(getDay(run.getStartTime()), getRunLoad(run));
+    }
+
+    @Override
+    public synchronized void onRunDeleted(Run run) {
+        series.addLoad(getDay(run.getStartTime()), -getRunLoad(run));
+    }
+
+    /**
+     * Get the training load today
+     * @return Training load
+     */
+    public synchronized TrainingLoad getCurrent() {
+        return getTrainingLoad(getDay(System.currentTimeMillis()));
+    }
+
+    /**
+     * Get the training load of each day up to today
+     * @param days Number of days
+     * @return Training load per day, oldest first
+     */
+    public synchronized List<TrainingLoad> getHistory(int days) {
+        long today = getDay(System.currentTimeMillis());
+        List<TrainingLoad> history = new ArrayList<>(days);
+        for (long day = today - days + 1; day <= today; day++) {
+            history.add(getTrainingLoad(day));
+        }
+        return history;
+    }
+
+    /**
+     * Get the training load on a day
+     * @param day Epoch day in local time
+     * @return Training load
+     */
+    private TrainingLoad getTrainingLoad(long day) {
+        return new TrainingLoad(day, series.getLoad(day), series.getAcute(day),
+                series.getChronic(day), series.getBalance(day));
+    }
+
+    /**
+     * Get the local epoch day of a time
+     * @param time Timestamp in milliseconds
+     * @return Epoch day
+     */
+    private long getDay(long time) {
+        return Math.floorDiv(time + timeZone.getOffset(time), DAY_MILLIS);
+    }
+}
@@ -0,0 +1,89 @@
+package com.runtracker.android.data.metrics;
+
+import com.runtracker.android.data.models.BestEffort;
+import com.runtracker.android.data.models.Run;
+
+/**
+ * Finds the fastest stretch of a run covering a given distance.
+ *
+ * The search is a two-pointer sweep over the run's cumulative distance and time: for
+ * each fix taken as the end of the window, the start pointer only ever moves forward to
+ * the last fix that still leaves the full distance in the window. Each distance is
+ * therefore found in a single O(n) pass. The start of the window rarely falls on a fix,
+ * so its time is interpolated the same way split boundaries are.
+ */
+public class BestEffortCalculator {
+
+    // Standard effort distances in meters: 400 m, 1K, 5K, 10K, half and full marathon
+    public static final int[] DISTANCES = {400, 1000, 5000, 10000, 21097, 42195};
+
+    // Anything faster than this is GPS drift, not running
+    private static final double MAX_SPEED = 12.0; // meters per second
+
+    private BestEffortCalculator() {
+    }
+
+    /**
+     * Find the fastest effort over a distance
+     * @param run The run, used for its ID and start time
+     * @param track Track of the run
+     * @param distance Effort distance in meters
+     * @return Fastest effort, or null if the run is shorter than the distance
+     */
+    public static BestEffort findBestEffort(Run run, RunTrack track, int distance) {
+        double target = distance / 1000.0;
+        int n = track.size();
+        if (n < 2 || track.getTotalDistance() < target) {
+            return null;
+        }
+
+        double bestDuration = Double.MAX_VALUE;
+        double bestStart = 0;
+        int start = 0;
+
+        for (int end = 1; end < n; end++) {
+            double endDistance = track.getDistance(end);
+            if (endDistance < target) {
+                continue;
+            }
+
+            // Move the start up while the next fix still leaves the full distance
+            while (endDistance - track.getDistance(start + 1) >= target) {
+                start++;
+            }
+
+            // Interpolate the time the runner was exactly the target distance from the end
+            double startDistance = endDistance - target;
+            double span = track.getDistance(start + 1) - track.getDistance(start);
+            double fraction = span > 0 ? (startDistance - track.getDistance(start)) / span : 0;
+            double startTime = track.getTime(start)
+                    + fraction * (track.getTime(start + 1) - track.getTime(start));
+
+            double duration = track.getTime(end) - startTime;
+            if (duration < bestDuration && duration * MAX_SPEED >= distance * 1000.0) {
+                bestDuration = duration;
+                bestStart = startTime;
+            }
+        }
+
+        if (bestDuration == Double.MAX_VALUE) {
+            return null;
+        }
+        return new BestEffort(distance, Math.round(bestDuration), Math.round(bestStart),
+                run.getId(), run.getStartTime());
+    }
+
+    /**
+     * Find the fastest effort over each standard distance the run covers
+     * @param run The run
+     * @return Efforts indexed like {@link #DISTANCES}; null where the run is too short
+     */
+    public static BestEffort[] findBestEfforts(Run run) {
+        RunTrack track = RunTrack.of(run);
+        BestEffort[] efforts = new BestEffort[DISTANCES.length];
+        for (int i = 0; i < DISTANCES.length; i++) {
+            efforts[i] = findBestEffort(run, track, DISTANCES[i]);
+        }
+        return efforts;
+    }
+}
@@ -0,0 +1,105 @@
+package com.runtracker.android.data.metrics;
+
+/**
+ * Smooths GPS altitudes and accumulates elevation gain and loss one fix at a time.
+ *
+ * GPS altitude jumps by several meters between fixes even on flat ground, so summing
+ * raw differences grossly overstates climbing. Each fix is first replaced by the median
+ * of the last few fixes, which removes single-fix spikes, and the smoothed altitude only
+ * counts as a climb or descent once it has moved a minimum distance from the last
+ * counted level (hysteresis), which removes slow wander. Everything runs on fixed
+ * arrays, so adding a fix does not allocate.
+ */
+public class ElevationFilter {
+
+    public static final int WINDOW_SIZE = 9;
+    public static final double HYSTERESIS = 5.0; // meters
+
+    private final double[] window = new double[WINDOW_SIZE];
+    private final double[] sorted = new double[WINDOW_SIZE];
+    private int count;
+    private int next;
+
+    private double altitude;
+    private double level;
+    private double gain;
+    private double loss;
+
+    /**
+     * Add an altitude fix
+     * @param rawAltitude Altitude from the GPS in meters
+     * @return Smoothed altitude in meters
+     */
+    public double add(double rawAltitude) {
+        window[next] = rawAltitude;
+        next = (next + 1) % WINDOW_SIZE;
+        if (count < WINDOW_SIZE) {
+            count++;
+        }
+        altitude = median();
+
+        // Only count a change once it clears the hysteresis band around the last level
+        if (count == 1) {
+            level = altitude;
+        } else if (altitude - level >= HYSTERESIS) {
+            gain += altitude - level;
+            level = altitude;
+        } else if (level - altitude >= HYSTERESIS) {
+            loss += level - altitude;
+            level = altitude;
+        }
+        return altitude;
+    }
+
+    /**
+     * Check if any altitude has been added
+     * @return True if there is a smoothed altitude
+     */
+    public boolean hasAltitude() {
+        return count > 0;
+    }
+
+    /**
+     * Get the latest smoothed altitude
+     * @return Altitude in meters; only valid if hasAltitude()
+     */
+    public double getAltitude() {
+        return altitude;
+    }
+
+    /**
+     * Get the elevation gained so far
+     * @return Gain in meters
+     */
+    public double getGain() {
+        return gain;
+    }
+
+    /**
+     * Get the elevation lost so far
+     * @return Loss in meters
+     */
+    public double getLoss() {
+        return loss;
+    }
+
+    /**
+     * Get the median of the fixes in the window
+     * @return Median altitude
+     */
+    private double median() {
+        // Insertion sort; the window is tiny
+        for (int i = 0; i < count; i++) {
+            double value = window[i];
+            int j = i - 1;
+            while (j >= 0 && sorted[j] > value) {
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            sorted[j + 1] = value;
+        }
+
+        int middle = count / 2;
+        return count % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+}
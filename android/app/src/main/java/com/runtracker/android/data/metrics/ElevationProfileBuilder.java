@@ -0,0 +1,94 @@
+package com.runtracker.android.data.metrics;
+
+import com.runtracker.android.data.models.ElevationProfile;
+
+/**
+ * Builds a downsampled elevation profile while a run is recorded.
+ *
+ * Altitudes are averaged into buckets of equal distance. When the run outgrows the
+ * buckets, neighbouring pairs are merged and the bucket width doubles, so the profile
+ * never holds more than MAX_POINTS points and adding a fix does not allocate, however
+ * long the run gets.
+ */
+public class ElevationProfileBuilder {
+
+    public static final int MAX_POINTS = 256;
+
+    private static final double INITIAL_BUCKET_WIDTH = 0.01; // kilometers
+
+    private final double[] distanceSums = new double[MAX_POINTS];
+    private final double[] altitudeSums = new double[MAX_POINTS];
+    private final int[] counts = new int[MAX_POINTS];
+    private double bucketWidth = INITIAL_BUCKET_WIDTH;
+
+    /**
+     * Add a smoothed altitude
+     * @param distance Distance covered at the fix in kilometers
+     * @param altitude Altitude in meters
+     */
+    public void add(double distance, double altitude) {
+        int bucket = (int) (distance / bucketWidth);
+        while (bucket >= MAX_POINTS) {
+            mergeBuckets();
+            bucket = (int) (distance / bucketWidth);
+        }
+        distanceSums[bucket] += distance;
+        altitudeSums[bucket] += altitude;
+        counts[bucket]++;
+    }
+
+    /**
+     * Check if any altitude has been added
+     * @return True if empty
+     */
+    public boolean isEmpty() {
+        for (int count : counts) {
+            if (count > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build the profile from the buckets added so far
+     * @return Profile with one point per non-empty bucket
+     */
+    public ElevationProfile build() {
+        int size = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                size++;
+            }
+        }
+
+        double[] distances = new double[size];
+        double[] altitudes = new double[size];
+        int index = 0;
+        for (int i = 0; i < MAX_POINTS; i++) {
+            if (counts[i] > 0) {
+                distances[index] = distanceSums[i] / counts[i];
+                altitudes[index] = altitudeSums[i] / counts[i];
+                index++;
+            }
+        }
+        return new ElevationProfile(distances, altitudes);
+    }
+
+    /**
+     * Merge neighbouring buckets into the lower half and double the bucket width
+     */
+    private void mergeBuckets() {
+        for (int i = 0; i < MAX_POINTS / 2; i++) {
+            distanceSums[i] = distanceSums[2 * i] + distanceSums[2 * i + 1];
+            altitudeSums[i] = altitudeSums[2 * i] + altitudeSums[2 * i + 1];
+            counts[i] = counts[2 * i] + counts[2 * i + 1];
+        }
+        for (int i = MAX_POINTS / 2; i < MAX_POINTS; i++) {
+            distanceSums[i] = 0;
+            altitudeSums[i] = 0;
+            counts[i] = 0;
+        }
+        bucketWidth *= 2;
+    }
+}
@@ -0,0 +1,81 @@
+package com.runtracker.android.data.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Discrete Fréchet distance test between two tracks.
+ *
+ * Two tracks are within a distance of each other if both can be walked from start to
+ * end, each only moving forward, while always staying within that distance. Unlike
+ * comparing sets of points, this respects direction and order, so a loop run the other
+ * way round or an out-and-back that turns early does not match. The test only answers
+ * whether the distance is below a threshold, which lets it give up as soon as no
+ * pairing can continue instead of computing the exact distance.
+ */
+public final class FrechetDistance {
+
+    private FrechetDistance() {
+    }
+
+    /**
+     * Check if the discrete Fréchet distance between two tracks is at most a threshold
+     * @param latitudesA Latitudes of the first track
+     * @param longitudesA Longitudes of the first track
+     * @param latitudesB Latitudes of the second track
+     * @param longitudesB Longitudes of the second track
+     * @param threshold Distance in kilometers
+     * @return True if the tracks are within the threshold of each other
+     */
+    public static boolean isWithin(double[] latitudesA, double[] longitudesA,
+                                   double[] latitudesB, double[] longitudesB, double threshold) {
+        int sizeA = latitudesA.length;
+        int sizeB = latitudesB.length;
+        if (sizeA == 0 || sizeB == 0) {
+            return false;
+        }
+
+        // Both walks start together and end together, so check the ends first
+        if (TrackSimplifier.distance(latitudesA[0], longitudesA[0], latitudesB[0], longitudesB[0]) > threshold
+                || TrackSimplifier.distance(latitudesA[sizeA - 1], longitudesA[sizeA - 1],
+                        latitudesB[sizeB - 1], longitudesB[sizeB - 1]) > threshold) {
+            return false;
+        }
+
+        // Reachable pairs for the previous and current point of A
+        boolean[] previous = new boolean[sizeB];
+        boolean[] current = new boolean[sizeB];
+
+        // Columns before the first reachable one of the previous row can't be reached again
+        int firstReachable = 0;
+        for (int i = 0; i < sizeA; i++) {
+            int nextFirstReachable = -1;
+            Arrays.fill(current, 0, firstReachable, false);
+            for (int j = firstReachable; j < sizeB; j++) {
+                boolean reachable;
+                if (i == 0 && j == 0) {
+                    reachable = true;
+                } else {
+                    reachable = (i > 0 && previous[j])
+                            || (j > 0 && current[j - 1])
+                            || (i > 0 && j > 0 && previous[j - 1]);
+                }
+                current[j] = reachable && TrackSimplifier.distance(latitudesA[i], longitudesA[i],
+                        latitudesB[j], longitudesB[j]) <= threshold;
+                if (current[j] && nextFirstReachable < 0) {
+                    nextFirstReachable = j;
+                }
+            }
+
+            // Nothing further along A can be reached, so the tracks diverge here
+            if (nextFirstReachable < 0) {
+                return false;
+            }
+            firstReachable = nextFirstReachable;
+
+            boolean[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[sizeB - 1];
+    }
+}
@@ -0,0 +1,168 @@
+package com.runtracker.android.data.metrics;
+
+import com.runtracker.android.data.models.BoundingBox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geohash encoding of locations into nested grid cells.
+ *
+ * Each character adds five bits, alternating between longitude and latitude, so a cell
+ * is split into 32 smaller cells per extra character and every cell's hash starts with
+ * the hash of the cell that contains it. A precision of 5 gives cells of about 5 km,
+ * 6 about 1 km and 7 about 150 m.
+ */
+public final class Geohash {
+
+    public static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {
+    }
+
+    /**
+     * Encode a location
+     * @param latitude Latitude
+     * @param longitude Longitude
+     * @param precision Number of characters
+     * @return Geohash of the cell containing the location
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        return fromIndices(latitudeIndex(latitude, precision), longitudeIndex(longitude, precision), precision);
+    }
+
+    /**
+     * Get the bounds of a cell
+     * @param hash Geohash
+     * @return Bounding box of the cell
+     */
+    public static BoundingBox bounds(String hash) {
+        long latIndex = 0;
+        long lonIndex = 0;
+        boolean isLongitude = true;
+        for (int i = 0; i < hash.length(); i++) {
+            int value = indexOf(hash.charAt(i));
+            for (int bit = 4; bit >= 0; bit--) {
+                int set = (value >> bit) & 1;
+                if (isLongitude) {
+                    lonIndex = (lonIndex << 1) | set;
+                } else {
+                    latIndex = (latIndex << 1) | set;
+                }
+                isLongitude = !isLongitude;
+            }
+        }
+
+        double height = cellHeight(hash.length());
+        double width = cellWidth(hash.length());
+        double minLat = -90 + latIndex * height;
+        double minLon = -180 + lonIndex * width;
+        return new BoundingBox(minLat, minLon, minLat + height, minLon + width);
+    }
+
+    /**
+     * Count the cells needed to cover a box
+     * @param box Area to cover
+     * @param precision Number of characters
+     * @return Number of cells
+     */
+    public static long countCovering(BoundingBox box, int precision) {
+        long rows = latitudeIndex(box.getMaxLatitude(), precision)
+                - latitudeIndex(box.getMinLatitude(), precision) + 1;
+        long columns = longitudeIndex(box.getMaxLongitude(), precision)
+                - longitudeIndex(box.getMinLongitude(), precision) + 1;
+        return rows * columns;
+    }
+
+    /**
+     * List the cells covering a box
+     * @param box Area to cover; must not cross the antimeridian
+     * @param precision Number of characters
+     * @return Geohashes of the cells overlapping the box
+     */
+    public static List<String> covering(BoundingBox box, int precision) {
+        long minLat = latitudeIndex(box.getMinLatitude(), precision);
+        long maxLat = latitudeIndex(box.getMaxLatitude(), precision);
+        long minLon = longitudeIndex(box.getMinLongitude(), precision);
+        long maxLon = longitudeIndex(box.getMaxLongitude(), precision);
+
+        List<String> cells = new ArrayList<>();
+        for (long lat = minLat; lat <= maxLat; lat++) {
+            for (long lon = minLon; lon <= maxLon; lon++) {
+                cells.add(fromIndices(lat, lon, precision));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Get the height of cells
+     * @param precision Number of characters
+     * @return Height in degrees of latitude
+     */
+    public static double cellHeight(int precision) {
+        return 180.0 / (1L << latitudeBits(precision));
+    }
+
+    /**
+     * Get the width of cells
+     * @param precision Number of characters
+     * @return Width in degrees of longitude
+     */
+    public static double cellWidth(int precision) {
+        return 360.0 / (1L << longitudeBits(precision));
+    }
+
+    /**
+     * Build the geohash of a cell from its row and column
+     * @param latIndex Row, counted from the south pole
+     * @param lonIndex Column, counted from the antimeridian eastwards
+     * @param precision Number of characters
+     * @return Geohash
+     */
+    private static String fromIndices(long latIndex, long lonIndex, int precision) {
+        char[] hash = new char[precision];
+        int latBit = latitudeBits(precision) - 1;
+        int lonBit = longitudeBits(precision) - 1;
+        boolean isLongitude = true;
+        for (int i = 0; i < precision; i++) {
+            int value = 0;
+            for (int bit = 0; bit < 5; bit++) {
+                long set = isLongitude ? (lonIndex >> lonBit--) & 1 : (latIndex >> latBit--) & 1;
+                value = (value << 1) | (int) set;
+                isLongitude = !isLongitude;
+            }
+            hash[i] = BASE32[value];
+        }
+        return new String(hash);
+    }
+
+    private static long latitudeIndex(double latitude, int precision) {
+        long cells = 1L << latitudeBits(precision);
+        return Math.max(0, Math.min(cells - 1, (long) Math.floor((latitude + 90) / 180 * cells)));
+    }
+
+    private static long longitudeIndex(double longitude, int precision) {
+        long cells = 1L << longitudeBits(precision);
+        return Math.max(0, Math.min(cells - 1, (long) Math.floor((longitude + 180) / 360 * cells)));
+    }
+
+    private static int latitudeBits(int precision) {
+        return precision * 5 / 2;
+    }
+
+    private static int longitudeBits(int precision) {
+        return (precision * 5 + 1) / 2;
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < BASE32.length; i++) {
+            if (BASE32[i] == c) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Invalid geohash character: " + c);
+    }
+}
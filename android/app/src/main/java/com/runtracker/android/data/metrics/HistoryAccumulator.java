@@ -0,0 +1,69 @@
+package com.runtracker.android.data.metrics;
+
+import com.runtracker.android.data.models.Run;
+
+import java.util.TimeZone;
+
+/**
+ * Running totals over a run history that is replayed in start-time order.
+ *
+ * Each run updates the totals in O(1) and nothing is kept per run, so memory does not
+ * grow with the size of the history. Streaks count consecutive local calendar days
+ * with at least one run, like {@link com.runtracker.android.data.models.RunStatistics}.
+ */
+public class HistoryAccumulator {
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final TimeZone timeZone;
+    private double totalDistance;
+    private int totalRuns;
+    private long lastDay = Long.MIN_VALUE;
+    private int currentStreak;
+    private int longestStreak;
+
+    /**
+     * Constructor
+     * @param timeZone Time zone that defines calendar days
+     */
+    public HistoryAccumulator(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Add the next run; runs must be added in start-time order
+     * @param run The run
+     */
+    public void add(Run run) {
+        totalDistance += run.getTotalDistance();
+        totalRuns++;
+
+        long startTime = run.getStartTime();
+        long day = Math.floorDiv(startTime + timeZone.getOffset(startTime), DAY_MILLIS);
+        if (day != lastDay) {
+            currentStreak = day == lastDay + 1 ? currentStreak + 1 : 1;
+            longestStreak = Math.max(longestStreak, currentStreak);
+            lastDay = day;
+        }
+    }
+
+    /**
+     * Get the total distance so far
+     * @return Distance in kilometers
+     */
+    public double getTotalDistance() {
+        return totalDistance;
+    }
+
+    public int getTotalRuns() {
+        return totalRuns;
+    }
+
+    /**
+     * Get the longest streak so far
+     * @return Streak in days
+     */
+    public int getLongestStreak() {
+        return longestStreak;
+    }
+}
@@ -0,0 +1,143 @@
+package com.runtracker.android.data.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded list of the highest-scoring entries, best first.
+ *
+ * Entries are kept in a sorted array of at most {@code capacity} entries and found by
+ * binary search, with a key map so an entry can be replaced or removed by its key. An
+ * entry that falls off the end is forgotten, so after a removal from a full board the
+ * owner has to rebuild it from the source data to find the entry that moves up.
+ *
+ * @param <T> Value stored with each entry
+ */
+public class Leaderboard<T> {
+
+    private final int capacity;
+    private final List<Entry<T>> entries = new ArrayList<>();
+    private final Map<String, Entry<T>> entriesByKey = new HashMap<>();
+
+    /**
+     * Constructor
+     * @param capacity Maximum number of entries
+     */
+    public Leaderboard(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add an entry if it scores high enough, replacing any entry with the same key
+     * @param key Entry key, e.g. a run ID
+     * @param score Score, higher is better
+     * @param value Value to keep with the entry
+     * @return True if the board changed
+     */
+    public boolean offer(String key, double score, T value) {
+        boolean removed = remove(key);
+
+        int index = indexOf(score, key);
+        if (index >= capacity) {
+            return removed;
+        }
+
+        Entry<T> entry = new Entry<>(key, score, value);
+        entries.add(index, entry);
+        entriesByKey.put(key, entry);
+
+        if (entries.size() > capacity) {
+            Entry<T> last = entries.remove(entries.size() - 1);
+            entriesByKey.remove(last.key);
+        }
+        return true;
+    }
+
+    /**
+     * Remove the entry with a key
+     * @param key Entry key
+     * @return True if the entry was on the board
+     */
+    public boolean remove(String key) {
+        Entry<T> entry = entriesByKey.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        entries.remove(indexOf(entry.score, entry.key));
+        return true;
+    }
+
+    /**
+     * Remove all entries
+     */
+    public void clear() {
+        entries.clear();
+        entriesByKey.clear();
+    }
+
+    /**
+     * Check if the board holds its maximum number of entries
+     * @return True if full
+     */
+    public boolean isFull() {
+        return entries.size() >= capacity;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the entry values
+     * @return Values, best first
+     */
+    public List<T> getValues() {
+        List<T> values = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries) {
+            values.add(entry.value);
+        }
+        return values;
+    }
+
+    /**
+     * Find the position of a score in the board. Equal scores are ordered by key so
+     * every entry has exactly one position.
+     * @param score Score
+     * @param key Entry key
+     * @return Index of the entry, or the index it would be inserted at
+     */
+    private int indexOf(double score, String key) {
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Entry<T> entry = entries.get(mid);
+            int order = Double.compare(score, entry.score);
+            if (order == 0) {
+                order = -key.compareTo(entry.key);
+            }
+            if (order < 0) {
+                low = mid + 1;
+            } else if (order > 0) {
+                high = mid;
+            } else {
+                return mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class Entry<T> {
+        final String key;
+        final double score;
+        final T value;
+
+        Entry(String key, double score, T value) {
+            this.key = key;
+            this.score = score;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.runtracker.android.data.metrics;
+
+/**
+ * Computes live metrics for the active run from a stream of location fixes.
+ *
+ * The run's own pace is an average over the whole run, which reacts less and less to
+ * changes as the run gets longer. This engine keeps the most recent fixes in fixed-size
+ * ring buffers and reports the pace over the last {@link #TIME_WINDOW_MS} and the last
+ * {@link #DISTANCE_WINDOW_KM}, the speed between the last two fixes and an
+ * exponentially smoothed speed.
+ *
+ * Each fix is processed in amortized constant time without allocating. The engine is not
+ * thread-safe; it is fed and read on the main thread.
+ */
+public class LiveMetricsEngine {
+
+    // Window sizes
+    public static final long TIME_WINDOW_MS = 30000; // 30 seconds
+    public static final double DISTANCE_WINDOW_KM = 0.4; // 400 metres
+
+    // Minimum movement before a window pace is reported
+    private static final long MIN_WINDOW_MS = 10000;
+    private static final double MIN_WINDOW_KM = 0.02;
+
+    // Time constant of the smoothed speed
+    private static final double SMOOTHING_TIME_CONSTANT_MS = 20000;
+
+    // Enough fixes to cover both windows at one fix per second
+    private static final int CAPACITY = 512;
+
+    private final long[] times = new long[CAPACITY];
+    private final double[] distances = new double[CAPACITY];
+
+    // Sequence numbers of the newest fix and the start of each window; slot = seq % CAPACITY
+    private long newest = -1;
+    private long oldest = 0;
+    private long timeWindowStart = 0;
+    private long distanceWindowStart = 0;
+
+    private double instantSpeed;
+    private double smoothedSpeed;
+
+    /**
+     * Add a location fix
+     * @param timestamp Elapsed realtime of the fix in milliseconds
+     * @param totalDistance Total run distance at the fix in kilometers
+     */
+    public void addFix(long timestamp, double totalDistance) {
+        if (newest >= oldest) {
+            int last = slot(newest);
+            long dt = timestamp - times[last];
+            if (dt <= 0) {
+                // Out-of-order or duplicate fix
+                return;
+            }
+
+            double dd = Math.max(0, totalDistance - distances[last]);
+            instantSpeed = dd / dt * 3600000.0;
+
+            // Time-weighted smoothing, so irregular fix intervals are handled correctly
+            double alpha = 1 - Math.exp(-dt / SMOOTHING_TIME_CONSTANT_MS);
+            smoothedSpeed += alpha * (instantSpeed - smoothedSpeed);
+        }
+
+        newest++;
+        int index = slot(newest);
+        times[index] = timestamp;
+        distances[index] = totalDistance;
+
+        // Drop the oldest fix once the buffer is full
+        if (newest - oldest >= CAPACITY) {
+            oldest = newest - CAPACITY + 1;
+        }
+        timeWindowStart = Math.max(timeWindowStart, oldest);
+        distanceWindowStart = Math.max(distanceWindowStart, oldest);
+
+        // Shrink each window to the shortest suffix still covering its size
+        while (timeWindowStart < newest
+                && timestamp - times[slot(timeWindowStart + 1)] >= TIME_WINDOW_MS) {
+            timeWindowStart++;
+        }
+        while (distanceWindowStart < newest
+                && totalDistance - distances[slot(distanceWindowStart + 1)] >= DISTANCE_WINDOW_KM) {
+            distanceWindowStart++;
+        }
+    }
+
+    /**
+     * Clear all fixes, e.g. at the start of a run or after a pause
+     */
+    public void reset() {
+        newest = -1;
+        oldest = 0;
+        timeWindowStart = 0;
+        distanceWindowStart = 0;
+        instantSpeed = 0;
+        smoothedSpeed = 0;
+    }
+
+    /**
+     * Copy the current metrics into a snapshot
+     * @param out Snapshot to fill
+     */
+    public void readSnapshot(LiveMetricsSnapshot out) {
+        if (newest < oldest) {
+            out.set(0, 0, 0, 0, 0, 0, 0);
+            return;
+        }
+
+        int last = slot(newest);
+        long windowDuration = times[last] - times[slot(timeWindowStart)];
+        double windowDistance = distances[last] - distances[slot(timeWindowStart)];
+
+        out.set(times[last],
+                windowPace(timeWindowStart),
+                windowPace(distanceWindowStart),
+                instantSpeed,
+                smoothedSpeed,
+                windowDistance,
+                windowDuration);
+    }
+
+    /**
+     * Create a new snapshot of the current metrics
+     * @return Snapshot
+     */
+    public LiveMetricsSnapshot getSnapshot() {
+        LiveMetricsSnapshot snapshot = new LiveMetricsSnapshot();
+        readSnapshot(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Calculate the pace from a window start to the newest fix
+     * @param start Sequence number of the window start
+     * @return Pace in min/km, or 0 if there is not enough movement
+     */
+    private double windowPace(long start) {
+        int first = slot(start);
+        int last = slot(newest);
+        long duration = times[last] - times[first];
+        double distance = distances[last] - distances[first];
+
+        if (duration < MIN_WINDOW_MS || distance < MIN_WINDOW_KM) {
+            return 0;
+        }
+
+        return (duration / 60000.0) / distance;
+    }
+
+    private static int slot(long sequence) {
+        return (int) (sequence % CAPACITY);
+    }
+}
@@ -0,0 +1,107 @@
+package com.runtracker.android.data.metrics;
+
+/**
+ * Point-in-time copy of the live metrics for the active run.
+ *
+ * Instances are mutable so callers can keep one and refill it with
+ * {@link LiveMetricsEngine#readSnapshot(LiveMetricsSnapshot)} on every update
+ * without allocating.
+ */
+public class LiveMetricsSnapshot {
+
+    private long timestamp;
+    private double rollingPace;
+    private double recentDistancePace;
+    private double instantSpeed;
+    private double smoothedSpeed;
+    private double windowDistance;
+    private long windowDuration;
+
+    /**
+     * Overwrite all values, called by the engine
+     */
+    void set(long timestamp, double rollingPace, double recentDistancePace,
+             double instantSpeed, double smoothedSpeed, double windowDistance, long windowDuration) {
+        this.timestamp = timestamp;
+        this.rollingPace = rollingPace;
+        this.recentDistancePace = recentDistancePace;
+        this.instantSpeed = instantSpeed;
+        this.smoothedSpeed = smoothedSpeed;
+        this.windowDistance = windowDistance;
+        this.windowDuration = windowDuration;
+    }
+
+    /**
+     * Check if enough recent movement has been recorded to report a pace
+     * @return true if the rolling pace is valid
+     */
+    public boolean hasPace() {
+        return rollingPace > 0;
+    }
+
+    /**
+     * Get the best available current pace: the rolling pace if valid, otherwise the
+     * supplied fallback (usually the run's average pace)
+     * @param fallbackPace Pace to use when there is no rolling pace, in min/km
+     * @return Current pace in min/km
+     */
+    public double getCurrentPace(double fallbackPace) {
+        return hasPace() ? rollingPace : fallbackPace;
+    }
+
+    /**
+     * Get the elapsed realtime of the last fix
+     * @return Timestamp in milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get the pace over the recent time window
+     * @return Pace in min/km, or 0 if not available
+     */
+    public double getRollingPace() {
+        return rollingPace;
+    }
+
+    /**
+     * Get the pace over the recent distance window
+     * @return Pace in min/km, or 0 if not available
+     */
+    public double getRecentDistancePace() {
+        return recentDistancePace;
+    }
+
+    /**
+     * Get the speed between the last two fixes
+     * @return Speed in km/h
+     */
+    public double getInstantSpeed() {
+        return instantSpeed;
+    }
+
+    /**
+     * Get the exponentially smoothed speed
+     * @return Speed in km/h
+     */
+    public double getSmoothedSpeed() {
+        return smoothedSpeed;
+    }
+
+    /**
+     * Get the distance covered in the time window
+     * @return Distance in kilometers
+     */
+    public double getWindowDistance() {
+        return windowDistance;
+    }
+
+    /**
+     * Get the time spanned by the time window
+     * @return Duration in milliseconds
+     */
+    public long getWindowDuration() {
+        return windowDuration;
+    }
+}
@@ -0,0 +1,76 @@
+package com.runtracker.android.data.metrics;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a line series.
+ *
+ * The points between the first and last are split into equal buckets and one point is
+ * kept from each: the one forming the largest triangle with the point kept from the
+ * previous bucket and the average of the next bucket. Unlike averaging or taking every
+ * n-th point, this keeps the peaks and dips that make a chart look like the full series.
+ */
+public final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * Choose the points to keep
+     * @param x X values, ascending
+     * @param y Y values
+     * @param count Number of points to read from the arrays
+     * @param threshold Maximum number of points to keep
+     * @return Indices of the kept points, ascending, including the first and last point
+     */
+    public static int[] select(double[] x, double[] y, int count, int threshold) {
+        if (threshold >= count || threshold < 3) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        int[] selected = new int[threshold];
+        double bucketSize = (double) (count - 2) / (threshold - 2);
+        int previous = 0;
+        selected[0] = 0;
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket, or the last point after the final bucket
+            int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, count);
+            if (nextStart >= count - 1) {
+                nextStart = count - 1;
+                nextEnd = count;
+            }
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            // Point of this bucket with the largest triangle; the factor 1/2 doesn't matter
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+            double largestArea = -1;
+            int largest = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((x[previous] - averageX) * (y[i] - y[previous])
+                        - (x[previous] - x[i]) * (averageY - y[previous]));
+                if (area > largestArea) {
+                    largestArea = area;
+                    largest = i;
+                }
+            }
+
+            selected[bucket + 1] = largest;
+            previous = largest;
+        }
+
+        selected[threshold - 1] = count - 1;
+        return selected;
+    }
+}
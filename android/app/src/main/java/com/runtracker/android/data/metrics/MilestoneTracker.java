@@ -0,0 +1,247 @@
+package com.runtracker.android.data.metrics;
+
+import com.runtracker.android.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Detects distance and time milestones as a run progresses.
+ *
+ * Each series of milestones is a sorted list of thresholds with a cursor pointing at the
+ * next one to cross. A fix only compares against the threshold under each cursor and
+ * moves the cursor past anything crossed, so detection is O(1) amortized per fix no
+ * matter how many milestones there are. When the values can jump, e.g. after a unit
+ * change, {@link #seek(double, long)} moves the cursors without reporting anything.
+ */
+public class MilestoneTracker {
+
+    public static final int TYPE_DISTANCE = 0;
+    public static final int TYPE_TIME = 1;
+
+    // Race distances announced in imperial units, in miles
+    private static final double[] DISTANCE_MILESTONES_MILES = {1, 2, 3, 5, 10, 13.1, 26.2};
+
+    private final List<Series> series = new ArrayList<>();
+    private final List<Milestone> crossed = new ArrayList<>();
+
+    /**
+     * Create a tracker with the standard milestones for a unit system: every whole unit,
+     * the race distances and the time milestones
+     * @param unit Constants.UNIT_KILOMETERS or Constants.UNIT_MILES
+     * @param customDistances User-defined distances in the given unit, may be empty
+     * @return New tracker
+     */
+    public static MilestoneTracker create(int unit, double[] customDistances) {
+        MilestoneTracker tracker = new MilestoneTracker();
+        double unitLength = SplitCalculator.getSplitLength(unit);
+        double[] raceDistances = unit == Constants.UNIT_MILES
+                ? DISTANCE_MILESTONES_MILES : Constants.DISTANCE_MILESTONES_KM;
+
+        tracker.addSeries(Series.every(TYPE_DISTANCE, unit, 1, unitLength));
+        tracker.addSeries(Series.of(TYPE_DISTANCE, unit, raceDistances, unitLength));
+
+        double[] times = new double[Constants.TIME_MILESTONES_SECONDS.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = Constants.TIME_MILESTONES_SECONDS[i];
+        }
+        tracker.addSeries(Series.of(TYPE_TIME, unit, times, 1));
+
+        if (customDistances != null && customDistances.length > 0) {
+            tracker.addSeries(Series.of(TYPE_DISTANCE, unit, customDistances, unitLength));
+        }
+        return tracker;
+    }
+
+    /**
+     * Add a series of milestones
+     * @param milestones The series
+     */
+    public void addSeries(Series milestones) {
+        series.add(milestones);
+    }
+
+    /**
+     * Advance all series to the current values
+     * @param distance Current distance in kilometers
+     * @param duration Current active duration in seconds
+     * @return Milestones crossed since the previous update, in series order. The list is
+     *         reused by the next call.
+     */
+    public List<Milestone> update(double distance, long duration) {
+        crossed.clear();
+        for (Series milestones : series) {
+            milestones.advance(milestones.type == TYPE_TIME ? duration : distance, crossed);
+        }
+        return crossed;
+    }
+
+    /**
+     * Move all cursors to the current values without reporting crossings, e.g. after
+     * resuming or changing units
+     * @param distance Current distance in kilometers
+     * @param duration Current active duration in seconds
+     */
+    public void seek(double distance, long duration) {
+        for (Series milestones : series) {
+            milestones.seek(milestones.type == TYPE_TIME ? duration : distance);
+        }
+    }
+
+    /**
+     * Move all cursors back to the start for a new run
+     */
+    public void reset() {
+        seek(0, 0);
+    }
+
+    /**
+     * A sorted series of milestones of one type. Thresholds are in kilometers for
+     * distance and in seconds for time; values are in the unit they are announced in.
+     */
+    public static class Series {
+        private final int type;
+        private final int unit;
+        private final double scale;
+        private final double[] values;
+        private final double step;
+        private int cursor = 0;
+
+        private Series(int type, int unit, double scale, double[] values, double step) {
+            this.type = type;
+            this.unit = unit;
+            this.scale = scale;
+            this.values = values;
+            this.step = step;
+        }
+
+        /**
+         * Create a series from a list of values
+         * @param type TYPE_DISTANCE or TYPE_TIME
+         * @param unit Unit the values are announced in
+         * @param values Milestone values, in any order
+         * @param scale Kilometers or seconds per unit of value
+         * @return New series
+         */
+        public static Series of(int type, int unit, double[] values, double scale) {
+            double[] sorted = Arrays.stream(values).filter(v -> v > 0).sorted().distinct().toArray();
+            return new Series(type, unit, scale, sorted, 0);
+        }
+
+        /**
+         * Create an open-ended series at a fixed interval
+         * @param type TYPE_DISTANCE or TYPE_TIME
+         * @param unit Unit the values are announced in
+         * @param step Interval between milestones
+         * @param scale Kilometers or seconds per unit of value
+         * @return New series
+         */
+        public static Series every(int type, int unit, double step, double scale) {
+            return new Series(type, unit, scale, null, step);
+        }
+
+        /**
+         * Get the value of the milestone at an index
+         * @param index Milestone index
+         * @return Value, or NaN past the end of the series
+         */
+        private double valueAt(int index) {
+            if (values == null) {
+                return (index + 1) * step;
+            }
+            return index < values.length ? values[index] : Double.NaN;
+        }
+
+        /**
+         * Report every milestone between the cursor and the current value
+         * @param current Current distance or duration
+         * @param out List the crossed milestones are added to
+         */
+        private void advance(double current, List<Milestone> out) {
+            double value = valueAt(cursor);
+
+            // NaN compares false, so the end of the series stops the loop
+            while (current >= value * scale) {
+                out.add(new Milestone(type, unit, value, value * scale));
+                cursor++;
+                value = valueAt(cursor);
+            }
+        }
+
+        /**
+         * Point the cursor at the first milestone above the current value
+         * @param current Current distance or duration
+         */
+        private void seek(double current) {
+            if (values == null) {
+                cursor = (int) Math.max(0, Math.floor(current / (step * scale)));
+
+                // Guard against rounding, so the cursor agrees with advance()
+                while (current >= valueAt(cursor) * scale) {
+                    cursor++;
+                }
+                while (cursor > 0 && current < valueAt(cursor - 1) * scale) {
+                    cursor--;
+                }
+                return;
+            }
+
+            int index = 0;
+            while (index < values.length && current >= values[index] * scale) {
+                index++;
+            }
+            cursor = index;
+        }
+    }
+
+    /**
+     * A crossed milestone
+     */
+    public static class Milestone {
+        private final int type;
+        private final int unit;
+        private final double value;
+        private final double threshold;
+
+        Milestone(int type, int unit, double value, double threshold) {
+            this.type = type;
+            this.unit = unit;
+            this.value = value;
+            this.threshold = threshold;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public int getUnit() {
+            return unit;
+        }
+
+        /**
+         * Get the milestone in the unit it is announced in
+         * @return Distance in kilometers or miles, or duration in seconds
+         */
+        public double getValue() {
+            return value;
+        }
+
+        /**
+         * Get the point at which the milestone is crossed
+         * @return Distance in kilometers, or duration in seconds
+         */
+        public double getThreshold() {
+            return threshold;
+        }
+
+        /**
+         * Get a key that is the same for milestones at the same point, e.g. the fifth
+         * kilometer of the interval series and the 5 km race distance
+         * @return Key
+         */
+        public String getKey() {
+            return (type == TYPE_TIME ? "time:" : "distance:") + Math.round(threshold * 1000);
+        }
+    }
+}
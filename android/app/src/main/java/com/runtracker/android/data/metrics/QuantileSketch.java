@@ -0,0 +1,232 @@
+package com.runtracker.android.data.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Streaming quantile estimate with bounded memory (a merging t-digest).
+ *
+ * Values are summarized as weighted centroids. Centroids near the median may absorb
+ * many values while those in the tails stay small, so extreme percentiles remain
+ * accurate. New values are buffered and merged in batches, and the number of centroids
+ * stays around the compression setting however many values are added. Two sketches can
+ * be merged, so sketches kept per time bucket can be combined to answer questions over
+ * any range of buckets.
+ */
+public class QuantileSketch {
+
+    // Roughly the number of centroids kept; higher is more accurate
+    public static final int DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+    private double[] means = new double[0];
+    private double[] weights = new double[0];
+    private int centroidCount;
+
+    private final double[] bufferMeans;
+    private final double[] bufferWeights;
+    private int bufferCount;
+
+    private double totalWeight;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    /**
+     * Constructor with the default compression
+     */
+    public QuantileSketch() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor
+     * @param compression Roughly the number of centroids kept
+     */
+    public QuantileSketch(double compression) {
+        this.compression = compression;
+        int bufferSize = (int) Math.ceil(compression) * 5;
+        this.bufferMeans = new double[bufferSize];
+        this.bufferWeights = new double[bufferSize];
+    }
+
+    /**
+     * Add a value
+     * @param value The value; NaN and infinite values are ignored
+     */
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * Add a value with a weight
+     * @param value The value; NaN and infinite values are ignored
+     * @param weight Weight, e.g. a number of occurrences
+     */
+    private void add(double value, double weight) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || weight <= 0) {
+            return;
+        }
+        if (bufferCount == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[bufferCount] = value;
+        bufferWeights[bufferCount] = weight;
+        bufferCount++;
+
+        totalWeight += weight;
+        min = Double.isNaN(min) ? value : Math.min(min, value);
+        max = Double.isNaN(max) ? value : Math.max(max, value);
+    }
+
+    /**
+     * Add all values summarized by another sketch
+     * @param other Sketch to merge; it is not changed
+     */
+    public void merge(QuantileSketch other) {
+        other.compress();
+        for (int i = 0; i < other.centroidCount; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        // Centroid means lie inside the range, so keep the exact extremes
+        if (other.totalWeight > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    /**
+     * Get the number of values added
+     * @return Count
+     */
+    public long getCount() {
+        return Math.round(totalWeight);
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Estimate a quantile
+     * @param q Quantile between 0 and 1, e.g. 0.5 for the median
+     * @return Estimated value, or NaN if no values were added
+     */
+    public double quantile(double q) {
+        compress();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        }
+        if (centroidCount == 1 || q <= 0) {
+            return centroidCount == 1 ? means[0] : min;
+        }
+        if (q >= 1) {
+            return max;
+        }
+
+        double target = q * totalWeight;
+
+        // Before the center of the first centroid, interpolate from the minimum
+        double firstCenter = weights[0] / 2;
+        if (target < firstCenter) {
+            return min + (means[0] - min) * target / firstCenter;
+        }
+
+        // Each centroid's weight is centered on its mean; interpolate between neighbors
+        double center = firstCenter;
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double nextCenter = center + (weights[i] + weights[i + 1]) / 2;
+            if (target < nextCenter) {
+                double fraction = (target - center) / (nextCenter - center);
+                return means[i] + fraction * (means[i + 1] - means[i]);
+            }
+            center = nextCenter;
+        }
+
+        // After the center of the last centroid, interpolate to the maximum
+        double lastWeight = weights[centroidCount - 1] / 2;
+        double fraction = lastWeight > 0 ? (target - center) / lastWeight : 1;
+        return means[centroidCount - 1] + Math.min(1, fraction) * (max - means[centroidCount - 1]);
+    }
+
+    /**
+     * Merge buffered values into the centroids. Neighboring centroids are combined as
+     * long as the result stays within the size the scale function allows at that
+     * quantile, which is small in the tails and large around the median.
+     */
+    private void compress() {
+        if (bufferCount == 0) {
+            return;
+        }
+
+        int count = centroidCount + bufferCount;
+        double[] allMeans = Arrays.copyOf(means, count);
+        double[] allWeights = Arrays.copyOf(weights, count);
+        System.arraycopy(bufferMeans, 0, allMeans, centroidCount, bufferCount);
+        System.arraycopy(bufferWeights, 0, allWeights, centroidCount, bufferCount);
+        bufferCount = 0;
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(allMeans[a], allMeans[b]));
+
+        double[] newMeans = new double[count];
+        double[] newWeights = new double[count];
+        int newCount = 0;
+
+        double weightSoFar = 0;
+        double limit = totalWeight * inverseScale(scale(0) + 1);
+        double mean = allMeans[order[0]];
+        double weight = allWeights[order[0]];
+
+        for (int i = 1; i < count; i++) {
+            double nextMean = allMeans[order[i]];
+            double nextWeight = allWeights[order[i]];
+            if (weightSoFar + weight + nextWeight <= limit) {
+                // Fold into the current centroid
+                weight += nextWeight;
+                mean += (nextMean - mean) * nextWeight / weight;
+            } else {
+                newMeans[newCount] = mean;
+                newWeights[newCount] = weight;
+                newCount++;
+                weightSoFar += weight;
+                limit = totalWeight * inverseScale(scale(weightSoFar / totalWeight) + 1);
+                mean = nextMean;
+                weight = nextWeight;
+            }
+        }
+        newMeans[newCount] = mean;
+        newWeights[newCount] = weight;
+        newCount++;
+
+        means = Arrays.copyOf(newMeans, newCount);
+        weights = Arrays.copyOf(newWeights, newCount);
+        centroidCount = newCount;
+    }
+
+    /**
+     * Scale function mapping a quantile to a centroid index
+     * @param q Quantile
+     * @return Scaled index
+     */
+    private double scale(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+    }
+
+    /**
+     * Inverse of {@link #scale(double)}
+     * @param k Scaled index
+     * @return Quantile, clamped to 1
+     */
+    private double inverseScale(double k) {
+        if (k >= compression / 4) {
+            return 1;
+        }
+        return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+}
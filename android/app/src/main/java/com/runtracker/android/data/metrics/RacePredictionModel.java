@@ -0,0 +1,124 @@
+package com.runtracker.android.data.metrics;
+
+import com.runtracker.android.data.models.BestEffort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Predicts race times from personal bests with a power law, time = a * distance^b.
+ *
+ * With personal bests over two or more distances of at least a kilometer, a and b are
+ * fitted to them by least squares in log-log space, which captures how well this runner
+ * holds pace as distance grows. If there is only one usable distance, or the fitted
+ * exponent is implausible, each prediction uses Riegel's formula with the fixed exponent
+ * 1.06 from the personal best closest to the target distance.
+ */
+public class RacePredictionModel {
+
+    public static final double RIEGEL_EXPONENT = 1.06;
+
+    // Fitted exponents outside this range come from noisy efforts, not physiology
+    private static final double MIN_EXPONENT = 1.01;
+    private static final double MAX_EXPONENT = 1.15;
+
+    // Shorter efforts are mostly anaerobic and don't fit the curve
+    private static final int MIN_FIT_DISTANCE = 1000; // meters
+
+    private final List<BestEffort> references;
+    private final double coefficient;
+    private final double exponent;
+    private final boolean fitted;
+
+    private RacePredictionModel(List<BestEffort> references, double coefficient, double exponent,
+                                boolean fitted) {
+        this.references = references;
+        this.coefficient = coefficient;
+        this.exponent = exponent;
+        this.fitted = fitted;
+    }
+
+    /**
+     * Build a model from personal bests
+     * @param personalBests Best effort per distance
+     * @return Model, or null if there are no personal bests
+     */
+    public static RacePredictionModel fit(List<BestEffort> personalBests) {
+        if (personalBests.isEmpty()) {
+            return null;
+        }
+
+        // Least squares on log(time) = log(a) + b * log(distance)
+        int n = 0;
+        double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+        for (BestEffort effort : personalBests) {
+            if (effort.getDistance() >= MIN_FIT_DISTANCE && effort.getDuration() > 0) {
+                double x = Math.log(effort.getDistance());
+                double y = Math.log(effort.getDuration());
+                sumX += x;
+                sumY += y;
+                sumXX += x * x;
+                sumXY += x * y;
+                n++;
+            }
+        }
+
+        List<BestEffort> references = new ArrayList<>(personalBests);
+        if (n >= 2) {
+            double slope = (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+            if (slope >= MIN_EXPONENT && slope <= MAX_EXPONENT) {
+                double intercept = (sumY - slope * sumX) / n;
+                return new RacePredictionModel(references, Math.exp(intercept), slope, true);
+            }
+        }
+        return new RacePredictionModel(references, 0, RIEGEL_EXPONENT, false);
+    }
+
+    /**
+     * Predict the time for a distance
+     * @param distance Distance in meters
+     * @return Predicted time in milliseconds
+     */
+    public long predictTime(double distance) {
+        if (fitted) {
+            return Math.round(coefficient * Math.pow(distance, exponent));
+        }
+
+        // Riegel from the personal best closest to the distance, on a log scale
+        BestEffort closest = null;
+        double closestRatio = Double.MAX_VALUE;
+        for (BestEffort effort : references) {
+            double ratio = Math.abs(Math.log(distance / effort.getDistance()));
+            if (ratio < closestRatio) {
+                closest = effort;
+                closestRatio = ratio;
+            }
+        }
+        return Math.round(closest.getDuration() * Math.pow(distance / closest.getDistance(), RIEGEL_EXPONENT));
+    }
+
+    /**
+     * Predict the average pace for a distance
+     * @param distance Distance in meters
+     * @return Pace in minutes per kilometer
+     */
+    public double predictPace(double distance) {
+        return (predictTime(distance) / 60000.0) / (distance / 1000.0);
+    }
+
+    /**
+     * Check if the model was fitted to several distances
+     * @return True if fitted, false if it falls back to Riegel's formula
+     */
+    public boolean isFitted() {
+        return fitted;
+    }
+
+    /**
+     * Get the exponent of the power law
+     * @return Exponent; 1.06 when not fitted
+     */
+    public double getExponent() {
+        return exponent;
+    }
+}
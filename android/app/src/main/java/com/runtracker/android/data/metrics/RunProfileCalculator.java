@@ -0,0 +1,91 @@
+package com.runtracker.android.data.metrics;
+
+import com.runtracker.android.data.models.ElevationProfile;
+import com.runtracker.android.data.models.Run;
+import com.runtracker.android.data.models.RunProfile;
+
+/**
+ * Derives the pace series of a run from its track, takes the elevation series from its
+ * stored {@link ElevationProfile}, and downsamples both with {@link Lttb} to a point
+ * budget, typically the chart width in pixels.
+ */
+public final class RunProfileCalculator {
+
+    // Pace at a fix is measured over the preceding stretch of at least this length
+    private static final double PACE_WINDOW = 0.1; // kilometers
+
+    // Slower than this the runner is standing or walking, which would flatten the chart
+    private static final double MAX_PACE = 20; // min/km
+
+    private RunProfileCalculator() {
+    }
+
+    /**
+     * Calculate the profile of a run
+     * @param run The run
+     * @param maxPoints Maximum number of points per series
+     * @return Profile; the elevation series is null if the run recorded no altitude
+     */
+    public static RunProfile calculate(Run run, int maxPoints) {
+        RunTrack track = RunTrack.of(run);
+        int size = track.size();
+        double[] x = new double[size];
+        double[] y = new double[size];
+
+        // Pace over a trailing window, found with a second pointer that only moves forward
+        int count = 0;
+        int start = 0;
+        for (int i = 1; i < size; i++) {
+            double distance = track.getDistance(i);
+            while (start + 1 < i && distance - track.getDistance(start + 1) >= PACE_WINDOW) {
+                start++;
+            }
+            double covered = distance - track.getDistance(start);
+            if (covered < PACE_WINDOW) {
+                continue;
+            }
+            double pace = (track.getTime(i) - track.getTime(start)) / 60000.0 / covered;
+            if (pace > 0 && pace <= MAX_PACE) {
+                x[count] = distance;
+                y[count] = pace;
+                count++;
+            }
+        }
+        RunProfile.Series pace = downsample(x, y, count, maxPoints);
+
+        // Elevation comes from the profile stored when the run finished, which is already
+        // smoothed and small, rather than from the track
+        RunProfile.Series elevation = null;
+        ElevationProfile profile = run.getElevationProfile();
+        if (profile != null && profile.size() > 0) {
+            double[] distances = new double[profile.size()];
+            double[] altitudes = new double[profile.size()];
+            for (int i = 0; i < profile.size(); i++) {
+                distances[i] = profile.getDistance(i);
+                altitudes[i] = profile.getAltitude(i);
+            }
+            elevation = downsample(distances, altitudes, profile.size(), maxPoints);
+        }
+
+        return new RunProfile(pace, elevation);
+    }
+
+    /**
+     * Downsample a series to a point budget
+     * @param x Distances
+     * @param y Values
+     * @param count Number of points in the arrays
+     * @param maxPoints Maximum number of points to keep
+     * @return Downsampled series
+     */
+    private static RunProfile.Series downsample(double[] x, double[] y, int count, int maxPoints) {
+        int[] selected = Lttb.select(x, y, count, maxPoints);
+        double[] distances = new double[selected.length];
+        double[] values = new double[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            distances[i] = x[selected[i]];
+            values[i] = y[selected[i]];
+        }
+        return new RunProfile.Series(distances, values);
+    }
+}
@@ -0,0 +1,98 @@
+package com.runtracker.android.data.metrics;
+
+import com.runtracker.android.data.models.Run;
+
+import java.util.List;
+
+/**
+ * Cumulative distance and active time at each location fix of a run.
+ *
+ * Pauses are taken out of the time axis, so the time between two fixes is running time
+ * only. Both arrays are non-decreasing, which lets calculators answer questions about
+ * any stretch of the run by subtracting two entries instead of re-walking the points.
+ */
+public class RunTrack {
+
+    private final long[] times;
+    private final double[] distances;
+
+    private RunTrack(long[] times, double[] distances) {
+        this.times = times;
+        this.distances = distances;
+    }
+
+    /**
+     * Build the track of a run
+     * @param run The run
+     * @return New track, with one entry per location point
+     */
+    public static RunTrack of(Run run) {
+        List<Run.LocationPoint> points = run.getLocationPoints();
+        List<Run.PauseInterval> pauses = run.getPauseIntervals();
+        long[] times = new long[points.size()];
+        double[] distances = new double[points.size()];
+        int pauseIndex = 0;
+        long pausedBefore = 0;
+        double distance = 0;
+
+        for (int i = 0; i < points.size(); i++) {
+            Run.LocationPoint point = points.get(i);
+
+            // Pause intervals are in time order, so walk them alongside the points
+            while (pauseIndex < pauses.size()
+                    && pauses.get(pauseIndex).isEnded()
+                    && pauses.get(pauseIndex).getEndTime() <= point.getTimestamp()) {
+                pausedBefore += pauses.get(pauseIndex).getDuration();
+                pauseIndex++;
+            }
+
+            if (i > 0) {
+                Run.LocationPoint previous = points.get(i - 1);
+                distance += Run.calculateDistance(
+                        previous.getLatitude(), previous.getLongitude(),
+                        point.getLatitude(), point.getLongitude());
+            }
+
+            long activeTime = Math.max(0, point.getTimestamp() - run.getStartTime() - pausedBefore);
+
+            // Fixes can arrive slightly out of order; keep the time axis monotonic
+            times[i] = i > 0 ? Math.max(times[i - 1], activeTime) : activeTime;
+            distances[i] = distance;
+        }
+        return new RunTrack(times, distances);
+    }
+
+    /**
+     * Get the number of fixes
+     * @return Number of fixes
+     */
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * Get the active time at a fix
+     * @param index Fix index
+     * @return Active time since the start of the run in milliseconds
+     */
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * Get the distance covered up to a fix
+     * @param index Fix index
+     * @return Distance in kilometers
+     */
+    public double getDistance(int index) {
+        return distances[index];
+    }
+
+    /**
+     * Get the distance covered up to the last fix
+     * @return Distance in kilometers
+     */
+    public double getTotalDistance() {
+        return distances.length > 0 ? distances[distances.length - 1] : 0;
+    }
+}
@@ -0,0 +1,121 @@
+package com.runtracker.android.data.metrics;
+
+import com.runtracker.android.data.models.Run;
+import com.runtracker.android.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes per-kilometer or per-mile splits from a stream of distance samples.
+ *
+ * Split boundaries almost never fall exactly on a location fix, so the time at each
+ * boundary is interpolated linearly between the fixes on either side of it. Samples are
+ * processed incrementally while tracking, so splits are stored with the run and screens
+ * can render them without going back to the location points.
+ */
+public class SplitCalculator {
+
+    public static final double KILOMETER = 1.0;
+    public static final double MILE = 1.609344; // in kilometers
+
+    // Shorter final splits are GPS noise rather than running
+    private static final double MIN_PARTIAL_DISTANCE = 0.01;
+
+    private final double splitLength;
+    private final List<Run.Split> splits;
+
+    private boolean hasSample = false;
+    private long lastTime;
+    private double lastDistance;
+    private long boundaryTime;
+
+    /**
+     * Constructor, continuing after any splits already in the list
+     * @param unit Constants.UNIT_KILOMETERS or Constants.UNIT_MILES
+     * @param splits List the completed splits are appended to
+     */
+    public SplitCalculator(int unit, List<Run.Split> splits) {
+        this.splitLength = getSplitLength(unit);
+        this.splits = splits;
+
+        if (!splits.isEmpty()) {
+            boundaryTime = splits.get(splits.size() - 1).getElapsedTime();
+        }
+    }
+
+    /**
+     * Get the length of one split
+     * @param unit Constants.UNIT_KILOMETERS or Constants.UNIT_MILES
+     * @return Split length in kilometers
+     */
+    public static double getSplitLength(int unit) {
+        return unit == Constants.UNIT_MILES ? MILE : KILOMETER;
+    }
+
+    /**
+     * Add a distance sample, appending a split for every boundary crossed since the
+     * previous sample
+     * @param activeTime Active time since the start of the run in milliseconds
+     * @param totalDistance Total distance at this time in kilometers
+     */
+    public void addSample(long activeTime, double totalDistance) {
+        if (!hasSample) {
+            // The run starts at zero distance and zero time
+            hasSample = true;
+            lastTime = boundaryTime;
+            lastDistance = splits.size() * splitLength;
+        }
+
+        double nextBoundary = (splits.size() + 1) * splitLength;
+        while (totalDistance >= nextBoundary && totalDistance > lastDistance) {
+            // Interpolate the time the boundary was crossed
+            double fraction = (nextBoundary - lastDistance) / (totalDistance - lastDistance);
+            long crossingTime = lastTime + Math.round(fraction * (activeTime - lastTime));
+
+            splits.add(new Run.Split(splits.size() + 1, splitLength,
+                    crossingTime - boundaryTime, crossingTime));
+            boundaryTime = crossingTime;
+
+            nextBoundary += splitLength;
+        }
+
+        lastTime = activeTime;
+        lastDistance = totalDistance;
+    }
+
+    /**
+     * Close the final, partial split at the end of the run
+     * @param activeTime Active duration of the run in milliseconds
+     * @param totalDistance Total distance of the run in kilometers
+     */
+    public void finish(long activeTime, double totalDistance) {
+        addSample(activeTime, totalDistance);
+
+        double remaining = totalDistance - splits.size() * splitLength;
+        if (remaining >= MIN_PARTIAL_DISTANCE && activeTime > boundaryTime) {
+            splits.add(new Run.Split(splits.size() + 1, remaining,
+                    activeTime - boundaryTime, activeTime));
+            boundaryTime = activeTime;
+        }
+    }
+
+    /**
+     * Compute the splits of a recorded run from its location points
+     * @param run The run
+     * @param unit Constants.UNIT_KILOMETERS or Constants.UNIT_MILES
+     * @return Splits in order
+     */
+    public static List<Run.Split> computeSplits(Run run, int unit) {
+        List<Run.Split> splits = new ArrayList<>();
+        SplitCalculator calculator = new SplitCalculator(unit, splits);
+
+        RunTrack track = RunTrack.of(run);
+        for (int i = 0; i < track.size(); i++) {
+            calculator.addSample(track.getTime(i), track.getDistance(i));
+        }
+
+        calculator.finish(run.getActiveDuration(), track.getTotalDistance());
+        return splits;
+    }
+}
@@ -0,0 +1,174 @@
+package com.runtracker.android.data.metrics;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Simplifies and resamples GPS tracks given as parallel latitude and longitude arrays.
+ *
+ * Distances use an equirectangular projection around the points involved, which is
+ * accurate to well under a meter over the few kilometers between neighbouring points
+ * of a running track and much cheaper than the haversine formula.
+ */
+public final class TrackSimplifier {
+
+    private static final double KM_PER_DEGREE = 111.195;
+
+    private TrackSimplifier() {
+    }
+
+    /**
+     * Simplify a track with the Douglas-Peucker algorithm
+     * @param latitudes Latitudes
+     * @param longitudes Longitudes
+     * @param tolerance Largest distance a removed point may lie from the simplified track, in kilometers
+     * @return Simplified track as {latitudes, longitudes}, keeping the first and last point
+     */
+    public static double[][] simplify(double[] latitudes, double[] longitudes, double tolerance) {
+        int size = latitudes.length;
+        if (size < 3) {
+            return new double[][] {latitudes.clone(), longitudes.clone()};
+        }
+
+        // Iterative, since a long run can have thousands of points
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] {0, size - 1});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int first = range[0];
+            int last = range[1];
+            double farthest = -1;
+            int farthestIndex = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = distanceToSegment(latitudes[i], longitudes[i],
+                        latitudes[first], longitudes[first], latitudes[last], longitudes[last]);
+                if (distance > farthest) {
+                    farthest = distance;
+                    farthestIndex = i;
+                }
+            }
+            if (farthest > tolerance) {
+                keep[farthestIndex] = true;
+                ranges.push(new int[] {first, farthestIndex});
+                ranges.push(new int[] {farthestIndex, last});
+            }
+        }
+
+        int count = 0;
+        for (boolean kept : keep) {
+            if (kept) {
+                count++;
+            }
+        }
+        double[] simplifiedLatitudes = new double[count];
+        double[] simplifiedLongitudes = new double[count];
+        int index = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                simplifiedLatitudes[index] = latitudes[i];
+                simplifiedLongitudes[index] = longitudes[i];
+                index++;
+            }
+        }
+        return new double[][] {simplifiedLatitudes, simplifiedLongitudes};
+    }
+
+    /**
+     * Resample a track at a fixed spacing along its length
+     * @param latitudes Latitudes
+     * @param longitudes Longitudes
+     * @param spacing Distance between resampled points in kilometers
+     * @return Resampled track as {latitudes, longitudes}, including the first and last point
+     */
+    public static double[][] resample(double[] latitudes, double[] longitudes, double spacing) {
+        int size = latitudes.length;
+        if (size < 2) {
+            return new double[][] {latitudes.clone(), longitudes.clone()};
+        }
+
+        int capacity = (int) (length(latitudes, longitudes) / spacing) + 2;
+        double[] resampledLatitudes = new double[capacity];
+        double[] resampledLongitudes = new double[capacity];
+        resampledLatitudes[0] = latitudes[0];
+        resampledLongitudes[0] = longitudes[0];
+        int count = 1;
+
+        // Distance along the current segment at which the next sample falls
+        double next = spacing;
+        for (int i = 1; i < size && count < capacity - 1; i++) {
+            double segment = distance(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+            while (next <= segment && count < capacity - 1) {
+                double fraction = next / segment;
+                resampledLatitudes[count] = latitudes[i - 1] + (latitudes[i] - latitudes[i - 1]) * fraction;
+                resampledLongitudes[count] = longitudes[i - 1] + (longitudes[i] - longitudes[i - 1]) * fraction;
+                count++;
+                next += spacing;
+            }
+            next -= segment;
+        }
+        resampledLatitudes[count] = latitudes[size - 1];
+        resampledLongitudes[count] = longitudes[size - 1];
+        count++;
+
+        return new double[][] {
+                Arrays.copyOf(resampledLatitudes, count), Arrays.copyOf(resampledLongitudes, count)};
+    }
+
+    /**
+     * Get the length of a track
+     * @param latitudes Latitudes
+     * @param longitudes Longitudes
+     * @return Length in kilometers
+     */
+    public static double length(double[] latitudes, double[] longitudes) {
+        double length = 0;
+        for (int i = 1; i < latitudes.length; i++) {
+            length += distance(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+        }
+        return length;
+    }
+
+    /**
+     * Get the approximate distance between two nearby points
+     * @param lat1 Latitude of first point
+     * @param lon1 Longitude of first point
+     * @param lat2 Latitude of second point
+     * @param lon2 Longitude of second point
+     * @return Distance in kilometers
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double x = (lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * KM_PER_DEGREE;
+    }
+
+    /**
+     * Get the distance from a point to a segment
+     * @param lat Latitude of the point
+     * @param lon Longitude of the point
+     * @param lat1 Latitude of the segment start
+     * @param lon1 Longitude of the segment start
+     * @param lat2 Latitude of the segment end
+     * @param lon2 Longitude of the segment end
+     * @return Distance in kilometers
+     */
+    private static double distanceToSegment(double lat, double lon,
+                                            double lat1, double lon1, double lat2, double lon2) {
+        // Project onto a local plane in kilometers, centered on the segment start
+        double scale = Math.cos(Math.toRadians(lat1));
+        double x = (lon - lon1) * scale;
+        double y = lat - lat1;
+        double dx = (lon2 - lon1) * scale;
+        double dy = lat2 - lat1;
+
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? Math.max(0, Math.min(1, (x * dx + y * dy) / lengthSquared)) : 0;
+        double offsetX = x - t * dx;
+        double offsetY = y - t * dy;
+        return Math.sqrt(offsetX * offsetX + offsetY * offsetY) * KM_PER_DEGREE;
+    }
+}
@@ -0,0 +1,189 @@
+package com.runtracker.android.data.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Daily training load with its exponentially weighted acute and chronic averages.
+ *
+ * Acute load (fatigue) averages the last week or so and chronic load (fitness) the last
+ * six weeks. Values are kept in plain arrays indexed by day, starting at the first day
+ * with any load. Each day only depends on the day before, so a change on one day is
+ * applied by recomputing from that day forward; adding load to the latest day costs
+ * O(days since the previous latest day). Days after the last stored day are decayed
+ * analytically, so the series does not need updating while no runs are recorded.
+ */
+public class TrainingLoadSeries {
+
+    // Time constants of the averages, in days
+    public static final double ACUTE_DAYS = 7;
+    public static final double CHRONIC_DAYS = 42;
+
+    private static final double ACUTE_DECAY = Math.exp(-1 / ACUTE_DAYS);
+    private static final double CHRONIC_DECAY = Math.exp(-1 / CHRONIC_DAYS);
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long firstDay;
+    private int size;
+    private double[] load = new double[0];
+    private double[] acute = new double[0];
+    private double[] chronic = new double[0];
+
+    /**
+     * Add load to a day, or take it off again with a negative amount
+     * @param day Epoch day
+     * @param amount Training load
+     */
+    public void addLoad(long day, double amount) {
+        int previousSize = size;
+        int index = ensureDay(day);
+        load[index] = Math.max(0, load[index] + amount);
+
+        // Days appended before this one still need their averages
+        recomputeFrom(Math.min(index, previousSize));
+    }
+
+    /**
+     * Remove all load
+     */
+    public void clear() {
+        size = 0;
+        load = new double[0];
+        acute = new double[0];
+        chronic = new double[0];
+    }
+
+    /**
+     * Check if any load has been added
+     * @return True if empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the first day with stored values
+     * @return Epoch day; only valid if not empty
+     */
+    public long getFirstDay() {
+        return firstDay;
+    }
+
+    /**
+     * Get the last day with stored values
+     * @return Epoch day; only valid if not empty
+     */
+    public long getLastDay() {
+        return firstDay + size - 1;
+    }
+
+    /**
+     * Get the load recorded on a day
+     * @param day Epoch day
+     * @return Training load
+     */
+    public double getLoad(long day) {
+        long index = day - firstDay;
+        return index >= 0 && index < size ? load[(int) index] : 0;
+    }
+
+    /**
+     * Get the acute load (fatigue) at the end of a day
+     * @param day Epoch day
+     * @return Acute load
+     */
+    public double getAcute(long day) {
+        return valueAt(acute, ACUTE_DECAY, day);
+    }
+
+    /**
+     * Get the chronic load (fitness) at the end of a day
+     * @param day Epoch day
+     * @return Chronic load
+     */
+    public double getChronic(long day) {
+        return valueAt(chronic, CHRONIC_DECAY, day);
+    }
+
+    /**
+     * Get the training balance (form) going into a day: fitness minus fatigue at the
+     * end of the day before. Negative means fatigue outweighs fitness.
+     * @param day Epoch day
+     * @return Training balance
+     */
+    public double getBalance(long day) {
+        return getChronic(day - 1) - getAcute(day - 1);
+    }
+
+    /**
+     * Read an average for a day, decaying it past the last stored day
+     * @param values Acute or chronic averages
+     * @param decay Daily decay factor of the average
+     * @param day Epoch day
+     * @return Value
+     */
+    private double valueAt(double[] values, double decay, long day) {
+        long index = day - firstDay;
+        if (size == 0 || index < 0) {
+            return 0;
+        }
+        if (index < size) {
+            return values[(int) index];
+        }
+        return values[size - 1] * Math.pow(decay, index - (size - 1));
+    }
+
+    /**
+     * Make room for a day, growing the arrays at either end
+     * @param day Epoch day
+     * @return Index of the day
+     */
+    private int ensureDay(long day) {
+        if (size == 0) {
+            firstDay = day;
+        } else if (day < firstDay) {
+            // Shift existing days up to make room at the start
+            int shift = (int) (firstDay - day);
+            grow(size + shift);
+            System.arraycopy(load, 0, load, shift, size);
+            Arrays.fill(load, 0, shift, 0);
+            size += shift;
+            firstDay = day;
+            return 0;
+        }
+
+        int index = (int) (day - firstDay);
+        if (index >= size) {
+            grow(index + 1);
+            Arrays.fill(load, size, index + 1, 0);
+            size = index + 1;
+        }
+        return index;
+    }
+
+    /**
+     * Grow the arrays to hold at least a number of days
+     * @param capacity Number of days
+     */
+    private void grow(int capacity) {
+        if (capacity <= load.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, Math.max(INITIAL_CAPACITY, load.length * 2));
+        load = Arrays.copyOf(load, newCapacity);
+        acute = Arrays.copyOf(acute, newCapacity);
+        chronic = Arrays.copyOf(chronic, newCapacity);
+    }
+
+    /**
+     * Recompute the averages from a day to the end of the series
+     * @param from Index of the first day to recompute
+     */
+    private void recomputeFrom(int from) {
+        for (int i = Math.max(0, from); i < size; i++) {
+            double previousAcute = i > 0 ? acute[i - 1] : 0;
+            double previousChronic = i > 0 ? chronic[i - 1] : 0;
+            acute[i] = previousAcute * ACUTE_DECAY + load[i] * (1 - ACUTE_DECAY);
+            chronic[i] = previousChronic * CHRONIC_DECAY + load[i] * (1 - CHRONIC_DECAY);
+        }
+    }
+}
@@ -25,6 +25,7 @@ public class Achievement {
     private final double targetValue;
     private boolean unlocked;
     private long unlockedDate;
+    private String unlockedRunId;
     
     /**
      * Constructor for creating a new achievement
@@ -104,6 +105,18 @@ public class Achievement {
         this.unlockedDate = unlockedDate;
     }
     
+    /**
+     * Get the run that earned this achievement
+     * @return Run ID, or null if unknown
+     */
+    public String getUnlockedRunId() {
+        return unlockedRunId;
+    }
+    
+    public void setUnlockedRunId(String unlockedRunId) {
+        this.unlockedRunId = unlockedRunId;
+    }
+    
     /**
      * Get icon resource ID based on type and level
      * @return Resource ID for the achievement icon
@@ -140,6 +153,8 @@ public class Achievement {
      * @return Cloned achievement
      */
     public Achievement clone() {
-        return new Achievement(id, title, description, type, level, targetValue, unlocked, unlockedDate);
+        Achievement copy = new Achievement(id, title, description, type, level, targetValue, unlocked, unlockedDate);
+        copy.setUnlockedRunId(unlockedRunId);
+        return copy;
     }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.runtracker.android.data.models;
+
+/**
+ * Fastest time over a standard distance within a single run, e.g. the fastest 5K
+ * inside a half marathon.
+ */
+public class BestEffort {
+
+    private final int distance;
+    private final long duration;
+    private final long startOffset;
+    private final String runId;
+    private final long runStartTime;
+
+    /**
+     * Constructor
+     * @param distance Effort distance in meters
+     * @param duration Time taken in milliseconds
+     * @param startOffset Active time into the run at which the effort started, in milliseconds
+     * @param runId ID of the run the effort is part of
+     * @param runStartTime Start time of that run
+     */
+    public BestEffort(int distance, long duration, long startOffset, String runId, long runStartTime) {
+        this.distance = distance;
+        this.duration = duration;
+        this.startOffset = startOffset;
+        this.runId = runId;
+        this.runStartTime = runStartTime;
+    }
+
+    /**
+     * Get the effort distance
+     * @return Distance in meters
+     */
+    public int getDistance() {
+        return distance;
+    }
+
+    /**
+     * Get the time taken to cover the distance
+     * @return Duration in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Get how far into the run the effort started
+     * @return Active time in milliseconds
+     */
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public long getRunStartTime() {
+        return runStartTime;
+    }
+
+    /**
+     * Get the average pace of the effort
+     * @return Pace in minutes per kilometer
+     */
+    public double getPace() {
+        return (duration / 60000.0) / (distance / 1000.0);
+    }
+}
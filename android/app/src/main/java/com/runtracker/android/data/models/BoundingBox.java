@@ -0,0 +1,94 @@
+package com.runtracker.android.data.models;
+
+/**
+ * Latitude/longitude rectangle
+ */
+public class BoundingBox {
+
+    // Kilometers per degree of latitude
+    private static final double KM_PER_DEGREE = 111.195;
+
+    private final double minLatitude;
+    private final double minLongitude;
+    private final double maxLatitude;
+    private final double maxLongitude;
+
+    /**
+     * Constructor
+     * @param minLatitude Southern edge
+     * @param minLongitude Western edge
+     * @param maxLatitude Northern edge
+     * @param maxLongitude Eastern edge
+     */
+    public BoundingBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLatitude = maxLatitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    /**
+     * Get the box around a circle
+     * @param latitude Latitude of the center
+     * @param longitude Longitude of the center
+     * @param radius Radius in kilometers
+     * @return Smallest box containing the circle, clamped to valid coordinates
+     */
+    public static BoundingBox around(double latitude, double longitude, double radius) {
+        double latDelta = radius / KM_PER_DEGREE;
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        double lonDelta = cosLat > 1e-6 ? Math.min(180, latDelta / cosLat) : 180;
+        return new BoundingBox(
+                Math.max(-90, latitude - latDelta), Math.max(-180, longitude - lonDelta),
+                Math.min(90, latitude + latDelta), Math.min(180, longitude + lonDelta));
+    }
+
+    /**
+     * Check if a location is inside the box
+     * @param latitude Latitude
+     * @param longitude Longitude
+     * @return True if inside or on the edge
+     */
+    public boolean contains(double latitude, double longitude) {
+        return latitude >= minLatitude && latitude <= maxLatitude
+                && longitude >= minLongitude && longitude <= maxLongitude;
+    }
+
+    /**
+     * Check if two boxes overlap
+     * @param other Other box
+     * @return True if they share any area or edge
+     */
+    public boolean intersects(BoundingBox other) {
+        return other.minLatitude <= maxLatitude && other.maxLatitude >= minLatitude
+                && other.minLongitude <= maxLongitude && other.maxLongitude >= minLongitude;
+    }
+
+    /**
+     * Get the distance from a location to the nearest point of the box
+     * @param latitude Latitude
+     * @param longitude Longitude
+     * @return Distance in kilometers, 0 if inside
+     */
+    public double distanceTo(double latitude, double longitude) {
+        double nearestLat = Math.max(minLatitude, Math.min(maxLatitude, latitude));
+        double nearestLon = Math.max(minLongitude, Math.min(maxLongitude, longitude));
+        return Run.calculateDistance(latitude, longitude, nearestLat, nearestLon);
+    }
+
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+}
@@ -35,6 +35,9 @@ public class CoachingWorkout {
     private long scheduledDate;
     private final List<WorkoutSegment> segments;
     
+    // Compiled on first use; not persisted
+    private transient WorkoutTimeline timeline;
+    
     /**
      * Constructor with auto-generated ID
      */
@@ -231,18 +234,28 @@ public class CoachingWorkout {
      */
     public void addSegment(WorkoutSegment segment) {
         segments.add(segment);
+        timeline = null;
     }
     
     /**
-     * Get total duration of the workout in seconds
+     * Get the compiled timeline of the workout, with repeats expanded.
+     * Compiled on first use; segment durations and repeats must not be changed once
+     * coaching has started. Target paces may be, since entries read them from the segment.
+     * @return Workout timeline
+     */
+    public WorkoutTimeline getTimeline() {
+        if (timeline == null) {
+            timeline = WorkoutTimeline.compile(this);
+        }
+        return timeline;
+    }
+    
+    /**
+     * Get total duration of the workout in seconds, including repeats
      * @return Total duration in seconds
      */
     public long getTotalDuration() {
-        long total = 0;
-        for (WorkoutSegment segment : segments) {
-            total += segment.getDuration();
-        }
-        return total;
+        return getTimeline().getTotalDuration() / 1000;
     }
     
     /**
@@ -264,7 +277,7 @@ public class CoachingWorkout {
             if (avgPace > 0) {
                 // Pace is in minutes per km, convert to km
                 double km = segment.getDuration() / 60.0 / avgPace;
-                total += km;
+                total += km * Math.max(1, segment.getRepeats());
             }
         }
         
@@ -0,0 +1,77 @@
+package com.runtracker.android.data.models;
+
+import java.util.List;
+
+/**
+ * A route that has been run, with every attempt at it ranked by pace. Attempts differ a
+ * little in length, so pace ranks them more fairly than their raw time.
+ */
+public class Course {
+
+    private final String id;
+    private final RouteFingerprint route;
+    private final List<RouteFingerprint> attempts;
+
+    /**
+     * Constructor
+     * @param id Course ID
+     * @param route Fingerprint of the run that defines the course
+     * @param attempts Attempts, fastest pace first
+     */
+    public Course(String id, RouteFingerprint route, List<RouteFingerprint> attempts) {
+        this.id = id;
+        this.route = route;
+        this.attempts = attempts;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Get the fingerprint of the run that defines the course, i.e. its first attempt
+     * @return Route fingerprint
+     */
+    public RouteFingerprint getRoute() {
+        return route;
+    }
+
+    /**
+     * Get the attempts at the course
+     * @return Attempts, fastest pace first
+     */
+    public List<RouteFingerprint> getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Get the attempt with the fastest pace
+     * @return Fastest attempt
+     */
+    public RouteFingerprint getFastest() {
+        return attempts.get(0);
+    }
+
+    /**
+     * Get the rank of a run on the course
+     * @param runId Run ID
+     * @return Rank starting at 1, or 0 if the run is not an attempt at this course
+     */
+    public int getRank(String runId) {
+        for (int i = 0; i < attempts.size(); i++) {
+            if (attempts.get(i).getRunId().equals(runId)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the time of an attempt over the length of the course, at the attempt's pace
+     * @param attempt Attempt at this course
+     * @return Time in milliseconds
+     */
+    public long getCourseTime(RouteFingerprint attempt) {
+        return Math.round(attempt.getPace() * route.getDistance() * 60000);
+    }
+}
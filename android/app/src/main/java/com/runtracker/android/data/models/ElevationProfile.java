@@ -0,0 +1,78 @@
+package com.runtracker.android.data.models;
+
+import java.io.Serializable;
+
+/**
+ * Downsampled elevation of a run against distance, for charts
+ */
+public class ElevationProfile implements Serializable {
+
+    private final double[] distances;
+    private final double[] altitudes;
+
+    /**
+     * Constructor
+     * @param distances Distance of each point in kilometers, ascending
+     * @param altitudes Smoothed altitude of each point in meters
+     */
+    public ElevationProfile(double[] distances, double[] altitudes) {
+        this.distances = distances;
+        this.altitudes = altitudes;
+    }
+
+    /**
+     * Get the number of points
+     * @return Number of points
+     */
+    public int size() {
+        return distances.length;
+    }
+
+    /**
+     * Get the distance of a point
+     * @param index Point index
+     * @return Distance in kilometers
+     */
+    public double getDistance(int index) {
+        return distances[index];
+    }
+
+    /**
+     * Get the altitude of a point
+     * @param index Point index
+     * @return Altitude in meters
+     */
+    public double getAltitude(int index) {
+        return altitudes[index];
+    }
+
+    /**
+     * Get the lowest altitude
+     * @return Altitude in meters, or 0 if empty
+     */
+    public double getMinAltitude() {
+        if (altitudes.length == 0) {
+            return 0;
+        }
+        double min = altitudes[0];
+        for (double altitude : altitudes) {
+            min = Math.min(min, altitude);
+        }
+        return min;
+    }
+
+    /**
+     * Get the highest altitude
+     * @return Altitude in meters, or 0 if empty
+     */
+    public double getMaxAltitude() {
+        if (altitudes.length == 0) {
+            return 0;
+        }
+        double max = altitudes[0];
+        for (double altitude : altitudes) {
+            max = Math.max(max, altitude);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,61 @@
+package com.runtracker.android.data.models;
+
+/**
+ * One entry on a records board, e.g. the third longest run or the biggest month
+ */
+public class PersonalRecord {
+
+    // Record types
+    public static final int TYPE_LONGEST_DISTANCE = 0;
+    public static final int TYPE_LONGEST_DURATION = 1;
+    public static final int TYPE_FASTEST_PACE = 2;
+    public static final int TYPE_BIGGEST_WEEK = 3;
+    public static final int TYPE_BIGGEST_MONTH = 4;
+
+    private final int type;
+    private final double value;
+    private final String runId;
+    private final long time;
+
+    /**
+     * Constructor
+     * @param type Record type
+     * @param value Distance in kilometers, duration in milliseconds or pace in minutes per kilometer
+     * @param runId ID of the run, or null for weekly and monthly records
+     * @param time Start time of the run, or of the week or month
+     */
+    public PersonalRecord(int type, double value, String runId, long time) {
+        this.type = type;
+        this.value = value;
+        this.runId = runId;
+        this.time = time;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Get the record value
+     * @return Distance in kilometers, duration in milliseconds or pace in minutes per kilometer
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Get the run the record was set in
+     * @return Run ID, or null for weekly and monthly records
+     */
+    public String getRunId() {
+        return runId;
+    }
+
+    /**
+     * Get when the record was set
+     * @return Start time of the run, or of the week or month
+     */
+    public long getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,241 @@
+package com.runtracker.android.data.models;
+
+import java.util.Calendar;
+
+/**
+ * Compact definition of a built-in coaching plan.
+ *
+ * A template only holds the plan's description and shape. The weekly workouts, with
+ * their segments and intervals, are generated by {@link #materialize(long)} when the
+ * plan is actually opened or activated.
+ */
+public class PlanTemplate {
+
+    private final String id;
+    private final String name;
+    private final String description;
+    private final int difficulty;
+    private final int goal;
+    private final int durationWeeks;
+    private final int workoutsPerWeek;
+
+    /**
+     * Constructor
+     * @param id Plan ID, also the prefix of the workout IDs
+     * @param name Plan name
+     * @param description Plan description
+     * @param difficulty CoachingPlan difficulty
+     * @param goal CoachingPlan goal
+     * @param durationWeeks Number of weeks
+     * @param workoutsPerWeek Number of workouts per week
+     */
+    public PlanTemplate(String id, String name, String description, int difficulty, int goal,
+                        int durationWeeks, int workoutsPerWeek) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.difficulty = difficulty;
+        this.goal = goal;
+        this.durationWeeks = durationWeeks;
+        this.workoutsPerWeek = workoutsPerWeek;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getDifficulty() {
+        return difficulty;
+    }
+
+    public int getGoal() {
+        return goal;
+    }
+
+    public int getDurationWeeks() {
+        return durationWeeks;
+    }
+
+    public int getWorkoutsPerWeek() {
+        return workoutsPerWeek;
+    }
+
+    /**
+     * Get the ID of a workout generated from a template
+     * @param planId Plan ID
+     * @param week Week number (1-based)
+     * @param day Workout number in the week (1-based)
+     * @return Workout ID
+     */
+    public static String getWorkoutId(String planId, int week, int day) {
+        return planId + "_w" + week + "_d" + day;
+    }
+
+    /**
+     * Get the plan ID from the ID of a generated workout
+     * @param workoutId Workout ID
+     * @return Plan ID, or null if the workout was not generated from a template
+     */
+    public static String getPlanId(String workoutId) {
+        int index = workoutId.lastIndexOf("_w");
+        return index > 0 ? workoutId.substring(0, index) : null;
+    }
+
+    /**
+     * Build the full plan with all of its workouts
+     * @param scheduleStart Timestamp of the first week
+     * @return New plan
+     */
+    public CoachingPlan materialize(long scheduleStart) {
+        CoachingPlan plan = new CoachingPlan(id);
+        plan.setName(name);
+        plan.setDescription(description);
+        plan.setDifficulty(difficulty);
+        plan.setGoal(goal);
+        plan.setDurationWeeks(durationWeeks);
+        plan.setWorkoutsPerWeek(workoutsPerWeek);
+
+        for (int week = 1; week <= durationWeeks; week++) {
+            for (int day = 1; day <= workoutsPerWeek; day++) {
+                CoachingWorkout workout = createWorkout(week, day);
+                workout.setWeek(week);
+                workout.setDayOfWeek(day);
+
+                // Calculate scheduled date relative to the first week
+                Calendar cal = Calendar.getInstance();
+                cal.setTimeInMillis(scheduleStart);
+                cal.add(Calendar.WEEK_OF_YEAR, week - 1);
+                cal.set(Calendar.DAY_OF_WEEK, day + 1); // +1 because Calendar.SUNDAY is 1
+                workout.setScheduledDate(cal.getTimeInMillis());
+
+                plan.addWorkout(workout);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Create the workout for a day of the plan
+     * @param week Week number (1-based)
+     * @param day Workout number in the week (1-based)
+     * @return New workout with its segments
+     */
+    private CoachingWorkout createWorkout(int week, int day) {
+        CoachingWorkout workout = new CoachingWorkout(getWorkoutId(id, week, day));
+        boolean evenWeek = week % 2 == 0;
+
+        if (day == 1) {
+            // First day: Easy run
+            workout.setName("Easy Run");
+            workout.setType(CoachingWorkout.TYPE_ENDURANCE);
+            workout.addSegment(warmup(5, "Start with a gentle warm-up"));
+            workout.addSegment(active((20 + (week * 2)) * 60, 6.0, 7.0,
+                    CoachingWorkout.WorkoutSegment.INTENSITY_EASY, "Keep a conversational pace"));
+            workout.addSegment(cooldown(5));
+
+        } else if (day == workoutsPerWeek - 1 && evenWeek) {
+            // Second-to-last day in even weeks: Tempo run
+            workout.setName("Tempo Run");
+            workout.setType(CoachingWorkout.TYPE_TEMPO);
+            workout.addSegment(warmup(10, "Start with a gentle warm-up"));
+            workout.addSegment(active((15 + week) * 60, 5.0, 5.5,
+                    CoachingWorkout.WorkoutSegment.INTENSITY_MODERATE,
+                    "Maintain a challenging but sustainable pace"));
+            workout.addSegment(cooldown(10));
+
+        } else if (day == workoutsPerWeek - 1) {
+            // Second-to-last day in odd weeks: Interval run
+            workout.setName("Interval Training");
+            workout.setType(CoachingWorkout.TYPE_INTERVAL);
+            workout.addSegment(warmup(10, "Start with a gentle warm-up"));
+
+            int intervals = 4 + (week / 2); // Increases with weeks
+            for (int i = 0; i < intervals; i++) {
+                workout.addSegment(active(60, 4.0, 4.5,
+                        CoachingWorkout.WorkoutSegment.INTENSITY_HARD, "Push hard for this interval"));
+
+                CoachingWorkout.WorkoutSegment recovery = active(90, 7.0, 8.0,
+                        CoachingWorkout.WorkoutSegment.INTENSITY_EASY, "Recover with a gentle jog");
+                recovery.setType(CoachingWorkout.WorkoutSegment.TYPE_RECOVERY);
+                workout.addSegment(recovery);
+            }
+            workout.addSegment(cooldown(10));
+
+        } else if (day == workoutsPerWeek) {
+            // Last day: Long run, longer for more advanced plans
+            workout.setName("Long Run");
+            workout.setType(CoachingWorkout.TYPE_ENDURANCE);
+            workout.addSegment(warmup(10, "Start with a gentle warm-up"));
+            workout.addSegment(active((getLongRunBaseMinutes() + (week * 5)) * 60, 6.0, 7.0,
+                    CoachingWorkout.WorkoutSegment.INTENSITY_EASY, "Keep a comfortable, sustainable pace"));
+            workout.addSegment(cooldown(10));
+
+        } else if (evenWeek) {
+            // Other days in even weeks: Recovery run
+            workout.setName("Recovery Run");
+            workout.setType(CoachingWorkout.TYPE_RECOVERY);
+            workout.addSegment(warmup(5, "Start with a gentle warm-up"));
+            workout.addSegment(active(25 * 60, 6.5, 7.5,
+                    CoachingWorkout.WorkoutSegment.INTENSITY_EASY, "Keep it very easy, focus on recovery"));
+            workout.addSegment(cooldown(5));
+
+        } else {
+            // Other days in odd weeks: Speed work
+            workout.setName("Speed Work");
+            workout.setType(CoachingWorkout.TYPE_SPEED);
+            workout.addSegment(warmup(10, "Start with a thorough warm-up"));
+            workout.addSegment(active(20 * 60, 6.0, 6.5,
+                    CoachingWorkout.WorkoutSegment.INTENSITY_MODERATE,
+                    "Include 6-8 strides of 20 seconds during this run"));
+            workout.addSegment(cooldown(10));
+        }
+
+        return workout;
+    }
+
+    /**
+     * Get the long run duration in the first week, before the weekly increase
+     * @return Duration in minutes
+     */
+    private int getLongRunBaseMinutes() {
+        if (difficulty == CoachingPlan.DIFFICULTY_INTERMEDIATE) {
+            return 40;
+        } else if (difficulty == CoachingPlan.DIFFICULTY_ADVANCED) {
+            return 50;
+        }
+        return 30;
+    }
+
+    private static CoachingWorkout.WorkoutSegment warmup(int minutes, String instructions) {
+        CoachingWorkout.WorkoutSegment segment = new CoachingWorkout.WorkoutSegment(
+                CoachingWorkout.WorkoutSegment.TYPE_WARMUP, minutes * 60);
+        segment.setInstructions(instructions);
+        return segment;
+    }
+
+    private static CoachingWorkout.WorkoutSegment cooldown(int minutes) {
+        CoachingWorkout.WorkoutSegment segment = new CoachingWorkout.WorkoutSegment(
+                CoachingWorkout.WorkoutSegment.TYPE_COOLDOWN, minutes * 60);
+        segment.setInstructions("Cool down with a gentle jog or walk");
+        return segment;
+    }
+
+    private static CoachingWorkout.WorkoutSegment active(int seconds, double paceMin, double paceMax,
+                                                         int intensity, String instructions) {
+        CoachingWorkout.WorkoutSegment segment = new CoachingWorkout.WorkoutSegment(
+                CoachingWorkout.WorkoutSegment.TYPE_ACTIVE, seconds);
+        segment.setTargetPaceMin(paceMin); // min/km
+        segment.setTargetPaceMax(paceMax); // min/km
+        segment.setIntensity(intensity);
+        segment.setInstructions(instructions);
+        return segment;
+    }
+}
@@ -0,0 +1,164 @@
+package com.runtracker.android.data.models;
+
+import com.runtracker.android.data.metrics.Geohash;
+import com.runtracker.android.data.metrics.TrackSimplifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact description of the course a run followed: its simplified track, the geohash
+ * cells of its start and end, and the sequence of cells it passes through
+ */
+public class RouteFingerprint {
+
+    // Points closer than this to the simplified track are dropped
+    public static final double SIMPLIFY_TOLERANCE = 0.02; // kilometers
+
+    // Cells of about 150 m, the same as the spatial index
+    public static final int CELL_PRECISION = RunFootprint.CELL_PRECISION;
+
+    // Spacing at which the simplified track is walked to list its cells
+    private static final double CELL_SPACING = 0.05; // kilometers
+
+    private final String runId;
+    private final String courseId;
+    private final long startTime;
+    private final long duration;
+    private final double distance;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final String startCell;
+    private final String endCell;
+    private final List<String> cells;
+
+    private RouteFingerprint(String runId, String courseId, long startTime, long duration, double distance,
+                             double[] latitudes, double[] longitudes, List<String> cells) {
+        this.runId = runId;
+        this.courseId = courseId;
+        this.startTime = startTime;
+        this.duration = duration;
+        this.distance = distance;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.startCell = cells.isEmpty() ? null : cells.get(0);
+        this.endCell = cells.isEmpty() ? null : cells.get(cells.size() - 1);
+        this.cells = cells;
+    }
+
+    /**
+     * Build the fingerprint of a run
+     * @param run Completed run
+     * @return Fingerprint without a course, or null if the run has fewer than two points
+     */
+    public static RouteFingerprint of(Run run) {
+        List<Run.LocationPoint> points = run.getLocationPoints();
+        if (points.size() < 2) {
+            return null;
+        }
+
+        double[] latitudes = new double[points.size()];
+        double[] longitudes = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            latitudes[i] = points.get(i).getLatitude();
+            longitudes[i] = points.get(i).getLongitude();
+        }
+        double[][] simplified = TrackSimplifier.simplify(latitudes, longitudes, SIMPLIFY_TOLERANCE);
+
+        // Walk the simplified track, listing each cell once per visit
+        double[][] walked = TrackSimplifier.resample(simplified[0], simplified[1], CELL_SPACING);
+        List<String> cells = new ArrayList<>();
+        for (int i = 0; i < walked[0].length; i++) {
+            String cell = Geohash.encode(walked[0][i], walked[1][i], CELL_PRECISION);
+            if (cells.isEmpty() || !cells.get(cells.size() - 1).equals(cell)) {
+                cells.add(cell);
+            }
+        }
+
+        return new RouteFingerprint(run.getId(), null, run.getStartTime(), run.getActiveDuration(),
+                run.getTotalDistance(), simplified[0], simplified[1], cells);
+    }
+
+    /**
+     * Get a copy of this fingerprint assigned to a course
+     * @param courseId Course ID
+     * @return Fingerprint with the course set
+     */
+    public RouteFingerprint withCourse(String courseId) {
+        return new RouteFingerprint(runId, courseId, startTime, duration, distance,
+                latitudes, longitudes, cells);
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    /**
+     * Get the course the run belongs to
+     * @return Course ID, or null if not assigned yet
+     */
+    public String getCourseId() {
+        return courseId;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Get the active duration of the run
+     * @return Duration in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Get the distance of the run
+     * @return Distance in kilometers
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Get the average pace of the run, which compares attempts that differ a little in
+     * length fairly
+     * @return Pace in minutes per kilometer, or 0 if the run covered no distance
+     */
+    public double getPace() {
+        return distance > 0 ? duration / 60000.0 / distance : 0;
+    }
+
+    public double[] getLatitudes() {
+        return latitudes;
+    }
+
+    public double[] getLongitudes() {
+        return longitudes;
+    }
+
+    /**
+     * Get the cell the run started in
+     * @return Geohash at CELL_PRECISION, or null if the track has no cells
+     */
+    public String getStartCell() {
+        return startCell;
+    }
+
+    /**
+     * Get the cell the run ended in
+     * @return Geohash at CELL_PRECISION, or null if the track has no cells
+     */
+    public String getEndCell() {
+        return endCell;
+    }
+
+    /**
+     * Get the cells along the track
+     * @return Geohashes at CELL_PRECISION in the order visited
+     */
+    public List<String> getCells() {
+        return cells;
+    }
+}
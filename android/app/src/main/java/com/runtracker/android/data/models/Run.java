@@ -1,7 +1,13 @@
 package com.runtracker.android.data.models;
 
+import com.runtracker.android.data.metrics.ElevationFilter;
+import com.runtracker.android.data.metrics.ElevationProfileBuilder;
+import com.runtracker.android.data.metrics.SplitCalculator;
+import com.runtracker.android.utils.Constants;
+
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
@@ -17,8 +23,21 @@ public class Run implements Serializable {
     private final List<PauseInterval> pauseIntervals;
     private long totalTimePaused;
     private double totalDistance; // in kilometers
-    private double pace; // in minutes per kilometer
+    private double pace; // average over the whole run, in minutes per kilometer
     private int caloriesBurned;
+    private List<Split> kilometerSplits;
+    private List<Split> mileSplits;
+    private double elevationGain; // in meters
+    private double elevationLoss; // in meters
+    private ElevationProfile elevationProfile;
+    
+    // Split state while the run is being recorded, rebuilt from the split lists if needed
+    private transient SplitCalculator kilometerSplitter;
+    private transient SplitCalculator mileSplitter;
+    
+    // Elevation state while the run is being recorded, rebuilt from the points if needed
+    private transient ElevationFilter elevationFilter;
+    private transient ElevationProfileBuilder profileBuilder;
     
     /**
      * Creates a new Run instance with the current time as start time
@@ -33,6 +52,29 @@ public class Run implements Serializable {
         this.totalDistance = 0;
         this.pace = 0;
         this.caloriesBurned = 0;
+        this.kilometerSplits = new ArrayList<>();
+        this.mileSplits = new ArrayList<>();
+    }
+    
+    /**
+     * Creates a copy of a run that shares its immutable points
+     * @param other Run to copy
+     */
+    private Run(Run other) {
+        this.id = other.id;
+        this.startTime = other.startTime;
+        this.endTime = other.endTime;
+        this.locationPoints = new ArrayList<>(other.locationPoints);
+        this.pauseIntervals = new ArrayList<>(other.pauseIntervals);
+        this.totalTimePaused = other.totalTimePaused;
+        this.totalDistance = other.totalDistance;
+        this.pace = other.pace;
+        this.caloriesBurned = other.caloriesBurned;
+        this.kilometerSplits = other.kilometerSplits;
+        this.mileSplits = other.mileSplits;
+        this.elevationGain = other.elevationGain;
+        this.elevationLoss = other.elevationLoss;
+        this.elevationProfile = other.elevationProfile;
     }
     
     /**
@@ -42,7 +84,16 @@ public class Run implements Serializable {
      * @param timestamp Timestamp of the location point
      */
     public void addLocationPoint(double latitude, double longitude, long timestamp) {
-        LocationPoint point = new LocationPoint(latitude, longitude, timestamp);
+        addLocationPoint(new LocationPoint(latitude, longitude, timestamp));
+    }
+    
+    /**
+     * Add a location point to the run
+     * @param point Location point, with or without altitude
+     */
+    public void addLocationPoint(LocationPoint point) {
+        // Catch up on the points so far before the elevation state sees this one
+        ensureElevationState();
         locationPoints.add(point);
         
         // Update total distance if we have at least two points
@@ -50,7 +101,7 @@ public class Run implements Serializable {
             LocationPoint previousPoint = locationPoints.get(locationPoints.size() - 2);
             double distance = calculateDistance(
                     previousPoint.latitude, previousPoint.longitude,
-                    latitude, longitude);
+                    point.latitude, point.longitude);
             totalDistance += distance;
             
             // Update pace if we have a valid duration and distance
@@ -59,6 +110,50 @@ public class Run implements Serializable {
                 pace = (activeDuration / 60000.0) / totalDistance; // Convert ms to minutes
             }
         }
+        
+        // Record any split boundaries crossed since the previous point
+        long activeTime = point.timestamp - startTime - totalTimePaused;
+        getSplitter(Constants.UNIT_KILOMETERS).addSample(activeTime, totalDistance);
+        getSplitter(Constants.UNIT_MILES).addSample(activeTime, totalDistance);
+        
+        addElevation(point, totalDistance);
+    }
+    
+    /**
+     * Feed a point's altitude to the elevation filter and profile
+     * @param point Location point
+     * @param distance Distance covered at the point in kilometers
+     */
+    private void addElevation(LocationPoint point, double distance) {
+        if (point.hasAltitude) {
+            double altitude = elevationFilter.add(point.altitude);
+            profileBuilder.add(distance, altitude);
+            elevationGain = elevationFilter.getGain();
+            elevationLoss = elevationFilter.getLoss();
+        }
+    }
+    
+    /**
+     * Create the elevation state if needed, e.g. after the run was restored from storage,
+     * by replaying the points recorded so far
+     */
+    private void ensureElevationState() {
+        if (elevationFilter != null) {
+            return;
+        }
+        
+        elevationFilter = new ElevationFilter();
+        profileBuilder = new ElevationProfileBuilder();
+        double distance = 0;
+        for (int i = 0; i < locationPoints.size(); i++) {
+            LocationPoint point = locationPoints.get(i);
+            if (i > 0) {
+                LocationPoint previous = locationPoints.get(i - 1);
+                distance += calculateDistance(previous.latitude, previous.longitude,
+                        point.latitude, point.longitude);
+            }
+            addElevation(point, distance);
+        }
     }
     
     /**
@@ -101,6 +196,55 @@ public class Run implements Serializable {
                 totalTimePaused += lastPause.getDuration();
             }
         }
+        
+        // Close the last, partial splits
+        long activeDuration = getActiveDuration();
+        getSplitter(Constants.UNIT_KILOMETERS).finish(activeDuration, totalDistance);
+        getSplitter(Constants.UNIT_MILES).finish(activeDuration, totalDistance);
+        kilometerSplitter = null;
+        mileSplitter = null;
+        
+        // Keep the downsampled profile for charts
+        ensureElevationState();
+        if (!profileBuilder.isEmpty()) {
+            elevationProfile = profileBuilder.build();
+        }
+        elevationFilter = null;
+        profileBuilder = null;
+    }
+    
+    /**
+     * Get the split calculator for a unit, creating it from the recorded splits if needed
+     * @param unit Constants.UNIT_KILOMETERS or Constants.UNIT_MILES
+     * @return Split calculator
+     */
+    private SplitCalculator getSplitter(int unit) {
+        if (unit == Constants.UNIT_MILES) {
+            if (mileSplitter == null) {
+                if (mileSplits == null) {
+                    mileSplits = new ArrayList<>();
+                }
+                mileSplitter = new SplitCalculator(unit, mileSplits);
+            }
+            return mileSplitter;
+        } else {
+            if (kilometerSplitter == null) {
+                if (kilometerSplits == null) {
+                    kilometerSplits = new ArrayList<>();
+                }
+                kilometerSplitter = new SplitCalculator(unit, kilometerSplits);
+            }
+            return kilometerSplitter;
+        }
+    }
+    
+    /**
+     * Check if splits still need to be computed for this run, e.g. runs recorded before
+     * splits were tracked
+     * @return True if the run is finished, has distance but no splits
+     */
+    public boolean needsSplits() {
+        return isFinished() && totalDistance > 0 && getSplits(Constants.UNIT_KILOMETERS).isEmpty();
     }
     
     /**
@@ -152,7 +296,7 @@ public class Run implements Serializable {
      * @param lon2 Longitude of second point
      * @return Distance in kilometers
      */
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
+    public static double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
         final int R = 6371; // Radius of the earth in km
         
         double latDistance = Math.toRadians(lat2 - lat1);
@@ -203,6 +347,56 @@ public class Run implements Serializable {
         return caloriesBurned;
     }
     
+    /**
+     * Get the elevation gained, after smoothing out GPS altitude noise
+     * @return Elevation gain in meters
+     */
+    public double getElevationGain() {
+        return elevationGain;
+    }
+    
+    /**
+     * Get the elevation lost, after smoothing out GPS altitude noise
+     * @return Elevation loss in meters
+     */
+    public double getElevationLoss() {
+        return elevationLoss;
+    }
+    
+    /**
+     * Get the downsampled elevation profile of a finished run
+     * @return Profile, or null if the run is not finished or recorded no altitude
+     */
+    public ElevationProfile getElevationProfile() {
+        return elevationProfile;
+    }
+    
+    /**
+     * Get the splits for a unit. The last split may be shorter than a full unit.
+     * @param unit Constants.UNIT_KILOMETERS or Constants.UNIT_MILES
+     * @return Splits in order
+     */
+    public List<Split> getSplits(int unit) {
+        // Runs stored before splits were tracked have none; don't write to them here,
+        // finished runs are read from several threads
+        List<Split> splits = unit == Constants.UNIT_MILES ? mileSplits : kilometerSplits;
+        return splits != null ? splits : Collections.<Split>emptyList();
+    }
+    
+    /**
+     * Get a copy of a finished run with its splits replaced. The run itself is left
+     * untouched, since other threads may be reading it.
+     * @param kilometerSplits Kilometer splits
+     * @param mileSplits Mile splits
+     * @return Updated copy of the run
+     */
+    public Run withSplits(List<Split> kilometerSplits, List<Split> mileSplits) {
+        Run copy = new Run(this);
+        copy.kilometerSplits = kilometerSplits;
+        copy.mileSplits = mileSplits;
+        return copy;
+    }
+    
     /**
      * LocationPoint inner class to store location data
      */
@@ -210,11 +404,30 @@ public class Run implements Serializable {
         private final double latitude;
         private final double longitude;
         private final long timestamp;
+        private final double altitude;
+        private final boolean hasAltitude;
         
         public LocationPoint(double latitude, double longitude, long timestamp) {
             this.latitude = latitude;
             this.longitude = longitude;
             this.timestamp = timestamp;
+            this.altitude = 0;
+            this.hasAltitude = false;
+        }
+        
+        /**
+         * Constructor for a fix with an altitude
+         * @param latitude Latitude
+         * @param longitude Longitude
+         * @param altitude Altitude in meters above the WGS 84 ellipsoid
+         * @param timestamp Timestamp of the fix
+         */
+        public LocationPoint(double latitude, double longitude, double altitude, long timestamp) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timestamp = timestamp;
+            this.altitude = altitude;
+            this.hasAltitude = true;
         }
         
         public double getLatitude() {
@@ -228,6 +441,79 @@ public class Run implements Serializable {
         public long getTimestamp() {
             return timestamp;
         }
+        
+        /**
+         * Get the raw GPS altitude
+         * @return Altitude in meters; only valid if hasAltitude()
+         */
+        public double getAltitude() {
+            return altitude;
+        }
+        
+        /**
+         * Check if the fix had an altitude; points recorded before altitude was stored don't
+         * @return True if the altitude is valid
+         */
+        public boolean hasAltitude() {
+            return hasAltitude;
+        }
+    }
+    
+    /**
+     * Split inner class to store the time taken for one kilometer or mile
+     */
+    public static class Split implements Serializable {
+        private final int number;
+        private final double distance;
+        private final long duration;
+        private final long elapsedTime;
+        
+        public Split(int number, double distance, long duration, long elapsedTime) {
+            this.number = number;
+            this.distance = distance;
+            this.duration = duration;
+            this.elapsedTime = elapsedTime;
+        }
+        
+        /**
+         * Get the split number, starting at 1
+         * @return Split number
+         */
+        public int getNumber() {
+            return number;
+        }
+        
+        /**
+         * Get the distance covered in this split
+         * @return Distance in kilometers
+         */
+        public double getDistance() {
+            return distance;
+        }
+        
+        /**
+         * Get the active time taken for this split
+         * @return Duration in milliseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+        
+        /**
+         * Get the active time from the start of the run to the end of this split
+         * @return Elapsed time in milliseconds
+         */
+        public long getElapsedTime() {
+            return elapsedTime;
+        }
+        
+        /**
+         * Get the pace of this split
+         * @return Pace in minutes per kilometer
+         */
+        public double getPace() {
+            return distance > 0 ? (duration / 60000.0) / distance : 0;
+        }
     }
     
     /**
@@ -0,0 +1,97 @@
+package com.runtracker.android.data.models;
+
+import com.runtracker.android.data.metrics.Geohash;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Where a run went: its bounding box and the geohash cells its track passes through
+ */
+public class RunFootprint {
+
+    // Cells of about 150 m; coarser cells are prefixes of these
+    public static final int CELL_PRECISION = 7;
+
+    // Gaps between fixes are filled in at this spacing so no cell along the way is missed
+    private static final double FILL_SPACING = 0.05; // kilometers
+
+    private final String runId;
+    private final long startTime;
+    private final BoundingBox bounds;
+    private final List<String> cells;
+
+    /**
+     * Constructor
+     * @param runId ID of the run
+     * @param startTime Start time of the run
+     * @param bounds Bounding box of the track
+     * @param cells Geohash cells of the track at CELL_PRECISION, sorted
+     */
+    public RunFootprint(String runId, long startTime, BoundingBox bounds, List<String> cells) {
+        this.runId = runId;
+        this.startTime = startTime;
+        this.bounds = bounds;
+        this.cells = cells;
+    }
+
+    /**
+     * Build the footprint of a run
+     * @param run The run
+     * @return Footprint, or null if the run has no location points
+     */
+    public static RunFootprint of(Run run) {
+        List<Run.LocationPoint> points = run.getLocationPoints();
+        if (points.isEmpty()) {
+            return null;
+        }
+
+        double minLat = 90, minLon = 180, maxLat = -90, maxLon = -180;
+        Set<String> cells = new TreeSet<>();
+        for (int i = 0; i < points.size(); i++) {
+            Run.LocationPoint point = points.get(i);
+            minLat = Math.min(minLat, point.getLatitude());
+            minLon = Math.min(minLon, point.getLongitude());
+            maxLat = Math.max(maxLat, point.getLatitude());
+            maxLon = Math.max(maxLon, point.getLongitude());
+            cells.add(Geohash.encode(point.getLatitude(), point.getLongitude(), CELL_PRECISION));
+
+            if (i > 0) {
+                Run.LocationPoint previous = points.get(i - 1);
+                int steps = (int) (Run.calculateDistance(previous.getLatitude(), previous.getLongitude(),
+                        point.getLatitude(), point.getLongitude()) / FILL_SPACING);
+                for (int step = 1; step < steps; step++) {
+                    double fraction = (double) step / steps;
+                    cells.add(Geohash.encode(
+                            previous.getLatitude() + (point.getLatitude() - previous.getLatitude()) * fraction,
+                            previous.getLongitude() + (point.getLongitude() - previous.getLongitude()) * fraction,
+                            CELL_PRECISION));
+                }
+            }
+        }
+        return new RunFootprint(run.getId(), run.getStartTime(),
+                new BoundingBox(minLat, minLon, maxLat, maxLon), new ArrayList<>(cells));
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Get the cells the track passes through
+     * @return Geohashes at CELL_PRECISION, sorted
+     */
+    public List<String> getCells() {
+        return cells;
+    }
+}
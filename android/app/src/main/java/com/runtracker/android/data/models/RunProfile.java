@@ -0,0 +1,66 @@
+package com.runtracker.android.data.models;
+
+/**
+ * Pace and elevation of a run against distance, downsampled for a chart of a given width
+ */
+public class RunProfile {
+
+    private final Series pace;
+    private final Series elevation;
+
+    /**
+     * Constructor
+     * @param pace Pace in minutes per kilometer
+     * @param elevation Altitude in meters, or null if the run recorded no altitude
+     */
+    public RunProfile(Series pace, Series elevation) {
+        this.pace = pace;
+        this.elevation = elevation;
+    }
+
+    /**
+     * Get the pace series
+     * @return Pace in minutes per kilometer against distance in kilometers
+     */
+    public Series getPace() {
+        return pace;
+    }
+
+    /**
+     * Get the elevation series
+     * @return Altitude in meters against distance in kilometers, or null if not recorded
+     */
+    public Series getElevation() {
+        return elevation;
+    }
+
+    /**
+     * Series inner class to store values against distance
+     */
+    public static class Series {
+        private final double[] distances;
+        private final double[] values;
+
+        /**
+         * Constructor
+         * @param distances Distance of each point in kilometers, ascending
+         * @param values Value of each point
+         */
+        public Series(double[] distances, double[] values) {
+            this.distances = distances;
+            this.values = values;
+        }
+
+        public int size() {
+            return distances.length;
+        }
+
+        public double getDistance(int index) {
+            return distances[index];
+        }
+
+        public double getValue(int index) {
+            return values[index];
+        }
+    }
+}
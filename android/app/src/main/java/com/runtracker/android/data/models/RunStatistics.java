@@ -16,11 +16,11 @@ public class RunStatistics {
     private double averagePace; // min/km
     private int totalCalories;
     private int totalRuns;
-    private long bestPaceRunId;
+    private String bestPaceRunId;
     private double bestPace;
-    private long longestRunId;
+    private String longestRunId;
     private double longestRunDistance;
-    private long longestDurationRunId;
+    private String longestDurationRunId;
     private long longestDuration;
     
     // Weekly and monthly stats
@@ -55,11 +55,11 @@ public class RunStatistics {
         averagePace = 0;
         totalCalories = 0;
         totalRuns = 0;
-        bestPaceRunId = -1;
+        bestPaceRunId = null;
         bestPace = Double.MAX_VALUE;
-        longestRunId = -1;
+        longestRunId = null;
         longestRunDistance = 0;
-        longestDurationRunId = -1;
+        longestDurationRunId = null;
         longestDuration = 0;
         
         weeklyDistances = new HashMap<>();
@@ -112,19 +112,19 @@ public class RunStatistics {
             double pace = run.getPace();
             if (pace > 0 && pace < bestPace) {
                 bestPace = pace;
-                bestPaceRunId = run.getId().hashCode();
+                bestPaceRunId = run.getId();
             }
             
             // Longest run (distance)
             if (run.getTotalDistance() > longestRunDistance) {
                 longestRunDistance = run.getTotalDistance();
-                longestRunId = run.getId().hashCode();
+                longestRunId = run.getId();
             }
             
             // Longest run (duration)
             if (run.getActiveDuration() > longestDuration) {
                 longestDuration = run.getActiveDuration();
-                longestDurationRunId = run.getId().hashCode();
+                longestDurationRunId = run.getId();
             }
             
             // Set calendar to run date
@@ -292,7 +292,7 @@ public class RunStatistics {
         return totalRuns;
     }
     
-    public long getBestPaceRunId() {
+    public String getBestPaceRunId() {
         return bestPaceRunId;
     }
     
@@ -300,7 +300,7 @@ public class RunStatistics {
         return bestPace;
     }
     
-    public long getLongestRunId() {
+    public String getLongestRunId() {
         return longestRunId;
     }
     
@@ -308,7 +308,7 @@ public class RunStatistics {
         return longestRunDistance;
     }
     
-    public long getLongestDurationRunId() {
+    public String getLongestDurationRunId() {
         return longestDurationRunId;
     }
     
@@ -0,0 +1,162 @@
+package com.runtracker.android.data.models;
+
+import android.content.SharedPreferences;
+
+import com.runtracker.android.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable, typed snapshot of the user's settings.
+ *
+ * A snapshot is built once per preference change by the SettingsManager, so code that
+ * runs on every location fix or coaching update reads plain fields instead of going
+ * through SharedPreferences.
+ */
+public class Settings {
+
+    private final int distanceUnit;
+    private final boolean audioCuesEnabled;
+    private final boolean milestoneAlertsEnabled;
+    private final boolean periodicCuesEnabled;
+    private final long cueInterval;
+    private final double[] customMilestones;
+    private final boolean coachingEnabled;
+    private final int coachingType;
+    private final String activePlanId;
+
+    /**
+     * Private constructor, use {@link #from(SharedPreferences)}
+     */
+    private Settings(SharedPreferences preferences) {
+        this.distanceUnit = readDistanceUnit(preferences);
+        this.audioCuesEnabled = preferences.getBoolean(Constants.PREF_AUDIO_CUES_ENABLED, true);
+        this.milestoneAlertsEnabled = preferences.getBoolean(Constants.PREF_MILESTONE_CUES, true);
+        this.periodicCuesEnabled = preferences.getBoolean(Constants.PREF_PERIODIC_CUES, true);
+        this.cueInterval = Math.max(1, preferences.getInt(Constants.PREF_CUE_INTERVAL,
+                Constants.DEFAULT_CUE_INTERVAL_MINUTES)) * 60000L;
+        this.customMilestones = parseMilestones(preferences.getString(Constants.PREF_CUSTOM_MILESTONES, ""));
+        this.coachingEnabled = preferences.getBoolean(Constants.PREF_COACHING_ENABLED, true);
+        this.coachingType = preferences.getInt(Constants.PREF_COACHING_TYPE, Constants.COACHING_TYPE_BASIC);
+        this.activePlanId = preferences.getString(Constants.PREF_ACTIVE_PLAN_ID, null);
+    }
+
+    /**
+     * Read a snapshot of the current preferences
+     * @param preferences Shared preferences
+     * @return New snapshot
+     */
+    public static Settings from(SharedPreferences preferences) {
+        return new Settings(preferences);
+    }
+
+    /**
+     * Read the distance unit, which is stored as "km" or "mi"
+     * @param preferences Shared preferences
+     * @return Constants.UNIT_KILOMETERS or Constants.UNIT_MILES
+     */
+    private static int readDistanceUnit(SharedPreferences preferences) {
+        try {
+            String unit = preferences.getString(Constants.PREF_DISTANCE_UNIT, Constants.UNIT_KM);
+            return Constants.UNIT_MI.equals(unit) ? Constants.UNIT_MILES : Constants.UNIT_KILOMETERS;
+        } catch (ClassCastException e) {
+            // Older versions stored the unit as an int
+            return preferences.getInt(Constants.PREF_DISTANCE_UNIT, Constants.UNIT_KILOMETERS);
+        }
+    }
+
+    /**
+     * Parse a comma separated list of milestone distances, skipping invalid entries
+     * @param value Preference value
+     * @return Distances in the user's distance unit
+     */
+    private static double[] parseMilestones(String value) {
+        List<Double> distances = new ArrayList<>();
+        for (String part : value.split(",")) {
+            try {
+                double distance = Double.parseDouble(part.trim());
+                if (distance > 0) {
+                    distances.add(distance);
+                }
+            } catch (NumberFormatException e) {
+                // Ignore anything that is not a number
+            }
+        }
+
+        double[] result = new double[distances.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = distances.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Get the distance unit
+     * @return Constants.UNIT_KILOMETERS or Constants.UNIT_MILES
+     */
+    public int getDistanceUnit() {
+        return distanceUnit;
+    }
+
+    /**
+     * Check if distances are shown in kilometers
+     * @return true for kilometers, false for miles
+     */
+    public boolean isMetric() {
+        return distanceUnit != Constants.UNIT_MILES;
+    }
+
+    public boolean isAudioCuesEnabled() {
+        return audioCuesEnabled;
+    }
+
+    public boolean isMilestoneAlertsEnabled() {
+        return milestoneAlertsEnabled;
+    }
+
+    public boolean isPeriodicCuesEnabled() {
+        return periodicCuesEnabled;
+    }
+
+    /**
+     * Get the time between periodic status cues
+     * @return Interval in milliseconds
+     */
+    public long getCueInterval() {
+        return cueInterval;
+    }
+
+    /**
+     * Get the user-defined milestone distances
+     * @return Distances in the distance unit; do not modify
+     */
+    public double[] getCustomMilestones() {
+        return customMilestones;
+    }
+
+    public boolean isCoachingEnabled() {
+        return coachingEnabled;
+    }
+
+    public int getCoachingType() {
+        return coachingType;
+    }
+
+    public String getActivePlanId() {
+        return activePlanId;
+    }
+
+    /**
+     * Check if another snapshot announces the same milestones
+     * @param other Other snapshot, may be null
+     * @return true if unit, milestone alerts and custom milestones are unchanged
+     */
+    public boolean hasSameMilestones(Settings other) {
+        return other != null
+                && distanceUnit == other.distanceUnit
+                && milestoneAlertsEnabled == other.milestoneAlertsEnabled
+                && Arrays.equals(customMilestones, other.customMilestones);
+    }
+}
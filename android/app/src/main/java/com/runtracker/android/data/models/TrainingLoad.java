@@ -0,0 +1,65 @@
+package com.runtracker.android.data.models;
+
+/**
+ * Training load on one day: the day's own load, fatigue, fitness and form
+ */
+public class TrainingLoad {
+
+    private final long day;
+    private final double load;
+    private final double acute;
+    private final double chronic;
+    private final double balance;
+
+    /**
+     * Constructor
+     * @param day Epoch day
+     * @param load Load of the runs on the day
+     * @param acute Acute load (fatigue) at the end of the day
+     * @param chronic Chronic load (fitness) at the end of the day
+     * @param balance Training balance (form) going into the day
+     */
+    public TrainingLoad(long day, double load, double acute, double chronic, double balance) {
+        this.day = day;
+        this.load = load;
+        this.acute = acute;
+        this.chronic = chronic;
+        this.balance = balance;
+    }
+
+    /**
+     * Get the day
+     * @return Epoch day in local time
+     */
+    public long getDay() {
+        return day;
+    }
+
+    public double getLoad() {
+        return load;
+    }
+
+    /**
+     * Get the acute load, i.e. fatigue
+     * @return Acute load
+     */
+    public double getAcute() {
+        return acute;
+    }
+
+    /**
+     * Get the chronic load, i.e. fitness
+     * @return Chronic load
+     */
+    public double getChronic() {
+        return chronic;
+    }
+
+    /**
+     * Get the training balance, i.e. form. Negative means fatigue outweighs fitness.
+     * @return Training balance
+     */
+    public double getBalance() {
+        return balance;
+    }
+}
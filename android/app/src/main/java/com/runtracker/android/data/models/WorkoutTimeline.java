@@ -0,0 +1,237 @@
+package com.runtracker.android.data.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, precompiled timeline of a coaching workout.
+ *
+ * Segments are flattened with their repeats expanded, and each entry gets an absolute
+ * start and end offset from the start of the workout. Finding the entry for a given
+ * active time is a binary search over the start offsets. Voice coaching, the tracking
+ * notification and the track screen all read the same timeline, so they always agree on
+ * which segment the runner is in.
+ */
+public class WorkoutTimeline {
+
+    private final List<Entry> entries;
+    private final long[] startTimes;
+    private final long totalDuration;
+
+    /**
+     * Private constructor, use {@link #compile(CoachingWorkout)}
+     * @param entries Timeline entries in order
+     */
+    private WorkoutTimeline(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.startTimes = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            startTimes[i] = entries.get(i).startTime;
+        }
+        this.totalDuration = entries.isEmpty() ? 0 : entries.get(entries.size() - 1).endTime;
+    }
+
+    /**
+     * Compile a workout into a timeline
+     * @param workout The workout
+     * @return Compiled timeline
+     */
+    public static WorkoutTimeline compile(CoachingWorkout workout) {
+        List<Entry> entries = new ArrayList<>();
+        long offset = 0;
+
+        for (CoachingWorkout.WorkoutSegment segment : workout.getSegments()) {
+            int repeats = Math.max(1, segment.getRepeats());
+            long duration = segment.getDuration() * 1000L;
+
+            // Zero-length segments can never be active, so they are left out
+            if (duration <= 0) {
+                continue;
+            }
+
+            for (int repeat = 1; repeat <= repeats; repeat++) {
+                entries.add(new Entry(entries.size(), segment, repeat, repeats,
+                        offset, offset + duration));
+                offset += duration;
+            }
+        }
+
+        return new WorkoutTimeline(entries);
+    }
+
+    /**
+     * Find the index of the entry that is active at a given time
+     * @param activeTime Active time since the start of the workout in milliseconds
+     * @return Entry index, or {@link #size()} once the workout is over
+     */
+    public int indexAt(long activeTime) {
+        if (activeTime >= totalDuration) {
+            return entries.size();
+        }
+
+        // Last entry starting at or before the given time
+        int index = Arrays.binarySearch(startTimes, activeTime);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return Math.max(0, index);
+    }
+
+    /**
+     * Get the entry that is active at a given time
+     * @param activeTime Active time since the start of the workout in milliseconds
+     * @return Entry, or null once the workout is over
+     */
+    public Entry getEntryAt(long activeTime) {
+        int index = indexAt(activeTime);
+        return index < entries.size() ? entries.get(index) : null;
+    }
+
+    /**
+     * Get an entry by index
+     * @param index Entry index
+     * @return Entry
+     */
+    public Entry getEntry(int index) {
+        return entries.get(index);
+    }
+
+    /**
+     * Get all entries in order
+     * @return Unmodifiable list of entries
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Get the number of entries, with repeats expanded
+     * @return Number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Check if the timeline has no entries
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Get the total duration of the workout, including repeats
+     * @return Duration in milliseconds
+     */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * One segment repetition on the timeline
+     */
+    public static class Entry {
+        private final int index;
+        private final CoachingWorkout.WorkoutSegment segment;
+        private final int repeat;
+        private final int repeatCount;
+        private final long startTime;
+        private final long endTime;
+
+        private Entry(int index, CoachingWorkout.WorkoutSegment segment, int repeat, int repeatCount,
+                      long startTime, long endTime) {
+            this.index = index;
+            this.segment = segment;
+            this.repeat = repeat;
+            this.repeatCount = repeatCount;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public CoachingWorkout.WorkoutSegment getSegment() {
+            return segment;
+        }
+
+        public int getType() {
+            return segment.getType();
+        }
+
+        /**
+         * Get which repetition of the segment this is
+         * @return Repetition, starting at 1
+         */
+        public int getRepeat() {
+            return repeat;
+        }
+
+        public int getRepeatCount() {
+            return repeatCount;
+        }
+
+        /**
+         * Get the start offset from the start of the workout
+         * @return Start time in milliseconds
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * Get the end offset from the start of the workout
+         * @return End time in milliseconds
+         */
+        public long getEndTime() {
+            return endTime;
+        }
+
+        /**
+         * Get the duration of this entry
+         * @return Duration in milliseconds
+         */
+        public long getDuration() {
+            return endTime - startTime;
+        }
+
+        /**
+         * Get the time left in this entry
+         * @param activeTime Active time since the start of the workout in milliseconds
+         * @return Time remaining in milliseconds
+         */
+        public long getTimeRemaining(long activeTime) {
+            return Math.max(0, endTime - activeTime);
+        }
+
+        /**
+         * Get minimum target pace. Read from the segment, since target paces may be
+         * updated after the timeline is compiled.
+         * @return Minimum target pace in minutes per km
+         */
+        public double getTargetPaceMin() {
+            return segment.getTargetPaceMin();
+        }
+
+        /**
+         * Get maximum target pace, read from the segment
+         * @return Maximum target pace in minutes per km
+         */
+        public double getTargetPaceMax() {
+            return segment.getTargetPaceMax();
+        }
+
+        /**
+         * Check if pace matters in this entry
+         * @return true for segments other than rest and recovery
+         */
+        public boolean isActive() {
+            return segment.getType() != CoachingWorkout.WorkoutSegment.TYPE_REST &&
+                   segment.getType() != CoachingWorkout.WorkoutSegment.TYPE_RECOVERY;
+        }
+    }
+}
@@ -6,13 +6,23 @@ import android.util.Log;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import com.runtracker.android.data.metrics.SplitCalculator;
 import com.runtracker.android.data.models.Run;
+import com.runtracker.android.services.RunStoreCompactionJobService;
+import com.runtracker.android.services.SplitBackfillJobService;
+import com.runtracker.android.utils.Constants;
 
+import java.io.File;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 
 /**
  * Repository for managing Run data
@@ -23,14 +33,54 @@ public class RunRepository {
     private static final String PREF_NAME = "run_tracker_prefs";
     private static final String PREF_RUNS = "runs";
     private static final String PREF_CURRENT_RUN = "current_run";
+    private static final String PREF_RECLAIMED_BYTES = "store_reclaimed_bytes";
+    private static final String PREF_LAST_COMPACTION = "store_last_compaction";
+    private static final String STORE_DIRECTORY = "run_store";
+    
+    // Only rewrite segments that are at least half garbage
+    private static final double COMPACTION_DEAD_RATIO = 0.5;
     
     private static RunRepository instance;
     private final SharedPreferences sharedPreferences;
     private final Gson gson;
+    private final RunSegmentStore runStore;
     
-    private List<Run> runs;
+    // Completed runs. The list is never modified, only replaced under runsLock, so any
+    // thread can read the current snapshot without locking
+    private volatile List<Run> runs;
+    private final Object runsLock = new Object();
     private Run currentRun;
     
+    // Incremented whenever completed runs are added, removed or rewritten
+    private final AtomicLong modificationCount = new AtomicLong();
+    private final List<RunListener> listeners = new CopyOnWriteArrayList<>();
+    
+    /**
+     * Interface for components that keep derived data about completed runs
+     */
+    public interface RunListener {
+        /**
+         * Called on the caller's thread after a run has been completed and saved
+         * @param run The completed run
+         */
+        void onRunCompleted(Run run);
+        
+        /**
+         * Called on the caller's thread after a completed run has been deleted
+         * @param run The deleted run
+         */
+        void onRunDeleted(Run run);
+        
+        /**
+         * Called on the caller's thread after a stored run has been replaced with an
+         * updated copy, e.g. once its splits have been computed
+         * @param previousRun The run as it was before
+         * @param run The updated run
+         */
+        default void onRunUpdated(Run previousRun, Run run) {
+        }
+    }
+    
     /**
      * Get singleton instance of RunRepository
      * @param context Application context
@@ -50,38 +100,56 @@ public class RunRepository {
     private RunRepository(Context context) {
         sharedPreferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
         gson = new Gson();
+        runStore = new RunSegmentStore(new File(context.getFilesDir(), STORE_DIRECTORY), gson);
         loadRuns();
         loadCurrentRun();
+        
+        // Reclaim space from deleted runs while the device is idle and charging
+        RunStoreCompactionJobService.schedule(context);
+        
+        // Compute splits for runs recorded before splits were tracked
+        if (countRunsNeedingSplits() > 0) {
+            SplitBackfillJobService.schedule(context);
+        }
     }
     
     /**
-     * Load runs from SharedPreferences
+     * Load runs from the segment store, migrating the legacy SharedPreferences blob if present
      */
     private void loadRuns() {
+        List<Run> loadedRuns = runStore.load();
+        
         String runsJson = sharedPreferences.getString(PREF_RUNS, null);
         if (runsJson != null) {
             try {
                 Type type = new TypeToken<ArrayList<Run>>() {}.getType();
-                runs = gson.fromJson(runsJson, type);
+                List<Run> legacyRuns = gson.fromJson(runsJson, type);
+        
+                // Merge by ID, so repeating a migration that was cut short adds nothing twice
+                Set<String> storedIds = new HashSet<>();
+                for (Run run : loadedRuns) {
+                    storedIds.add(run.getId());
+                }
+                List<Run> missingRuns = new ArrayList<>();
+                if (legacyRuns != null) {
+                    for (Run run : legacyRuns) {
+                        if (run != null && storedIds.add(run.getId())) {
+                            missingRuns.add(run);
+                        }
+                    }
+                }
+        
+                // Only drop the blob once all of its runs are safely in the store
+                if (runStore.appendRuns(missingRuns)) {
+                    loadedRuns.addAll(missingRuns);
+                    sharedPreferences.edit().remove(PREF_RUNS).commit();
+                }
             } catch (Exception e) {
-                Log.e(TAG, "Error loading runs", e);
-                runs = new ArrayList<>();
+                Log.e(TAG, "Error migrating runs", e);
             }
-        } else {
-            runs = new ArrayList<>();
-        }
-    }
-    
-    /**
-     * Save runs to SharedPreferences
-     */
-    private void saveRuns() {
-        try {
-            String runsJson = gson.toJson(runs);
-            sharedPreferences.edit().putString(PREF_RUNS, runsJson).apply();
-        } catch (Exception e) {
-            Log.e(TAG, "Error saving runs", e);
         }
+        
+        runs = Collections.unmodifiableList(loadedRuns);
     }
     
     /**
@@ -117,6 +185,32 @@ public class RunRepository {
         }
     }
     
+    /**
+     * Add a listener for completed and deleted runs
+     * @param listener Listener to add
+     */
+    public void addListener(RunListener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+    
+    /**
+     * Remove a listener
+     * @param listener Listener to remove
+     */
+    public void removeListener(RunListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Get a counter that changes whenever completed runs change, e.g. to key caches
+     * @return Modification count
+     */
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+    
     /**
      * Get all runs
      * @return List of all runs
@@ -144,6 +238,16 @@ public class RunRepository {
         return completedRuns;
     }
     
+    /**
+     * Get all completed runs sorted by start time (oldest first), e.g. to replay history
+     * @return List of completed runs
+     */
+    public List<Run> getCompletedRunsOldestFirst() {
+        List<Run> completedRuns = getCompletedRuns();
+        Collections.reverse(completedRuns);
+        return completedRuns;
+    }
+    
     /**
      * Get a run by ID
      * @param id Run ID
@@ -225,13 +329,21 @@ public class RunRepository {
     public Run stopRun(int caloriesBurned) {
         if (currentRun != null && !currentRun.isFinished()) {
             currentRun.finish(System.currentTimeMillis(), caloriesBurned);
-            runs.add(currentRun);
-            saveRuns();
+            synchronized (runsLock) {
+                List<Run> updatedRuns = new ArrayList<>(runs);
+                updatedRuns.add(currentRun);
+                runs = Collections.unmodifiableList(updatedRuns);
+                runStore.appendRun(currentRun);
+                modificationCount.incrementAndGet();
+            }
             
             Run completedRun = currentRun;
             currentRun = null;
             saveCurrentRun();
             
+            for (RunListener listener : listeners) {
+                listener.onRunCompleted(completedRun);
+            }
             return completedRun;
         }
         return null;
@@ -244,22 +356,145 @@ public class RunRepository {
      */
     public boolean deleteRun(String id) {
         Run runToRemove = null;
-        for (Run run : runs) {
-            if (run.getId().equals(id)) {
-                runToRemove = run;
-                break;
+        synchronized (runsLock) {
+            List<Run> updatedRuns = new ArrayList<>(runs);
+            for (int i = 0; i < updatedRuns.size(); i++) {
+                if (updatedRuns.get(i).getId().equals(id)) {
+                    runToRemove = updatedRuns.remove(i);
+                    break;
+                }
+            }
+            
+            if (runToRemove != null) {
+                runs = Collections.unmodifiableList(updatedRuns);
+                // Only a tombstone is written; the record itself is reclaimed by compaction
+                runStore.appendTombstone(id);
+                modificationCount.incrementAndGet();
             }
         }
         
         if (runToRemove != null) {
-            runs.remove(runToRemove);
-            saveRuns();
+            for (RunListener listener : listeners) {
+                listener.onRunDeleted(runToRemove);
+            }
             return true;
         }
         
         return false;
     }
     
+    /**
+     * Count finished runs that have no splits yet
+     * @return Number of runs
+     */
+    private int countRunsNeedingSplits() {
+        int count = 0;
+        for (Run run : runs) {
+            if (run.needsSplits()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Compute and store splits for runs that don't have them yet.
+     * Safe to call from a background thread.
+     * @param cancelled Checked between runs; stops the backfill when it returns true
+     * @return True if all runs have splits, false if cancelled first
+     */
+    public boolean backfillSplits(BooleanSupplier cancelled) {
+        int updated = 0;
+        for (Run run : runs) {
+            if (cancelled.getAsBoolean()) {
+                Log.i(TAG, "Split backfill stopped after " + updated + " runs");
+                return false;
+            }
+            
+            if (run.needsSplits()) {
+                // Readers may hold the old run, so swap in an updated copy instead
+                Run updatedRun = run.withSplits(
+                        SplitCalculator.computeSplits(run, Constants.UNIT_KILOMETERS),
+                        SplitCalculator.computeSplits(run, Constants.UNIT_MILES));
+                if (replaceRun(run, updatedRun)) {
+                    updated++;
+                    for (RunListener listener : listeners) {
+                        listener.onRunUpdated(run, updatedRun);
+                    }
+                }
+            }
+        }
+        
+        Log.i(TAG, "Split backfill updated " + updated + " runs");
+        return true;
+    }
+    
+    /**
+     * Replace a completed run with an updated copy and store it
+     * @param previousRun Run as it was read
+     * @param updatedRun Updated copy of the run
+     * @return True if replaced, false if the run was deleted or replaced meanwhile
+     */
+    private boolean replaceRun(Run previousRun, Run updatedRun) {
+        synchronized (runsLock) {
+            int index = runs.indexOf(previousRun);
+            if (index < 0) {
+                return false;
+            }
+            
+            List<Run> updatedRuns = new ArrayList<>(runs);
+            updatedRuns.set(index, updatedRun);
+            runs = Collections.unmodifiableList(updatedRuns);
+            
+            // The superseded record is reclaimed by compaction
+            runStore.appendRun(updatedRun);
+            modificationCount.incrementAndGet();
+            return true;
+        }
+    }
+    
+    /**
+     * Rewrite store segments that are mostly made up of deleted or superseded runs.
+     * Safe to call from a background thread.
+     * @return Number of bytes reclaimed
+     */
+    public long compactStorage() {
+        long reclaimed = runStore.compact(COMPACTION_DEAD_RATIO);
+        
+        sharedPreferences.edit()
+                .putLong(PREF_RECLAIMED_BYTES, getReclaimedBytes() + reclaimed)
+                .putLong(PREF_LAST_COMPACTION, System.currentTimeMillis())
+                .apply();
+        
+        Log.i(TAG, "Compaction reclaimed " + reclaimed + " bytes, "
+                + runStore.getDeadBytes() + " of " + runStore.getTotalBytes() + " bytes still dead");
+        return reclaimed;
+    }
+    
+    /**
+     * Get the number of bytes reclaimed by compaction since install
+     * @return Reclaimed bytes
+     */
+    public long getReclaimedBytes() {
+        return sharedPreferences.getLong(PREF_RECLAIMED_BYTES, 0);
+    }
+    
+    /**
+     * Get the time of the last compaction
+     * @return Timestamp in milliseconds, or 0 if compaction has never run
+     */
+    public long getLastCompactionTime() {
+        return sharedPreferences.getLong(PREF_LAST_COMPACTION, 0);
+    }
+    
+    /**
+     * Get the number of bytes in the store held by deleted or superseded runs
+     * @return Dead bytes
+     */
+    public long getDeadStorageBytes() {
+        return runStore.getDeadBytes();
+    }
+    
     /**
      * Calculate total distance of all completed runs
      * @return Total distance in kilometers
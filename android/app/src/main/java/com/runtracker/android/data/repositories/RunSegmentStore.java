@@ -0,0 +1,564 @@
+package com.runtracker.android.data.repositories;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.runtracker.android.data.models.Run;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Append-only, segmented on-disk store for completed runs.
+ *
+ * Each segment is a text file of newline-terminated records. A record is either
+ * a run ("R " followed by the run's JSON) or a tombstone ("T " followed by a run ID).
+ * Replaying the segments in order yields the live set of runs: a later run record
+ * replaces an earlier one with the same ID, and a tombstone removes it.
+ *
+ * Writes only ever append to the newest (active) segment, so saving or deleting a
+ * run costs one short write instead of rewriting the whole history. Space held by
+ * superseded records is reclaimed later by {@link #compact(double)}.
+ */
+public class RunSegmentStore {
+
+    private static final String TAG = "RunSegmentStore";
+
+    private static final String SEGMENT_PREFIX = "runs_";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String RECORD_RUN = "R ";
+    private static final String RECORD_TOMBSTONE = "T ";
+
+    // Roll to a new segment once the active one grows past this size
+    private static final long MAX_SEGMENT_BYTES = 256 * 1024;
+
+    private final File directory;
+    private final Gson gson;
+
+    // Segment bookkeeping, keyed by segment number (oldest first)
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    // Location of the live record for every run ID
+    private final Map<String, RecordLocation> liveRecords = new HashMap<>();
+
+    private int activeSegment;
+
+    /**
+     * Per-segment accounting used to decide what is worth compacting
+     */
+    private static class Segment {
+        final int number;
+        long totalBytes;
+        long deadBytes;
+        // IDs of superseded run records still physically present in this segment
+        final Set<String> deadRunIds = new HashSet<>();
+
+        Segment(int number) {
+            this.number = number;
+        }
+
+        double getDeadRatio() {
+            return totalBytes > 0 ? (double) deadBytes / totalBytes : 0;
+        }
+    }
+
+    /**
+     * Where a live run record is stored
+     */
+    private static class RecordLocation {
+        final int segment;
+        final long length;
+
+        RecordLocation(int segment, long length) {
+            this.segment = segment;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param directory Directory that holds the segment files
+     * @param gson Gson instance used for run serialization
+     */
+    public RunSegmentStore(File directory, Gson gson) {
+        this.directory = directory;
+        this.gson = gson;
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create store directory " + directory);
+        }
+    }
+
+    /**
+     * Replay all segments and return the live runs.
+     * Leftover temporary files from an interrupted compaction are discarded.
+     * @return Live runs in the order they were written
+     */
+    public synchronized List<Run> load() {
+        segments.clear();
+        liveRecords.clear();
+
+        File[] files = directory.listFiles();
+        List<Integer> numbers = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    // The swap never happened, so the original segment is still intact
+                    if (!file.delete()) {
+                        Log.w(TAG, "Could not delete stale file " + name);
+                    }
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        numbers.add(Integer.parseInt(name.substring(
+                                SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        Log.w(TAG, "Ignoring unexpected file " + name);
+                    }
+                }
+            }
+        }
+
+        Integer[] sorted = numbers.toArray(new Integer[0]);
+        Arrays.sort(sorted);
+
+        Map<String, Run> runs = new LinkedHashMap<>();
+        for (int number : sorted) {
+            replaySegment(number, runs);
+        }
+
+        activeSegment = sorted.length > 0 ? sorted[sorted.length - 1] : 1;
+        if (!segments.containsKey(activeSegment)) {
+            segments.put(activeSegment, new Segment(activeSegment));
+        } else if (!endsWithNewline(segmentFile(activeSegment))) {
+            // Never append after a torn record; it would swallow the next one
+            rollSegment();
+        }
+
+        return new ArrayList<>(runs.values());
+    }
+
+    /**
+     * Replay a single segment into the live run map
+     * @param number Segment number
+     * @param runs Live runs by ID
+     */
+    private void replaySegment(int number, Map<String, Run> runs) {
+        Segment segment = new Segment(number);
+        segments.put(number, segment);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(segmentFile(number)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long length = recordLength(line);
+                segment.totalBytes += length;
+
+                if (line.startsWith(RECORD_RUN)) {
+                    Run run;
+                    try {
+                        run = gson.fromJson(line.substring(RECORD_RUN.length()), Run.class);
+                    } catch (Exception e) {
+                        // A torn write at the tail of a segment; treat it as garbage
+                        Log.w(TAG, "Skipping unreadable record in segment " + number, e);
+                        segment.deadBytes += length;
+                        continue;
+                    }
+                    markDead(run.getId());
+                    liveRecords.put(run.getId(), new RecordLocation(number, length));
+                    runs.put(run.getId(), run);
+                } else if (line.startsWith(RECORD_TOMBSTONE)) {
+                    String id = line.substring(RECORD_TOMBSTONE.length());
+                    markDead(id);
+                    runs.remove(id);
+                    if (!isTombstoneNeeded(id, number)) {
+                        segment.deadBytes += length;
+                    }
+                } else {
+                    segment.deadBytes += length;
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading segment " + number, e);
+        }
+    }
+
+    /**
+     * Append a run record, superseding any earlier record for the same run
+     * @param run Run to write
+     */
+    public synchronized void appendRun(Run run) {
+        String line = RECORD_RUN + gson.toJson(run);
+        long length = recordLength(line);
+        if (append(line)) {
+            markDead(run.getId());
+            liveRecords.put(run.getId(), new RecordLocation(activeSegment, length));
+        }
+    }
+
+    /**
+     * Write a batch of runs as a new segment in one step. The records go to a temporary
+     * file that is synced and then renamed into place, so a crash leaves either all of
+     * the runs in the store or none of them.
+     * @param runs Runs to write
+     * @return True if the runs were written
+     */
+    public synchronized boolean appendRuns(List<Run> runs) {
+        if (runs.isEmpty()) {
+            return true;
+        }
+
+        int number = activeSegment + 1;
+        File target = segmentFile(number);
+        File temp = new File(directory, target.getName() + TEMP_SUFFIX);
+
+        long[] lengths = new long[runs.size()];
+        long totalBytes = 0;
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            for (int i = 0; i < runs.size(); i++) {
+                byte[] bytes = (RECORD_RUN + gson.toJson(runs.get(i)) + "\n").getBytes(StandardCharsets.UTF_8);
+                out.write(bytes);
+                lengths[i] = bytes.length;
+                totalBytes += bytes.length;
+            }
+            out.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing segment " + number, e);
+            if (!temp.delete()) {
+                Log.w(TAG, "Could not delete " + temp.getName());
+            }
+            return false;
+        }
+
+        if (!temp.renameTo(target)) {
+            Log.e(TAG, "Could not move segment " + number + " into place");
+            if (!temp.delete()) {
+                Log.w(TAG, "Could not delete " + temp.getName());
+            }
+            return false;
+        }
+
+        // The batch becomes the active segment, so later records replay after it
+        Segment segment = new Segment(number);
+        segment.totalBytes = totalBytes;
+        segments.put(number, segment);
+        activeSegment = number;
+        for (int i = 0; i < runs.size(); i++) {
+            markDead(runs.get(i).getId());
+            liveRecords.put(runs.get(i).getId(), new RecordLocation(number, lengths[i]));
+        }
+        return true;
+    }
+
+    /**
+     * Append a tombstone for a run
+     * @param id Run ID
+     * @return True if a live record was removed
+     */
+    public synchronized boolean appendTombstone(String id) {
+        if (!liveRecords.containsKey(id)) {
+            return false;
+        }
+        String line = RECORD_TOMBSTONE + id;
+        if (append(line)) {
+            markDead(id);
+            if (!isTombstoneNeeded(id, activeSegment)) {
+                segments.get(activeSegment).deadBytes += recordLength(line);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Rewrite every sealed segment whose dead-byte ratio is at least the given threshold.
+     * Each rewrite goes to a temporary file that is synced and then renamed over the
+     * original, so a crash at any point leaves either the old or the new segment in place.
+     * @param minDeadRatio Minimum fraction of dead bytes (0-1) for a segment to be rewritten
+     * @return Number of bytes reclaimed
+     */
+    public synchronized long compact(double minDeadRatio) {
+        // Seal the active segment so it can be compacted on a later pass
+        Segment active = segments.get(activeSegment);
+        if (active != null && active.totalBytes > 0 && active.deadBytes > 0) {
+            rollSegment();
+        }
+
+        long reclaimed = 0;
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment.number == activeSegment || segment.deadBytes == 0
+                    || segment.getDeadRatio() < minDeadRatio) {
+                continue;
+            }
+            try {
+                reclaimed += rewriteSegment(segment);
+            } catch (IOException e) {
+                Log.e(TAG, "Error compacting segment " + segment.number, e);
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Copy the live records of a segment into a fresh file and swap it in
+     * @param segment Segment to rewrite
+     * @return Number of bytes reclaimed
+     */
+    private long rewriteSegment(Segment segment) throws IOException {
+        File source = segmentFile(segment.number);
+        File temp = new File(directory, source.getName() + TEMP_SUFFIX);
+
+        long keptBytes = 0;
+        Set<String> keptTombstones = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(source), StandardCharsets.UTF_8));
+             FileOutputStream out = new FileOutputStream(temp)) {
+            Set<String> seen = new HashSet<>();
+            String line;
+            // Segments are small, so read them whole; walking backwards makes the
+            // last record for an ID the one that is kept
+            List<String> lines = new ArrayList<>();
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            boolean[] keep = new boolean[lines.size()];
+            for (int i = lines.size() - 1; i >= 0; i--) {
+                String record = lines.get(i);
+                if (record.startsWith(RECORD_RUN)) {
+                    String id = extractRunId(record);
+                    RecordLocation location = id != null ? liveRecords.get(id) : null;
+                    keep[i] = location != null && location.segment == segment.number && seen.add(id);
+                } else if (record.startsWith(RECORD_TOMBSTONE)) {
+                    String id = record.substring(RECORD_TOMBSTONE.length());
+                    keep[i] = isTombstoneNeeded(id, segment.number) && keptTombstones.add(id);
+                }
+            }
+            for (int i = 0; i < lines.size(); i++) {
+                if (keep[i]) {
+                    byte[] bytes = (lines.get(i) + "\n").getBytes(StandardCharsets.UTF_8);
+                    out.write(bytes);
+                    keptBytes += bytes.length;
+                }
+            }
+            out.flush();
+            out.getFD().sync();
+        }
+
+        long reclaimed = segment.totalBytes - keptBytes;
+        if (keptBytes == 0) {
+            // Nothing left worth keeping; drop the segment entirely
+            if (!source.delete() || !temp.delete()) {
+                Log.w(TAG, "Could not remove empty segment " + segment.number);
+            }
+            segments.remove(segment.number);
+        } else {
+            if (!temp.renameTo(source)) {
+                throw new IOException("Could not swap compacted segment " + segment.number);
+            }
+            segment.totalBytes = keptBytes;
+            segment.deadBytes = 0;
+        }
+        segment.deadRunIds.clear();
+
+        // Tombstones in later segments may have become unnecessary
+        for (Segment later : segments.tailMap(segment.number, false).values()) {
+            later.deadBytes = countDeadTombstoneBytes(later);
+        }
+
+        return reclaimed;
+    }
+
+    /**
+     * Recount the dead bytes of a segment after an older segment has been compacted
+     * @param segment Segment to recount
+     * @return Dead bytes
+     */
+    private long countDeadTombstoneBytes(Segment segment) {
+        if (segment.totalBytes == 0) {
+            return 0;
+        }
+        long dead = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(segmentFile(segment.number)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long length = recordLength(line);
+                if (line.startsWith(RECORD_RUN)) {
+                    String id = extractRunId(line);
+                    RecordLocation location = id != null ? liveRecords.get(id) : null;
+                    if (location == null || location.segment != segment.number) {
+                        dead += length;
+                    }
+                } else if (line.startsWith(RECORD_TOMBSTONE)) {
+                    if (!isTombstoneNeeded(line.substring(RECORD_TOMBSTONE.length()), segment.number)) {
+                        dead += length;
+                    }
+                } else {
+                    dead += length;
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading segment " + segment.number, e);
+            return segment.deadBytes;
+        }
+        return dead;
+    }
+
+    /**
+     * Get the number of bytes currently occupied by superseded records
+     * @return Dead bytes across all segments
+     */
+    public synchronized long getDeadBytes() {
+        long dead = 0;
+        for (Segment segment : segments.values()) {
+            dead += segment.deadBytes;
+        }
+        return dead;
+    }
+
+    /**
+     * Get the total size of all segments
+     * @return Total bytes across all segments
+     */
+    public synchronized long getTotalBytes() {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.totalBytes;
+        }
+        return total;
+    }
+
+    /**
+     * Check whether the store holds any data
+     * @return True if no segment contains records
+     */
+    public synchronized boolean isEmpty() {
+        return getTotalBytes() == 0;
+    }
+
+    /**
+     * Mark the current live record for an ID, if any, as dead
+     * @param id Run ID
+     */
+    private void markDead(String id) {
+        RecordLocation previous = liveRecords.remove(id);
+        if (previous != null) {
+            Segment segment = segments.get(previous.segment);
+            if (segment != null) {
+                segment.deadBytes += previous.length;
+                segment.deadRunIds.add(id);
+            }
+        }
+    }
+
+    /**
+     * A tombstone must be kept while an older segment still holds a record it hides
+     * @param id Run ID
+     * @param tombstoneSegment Segment containing the tombstone
+     * @return True if the tombstone is still needed
+     */
+    private boolean isTombstoneNeeded(String id, int tombstoneSegment) {
+        for (Segment segment : segments.headMap(tombstoneSegment, false).values()) {
+            if (segment.deadRunIds.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Append a record to the active segment, rolling to a new segment when full
+     * @param line Record without trailing newline
+     * @return True if the record was written
+     */
+    private boolean append(String line) {
+        Segment segment = segments.get(activeSegment);
+        if (segment == null) {
+            segment = new Segment(activeSegment);
+            segments.put(activeSegment, segment);
+        } else if (segment.totalBytes >= MAX_SEGMENT_BYTES) {
+            segment = rollSegment();
+        }
+
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileOutputStream out = new FileOutputStream(segmentFile(activeSegment), true)) {
+            out.write(bytes);
+            out.getFD().sync();
+            segment.totalBytes += bytes.length;
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error appending to segment " + activeSegment, e);
+            return false;
+        }
+    }
+
+    /**
+     * Start a new active segment
+     * @return The new segment
+     */
+    private Segment rollSegment() {
+        activeSegment++;
+        Segment segment = new Segment(activeSegment);
+        segments.put(activeSegment, segment);
+        return segment;
+    }
+
+    /**
+     * Read the run ID of a run record without deserializing the whole run
+     * @param line Run record
+     * @return Run ID, or null if it cannot be found
+     */
+    private String extractRunId(String line) {
+        int key = line.indexOf("\"id\":\"");
+        if (key < 0) {
+            return null;
+        }
+        int start = key + 6;
+        int end = line.indexOf('"', start);
+        return end > start ? line.substring(start, end) : null;
+    }
+
+    /**
+     * Check whether a segment file ends on a record boundary
+     * @param file Segment file
+     * @return True if the file is empty or its last byte is a newline
+     */
+    private boolean endsWithNewline(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() == 0) {
+                return true;
+            }
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private long recordLength(String line) {
+        return line.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    private File segmentFile(int number) {
+        return new File(directory, String.format(Locale.US, "%s%06d%s",
+                SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+}
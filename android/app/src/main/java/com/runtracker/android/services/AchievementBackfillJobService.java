@@ -0,0 +1,72 @@
+package com.runtracker.android.services;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+
+import com.runtracker.android.RunTrackerApplication;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One-off background job that recomputes when achievements were earned by replaying
+ * the run history, e.g. after achievements are reset or new ones are added
+ */
+public class AchievementBackfillJobService extends JobService {
+
+    private static final String TAG = "AchievementBackfill";
+    private static final int JOB_ID = 2003;
+
+    // Keep the work out of app startup, but don't wait for idle
+    private static final long MIN_DELAY = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_DELAY = TimeUnit.HOURS.toMillis(1);
+
+    private volatile boolean stopped;
+
+    /**
+     * Schedule the backfill job if it is not already scheduled
+     * @param context Application context
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null || scheduler.getPendingJob(JOB_ID) != null) {
+            return;
+        }
+
+        JobInfo job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, AchievementBackfillJobService.class))
+                .setMinimumLatency(MIN_DELAY)
+                .setOverrideDeadline(MAX_DELAY)
+                .setPersisted(false)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        stopped = false;
+        new Thread(() -> {
+            boolean reschedule = false;
+            try {
+                RunTrackerApplication application = RunTrackerApplication.from(this);
+                reschedule = !application.getAchievementManager().backfillFromHistory(
+                        application.getRunRepository().getCompletedRunsOldestFirst(), () -> stopped);
+            } catch (Exception e) {
+                Log.e(TAG, "Achievement backfill failed", e);
+            }
+            jobFinished(params, reschedule);
+        }, TAG).start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Nothing is saved until the whole history has been replayed, so start over
+        stopped = true;
+        return true;
+    }
+}
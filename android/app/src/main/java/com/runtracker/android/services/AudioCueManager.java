@@ -1,78 +1,78 @@
 package com.runtracker.android.services;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.media.MediaPlayer;
-import android.speech.tts.TextToSpeech;
-import android.util.Log;
-
-import androidx.preference.PreferenceManager;
 
 import com.runtracker.android.R;
+import com.runtracker.android.data.SettingsManager;
+import com.runtracker.android.data.metrics.MilestoneTracker;
+import com.runtracker.android.data.models.Achievement;
+import com.runtracker.android.data.models.Settings;
 import com.runtracker.android.utils.Constants;
 import com.runtracker.android.utils.FormatUtils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 /**
- * Manages audio cues and text-to-speech for run feedback
+ * Manages audio cues and spoken run feedback
  */
 public class AudioCueManager {
     private static final String TAG = "AudioCueManager";
 
     private Context context;
-    private TextToSpeech textToSpeech;
-    private boolean isTtsReady = false;
+    private final SpeechEngine speechEngine;
+    private final CueEngine cueEngine;
     private MediaPlayer milestoneSound;
-    private SharedPreferences sharedPreferences;
+    private final SettingsManager settingsManager;
+
+    // Milestone cursors and the settings they were built for; rebuilt on the next fix
+    // after a unit or milestone setting changes
+    private MilestoneTracker milestoneTracker;
+    private Settings milestoneSettings;
 
     // Tracking variables
-    private double lastMilestoneCrossed = 0;
     private double lastAudioCueDistance = 0;
     private long lastAudioCueTime = 0;
 
     /**
      * Constructor
      * @param context The application context
+     * @param speechEngine Shared speech engine
+     * @param cueEngine Shared cue arbitration
+     * @param settingsManager Source of the current settings
      */
-    public AudioCueManager(Context context) {
+    public AudioCueManager(Context context, SpeechEngine speechEngine, CueEngine cueEngine,
+                           SettingsManager settingsManager) {
         this.context = context;
-        sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        this.speechEngine = speechEngine;
+        this.cueEngine = cueEngine;
+        this.settingsManager = settingsManager;
         
-        // Initialize TTS
-        initTextToSpeech();
-        
-        // Initialize milestone sound
-        milestoneSound = MediaPlayer.create(context, R.raw.milestone_sound);
+        // The speech engine and the milestone sound are loaded by prepare() when a run starts
     }
 
     /**
-     * Initialize Text-to-Speech engine
+     * Load the speech engine and milestone sound if they are not loaded yet.
+     * Call when a run starts so app launch does not pay for them.
      */
-    private void initTextToSpeech() {
-        textToSpeech = new TextToSpeech(context, status -> {
-            if (status == TextToSpeech.SUCCESS) {
-                int result = textToSpeech.setLanguage(Locale.getDefault());
-                
-                if (result == TextToSpeech.LANG_MISSING_DATA || 
-                    result == TextToSpeech.LANG_NOT_SUPPORTED) {
-                    Log.e(TAG, "Language not supported");
-                } else {
-                    isTtsReady = true;
-                }
-            } else {
-                Log.e(TAG, "TTS initialization failed");
-            }
-        });
+    public void prepare() {
+        speechEngine.prepare();
+        
+        if (milestoneSound == null) {
+            milestoneSound = MediaPlayer.create(context, R.raw.milestone_sound);
+        }
     }
 
     /**
-     * Speak a message using TTS
-     * @param message Message to speak
+     * Offer a cue to the cue engine if audio cues are enabled. It is spoken by the next
+     * tick unless something more important is pending.
+     * @param cue The cue
      */
-    public void speak(String message) {
-        if (isTtsReady && isAudioCuesEnabled()) {
-            textToSpeech.speak(message, TextToSpeech.QUEUE_FLUSH, null, "RunTracker");
+    private void offer(Cue cue) {
+        if (settingsManager.get().isAudioCuesEnabled()) {
+            cueEngine.offer(cue);
         }
     }
 
@@ -82,63 +82,118 @@ public class AudioCueManager {
      * @param duration Current duration in seconds
      */
     public void checkMilestones(double distance, long duration) {
+        Settings settings = settingsManager.get();
+        
+        // After a settings change, skip past milestones instead of announcing them all.
+        // Cursors do not move while alerts are off, so turning them on counts as a change.
+        if (!settings.hasSameMilestones(milestoneSettings)) {
+            milestoneSettings = settings;
+            milestoneTracker = MilestoneTracker.create(settings.getDistanceUnit(),
+                    settings.getCustomMilestones());
+            milestoneTracker.seek(distance, duration);
+            return;
+        }
+        
         // Only check if milestone alerts are enabled
-        if (!isMilestoneAlertsEnabled()) {
+        if (!settings.isMilestoneAlertsEnabled()) {
             return;
         }
         
-        // Determine milestone unit (km or mile)
-        String unitType = sharedPreferences.getString(Constants.PREF_DISTANCE_UNIT, Constants.UNIT_KM);
-        double milestone = unitType.equals(Constants.UNIT_KM) ? 
-            Constants.MILESTONE_KM : Constants.MILESTONE_MILE;
+        List<MilestoneTracker.Milestone> crossed = milestoneTracker.update(distance, duration);
+        if (crossed.isEmpty()) {
+            return;
+        }
         
-        // Convert to display unit if needed
-        double displayDistance = distance;
-        if (unitType.equals(Constants.UNIT_MILES)) {
-            displayDistance = distance * 0.621371; // Convert km to miles
+        // A jump can cross several at once; only the furthest of each type is worth saying
+        MilestoneTracker.Milestone distanceMilestone = null;
+        MilestoneTracker.Milestone timeMilestone = null;
+        for (MilestoneTracker.Milestone milestone : crossed) {
+            if (milestone.getType() == MilestoneTracker.TYPE_TIME) {
+                if (timeMilestone == null || milestone.getThreshold() > timeMilestone.getThreshold()) {
+                    timeMilestone = milestone;
+                }
+            } else if (distanceMilestone == null
+                    || milestone.getThreshold() > distanceMilestone.getThreshold()) {
+                distanceMilestone = milestone;
+            }
         }
         
-        // Check if a new milestone has been crossed
-        double currentMilestone = Math.floor(displayDistance / milestone);
-        if (currentMilestone > lastMilestoneCrossed && currentMilestone >= 1) {
-            // Play milestone sound
-            playMilestoneSound();
-            
-            // Announce milestone
-            String unit = unitType.equals(Constants.UNIT_KM) ? "kilometers" : "miles";
-            String message = String.format(Locale.getDefault(), 
-                "You've reached %.0f %s", currentMilestone * milestone, unit);
-            speak(message);
-            
-            // Update last milestone
-            lastMilestoneCrossed = currentMilestone;
+        // Play milestone sound
+        playMilestoneSound();
+        
+        if (distanceMilestone != null) {
+            announceMilestone(distanceMilestone);
+        }
+        if (timeMilestone != null) {
+            announceMilestone(timeMilestone);
         }
     }
 
+    /**
+     * Offer the announcement for a milestone
+     * @param milestone The crossed milestone
+     */
+    private void announceMilestone(MilestoneTracker.Milestone milestone) {
+        String message;
+        if (milestone.getType() == MilestoneTracker.TYPE_TIME) {
+            message = "You've been running for "
+                    + FormatUtils.formatDurationWords((long) milestone.getValue());
+        } else {
+            double value = milestone.getValue();
+            boolean miles = milestone.getUnit() == Constants.UNIT_MILES;
+            String unit = value == 1 ? (miles ? "mile" : "kilometer") : (miles ? "miles" : "kilometers");
+            String format = value == Math.rint(value) ? "You've reached %.0f %s" : "You've reached %.1f %s";
+            message = String.format(Locale.getDefault(), format, value, unit);
+        }
+        
+        offer(new Cue(CueEngine.SOURCE_MILESTONE, "milestone:" + milestone.getKey(),
+                SpeechEngine.PRIORITY_HIGH, message));
+    }
+
+    /**
+     * Move the milestone cursors to the current values without announcing anything,
+     * e.g. when tracking resumes after a pause
+     * @param distance Current distance in kilometers
+     * @param duration Current duration in seconds
+     */
+    public void resyncMilestones(double distance, long duration) {
+        if (milestoneTracker != null) {
+            milestoneTracker.seek(distance, duration);
+        }
+    }
+
+    /**
+     * Announce an achievement unlocked during the run
+     * @param achievement The unlocked achievement
+     */
+    public void announceAchievement(Achievement achievement) {
+        offer(new Cue(CueEngine.SOURCE_ACHIEVEMENT, "achievement:" + achievement.getId(),
+                SpeechEngine.PRIORITY_NORMAL, "Achievement unlocked:", achievement.getTitle() + "."));
+    }
+
     /**
      * Check if it's time for a periodic audio cue
      * @param distance Current distance in kilometers
      * @param duration Current duration in seconds
-     * @param pace Current pace in min/km
+     * @param pace Current rolling pace in min/km
      */
     public void checkPeriodicCue(double distance, long duration, double pace) {
+        Settings settings = settingsManager.get();
+        
         // Check if enough time has passed since last cue
         long currentTime = System.currentTimeMillis();
-        if (currentTime - lastAudioCueTime < Constants.AUDIO_CUE_INTERVAL) {
+        if (currentTime - lastAudioCueTime < settings.getCueInterval()) {
             return;
         }
         
-        // Skip if audio cues are disabled
-        if (!isAudioCuesEnabled()) {
+        // Skip if audio or periodic cues are disabled
+        if (!settings.isAudioCuesEnabled() || !settings.isPeriodicCuesEnabled()) {
             return;
         }
         
-        // Get units
-        String distanceUnit = sharedPreferences.getString(Constants.PREF_DISTANCE_UNIT, Constants.UNIT_KM);
-        
         // Convert to display units if needed
         double displayDistance = distance;
-        if (distanceUnit.equals(Constants.UNIT_MILES)) {
+        if (!settings.isMetric()) {
             displayDistance = distance * 0.621371; // Convert km to miles
         }
         
@@ -147,17 +202,18 @@ public class AudioCueManager {
         String formattedDuration = FormatUtils.formatDuration(duration);
         String formattedPace = FormatUtils.formatPace(pace);
         
-        // Build message
-        StringBuilder message = new StringBuilder();
-        message.append("Current status: ");
-        message.append(formattedDistance);
-        message.append(", time ");
-        message.append(formattedDuration);
-        message.append(", pace ");
-        message.append(formattedPace);
+        // Build message from fragments, so the fixed parts play from the speech cache
+        List<String> message = new ArrayList<>();
+        message.add("Current status:");
+        message.add(formattedDistance + ",");
+        message.add("time");
+        message.add(formattedDuration + ",");
+        message.add("pace");
+        message.add(formattedPace);
         
-        // Speak message
-        speak(message.toString());
+        // Offer message; status updates give way to coaching and milestones
+        // The cue interval already spaces them out, so only a pending one is a duplicate
+        offer(new Cue(CueEngine.SOURCE_PERIODIC, "periodic", SpeechEngine.PRIORITY_LOW, 0, message));
         
         // Update tracking variables
         lastAudioCueTime = currentTime;
@@ -178,12 +234,6 @@ public class AudioCueManager {
      * Release resources
      */
     public void shutdown() {
-        if (textToSpeech != null) {
-            textToSpeech.stop();
-            textToSpeech.shutdown();
-            isTtsReady = false;
-        }
-        
         if (milestoneSound != null) {
             milestoneSound.release();
             milestoneSound = null;
@@ -194,24 +244,10 @@ public class AudioCueManager {
      * Reset tracking variables for a new run
      */
     public void reset() {
-        lastMilestoneCrossed = 0;
+        if (milestoneTracker != null) {
+            milestoneTracker.reset();
+        }
         lastAudioCueDistance = 0;
         lastAudioCueTime = 0;
     }
-
-    /**
-     * Check if audio cues are enabled
-     * @return true if enabled
-     */
-    private boolean isAudioCuesEnabled() {
-        return sharedPreferences.getBoolean(Constants.PREF_AUDIO_CUES, true);
-    }
-
-    /**
-     * Check if milestone alerts are enabled
-     * @return true if enabled
-     */
-    private boolean isMilestoneAlertsEnabled() {
-        return sharedPreferences.getBoolean(Constants.PREF_MILESTONE_ALERTS, true);
-    }
-}
\ No newline at end of file
+}
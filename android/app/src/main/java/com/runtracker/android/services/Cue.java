@@ -0,0 +1,109 @@
+package com.runtracker.android.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A candidate spoken cue offered to the {@link CueEngine}
+ */
+public class Cue {
+
+    private final int source;
+    private final String key;
+    private final int priority;
+    private final List<String> fragments;
+    private final long duplicateWindow;
+    private long offeredAt;
+
+    /**
+     * Constructor
+     * @param source CueEngine source, e.g. CueEngine.SOURCE_MILESTONE
+     * @param key Identifies what the cue is about; cues with the same key are duplicates
+     * @param priority SpeechEngine priority
+     * @param duplicateWindow How long after a cue with the same key was spoken this one is
+     *                        a duplicate, in milliseconds; must be shorter than the
+     *                        interval at which the source repeats the key. 0 means only a
+     *                        pending cue with the same key is a duplicate.
+     * @param fragments The message, as fragments spoken in order
+     */
+    public Cue(int source, String key, int priority, long duplicateWindow, List<String> fragments) {
+        this.source = source;
+        this.key = key;
+        this.priority = priority;
+        this.duplicateWindow = duplicateWindow;
+        this.fragments = Collections.unmodifiableList(new ArrayList<>(fragments));
+    }
+
+    /**
+     * Constructor for a cue about a one-off event, with the default duplicate window
+     * @param source CueEngine source, e.g. CueEngine.SOURCE_MILESTONE
+     * @param key Identifies what the cue is about; cues with the same key are duplicates
+     * @param priority SpeechEngine priority
+     * @param fragments The message, as fragments spoken in order
+     */
+    public Cue(int source, String key, int priority, List<String> fragments) {
+        this(source, key, priority, CueEngine.DUPLICATE_WINDOW, fragments);
+    }
+
+    /**
+     * Constructor
+     * @param source CueEngine source, e.g. CueEngine.SOURCE_MILESTONE
+     * @param key Identifies what the cue is about; cues with the same key are duplicates
+     * @param priority SpeechEngine priority
+     * @param duplicateWindow How long after a cue with the same key was spoken this one is
+     *                        a duplicate, in milliseconds
+     * @param fragments The message, as fragments spoken in order
+     */
+    public Cue(int source, String key, int priority, long duplicateWindow, String... fragments) {
+        this(source, key, priority, duplicateWindow, Arrays.asList(fragments));
+    }
+
+    /**
+     * Constructor
+     * @param source CueEngine source, e.g. CueEngine.SOURCE_MILESTONE
+     * @param key Identifies what the cue is about; cues with the same key are duplicates
+     * @param priority SpeechEngine priority
+     * @param fragments The message, as fragments spoken in order
+     */
+    public Cue(int source, String key, int priority, String... fragments) {
+        this(source, key, priority, CueEngine.DUPLICATE_WINDOW, Arrays.asList(fragments));
+    }
+
+    public int getSource() {
+        return source;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public List<String> getFragments() {
+        return fragments;
+    }
+
+    /**
+     * Get how long after a cue with the same key was spoken this one is a duplicate
+     * @return Window in milliseconds
+     */
+    public long getDuplicateWindow() {
+        return duplicateWindow;
+    }
+
+    /**
+     * Get the time the cue was offered to the engine
+     * @return Engine clock time in milliseconds
+     */
+    public long getOfferedAt() {
+        return offeredAt;
+    }
+
+    void setOfferedAt(long offeredAt) {
+        this.offeredAt = offeredAt;
+    }
+}
@@ -0,0 +1,205 @@
+package com.runtracker.android.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Arbitrates spoken cues from all sources during a run.
+ *
+ * Milestones, periodic status, voice coaching and achievements offer candidate cues
+ * instead of speaking directly. On each tick the engine drops stale candidates and
+ * duplicates of something said recently, then speaks at most one cue: the highest
+ * priority, with ties broken by source and then by age. A cue only cuts off speech of
+ * lower priority; otherwise it waits for a later tick or expires.
+ *
+ * Time and speech are behind the {@link Clock} and {@link Speaker} interfaces, so the
+ * arbitration does not depend on Android. All methods must be called on one thread.
+ */
+public class CueEngine {
+
+    // Speaker priority when nothing is being spoken
+    public static final int NOT_SPEAKING = -1;
+
+    // Sources, most important first; breaks ties between cues of equal priority
+    public static final int SOURCE_COACHING = 0;
+    public static final int SOURCE_MILESTONE = 1;
+    public static final int SOURCE_ACHIEVEMENT = 2;
+    public static final int SOURCE_PERIODIC = 3;
+
+    // How long a candidate may wait for its turn before it is dropped (milliseconds)
+    private static final long MAX_AGE_LOW = 5000;
+    private static final long MAX_AGE_NORMAL = 15000;
+    private static final long MAX_AGE_HIGH = 60000;
+
+    // By default, a cue with the same key as one spoken this recently is a duplicate
+    // (milliseconds). Cues that repeat more often than this set a shorter window.
+    public static final long DUPLICATE_WINDOW = 30000;
+
+    /**
+     * Source of time for the engine
+     */
+    public interface Clock {
+        /**
+         * @return Monotonic time in milliseconds
+         */
+        long now();
+    }
+
+    /**
+     * Output for the cues the engine selects
+     */
+    public interface Speaker {
+        /**
+         * @return Priority of the speech playing or queued, or NOT_SPEAKING
+         */
+        int getSpeakingPriority();
+
+        /**
+         * Speak a message
+         * @param fragments Message fragments in order
+         * @param priority SpeechEngine priority
+         */
+        void speak(List<String> fragments, int priority);
+    }
+
+    private final Clock clock;
+    private final Speaker speaker;
+    private final List<Cue> candidates = new ArrayList<>();
+    private final Map<String, Long> lastSpokenTimes = new HashMap<>();
+
+    /**
+     * Constructor
+     * @param clock Source of time
+     * @param speaker Output for selected cues
+     */
+    public CueEngine(Clock clock, Speaker speaker) {
+        this.clock = clock;
+        this.speaker = speaker;
+    }
+
+    /**
+     * Offer a candidate cue for the next tick. A pending cue with the same key is
+     * replaced, so the newest information wins.
+     * @param cue The cue
+     */
+    public void offer(Cue cue) {
+        cue.setOfferedAt(clock.now());
+
+        for (int i = 0; i < candidates.size(); i++) {
+            if (candidates.get(i).getKey().equals(cue.getKey())) {
+                candidates.set(i, cue);
+                return;
+            }
+        }
+        candidates.add(cue);
+    }
+
+    /**
+     * Select and speak at most one of the pending cues
+     * @return The cue spoken, or null if nothing was spoken
+     */
+    public Cue tick() {
+        long now = clock.now();
+
+        // Drop candidates that waited too long or were already said
+        Iterator<Cue> iterator = candidates.iterator();
+        while (iterator.hasNext()) {
+            Cue cue = iterator.next();
+            if (now - cue.getOfferedAt() > getMaxAge(cue.getPriority()) || isDuplicate(cue, now)) {
+                iterator.remove();
+            }
+        }
+
+        Cue best = null;
+        for (Cue cue : candidates) {
+            if (best == null || compare(cue, best) < 0) {
+                best = cue;
+            }
+        }
+
+        if (best == null) {
+            return null;
+        }
+
+        // Never talk over speech that is at least as important
+        if (best.getPriority() <= speaker.getSpeakingPriority()) {
+            return null;
+        }
+
+        candidates.remove(best);
+        lastSpokenTimes.put(best.getKey(), now);
+        speaker.speak(best.getFragments(), best.getPriority());
+
+        // Low priority status is superseded by whatever was just said
+        iterator = candidates.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getPriority() <= SpeechEngine.PRIORITY_LOW) {
+                iterator.remove();
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Check if any cues are waiting to be spoken
+     * @return true if a later tick may speak
+     */
+    public boolean hasPendingCues() {
+        return !candidates.isEmpty();
+    }
+
+    /**
+     * Forget pending cues and recently spoken keys, e.g. when a run starts or stops
+     */
+    public void reset() {
+        candidates.clear();
+        lastSpokenTimes.clear();
+    }
+
+    /**
+     * Check if a cue with the same key was spoken within the cue's duplicate window
+     * @param cue The cue
+     * @param now Current time in milliseconds
+     * @return true if the cue should not be spoken
+     */
+    private boolean isDuplicate(Cue cue, long now) {
+        Long lastSpoken = lastSpokenTimes.get(cue.getKey());
+        return lastSpoken != null && now - lastSpoken < cue.getDuplicateWindow();
+    }
+
+    /**
+     * Order cues by priority, then source, then age
+     * @param a First cue
+     * @param b Second cue
+     * @return Negative if a should be spoken before b
+     */
+    private static int compare(Cue a, Cue b) {
+        if (a.getPriority() != b.getPriority()) {
+            return Integer.compare(b.getPriority(), a.getPriority());
+        }
+        if (a.getSource() != b.getSource()) {
+            return Integer.compare(a.getSource(), b.getSource());
+        }
+        return Long.compare(a.getOfferedAt(), b.getOfferedAt());
+    }
+
+    /**
+     * Get how long a cue may wait before it is dropped
+     * @param priority SpeechEngine priority
+     * @return Maximum age in milliseconds
+     */
+    private static long getMaxAge(int priority) {
+        switch (priority) {
+            case SpeechEngine.PRIORITY_HIGH:
+                return MAX_AGE_HIGH;
+            case SpeechEngine.PRIORITY_NORMAL:
+                return MAX_AGE_NORMAL;
+            default:
+                return MAX_AGE_LOW;
+        }
+    }
+}
@@ -7,34 +7,44 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.location.Location;
 import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
-import androidx.preference.PreferenceManager;
 
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationCallback;
 import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
+import com.runtracker.android.AppInitializer;
 import com.runtracker.android.R;
+import com.runtracker.android.RunTrackerApplication;
+import com.runtracker.android.data.AchievementManager;
 import com.runtracker.android.data.CoachingManager;
+import com.runtracker.android.data.metrics.LiveMetricsEngine;
+import com.runtracker.android.data.metrics.LiveMetricsSnapshot;
+import com.runtracker.android.data.models.Achievement;
 import com.runtracker.android.data.models.CoachingWorkout;
 import com.runtracker.android.data.models.Run;
+import com.runtracker.android.data.models.Settings;
+import com.runtracker.android.data.models.WorkoutTimeline;
 import com.runtracker.android.data.repositories.RunRepository;
 import com.runtracker.android.ui.MainActivity;
 import com.runtracker.android.utils.Constants;
+import com.runtracker.android.utils.FormatUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Service for tracking user location during runs
@@ -65,15 +75,39 @@ public class LocationTrackingService extends Service {
     private final List<Location> locations = new ArrayList<>();
     private final List<Run.PauseInterval> pauseIntervals = new ArrayList<>();
     
-    // Dependencies
+    // Active time clock (elapsed realtime, milliseconds). The notification, the track
+    // screen and the voice coach all read it, so they agree on the workout segment.
+    private long activeClockStart;
+    private long activeClockPauseStart;
+    private long activeClockPaused;
+    
+    // Dependencies, set on the main thread once the application's components have loaded
     private RunRepository runRepository;
     private AudioCueManager audioCueManager;
     private VoiceCoach voiceCoach;
     private CoachingManager coachingManager;
+    private AchievementManager achievementManager;
+    private CueEngine cueEngine;
+    
+    // Achievements may be unlocked off the main thread; cues are handled on it
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AchievementManager.AchievementUpdateListener achievementListener =
+            this::onAchievementUnlocked;
+    
+    // Commands received before the components are ready; a sticky restart can arrive
+    // while run history and coaching plans are still loading
+    private final List<String> pendingActions = new ArrayList<>();
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+    private boolean componentsReady = false;
+    private boolean destroyed = false;
     
     // Current run
     private Run currentRun;
     
+    // Rolling pace and speed for live feedback
+    private final LiveMetricsEngine liveMetrics = new LiveMetricsEngine();
+    private final LiveMetricsSnapshot metricsSnapshot = new LiveMetricsSnapshot();
+    
     // Coaching
     private int coachingType = Constants.COACHING_TYPE_BASIC;
     private CoachingWorkout activeWorkout;
@@ -112,60 +146,73 @@ public class LocationTrackingService extends Service {
         createLocationRequest();
         createLocationCallback();
         
-        // Get repositories and services
-        if (getApplication() instanceof MainActivity) {
-            MainActivity mainActivity = (MainActivity) getApplication();
-            runRepository = mainActivity.getRunRepository();
-            audioCueManager = mainActivity.getAudioCueManager();
-            voiceCoach = mainActivity.getVoiceCoach();
-            coachingManager = mainActivity.getCoachingManager();
-        } else {
-            // Fallback if service is not started from MainActivity
-            runRepository = new RunRepository(this);
-            audioCueManager = new AudioCueManager(this);
-            voiceCoach = new VoiceCoach(this);
-            coachingManager = new CoachingManager(this);
-        }
-        
-        // Load coaching settings
-        loadCoachingSettings();
+        // Share the application's repository and services with the UI. They load on the
+        // initializer's threads, and the recommended workout needs training load and race
+        // predictions, so neither is done here on the main thread.
+        AppInitializer initializer = RunTrackerApplication.from(this).getAppInitializer();
+        initializer.getReadyFuture()
+                .thenRunAsync(() -> loadCoachingSettings(initializer), loadExecutor)
+                .whenComplete((result, error) ->
+                        mainHandler.post(() -> onComponentsLoaded(initializer, error)));
     }
     
     /**
-     * Load coaching settings from preferences
+     * Load coaching settings, on a background thread
+     * @param initializer Initializer holding the loaded coaching manager
      */
-    private void loadCoachingSettings() {
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
-        coachingType = preferences.getInt(Constants.PREF_COACHING_TYPE, Constants.COACHING_TYPE_BASIC);
+    private void loadCoachingSettings(AppInitializer initializer) {
+        Settings settings = RunTrackerApplication.from(this).getSettingsManager().get();
+        coachingType = settings.getCoachingType();
         
         // If workout coaching is enabled, get the active workout
         if (coachingType == Constants.COACHING_TYPE_WORKOUT) {
-            String activePlanId = preferences.getString(Constants.PREF_ACTIVE_PLAN_ID, null);
-            if (activePlanId != null) {
-                // Get next scheduled workout
-                activeWorkout = coachingManager.getNextScheduledWorkout();
+            if (settings.getActivePlanId() != null) {
+                // Get the next workout, eased off if fatigue is high
+                activeWorkout = initializer.getCoachingManagerFuture().join().getRecommendedWorkout();
             }
         }
     }
     
+    /**
+     * Take the loaded components and run the commands that were waiting for them
+     * @param initializer Initializer holding the loaded components
+     * @param error Why loading failed, or null if it succeeded
+     */
+    private void onComponentsLoaded(AppInitializer initializer, Throwable error) {
+        if (destroyed) {
+            return;
+        }
+        if (error != null) {
+            Log.e(TAG, "Components failed to load, dropping " + pendingActions.size() + " commands", error);
+            pendingActions.clear();
+            stopSelf();
+            return;
+        }
+        
+        // Every future has completed, so these return straight away
+        runRepository = initializer.getRunRepositoryFuture().join();
+        audioCueManager = initializer.getAudioCueManagerFuture().join();
+        voiceCoach = initializer.getVoiceCoachFuture().join();
+        coachingManager = initializer.getCoachingManagerFuture().join();
+        achievementManager = initializer.getAchievementManagerFuture().join();
+        cueEngine = RunTrackerApplication.from(this).getCueEngine();
+        componentsReady = true;
+        
+        for (String action : pendingActions) {
+            handleAction(action);
+        }
+        pendingActions.clear();
+    }
+    
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent != null) {
             String action = intent.getAction();
             if (action != null) {
-                switch (action) {
-                    case ACTION_START:
-                        startTracking();
-                        break;
-                    case ACTION_STOP:
-                        stopTracking();
-                        break;
-                    case ACTION_PAUSE:
-                        pauseTracking();
-                        break;
-                    case ACTION_RESUME:
-                        resumeTracking();
-                        break;
+                if (componentsReady) {
+                    handleAction(action);
+                } else {
+                    pendingActions.add(action);
                 }
             }
         }
@@ -173,6 +220,27 @@ public class LocationTrackingService extends Service {
         return START_STICKY;
     }
     
+    /**
+     * Handle a tracking command
+     * @param action Intent action
+     */
+    private void handleAction(String action) {
+        switch (action) {
+            case ACTION_START:
+                startTracking();
+                break;
+            case ACTION_STOP:
+                stopTracking();
+                break;
+            case ACTION_PAUSE:
+                pauseTracking();
+                break;
+            case ACTION_RESUME:
+                resumeTracking();
+                break;
+        }
+    }
+    
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
@@ -221,13 +289,17 @@ public class LocationTrackingService extends Service {
         
         // Update current run with new location
         if (currentRun != null) {
-            // Create location point
-            Run.LocationPoint locationPoint = new Run.LocationPoint(
-                    location.getLatitude(),
-                    location.getLongitude(),
-                    location.getAltitude(),
-                    System.currentTimeMillis()
-            );
+            // Create location point, keeping the altitude if the fix has one
+            Run.LocationPoint locationPoint = location.hasAltitude()
+                    ? new Run.LocationPoint(
+                            location.getLatitude(),
+                            location.getLongitude(),
+                            location.getAltitude(),
+                            System.currentTimeMillis())
+                    : new Run.LocationPoint(
+                            location.getLatitude(),
+                            location.getLongitude(),
+                            System.currentTimeMillis());
             
             // Add to run
             currentRun.addLocationPoint(locationPoint);
@@ -235,21 +307,29 @@ public class LocationTrackingService extends Service {
             // Calculate stats (distance, pace, etc.)
             calculateRunStats();
             
-            // Check for milestone audio cues
+            // Update rolling metrics using the fix time, which is monotonic
+            liveMetrics.addFix(location.getElapsedRealtimeNanos() / 1000000, 
+                    currentRun.getTotalDistance());
+            liveMetrics.readSnapshot(metricsSnapshot);
+            
+            // Check for milestone audio cues; durations are in seconds
             if (audioCueManager != null) {
                 audioCueManager.checkMilestones(
                         currentRun.getTotalDistance(), 
-                        currentRun.getActiveDuration());
+                        currentRun.getActiveDuration() / 1000);
                 
                 audioCueManager.checkPeriodicCue(
                         currentRun.getTotalDistance(),
-                        currentRun.getActiveDuration(),
-                        currentRun.getPace());
+                        currentRun.getActiveDuration() / 1000,
+                        metricsSnapshot.getCurrentPace(currentRun.getPace()));
             }
             
             // Update voice coaching
             updateVoiceCoaching();
             
+            // Speak at most one of the cues offered for this fix
+            cueEngine.tick();
+            
             // Notify listeners
             for (LocationUpdateListener listener : locationUpdateListeners) {
                 listener.onLocationUpdate(location, currentRun);
@@ -287,12 +367,9 @@ public class LocationTrackingService extends Service {
             return;
         }
         
-        // Update based on coaching type
-        if (coachingType == Constants.COACHING_TYPE_WORKOUT && activeWorkout != null) {
-            // If this is a workout-based coaching, sync with workout
-            voiceCoach.updateWorkoutCoaching();
-        }
-        // Basic coaching updates are handled internally by the VoiceCoach class
+        // Announcements are scheduled by the coach itself; a fix only catches up on
+        // deadlines the handler missed while the CPU was asleep
+        voiceCoach.onLocationUpdate();
     }
     
     /**
@@ -307,6 +384,7 @@ public class LocationTrackingService extends Service {
         locations.clear();
         pauseIntervals.clear();
         totalPausedTime = 0;
+        liveMetrics.reset();
         
         // Set tracking flags
         isTracking = true;
@@ -314,6 +392,8 @@ public class LocationTrackingService extends Service {
         
         // Record start time
         startTimeMillis = System.currentTimeMillis();
+        activeClockStart = SystemClock.elapsedRealtime();
+        activeClockPaused = 0;
         
         // Create a new run
         currentRun = new Run();
@@ -332,7 +412,10 @@ public class LocationTrackingService extends Service {
             startForeground(NOTIFICATION_ID, createNotification());
             
             // Start audio cues
+            cueEngine.reset();
+            achievementManager.addListener(achievementListener);
             if (audioCueManager != null) {
+                audioCueManager.prepare();
                 audioCueManager.reset();
             }
             
@@ -380,6 +463,8 @@ public class LocationTrackingService extends Service {
         currentRun = null;
         
         // Stop audio cues
+        achievementManager.removeListener(achievementListener);
+        cueEngine.reset();
         if (audioCueManager != null) {
             audioCueManager.reset();
         }
@@ -404,11 +489,17 @@ public class LocationTrackingService extends Service {
         
         isPaused = true;
         pauseTimeMillis = System.currentTimeMillis();
+        activeClockPauseStart = SystemClock.elapsedRealtime();
         
         // Create a new pause interval
         Run.PauseInterval pauseInterval = new Run.PauseInterval(pauseTimeMillis, 0);
         pauseIntervals.add(pauseInterval);
         
+        // Hold announcements while paused
+        if (voiceCoach != null) {
+            voiceCoach.pauseCoaching();
+        }
+        
         // Update run status
         if (currentRun != null) {
             currentRun.setStatus(Run.STATUS_PAUSED);
@@ -434,6 +525,7 @@ public class LocationTrackingService extends Service {
         long resumeTimeMillis = System.currentTimeMillis();
         long pauseDuration = resumeTimeMillis - pauseTimeMillis;
         totalPausedTime += pauseDuration;
+        activeClockPaused += SystemClock.elapsedRealtime() - activeClockPauseStart;
         
         // Update the latest pause interval
         if (!pauseIntervals.isEmpty()) {
@@ -450,6 +542,19 @@ public class LocationTrackingService extends Service {
         // Update state
         isPaused = false;
         
+        // Standing still while paused must not drag down the rolling pace
+        liveMetrics.reset();
+        
+        // Milestones pick up from where the run is now
+        if (audioCueManager != null && currentRun != null) {
+            audioCueManager.resyncMilestones(currentRun.getTotalDistance(), currentRun.getActiveDuration() / 1000);
+        }
+        
+        // Resume announcements
+        if (voiceCoach != null) {
+            voiceCoach.resumeCoaching();
+        }
+        
         // Update run status
         if (currentRun != null) {
             currentRun.setStatus(Run.STATUS_ACTIVE);
@@ -462,6 +567,21 @@ public class LocationTrackingService extends Service {
         Log.d(TAG, "Location tracking resumed");
     }
     
+    /**
+     * Announce an achievement unlocked while tracking
+     * @param achievement The unlocked achievement
+     */
+    private void onAchievementUnlocked(Achievement achievement) {
+        mainHandler.post(() -> {
+            if (!isTracking || audioCueManager == null) {
+                return;
+            }
+            
+            audioCueManager.announceAchievement(achievement);
+            cueEngine.tick();
+        });
+    }
+    
     /**
      * Start voice coaching
      */
@@ -470,10 +590,12 @@ public class LocationTrackingService extends Service {
             // Determine coaching type
             if (coachingType == Constants.COACHING_TYPE_WORKOUT && activeWorkout != null) {
                 // Start workout coaching
-                voiceCoach.startCoaching(currentRun, VoiceCoach.COACHING_WORKOUT, activeWorkout);
+                voiceCoach.startCoaching(currentRun, liveMetrics, this::getActiveTime,
+                        VoiceCoach.COACHING_WORKOUT, activeWorkout);
             } else {
                 // Start basic coaching
-                voiceCoach.startCoaching(currentRun, VoiceCoach.COACHING_BASIC, null);
+                voiceCoach.startCoaching(currentRun, liveMetrics, this::getActiveTime,
+                        VoiceCoach.COACHING_BASIC, null);
             }
         }
     }
@@ -513,6 +635,37 @@ public class LocationTrackingService extends Service {
         return currentRun;
     }
     
+    /**
+     * Copy the live metrics of the current run into a snapshot
+     * @param out Snapshot to fill
+     */
+    public void readLiveMetrics(LiveMetricsSnapshot out) {
+        liveMetrics.readSnapshot(out);
+    }
+    
+    /**
+     * Get the active time of the current run, excluding pauses. This is the one clock
+     * workout segments are timed on; it is monotonic, so it is unaffected by changes to
+     * the wall clock.
+     * @return Active time in milliseconds
+     */
+    public long getActiveTime() {
+        if (!isTracking) {
+            return 0;
+        }
+        
+        long now = isPaused ? activeClockPauseStart : SystemClock.elapsedRealtime();
+        return now - activeClockStart - activeClockPaused;
+    }
+    
+    /**
+     * Get the workout being coached in the current run
+     * @return Active workout, or null for basic coaching
+     */
+    public CoachingWorkout getActiveWorkout() {
+        return coachingType == Constants.COACHING_TYPE_WORKOUT ? activeWorkout : null;
+    }
+    
     /**
      * Check if tracking is active
      * @return true if tracking
@@ -600,6 +753,16 @@ public class LocationTrackingService extends Service {
                 .setContentIntent(pendingIntent)
                 .setPriority(NotificationCompat.PRIORITY_LOW);
         
+        // Show the current workout segment from the same timeline the coach uses
+        CoachingWorkout workout = getActiveWorkout();
+        if (workout != null) {
+            long activeTime = getActiveTime();
+            WorkoutTimeline.Entry entry = workout.getTimeline().getEntryAt(activeTime);
+            if (entry != null) {
+                builder.setSubText(FormatUtils.formatWorkoutSegment(this, entry, activeTime));
+            }
+        }
+        
         // Get notification manager and update
         NotificationManager notificationManager = 
                 (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
@@ -628,15 +791,28 @@ public class LocationTrackingService extends Service {
     @Override
     public void onDestroy() {
         // Clean up
+        destroyed = true;
+        loadExecutor.shutdownNow();
         if (fusedLocationClient != null && locationCallback != null) {
             fusedLocationClient.removeLocationUpdates(locationCallback);
         }
         
-        // Stop coaching
+        // Release speech and sound resources; they are only needed while a run is tracked
+        if (achievementManager != null) {
+            achievementManager.removeListener(achievementListener);
+        }
+        mainHandler.removeCallbacksAndMessages(null);
+        
         if (voiceCoach != null) {
-            voiceCoach.stopCoaching();
+            voiceCoach.shutdown();
         }
         
+        if (audioCueManager != null) {
+            audioCueManager.shutdown();
+        }
+        
+        RunTrackerApplication.from(this).getSpeechEngine().shutdown();
+        
         super.onDestroy();
     }
 }
\ No newline at end of file
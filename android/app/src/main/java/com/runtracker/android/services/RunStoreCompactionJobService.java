@@ -0,0 +1,68 @@
+package com.runtracker.android.services;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+
+import com.runtracker.android.RunTrackerApplication;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job that compacts the run store while the device is idle and charging
+ */
+public class RunStoreCompactionJobService extends JobService {
+
+    private static final String TAG = "RunStoreCompaction";
+    private static final int JOB_ID = 2001;
+    private static final long COMPACTION_PERIOD = TimeUnit.DAYS.toMillis(1);
+
+    private Thread worker;
+
+    /**
+     * Schedule the periodic compaction job if it is not already scheduled
+     * @param context Application context
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null || scheduler.getPendingJob(JOB_ID) != null) {
+            return;
+        }
+
+        JobInfo job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, RunStoreCompactionJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPeriodic(COMPACTION_PERIOD)
+                .setPersisted(false)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        worker = new Thread(() -> {
+            try {
+                RunTrackerApplication.from(this).getRunRepository().compactStorage();
+            } catch (Exception e) {
+                Log.e(TAG, "Compaction failed", e);
+            }
+            jobFinished(params, false);
+        }, TAG);
+        worker.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Segment swaps are atomic, so an interrupted pass can simply be retried later
+        if (worker != null) {
+            worker.interrupt();
+        }
+        return true;
+    }
+}
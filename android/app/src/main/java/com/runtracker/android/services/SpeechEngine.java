@@ -0,0 +1,472 @@
+package com.runtracker.android.services;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+import android.util.Log;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Shared text-to-speech output for voice coaching and audio cues.
+ *
+ * There is a single TTS engine for the whole app. Utterances go through a priority queue
+ * and are played one at a time, so announcements from different components no longer cut
+ * each other off; only a higher priority utterance interrupts the one playing. Utterances
+ * that waited too long are dropped rather than played late.
+ *
+ * Fixed phrases registered with {@link #registerPhrases(Collection)} are synthesized to
+ * files in the cache directory while the engine is otherwise idle, and mapped with
+ * {@link TextToSpeech#addSpeech(CharSequence, File)} so they play back without synthesis
+ * latency. Dynamic phrases are spoken as a sequence of fragments, so the fixed parts
+ * around numbers still come from the cache.
+ *
+ * All methods except {@link #registerPhrases(Collection)} must be called on the main thread.
+ */
+public class SpeechEngine implements CueEngine.Speaker {
+    private static final String TAG = "SpeechEngine";
+
+    // Priorities
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+
+    // How long an utterance may wait before it is no longer worth saying (milliseconds)
+    private static final long MAX_WAIT_LOW = 10000;
+    private static final long MAX_WAIT_NORMAL = 5000;
+    private static final long MAX_WAIT_HIGH = 30000;
+
+    private static final float SPEECH_RATE = 0.9f; // Slightly slower for clarity
+    private static final String CACHE_DIRECTORY = "speech_cache";
+    private static final String SYNTHESIS_ID_PREFIX = "synth:";
+
+    private final Context context;
+    private final Handler handler;
+    private final File cacheDirectory;
+
+    private TextToSpeech textToSpeech;
+    private boolean isReady = false;
+    private String voiceKey = "";
+
+    // Playback
+    private final PriorityQueue<Utterance> queue = new PriorityQueue<>();
+    private Utterance current;
+    private long nextSequence = 0;
+
+    // Pre-synthesis
+    private final Set<String> phrases = new LinkedHashSet<>();
+    private final Set<String> cachedPhrases = new HashSet<>();
+    private final ArrayDeque<String> synthesisQueue = new ArrayDeque<>();
+    private String synthesizing;
+
+    /**
+     * Constructor
+     * @param context The application context
+     */
+    public SpeechEngine(Context context) {
+        this.context = context;
+        this.handler = new Handler(Looper.getMainLooper());
+        this.cacheDirectory = new File(context.getCacheDir(), CACHE_DIRECTORY);
+    }
+
+    /**
+     * Start the TTS engine if it has not been started yet. Call when a run starts so app
+     * launch does not pay for it.
+     */
+    public void prepare() {
+        if (textToSpeech != null) {
+            return;
+        }
+
+        textToSpeech = new TextToSpeech(context, status -> {
+            if (status != TextToSpeech.SUCCESS) {
+                Log.e(TAG, "TTS initialization failed");
+                return;
+            }
+
+            Locale locale = Locale.getDefault();
+            int result = textToSpeech.setLanguage(locale);
+            if (result == TextToSpeech.LANG_MISSING_DATA ||
+                result == TextToSpeech.LANG_NOT_SUPPORTED) {
+                Log.e(TAG, "Language not supported");
+                return;
+            }
+
+            textToSpeech.setSpeechRate(SPEECH_RATE);
+            textToSpeech.setOnUtteranceProgressListener(progressListener);
+
+            // Cached clips are only valid for the voice they were made with
+            String engine = textToSpeech.getDefaultEngine();
+            voiceKey = engine + "|" + locale + "|" + SPEECH_RATE;
+
+            isReady = true;
+            loadPhraseCache();
+            playNext();
+        });
+    }
+
+    /**
+     * Register fixed phrases for pre-synthesis. Phrases can be registered at any time and
+     * from any thread, e.g. by components constructed in the background at startup; they
+     * are synthesized once the engine has started.
+     * @param newPhrases Phrases to cache
+     */
+    public void registerPhrases(Collection<String> newPhrases) {
+        // Phrase state belongs to the main thread
+        List<String> copy = new ArrayList<>(newPhrases);
+        handler.post(() -> {
+            for (String phrase : copy) {
+                if (phrases.add(phrase) && isReady) {
+                    cachePhrase(phrase);
+                }
+            }
+
+            synthesizeNext();
+        });
+    }
+
+    /**
+     * Speak a message
+     * @param text Message to speak
+     * @param priority PRIORITY_LOW, PRIORITY_NORMAL or PRIORITY_HIGH
+     */
+    public void speak(String text, int priority) {
+        speak(Collections.singletonList(text), priority);
+    }
+
+    /**
+     * Speak a message made of several fragments, played back to back. Fragments that are
+     * registered phrases are played from the cache.
+     * @param fragments Message fragments in order
+     * @param priority PRIORITY_LOW, PRIORITY_NORMAL or PRIORITY_HIGH
+     */
+    @Override
+    public void speak(List<String> fragments, int priority) {
+        List<String> parts = new ArrayList<>();
+        for (String fragment : fragments) {
+            if (fragment != null && !fragment.trim().isEmpty()) {
+                parts.add(fragment.trim());
+            }
+        }
+
+        if (parts.isEmpty()) {
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        Utterance utterance = new Utterance(nextSequence++, priority, parts, now + getMaxWait(priority));
+        queue.add(utterance);
+
+        // Only a more important utterance interrupts the one being played
+        if (current != null && priority > current.priority && isReady) {
+            current = null;
+            textToSpeech.stop();
+
+            // Stopping also drops a pending synthesis request; queue it again
+            if (synthesizing != null) {
+                synthesisQueue.addFirst(synthesizing);
+                synthesizing = null;
+            }
+        }
+
+        playNext();
+    }
+
+    /**
+     * Drop all queued utterances and stop the one playing
+     */
+    public void stop() {
+        queue.clear();
+        current = null;
+
+        if (textToSpeech != null) {
+            textToSpeech.stop();
+        }
+
+        if (synthesizing != null) {
+            synthesisQueue.addFirst(synthesizing);
+            synthesizing = null;
+        }
+    }
+
+    /**
+     * Get the priority of the utterances playing or waiting to be played
+     * @return Highest priority, or CueEngine.NOT_SPEAKING when idle
+     */
+    @Override
+    public int getSpeakingPriority() {
+        int priority = CueEngine.NOT_SPEAKING;
+        if (current != null) {
+            priority = current.priority;
+        }
+        if (!queue.isEmpty()) {
+            priority = Math.max(priority, queue.peek().priority);
+        }
+        return priority;
+    }
+
+    /**
+     * Check if the engine has started
+     * @return true if ready to speak
+     */
+    public boolean isReady() {
+        return isReady;
+    }
+
+    /**
+     * Release the TTS engine; it is restarted by the next {@link #prepare()}
+     */
+    public void shutdown() {
+        stop();
+        synthesisQueue.clear();
+        cachedPhrases.clear();
+
+        if (textToSpeech != null) {
+            textToSpeech.shutdown();
+            textToSpeech = null;
+        }
+
+        isReady = false;
+    }
+
+    /**
+     * Play the next queued utterance if nothing is playing
+     */
+    private void playNext() {
+        if (!isReady || current != null) {
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        Utterance next;
+        while ((next = queue.poll()) != null && next.expiresAt < now) {
+            Log.d(TAG, "Dropping stale utterance: " + next.parts);
+        }
+
+        if (next == null) {
+            // Idle; use the time to synthesize phrases
+            synthesizeNext();
+            return;
+        }
+
+        current = next;
+        for (int i = 0; i < next.parts.size(); i++) {
+            textToSpeech.speak(next.parts.get(i), TextToSpeech.QUEUE_ADD, null, next.getPartId(i));
+        }
+    }
+
+    /**
+     * Map phrases that already have a clip on disk and queue the rest for synthesis
+     */
+    private void loadPhraseCache() {
+        if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
+            Log.e(TAG, "Could not create speech cache directory");
+            return;
+        }
+
+        for (String phrase : phrases) {
+            cachePhrase(phrase);
+        }
+    }
+
+    /**
+     * Use the cached clip for a phrase if there is one, otherwise queue it for synthesis
+     * @param phrase Phrase text
+     */
+    private void cachePhrase(String phrase) {
+        if (cachedPhrases.contains(phrase)) {
+            return;
+        }
+
+        File file = getClipFile(phrase);
+        if (file.length() > 0) {
+            textToSpeech.addSpeech(phrase, file);
+            cachedPhrases.add(phrase);
+        } else if (!synthesisQueue.contains(phrase)) {
+            synthesisQueue.add(phrase);
+        }
+    }
+
+    /**
+     * Synthesize the next queued phrase, one at a time and only while nothing is playing,
+     * so announcements never wait behind a batch of synthesis requests
+     */
+    private void synthesizeNext() {
+        if (!isReady || current != null || synthesizing != null || !queue.isEmpty()) {
+            return;
+        }
+
+        String phrase = synthesisQueue.poll();
+        if (phrase == null) {
+            return;
+        }
+
+        synthesizing = phrase;
+        File file = getClipFile(phrase);
+        int result = textToSpeech.synthesizeToFile(phrase, new Bundle(), file,
+                SYNTHESIS_ID_PREFIX + phrase);
+        if (result != TextToSpeech.SUCCESS) {
+            Log.e(TAG, "Could not synthesize phrase: " + phrase);
+            synthesizing = null;
+            handler.post(this::synthesizeNext);
+        }
+    }
+
+    /**
+     * Handle the end of a synthesis request
+     * @param phrase Phrase that was synthesized
+     * @param success true if the clip was written
+     */
+    private void onSynthesisDone(String phrase, boolean success) {
+        if (!phrase.equals(synthesizing)) {
+            return;
+        }
+        synthesizing = null;
+
+        File file = getClipFile(phrase);
+        if (success && file.length() > 0) {
+            textToSpeech.addSpeech(phrase, file);
+            cachedPhrases.add(phrase);
+        } else {
+            Log.e(TAG, "Synthesis failed for phrase: " + phrase);
+            file.delete();
+        }
+
+        if (queue.isEmpty()) {
+            synthesizeNext();
+        } else {
+            playNext();
+        }
+    }
+
+    /**
+     * Handle the end of one part of an utterance
+     * @param utteranceId Part ID
+     */
+    private void onPartDone(String utteranceId) {
+        if (current != null && current.isLastPart(utteranceId)) {
+            current = null;
+            playNext();
+        }
+    }
+
+    /**
+     * Get the cache file for a phrase
+     * @param phrase Phrase text
+     * @return Clip file
+     */
+    private File getClipFile(String phrase) {
+        return new File(cacheDirectory, hash(voiceKey + "|" + phrase) + ".wav");
+    }
+
+    /**
+     * Hash a cache key into a file name
+     * @param key Cache key
+     * @return Hex digest
+     */
+    private static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : bytes) {
+                hex.append(String.format(Locale.US, "%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode()) + "_" + key.length();
+        }
+    }
+
+    private static long getMaxWait(int priority) {
+        switch (priority) {
+            case PRIORITY_HIGH:
+                return MAX_WAIT_HIGH;
+            case PRIORITY_NORMAL:
+                return MAX_WAIT_NORMAL;
+            default:
+                return MAX_WAIT_LOW;
+        }
+    }
+
+    /**
+     * Progress callbacks arrive on a binder thread; all state is handled on the main thread
+     */
+    private final UtteranceProgressListener progressListener = new UtteranceProgressListener() {
+        @Override
+        public void onStart(String utteranceId) {
+        }
+
+        @Override
+        public void onDone(String utteranceId) {
+            handler.post(() -> onFinished(utteranceId, true));
+        }
+
+        @Override
+        public void onError(String utteranceId) {
+            handler.post(() -> onFinished(utteranceId, false));
+        }
+
+        private void onFinished(String utteranceId, boolean success) {
+            if (utteranceId == null) {
+                return;
+            }
+
+            if (utteranceId.startsWith(SYNTHESIS_ID_PREFIX)) {
+                onSynthesisDone(utteranceId.substring(SYNTHESIS_ID_PREFIX.length()), success);
+            } else {
+                onPartDone(utteranceId);
+            }
+        }
+    };
+
+    /**
+     * Queued message: higher priority first, then first come first served
+     */
+    private static class Utterance implements Comparable<Utterance> {
+        private final long sequence;
+        private final int priority;
+        private final List<String> parts;
+        private final long expiresAt;
+
+        Utterance(long sequence, int priority, List<String> parts, long expiresAt) {
+            this.sequence = sequence;
+            this.priority = priority;
+            this.parts = parts;
+            this.expiresAt = expiresAt;
+        }
+
+        String getPartId(int index) {
+            return sequence + "#" + index;
+        }
+
+        boolean isLastPart(String utteranceId) {
+            return getPartId(parts.size() - 1).equals(utteranceId);
+        }
+
+        @Override
+        public int compareTo(Utterance other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
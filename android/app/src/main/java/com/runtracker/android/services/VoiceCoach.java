@@ -1,27 +1,36 @@
 package com.runtracker.android.services;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
-import android.speech.tts.TextToSpeech;
 import android.util.Log;
 
-import androidx.preference.PreferenceManager;
-
 import com.runtracker.android.R;
+import com.runtracker.android.data.SettingsManager;
+import com.runtracker.android.data.metrics.LiveMetricsEngine;
+import com.runtracker.android.data.metrics.LiveMetricsSnapshot;
 import com.runtracker.android.data.models.CoachingWorkout;
 import com.runtracker.android.data.models.Run;
+import com.runtracker.android.data.models.WorkoutTimeline;
 import com.runtracker.android.utils.Constants;
 import com.runtracker.android.utils.FormatUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
 import java.util.Random;
+import java.util.function.LongSupplier;
 
 /**
- * Service that provides voice coaching during runs
+ * Service that provides voice coaching during runs.
+ *
+ * Announcements are scheduled by deadline rather than by polling: after each update the
+ * coach works out when the next thing is due (segment end, a time-remaining mark, pace
+ * feedback or the next basic update) and posts a single callback for that moment. All
+ * times are read from the tracking service's active time, the same clock the notification
+ * and the track screen use, so announcements agree with the segment shown and stay
+ * accurate when callbacks are delayed by a busy main thread. Announcements are offered
+ * to the shared {@link CueEngine} rather than spoken directly.
  */
 public class VoiceCoach {
     private static final String TAG = "VoiceCoach";
@@ -39,26 +48,45 @@ public class VoiceCoach {
     
     // Update interval for coaching (milliseconds)
     private static final long COACHING_INTERVAL = 30000; // 30 seconds
+    private static final long PACE_FEEDBACK_INTERVAL = 30000; // 30 seconds
+    
+    // Updates and pace feedback repeat on the intervals above, and a late one must not
+    // swallow the next, so only a pending cue with the same key counts as a duplicate
+    private static final long REPEATING_CUE_WINDOW = 0;
+    
+    // Segments at most this long (seconds) get no time remaining announcements
+    private static final int MIN_COUNTDOWN_SEGMENT = 30;
+    
+    // Time remaining marks that are this late (milliseconds) are skipped rather than announced
+    private static final long MAX_MARK_LATENESS = 1000;
+    
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
     
     private final Context context;
-    private TextToSpeech textToSpeech;
-    private boolean isTtsReady = false;
-    private final SharedPreferences preferences;
+    private final SpeechEngine speechEngine;
+    private final CueEngine cueEngine;
+    private final SettingsManager settingsManager;
     private final Handler handler;
+    private final Runnable coachingRunnable = this::runCoaching;
     private final Random random;
     
     // Active run info
     private Run activeRun;
-    private long startTime;
+    private LiveMetricsEngine liveMetrics;
+    private final LiveMetricsSnapshot metricsSnapshot = new LiveMetricsSnapshot();
     private int coachingType = COACHING_BASIC;
     private CoachingWorkout activeWorkout;
-    private int currentSegmentIndex = 0;
-    private int currentSegmentTimeRemaining = 0;
-    private long lastCoachingTime = 0;
-    private long lastSegmentAnnouncementTime = 0;
-    private long lastPaceFeedbackTime = 0;
-    private boolean isWorkoutStarted = false;
-    private Runnable coachingRunnable;
+    private WorkoutTimeline timeline;
+    private int currentEntryIndex = 0;
+    
+    // Active time of the run in milliseconds, excluding pauses
+    private LongSupplier activeTime;
+    private boolean isPaused;
+    
+    // Deadlines in active run time (milliseconds)
+    private int pendingTimeMark;
+    private long nextPaceFeedbackTime;
+    private long nextBasicUpdateTime;
     
     // Feedback pools for variety
     private List<String> encouragementMessages;
@@ -72,39 +100,24 @@ public class VoiceCoach {
     /**
      * Constructor
      * @param context The application context
+     * @param speechEngine Shared speech engine
+     * @param cueEngine Shared cue arbitration
+     * @param settingsManager Source of the current settings
      */
-    public VoiceCoach(Context context) {
+    public VoiceCoach(Context context, SpeechEngine speechEngine, CueEngine cueEngine,
+                      SettingsManager settingsManager) {
         this.context = context;
-        this.preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        this.speechEngine = speechEngine;
+        this.cueEngine = cueEngine;
+        this.settingsManager = settingsManager;
         this.handler = new Handler(Looper.getMainLooper());
         this.random = new Random();
         
-        // Initialize TTS engine
-        initTextToSpeech();
-        
         // Initialize feedback message pools
         initFeedbackPools();
-    }
-    
-    /**
-     * Initialize Text-to-Speech engine
-     */
-    private void initTextToSpeech() {
-        textToSpeech = new TextToSpeech(context, status -> {
-            if (status == TextToSpeech.SUCCESS) {
-                int result = textToSpeech.setLanguage(Locale.getDefault());
-                
-                if (result == TextToSpeech.LANG_MISSING_DATA || 
-                    result == TextToSpeech.LANG_NOT_SUPPORTED) {
-                    Log.e(TAG, "Language not supported");
-                } else {
-                    isTtsReady = true;
-                    textToSpeech.setSpeechRate(0.9f); // Slightly slower for clarity
-                }
-            } else {
-                Log.e(TAG, "TTS initialization failed");
-            }
-        });
+        
+        // Fixed phrases are synthesized ahead of time so they play without engine latency
+        speechEngine.registerPhrases(getFixedPhrases());
     }
     
     /**
@@ -153,63 +166,194 @@ public class VoiceCoach {
         workoutCompleteMessages.add("Workout complete! You crushed it!");
     }
     
+    /**
+     * Collect the phrases and fragments coaching speaks without variation
+     * @return Phrases to pre-synthesize
+     */
+    private List<String> getFixedPhrases() {
+        List<String> phrases = new ArrayList<>();
+        phrases.addAll(encouragementMessages);
+        phrases.addAll(paceSlowerMessages);
+        phrases.addAll(paceFasterMessages);
+        phrases.addAll(paceGoodMessages);
+        phrases.addAll(intervalStartMessages);
+        phrases.addAll(intervalEndMessages);
+        phrases.addAll(workoutCompleteMessages);
+        
+        // Fragments that dynamic announcements are composed from
+        phrases.addAll(Arrays.asList(
+                "One minute remaining.", "minutes remaining.", "seconds remaining.",
+                "Warm up complete.", "Cool down complete.", "Rest period complete.",
+                "Recovery period complete.", "Segment complete.",
+                "You've been running for", "and covered", "Your current pace is"));
+        
+        // Counts used by time remaining announcements
+        for (int i = 1; i <= 10; i++) {
+            phrases.add(String.valueOf(i));
+        }
+        return phrases;
+    }
+    
     /**
      * Start coaching for a run
      * @param run The active run
+     * @param liveMetrics Live metrics of the active run
+     * @param activeTime Active time of the run in milliseconds, excluding pauses
      * @param coachingType Type of coaching
      * @param workout The coaching workout (if workout-based coaching)
      */
-    public void startCoaching(Run run, int coachingType, CoachingWorkout workout) {
+    public void startCoaching(Run run, LiveMetricsEngine liveMetrics, LongSupplier activeTime,
+                              int coachingType, CoachingWorkout workout) {
+        // Stop any existing coaching
+        stopCoaching();
+        
         this.activeRun = run;
-        this.startTime = System.currentTimeMillis();
+        this.liveMetrics = liveMetrics;
         this.coachingType = coachingType;
         this.activeWorkout = workout;
-        this.currentSegmentIndex = 0;
-        this.lastCoachingTime = 0;
-        this.lastSegmentAnnouncementTime = 0;
-        this.lastPaceFeedbackTime = 0;
-        this.isWorkoutStarted = false;
+        this.timeline = workout != null ? workout.getTimeline() : null;
+        this.currentEntryIndex = 0;
         
-        // Stop any existing coaching
-        stopCoaching();
+        this.activeTime = activeTime;
+        this.isPaused = false;
         
-        // If workout coaching, prepare the segments
-        if (coachingType == COACHING_WORKOUT && workout != null) {
-            if (!workout.getSegments().isEmpty()) {
-                this.currentSegmentTimeRemaining = 
-                    workout.getSegments().get(currentSegmentIndex).getDuration();
-            }
-        }
+        // First deadlines; a workout's first segment starts now
+        this.pendingTimeMark = 0;
+        this.nextPaceFeedbackTime = PACE_FEEDBACK_INTERVAL;
+        this.nextBasicUpdateTime = COACHING_INTERVAL;
+        
+        // Start the speech engine on first use
+        speechEngine.prepare();
         
         // Start initial announcement
         announceStartCoaching();
         
-        // Start coaching loop
-        startCoachingLoop();
+        // Schedule the first deadline
+        runCoaching();
     }
     
     /**
      * Stop coaching
      */
     public void stopCoaching() {
-        if (coachingRunnable != null) {
-            handler.removeCallbacks(coachingRunnable);
-            coachingRunnable = null;
-        }
+        handler.removeCallbacks(coachingRunnable);
         
         this.activeRun = null;
+        this.liveMetrics = null;
+        this.activeTime = null;
         this.activeWorkout = null;
-        this.isWorkoutStarted = false;
+        this.timeline = null;
     }
     
     /**
-     * Announce the start of coaching
+     * Pause coaching; nothing is announced until {@link #resumeCoaching()}
      */
-    private void announceStartCoaching() {
-        if (!isTtsReady || !isCoachingEnabled()) {
+    public void pauseCoaching() {
+        if (activeRun == null || isPaused) {
+            return;
+        }
+        
+        isPaused = true;
+        handler.removeCallbacks(coachingRunnable);
+    }
+    
+    /**
+     * Resume coaching after a pause
+     */
+    public void resumeCoaching() {
+        if (activeRun == null || !isPaused) {
             return;
         }
         
+        isPaused = false;
+        runCoaching();
+    }
+    
+    /**
+     * Handle a new location fix. Deadlines that fell due while the handler could not run,
+     * e.g. while the CPU was asleep, are processed now.
+     */
+    public void onLocationUpdate() {
+        runCoaching();
+    }
+    
+    /**
+     * Process everything that is due and schedule a callback for the next deadline
+     */
+    private void runCoaching() {
+        handler.removeCallbacks(coachingRunnable);
+        
+        if (activeRun == null || isPaused) {
+            return;
+        }
+        
+        long now = activeTime.getAsLong();
+        
+        // Update coaching based on type
+        if (coachingType == COACHING_WORKOUT) {
+            updateWorkoutCoaching(now);
+        } else {
+            updateBasicCoaching(now);
+        }
+        
+        // Speak the most important of the cues offered above
+        cueEngine.tick();
+        
+        // Sleep until the next announcement is due
+        long nextDeadline = getNextDeadline();
+        if (nextDeadline != NO_DEADLINE) {
+            handler.postDelayed(coachingRunnable, Math.max(0, nextDeadline - now));
+        }
+    }
+    
+    /**
+     * Get the earliest pending deadline
+     * @return Deadline in active run time, or NO_DEADLINE if nothing is left to announce
+     */
+    private long getNextDeadline() {
+        if (coachingType != COACHING_WORKOUT) {
+            return nextBasicUpdateTime;
+        }
+        
+        if (timeline == null || currentEntryIndex >= timeline.size()) {
+            return NO_DEADLINE;
+        }
+        
+        WorkoutTimeline.Entry entry = timeline.getEntry(currentEntryIndex);
+        long deadline = entry.getEndTime();
+        
+        if (pendingTimeMark > 0) {
+            deadline = Math.min(deadline, entry.getEndTime() - pendingTimeMark * 1000L);
+        }
+        
+        if (entry.isActive()) {
+            deadline = Math.min(deadline, nextPaceFeedbackTime);
+        }
+        
+        return deadline;
+    }
+    
+    /**
+     * Get the next time remaining mark to announce: every full minute, then each of
+     * the last ten seconds
+     * @param remaining Time remaining in the segment in milliseconds
+     * @return Mark in seconds remaining, or 0 if there is none before the segment ends
+     */
+    private static int getNextTimeMark(long remaining) {
+        // Largest whole number of seconds strictly before the current time remaining
+        int seconds = (int) ((remaining - 1) / 1000);
+        
+        if (seconds > 10) {
+            return Math.max(10, seconds / 60 * 60);
+        }
+        
+        return Math.max(0, seconds);
+    }
+    
+    /**
+     * Announce the start of coaching
+     */
+    private void announceStartCoaching() {
         StringBuilder announcement = new StringBuilder();
         
         if (coachingType == COACHING_WORKOUT && activeWorkout != null) {
@@ -219,214 +363,174 @@ public class VoiceCoach {
                 .append(". ");
             
             // Announce first segment if available
-            if (!activeWorkout.getSegments().isEmpty()) {
-                CoachingWorkout.WorkoutSegment segment = activeWorkout.getSegments().get(0);
-                announcement.append("First segment: ")
-                    .append(CoachingWorkout.WorkoutSegment.getTypeName(segment.getType()))
-                    .append(" for ")
-                    .append(FormatUtils.formatDurationWords(segment.getDuration()))
-                    .append(". ");
-                
-                if (segment.getType() != CoachingWorkout.WorkoutSegment.TYPE_REST && 
-                    segment.getType() != CoachingWorkout.WorkoutSegment.TYPE_RECOVERY) {
-                    announcement.append("Target pace: ")
-                        .append(FormatUtils.formatPaceRange(segment.getTargetPaceMin(), segment.getTargetPaceMax()))
-                        .append(". ");
-                }
+            if (!timeline.isEmpty()) {
+                announcement.append(buildSegmentStartMessage(timeline.getEntry(0)));
             }
         } else {
             // Basic coaching start
             announcement.append("Starting run with coaching. I'll provide updates throughout your run.");
         }
         
-        speak(announcement.toString());
+        speak("coaching:start", SpeechEngine.PRIORITY_HIGH, announcement.toString());
     }
     
     /**
-     * Start the coaching update loop
+     * Update coaching for basic (non-workout) mode
+     * @param now Active run time in milliseconds
      */
-    private void startCoachingLoop() {
-        if (coachingRunnable != null) {
-            handler.removeCallbacks(coachingRunnable);
+    private void updateBasicCoaching(long now) {
+        // Check if it's time for coaching update
+        if (now < nextBasicUpdateTime) {
+            return;
         }
         
-        coachingRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (activeRun == null) {
-                    return;
-                }
-                
-                // Update coaching based on type
-                if (coachingType == COACHING_WORKOUT) {
-                    updateWorkoutCoaching();
-                } else {
-                    updateBasicCoaching();
-                }
-                
-                // Schedule next update
-                handler.postDelayed(this, 1000); // Check every second
-            }
-        };
-        
-        handler.post(coachingRunnable);
-    }
-    
-    /**
-     * Update coaching for basic (non-workout) mode
-     */
-    private void updateBasicCoaching() {
-        long currentTime = System.currentTimeMillis();
+        // Schedule the next update before speaking, so a disabled coach still keeps time
+        nextBasicUpdateTime = now + COACHING_INTERVAL;
         
-        // Skip if coaching is not enabled or TTS is not ready
-        if (!isCoachingEnabled() || !isTtsReady || activeRun == null) {
+        if (!settingsManager.get().isCoachingEnabled()) {
             return;
         }
         
-        // Check if it's time for coaching update
-        if (currentTime - lastCoachingTime >= COACHING_INTERVAL) {
-            // Time for a coaching update!
-            
-            // Get current stats
-            double distance = activeRun.getTotalDistance();
-            long duration = activeRun.getActiveDuration();
-            double pace = activeRun.getPace();
-            
-            // Prepare the coaching message
-            StringBuilder message = new StringBuilder();
-            
-            // Add time and distance
-            String distanceUnit = preferences.getString(Constants.PREF_DISTANCE_UNIT, Constants.UNIT_KM);
-            boolean useMetric = distanceUnit.equals(Constants.UNIT_KM);
-            
-            double displayDistance = useMetric ? distance : distance * 0.621371; // Convert to miles if needed
-            
-            message.append("You've been running for ")
-                .append(FormatUtils.formatDurationWords(duration))
-                .append(" and covered ")
-                .append(FormatUtils.formatDistanceWords(displayDistance, !useMetric))
-                .append(". ");
-                
-            // Add current pace
-            if (pace > 0) {
-                message.append("Your current pace is ")
-                    .append(FormatUtils.formatPaceWords(pace, !useMetric))
-                    .append(". ");
-            }
-            
-            // Add random encouragement
-            message.append(getRandomMessage(encouragementMessages));
-            
-            // Speak the message
-            speak(message.toString());
+        // Get current stats
+        double distance = activeRun.getTotalDistance();
+        long duration = activeRun.getActiveDuration() / 1000; // seconds
+        double pace = getCurrentPace();
+        
+        // Prepare the coaching message from fragments, so the fixed parts play from cache
+        List<String> message = new ArrayList<>();
+        
+        // Add time and distance
+        boolean useMetric = settingsManager.get().isMetric();
+        
+        double displayDistance = useMetric ? distance : distance * 0.621371; // Convert to miles if needed
+        
+        message.add("You've been running for");
+        message.add(FormatUtils.formatDurationWords(duration));
+        message.add("and covered");
+        message.add(FormatUtils.formatDistanceWords(displayDistance, !useMetric) + ".");
             
-            // Update last coaching time
-            lastCoachingTime = currentTime;
+        // Add current pace
+        if (pace > 0) {
+            message.add("Your current pace is");
+            message.add(FormatUtils.formatPaceWords(pace, !useMetric) + ".");
         }
+        
+        // Add random encouragement
+        message.add(getRandomMessage(encouragementMessages));
+        
+        // Offer the message; routine updates give way to anything more important
+        cueEngine.offer(new Cue(CueEngine.SOURCE_COACHING, "coaching:update",
+                SpeechEngine.PRIORITY_LOW, REPEATING_CUE_WINDOW, message));
     }
     
     /**
      * Update coaching for workout mode
+     * @param now Active run time in milliseconds
      */
-    public void updateWorkoutCoaching() {
-        long currentTime = System.currentTimeMillis();
-        
-        // Skip if coaching is not enabled or TTS is not ready
-        if (!isCoachingEnabled() || !isTtsReady || activeRun == null || activeWorkout == null) {
-            return;
-        }
-        
-        // Get workout segments
-        List<CoachingWorkout.WorkoutSegment> segments = activeWorkout.getSegments();
-        if (segments.isEmpty()) {
+    private void updateWorkoutCoaching(long now) {
+        if (timeline == null || currentEntryIndex >= timeline.size()) {
             return;
         }
         
-        // Start the workout if not started yet
-        if (!isWorkoutStarted) {
-            isWorkoutStarted = true;
-            announceSegmentStart(segments.get(currentSegmentIndex));
-            lastSegmentAnnouncementTime = currentTime;
-        }
-        
-        // Update time remaining in current segment
-        currentSegmentTimeRemaining--;
-        
-        // If time is up for current segment, move to next
-        if (currentSegmentTimeRemaining <= 0) {
-            // Announce segment completion
-            announceSegmentComplete(segments.get(currentSegmentIndex));
+        // Look up where we are; this may skip entries if callbacks were delayed
+        int index = timeline.indexAt(now);
+        if (index != currentEntryIndex) {
+            // Segment completion and what comes next are one announcement
+            String completed = buildSegmentCompleteMessage(
+                    timeline.getEntry(currentEntryIndex).getSegment());
             
-            // Move to next segment if available
-            currentSegmentIndex++;
-            if (currentSegmentIndex < segments.size()) {
-                // Get the next segment
-                CoachingWorkout.WorkoutSegment nextSegment = segments.get(currentSegmentIndex);
-                currentSegmentTimeRemaining = nextSegment.getDuration();
-                
-                // Announce start of next segment
-                announceSegmentStart(nextSegment);
-                lastSegmentAnnouncementTime = currentTime;
-            } else {
+            currentEntryIndex = index;
+            pendingTimeMark = 0;
+            
+            if (currentEntryIndex >= timeline.size()) {
                 // Workout complete!
-                announceWorkoutComplete();
+                speak("coaching:complete", SpeechEngine.PRIORITY_HIGH,
+                        completed, getRandomMessage(workoutCompleteMessages));
+                return;
             }
-        }
-        // If there's time left but it's a multiple of 30 seconds or a minute milestone, give feedback
-        else if (currentSegmentTimeRemaining % 60 == 0 || 
-                (currentSegmentTimeRemaining <= 10 && currentSegmentTimeRemaining > 0)) {
-            
-            CoachingWorkout.WorkoutSegment segment = segments.get(currentSegmentIndex);
             
-            // Only announce time remaining for longer segments (>30 sec)
-            if (segment.getDuration() > 30) {
-                if (currentSegmentTimeRemaining % 60 == 0 || currentSegmentTimeRemaining <= 10) {
-                    // Announce time remaining
-                    announceTimeRemaining(segment, currentSegmentTimeRemaining);
+            // Announce start of next segment
+            WorkoutTimeline.Entry nextEntry = timeline.getEntry(currentEntryIndex);
+            nextPaceFeedbackTime = nextEntry.getStartTime() + PACE_FEEDBACK_INTERVAL;
+            speak("coaching:segment:" + currentEntryIndex, SpeechEngine.PRIORITY_HIGH,
+                    completed, buildSegmentStartMessage(nextEntry));
+        }
+        
+        WorkoutTimeline.Entry entry = timeline.getEntry(currentEntryIndex);
+        
+        // Announce a time remaining mark that is due, unless it was missed by too much
+        if (pendingTimeMark > 0) {
+            long markTime = entry.getEndTime() - pendingTimeMark * 1000L;
+            if (now >= markTime) {
+                if (now - markTime < MAX_MARK_LATENESS) {
+                    announceTimeRemaining(entry, pendingTimeMark);
                 }
+                pendingTimeMark = 0;
             }
         }
         
-        // Check if pace feedback is needed (every 30 seconds)
-        if (currentTime - lastPaceFeedbackTime >= 30000) {
-            CoachingWorkout.WorkoutSegment segment = segments.get(currentSegmentIndex);
+        // Only announce time remaining for longer segments
+        if (pendingTimeMark == 0 && entry.getDuration() > MIN_COUNTDOWN_SEGMENT * 1000L) {
+            pendingTimeMark = getNextTimeMark(entry.getTimeRemaining(now));
+        }
+        
+        // Give pace feedback for active segments
+        if (entry.isActive() && now >= nextPaceFeedbackTime) {
+            double currentPace = getCurrentPace();
             
-            // Only give pace feedback for active segments
-            if (segment.getType() != CoachingWorkout.WorkoutSegment.TYPE_REST &&
-                segment.getType() != CoachingWorkout.WorkoutSegment.TYPE_RECOVERY) {
-                
-                // Get current pace
-                double currentPace = activeRun.getPace();
-                
-                // Give pace feedback if pace is available
-                if (currentPace > 0) {
-                    providePaceFeedback(segment, currentPace);
-                    lastPaceFeedbackTime = currentTime;
-                }
+            if (currentPace > 0) {
+                providePaceFeedback(entry.getSegment(), currentPace);
+                nextPaceFeedbackTime = now + PACE_FEEDBACK_INTERVAL;
+            } else {
+                // No pace yet; check again after the next location fix is due
+                nextPaceFeedbackTime = now + Constants.LOCATION_UPDATE_INTERVAL;
             }
         }
     }
     
     /**
-     * Announce the start of a segment
-     * @param segment The workout segment
+     * Get the pace over the last few hundred metres, falling back to the run's
+     * average pace until enough recent movement has been recorded
+     * @return Current pace in min/km
      */
-    private void announceSegmentStart(CoachingWorkout.WorkoutSegment segment) {
+    private double getCurrentPace() {
+        if (liveMetrics == null) {
+            return activeRun.getPace();
+        }
+        
+        liveMetrics.readSnapshot(metricsSnapshot);
+        return metricsSnapshot.getCurrentPace(activeRun.getPace());
+    }
+    
+    /**
+     * Build the announcement for the start of a segment
+     * @param entry The timeline entry
+     * @return Announcement text
+     */
+    private String buildSegmentStartMessage(WorkoutTimeline.Entry entry) {
+        CoachingWorkout.WorkoutSegment segment = entry.getSegment();
         StringBuilder message = new StringBuilder();
         
         // Add segment type
         message.append(CoachingWorkout.WorkoutSegment.getTypeName(segment.getType()))
             .append(" segment. ");
         
+        // Add repetition for repeated segments
+        if (entry.getRepeatCount() > 1) {
+            message.append("Repeat ")
+                .append(entry.getRepeat())
+                .append(" of ")
+                .append(entry.getRepeatCount())
+                .append(". ");
+        }
+        
         // Add duration
         message.append("Duration: ")
             .append(FormatUtils.formatDurationWords(segment.getDuration()))
             .append(". ");
         
         // Add pace target if applicable
-        if (segment.getType() != CoachingWorkout.WorkoutSegment.TYPE_REST && 
-            segment.getType() != CoachingWorkout.WorkoutSegment.TYPE_RECOVERY) {
-            
+        if (entry.isActive()) {
             message.append("Target pace: ")
                 .append(FormatUtils.formatPaceRange(segment.getTargetPaceMin(), segment.getTargetPaceMax()))
                 .append(". ");
@@ -442,66 +546,59 @@ public class VoiceCoach {
             message.append(" ").append(getRandomMessage(intervalStartMessages));
         }
         
-        speak(message.toString());
+        return message.toString();
     }
     
     /**
-     * Announce the completion of a segment
+     * Build the announcement for the completion of a segment
      * @param segment The workout segment
+     * @return Announcement text
      */
-    private void announceSegmentComplete(CoachingWorkout.WorkoutSegment segment) {
-        StringBuilder message = new StringBuilder();
+    private String buildSegmentCompleteMessage(CoachingWorkout.WorkoutSegment segment) {
+        String message;
         
         // Different message based on segment type
         switch (segment.getType()) {
             case CoachingWorkout.WorkoutSegment.TYPE_WARMUP:
-                message.append("Warm up complete. ");
+                message = "Warm up complete.";
                 break;
             case CoachingWorkout.WorkoutSegment.TYPE_COOLDOWN:
-                message.append("Cool down complete. ");
+                message = "Cool down complete.";
                 break;
             case CoachingWorkout.WorkoutSegment.TYPE_ACTIVE:
-                message.append(getRandomMessage(intervalEndMessages)).append(" ");
+                message = getRandomMessage(intervalEndMessages);
                 break;
             case CoachingWorkout.WorkoutSegment.TYPE_REST:
-                message.append("Rest period complete. ");
+                message = "Rest period complete.";
                 break;
             case CoachingWorkout.WorkoutSegment.TYPE_RECOVERY:
-                message.append("Recovery period complete. ");
+                message = "Recovery period complete.";
                 break;
             default:
-                message.append("Segment complete. ");
+                message = "Segment complete.";
                 break;
         }
         
-        speak(message.toString());
+        return message;
     }
     
     /**
      * Announce time remaining in a segment
-     * @param segment The workout segment
+     * @param entry The timeline entry
      * @param timeRemaining Time remaining in seconds
      */
-    private void announceTimeRemaining(CoachingWorkout.WorkoutSegment segment, int timeRemaining) {
-        StringBuilder message = new StringBuilder();
+    private void announceTimeRemaining(WorkoutTimeline.Entry entry, int timeRemaining) {
+        String key = "coaching:remaining:" + entry.getIndex() + ":" + timeRemaining;
         
+        // Counts and units are separate fragments, so every announcement plays from cache
         if (timeRemaining == 60) {
-            message.append("One minute remaining. ");
+            speak(key, SpeechEngine.PRIORITY_NORMAL, "One minute remaining.");
         } else if (timeRemaining < 60) {
-            message.append(timeRemaining).append(" seconds remaining. ");
+            speak(key, SpeechEngine.PRIORITY_NORMAL, String.valueOf(timeRemaining), "seconds remaining.");
         } else {
             int minutes = timeRemaining / 60;
-            message.append(minutes).append(" minutes remaining. ");
+            speak(key, SpeechEngine.PRIORITY_NORMAL, String.valueOf(minutes), "minutes remaining.");
         }
-        
-        speak(message.toString());
-    }
-    
-    /**
-     * Announce workout completion
-     */
-    private void announceWorkoutComplete() {
-        speak(getRandomMessage(workoutCompleteMessages));
     }
     
     /**
@@ -516,13 +613,16 @@ public class VoiceCoach {
         // Select and speak appropriate feedback
         switch (paceFeedback) {
             case PACE_FEEDBACK_TOO_FAST:
-                speak(getRandomMessage(paceSlowerMessages));
+                speak("coaching:pace", SpeechEngine.PRIORITY_NORMAL, REPEATING_CUE_WINDOW,
+                        getRandomMessage(paceSlowerMessages));
                 break;
             case PACE_FEEDBACK_TOO_SLOW:
-                speak(getRandomMessage(paceFasterMessages));
+                speak("coaching:pace", SpeechEngine.PRIORITY_NORMAL, REPEATING_CUE_WINDOW,
+                        getRandomMessage(paceFasterMessages));
                 break;
             case PACE_FEEDBACK_PERFECT:
-                speak(getRandomMessage(paceGoodMessages));
+                speak("coaching:pace", SpeechEngine.PRIORITY_NORMAL, REPEATING_CUE_WINDOW,
+                        getRandomMessage(paceGoodMessages));
                 break;
         }
     }
@@ -559,13 +659,29 @@ public class VoiceCoach {
     }
     
     /**
-     * Speak a message using TTS
-     * @param message The message to speak
+     * Offer a message to the cue engine; it is spoken by the next tick if nothing more
+     * important is pending
+     * @param key Identifies what the message is about
+     * @param priority SpeechEngine priority
+     * @param fragments The message, as one or more fragments spoken in order
+     */
+    private void speak(String key, int priority, String... fragments) {
+        speak(key, priority, CueEngine.DUPLICATE_WINDOW, fragments);
+    }
+    
+    /**
+     * Offer a message to the cue engine with its own duplicate window
+     * @param key Identifies what the message is about
+     * @param priority SpeechEngine priority
+     * @param duplicateWindow See {@link Cue#getDuplicateWindow()}
+     * @param fragments The message, as one or more fragments spoken in order
      */
-    private void speak(String message) {
-        if (isTtsReady && isCoachingEnabled()) {
-            textToSpeech.speak(message, TextToSpeech.QUEUE_FLUSH, null, "RunCoach");
+    private void speak(String key, int priority, long duplicateWindow, String... fragments) {
+        if (!settingsManager.get().isCoachingEnabled()) {
+            return;
         }
+        
+        cueEngine.offer(new Cue(CueEngine.SOURCE_COACHING, key, priority, duplicateWindow, fragments));
     }
     
     /**
@@ -583,23 +699,9 @@ public class VoiceCoach {
     }
     
     /**
-     * Check if voice coaching is enabled
-     * @return true if enabled
-     */
-    private boolean isCoachingEnabled() {
-        return preferences.getBoolean(Constants.PREF_COACHING_ENABLED, true);
-    }
-    
-    /**
-     * Release resources
+     * Release resources; the shared speech engine is shut down by its owner
      */
     public void shutdown() {
-        if (textToSpeech != null) {
-            textToSpeech.stop();
-            textToSpeech.shutdown();
-            isTtsReady = false;
-        }
-        
         stopCoaching();
     }
 }
\ No newline at end of file
@@ -8,15 +8,19 @@ import android.view.MenuItem;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LiveData;
 import androidx.navigation.NavController;
 import androidx.navigation.Navigation;
 import androidx.navigation.ui.NavigationUI;
 
 import com.google.android.material.bottomnavigation.BottomNavigationView;
+import com.runtracker.android.AppInitializer;
 import com.runtracker.android.R;
+import com.runtracker.android.RunTrackerApplication;
 import com.runtracker.android.data.AchievementManager;
 import com.runtracker.android.data.CoachingManager;
 import com.runtracker.android.data.models.Run;
@@ -35,14 +39,8 @@ public class MainActivity extends AppCompatActivity {
     private BottomNavigationView bottomNavigationView;
     private NavController navController;
     
-    // Repositories and managers
-    private RunRepository runRepository;
-    private AchievementManager achievementManager;
-    private CoachingManager coachingManager;
-    
-    // Services
-    private AudioCueManager audioCueManager;
-    private VoiceCoach voiceCoach;
+    // Repositories, managers and services are loaded in the background
+    private AppInitializer appInitializer;
     
     // Active run state
     private Run activeRun;
@@ -50,16 +48,20 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
         
-        // Initialize repositories and managers
-        runRepository = new RunRepository(this);
-        achievementManager = new AchievementManager(this);
-        coachingManager = new CoachingManager(this);
+        // Repositories and managers started loading when the application was created
+        appInitializer = RunTrackerApplication.from(this).getAppInitializer();
         
-        // Initialize services
-        audioCueManager = new AudioCueManager(this);
-        voiceCoach = new VoiceCoach(this);
+        setContentView(R.layout.activity_main);
+        
+        // Report the first fully drawn frame once data has loaded, or offer a retry if it failed
+        appInitializer.getState().observe(this, state -> {
+            if (state == AppInitializer.STATE_READY) {
+                reportFullyDrawn();
+            } else if (state == AppInitializer.STATE_FAILED) {
+                showInitializationError();
+            }
+        });
         
         // Set up navigation
         setupNavigation();
@@ -68,6 +70,24 @@ public class MainActivity extends AppCompatActivity {
         checkLocationPermission();
     }
     
+    /**
+     * Tell the user their data could not be loaded and let them try again
+     */
+    private void showInitializationError() {
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.loading_failed_title)
+                .setMessage(R.string.loading_failed_message)
+                .setCancelable(false)
+                .setPositiveButton(R.string.retry, (dialog, which) -> {
+                    appInitializer.retry();
+                })
+                .setNegativeButton(R.string.close, (dialog, which) -> {
+                    finish();
+                })
+                .create()
+                .show();
+    }
+    
     /**
      * Set up bottom navigation with NavController
      */
@@ -158,12 +178,22 @@ public class MainActivity extends AppCompatActivity {
         startService(intent);
     }
     
+    /**
+     * Observe whether repositories and managers have finished loading.
+     * Fragments should wait for this before calling the getters below,
+     * which block until their component is available.
+     * @return LiveData that becomes true once everything is ready
+     */
+    public LiveData<Boolean> getInitializationState() {
+        return appInitializer.getReadyState();
+    }
+    
     /**
      * Get the run repository
      * @return Run repository
      */
     public RunRepository getRunRepository() {
-        return runRepository;
+        return appInitializer.getRunRepositoryFuture().join();
     }
     
     /**
@@ -171,7 +201,7 @@ public class MainActivity extends AppCompatActivity {
      * @return Achievement manager
      */
     public AchievementManager getAchievementManager() {
-        return achievementManager;
+        return appInitializer.getAchievementManagerFuture().join();
     }
     
     /**
@@ -179,7 +209,7 @@ public class MainActivity extends AppCompatActivity {
      * @return Coaching manager
      */
     public CoachingManager getCoachingManager() {
-        return coachingManager;
+        return appInitializer.getCoachingManagerFuture().join();
     }
     
     /**
@@ -187,7 +217,7 @@ public class MainActivity extends AppCompatActivity {
      * @return Audio cue manager
      */
     public AudioCueManager getAudioCueManager() {
-        return audioCueManager;
+        return appInitializer.getAudioCueManagerFuture().join();
     }
     
     /**
@@ -195,7 +225,7 @@ public class MainActivity extends AppCompatActivity {
      * @return Voice coach
      */
     public VoiceCoach getVoiceCoach() {
-        return voiceCoach;
+        return appInitializer.getVoiceCoachFuture().join();
     }
     
     /**
@@ -213,18 +243,4 @@ public class MainActivity extends AppCompatActivity {
     public Run getActiveRun() {
         return activeRun;
     }
-    
-    @Override
-    protected void onDestroy() {
-        // Cleanup resources
-        if (audioCueManager != null) {
-            audioCueManager.shutdown();
-        }
-        
-        if (voiceCoach != null) {
-            voiceCoach.shutdown();
-        }
-        
-        super.onDestroy();
-    }
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package com.runtracker.android.ui.adapters;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,14 +9,14 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
-import androidx.preference.PreferenceManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.progressindicator.LinearProgressIndicator;
 import com.runtracker.android.R;
+import com.runtracker.android.RunTrackerApplication;
+import com.runtracker.android.data.SettingsManager;
 import com.runtracker.android.data.models.Achievement;
 import com.runtracker.android.data.models.RunStatistics;
-import com.runtracker.android.utils.Constants;
 import com.runtracker.android.utils.FormatUtils;
 
 import java.text.SimpleDateFormat;
@@ -33,8 +32,8 @@ public class AchievementAdapter extends RecyclerView.Adapter<AchievementAdapter.
 
     private final Context context;
     private List<Achievement> achievements;
-    private final RunStatistics statistics;
-    private final SharedPreferences preferences;
+    private RunStatistics statistics;
+    private final SettingsManager settingsManager;
 
     // Filter constants
     public static final int FILTER_ALL = 0;
@@ -45,13 +44,20 @@ public class AchievementAdapter extends RecyclerView.Adapter<AchievementAdapter.
     /**
      * Constructor
      * @param context The context
-     * @param statistics Run statistics for progress calculation
      */
-    public AchievementAdapter(Context context, RunStatistics statistics) {
+    public AchievementAdapter(Context context) {
         this.context = context;
         this.achievements = new ArrayList<>();
+        this.settingsManager = RunTrackerApplication.from(context).getSettingsManager();
+    }
+
+    /**
+     * Set the statistics used for progress
+     * @param statistics Shared run statistics; read-only
+     */
+    public void setStatistics(RunStatistics statistics) {
         this.statistics = statistics;
-        this.preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        notifyDataSetChanged();
     }
 
     /**
@@ -219,25 +225,27 @@ public class AchievementAdapter extends RecyclerView.Adapter<AchievementAdapter.
          * @param achievement Achievement to display
          */
         private void setProgressAndStatus(Achievement achievement) {
-            // Get current value based on achievement type
-            double currentValue = 0;
+            // Get current value based on achievement type; no progress until statistics load
+            double currentValue = achievement.getType() == Achievement.TYPE_PACE ? Double.MAX_VALUE : 0;
             
-            switch (achievement.getType()) {
-                case Achievement.TYPE_DISTANCE:
-                    currentValue = statistics.getTotalDistance();
-                    break;
-                case Achievement.TYPE_RUNS:
-                    currentValue = statistics.getTotalRuns();
-                    break;
-                case Achievement.TYPE_STREAK:
-                    currentValue = statistics.getLongestStreak();
-                    break;
-                case Achievement.TYPE_PACE:
-                    currentValue = statistics.getBestPace() > 0 ? statistics.getBestPace() : Double.MAX_VALUE;
-                    break;
-                case Achievement.TYPE_DURATION:
-                    currentValue = statistics.getLongestDuration();
-                    break;
+            if (statistics != null) {
+                switch (achievement.getType()) {
+                    case Achievement.TYPE_DISTANCE:
+                        currentValue = statistics.getTotalDistance();
+                        break;
+                    case Achievement.TYPE_RUNS:
+                        currentValue = statistics.getTotalRuns();
+                        break;
+                    case Achievement.TYPE_STREAK:
+                        currentValue = statistics.getLongestStreak();
+                        break;
+                    case Achievement.TYPE_PACE:
+                        currentValue = statistics.getBestPace() > 0 ? statistics.getBestPace() : Double.MAX_VALUE;
+                        break;
+                    case Achievement.TYPE_DURATION:
+                        currentValue = statistics.getLongestDuration() / 1000.0; // target is in seconds
+                        break;
+                }
             }
 
             // Set progress
@@ -310,9 +318,8 @@ public class AchievementAdapter extends RecyclerView.Adapter<AchievementAdapter.
             String currentValueStr;
             String targetValueStr;
             
-            // Get unit from preferences
-            String distanceUnit = preferences.getString(Constants.PREF_DISTANCE_UNIT, Constants.UNIT_KM);
-            boolean useMetric = distanceUnit.equals(Constants.UNIT_KM);
+            // Get unit from settings
+            boolean useMetric = settingsManager.get().isMetric();
             
             // Format based on achievement type
             switch (achievement.getType()) {
@@ -17,10 +17,11 @@ import com.google.android.material.chip.Chip;
 import com.google.android.material.chip.ChipGroup;
 import com.google.android.material.progressindicator.LinearProgressIndicator;
 import com.runtracker.android.R;
+import com.runtracker.android.RunTrackerApplication;
 import com.runtracker.android.data.AchievementManager;
+import com.runtracker.android.data.StatisticsCache;
 import com.runtracker.android.data.models.Achievement;
 import com.runtracker.android.data.models.RunStatistics;
-import com.runtracker.android.data.repositories.RunRepository;
 import com.runtracker.android.ui.MainActivity;
 import com.runtracker.android.ui.adapters.AchievementAdapter;
 
@@ -42,8 +43,7 @@ public class AchievementsFragment extends Fragment implements AchievementManager
 
     private AchievementManager achievementManager;
     private AchievementAdapter adapter;
-    private RunRepository runRepository;
-    private RunStatistics statistics;
+    private StatisticsCache statisticsCache;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
@@ -59,13 +59,7 @@ public class AchievementsFragment extends Fragment implements AchievementManager
         initViews(view);
 
         // Get dependencies
-        MainActivity activity = (MainActivity) requireActivity();
-        runRepository = activity.getRunRepository();
-        achievementManager = activity.getAchievementManager();
-        statistics = new RunStatistics();
-
-        // Register for achievement updates
-        achievementManager.addListener(this);
+        statisticsCache = RunTrackerApplication.from(requireContext()).getStatisticsCache();
 
         // Initialize RecyclerView
         setupRecyclerView();
@@ -73,8 +67,21 @@ public class AchievementsFragment extends Fragment implements AchievementManager
         // Setup filter chips
         setupFilterChips();
 
-        // Load achievements
-        loadAchievements();
+        // Load achievements once the repository and manager have finished loading
+        MainActivity activity = (MainActivity) requireActivity();
+        activity.getInitializationState().observe(getViewLifecycleOwner(), ready -> {
+            if (ready) {
+                achievementManager = activity.getAchievementManager();
+
+                // Register for achievement updates
+                achievementManager.addListener(this);
+
+                loadAchievements();
+
+                // Statistics are computed in the background, once per change to the run history
+                statisticsCache.getStatistics().observe(getViewLifecycleOwner(), this::onStatisticsChanged);
+            }
+        });
     }
 
     @Override
@@ -104,7 +111,7 @@ public class AchievementsFragment extends Fragment implements AchievementManager
      * Set up the RecyclerView
      */
     private void setupRecyclerView() {
-        adapter = new AchievementAdapter(requireContext(), statistics);
+        adapter = new AchievementAdapter(requireContext());
         rvAchievements.setAdapter(adapter);
         rvAchievements.setLayoutManager(new LinearLayoutManager(requireContext()));
     }
@@ -128,15 +135,21 @@ public class AchievementsFragment extends Fragment implements AchievementManager
     }
 
     /**
-     * Load achievements and statistics
+     * Show progress for new statistics and check them for achievements
+     * @param statistics Shared statistics; read-only
      */
-    private void loadAchievements() {
-        // Calculate statistics from runs
-        statistics.calculateStats(runRepository.getCompletedRuns());
+    private void onStatisticsChanged(RunStatistics statistics) {
+        adapter.setStatistics(statistics);
 
-        // Update achievements based on statistics
+        // Unlocks are reported through onAchievementUnlocked
         achievementManager.updateAchievementsForStats(statistics);
+        loadAchievements();
+    }
 
+    /**
+     * Load achievements
+     */
+    private void loadAchievements() {
         // Get achievements list
         List<Achievement> achievements = achievementManager.getAllAchievements();
 
@@ -187,7 +200,7 @@ public class AchievementsFragment extends Fragment implements AchievementManager
                     getString(R.string.achievement_unlocked, achievement.getTitle()),
                     Toast.LENGTH_LONG).show();
 
-            // Reload achievements
+            // Reload achievements; the statistics have not changed
             loadAchievements();
         }
     }
@@ -195,7 +208,10 @@ public class AchievementsFragment extends Fragment implements AchievementManager
     @Override
     public void onResume() {
         super.onResume();
-        // Reload when returning to fragment
-        loadAchievements();
+        // Recompute statistics if runs changed while away
+        if (achievementManager != null) {
+            statisticsCache.refresh();
+            loadAchievements();
+        }
     }
 }
\ No newline at end of file
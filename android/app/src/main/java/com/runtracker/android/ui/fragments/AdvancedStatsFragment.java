@@ -1,6 +1,5 @@
 package com.runtracker.android.ui.fragments;
 
-import android.content.SharedPreferences;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.view.LayoutInflater;
@@ -12,22 +11,31 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
-import androidx.preference.PreferenceManager;
+import androidx.navigation.Navigation;
 
 import com.github.mikephil.charting.charts.BarChart;
+import com.github.mikephil.charting.charts.LineChart;
 import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.components.YAxis;
 import com.github.mikephil.charting.data.BarData;
 import com.github.mikephil.charting.data.BarDataSet;
 import com.github.mikephil.charting.data.BarEntry;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.formatter.IndexAxisValueFormatter;
 import com.github.mikephil.charting.formatter.ValueFormatter;
 import com.runtracker.android.R;
-import com.runtracker.android.data.models.Run;
+import com.runtracker.android.RunTrackerApplication;
+import com.runtracker.android.data.DistributionManager;
+import com.runtracker.android.data.RecordsManager;
+import com.runtracker.android.data.SettingsManager;
+import com.runtracker.android.data.StatisticsCache;
+import com.runtracker.android.data.TrainingLoadManager;
+import com.runtracker.android.data.models.PersonalRecord;
 import com.runtracker.android.data.models.RunStatistics;
-import com.runtracker.android.data.repositories.RunRepository;
+import com.runtracker.android.data.models.TrainingLoad;
 import com.runtracker.android.ui.MainActivity;
-import com.runtracker.android.utils.Constants;
 import com.runtracker.android.utils.FormatUtils;
 
 import java.text.SimpleDateFormat;
@@ -36,26 +44,43 @@ import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
 
 /**
  * Fragment for displaying advanced run statistics
  */
 public class AdvancedStatsFragment extends Fragment {
 
+    // Days of training load shown in the chart
+    private static final int TRAINING_LOAD_DAYS = 90;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    // Months of runs the pace distribution covers, including the current one
+    private static final int DISTRIBUTION_MONTHS = 12;
+
     private TextView tvLongestRun;
     private TextView tvLongestDuration;
     private TextView tvBestPace;
+    private TextView tvBiggestWeek;
+    private TextView tvBiggestMonth;
     private TextView tvCurrentStreak;
     private TextView tvLongestStreak;
     private TextView tvAvgRunsPerWeek;
     private TextView tvMostActiveDay;
+    private TextView tvMedianPace;
+    private TextView tvPaceRange;
+    private TextView tvMedianSplitPace;
     private BarChart chartMonthly;
     private BarChart chartHourly;
     private BarChart chartWeekday;
+    private LineChart chartTrainingLoad;
 
-    private RunRepository runRepository;
+    private StatisticsCache statisticsCache;
     private RunStatistics runStatistics;
-    private SharedPreferences sharedPreferences;
+    private SettingsManager settingsManager;
+    private RecordsManager recordsManager;
+    private TrainingLoadManager trainingLoadManager;
+    private DistributionManager distributionManager;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
@@ -71,24 +96,38 @@ public class AdvancedStatsFragment extends Fragment {
         initViews(view);
 
         // Get dependencies
-        runRepository = ((MainActivity) requireActivity()).getRunRepository();
-        runStatistics = new RunStatistics();
-        sharedPreferences = PreferenceManager.getDefaultSharedPreferences(requireContext());
+        RunTrackerApplication application = RunTrackerApplication.from(requireContext());
+        statisticsCache = application.getStatisticsCache();
+        settingsManager = application.getSettingsManager();
 
         // Set up charts
         setupMonthlyChart();
         setupHourlyChart();
         setupWeekdayChart();
+        setupTrainingLoadChart();
 
-        // Load stats
-        loadAdvancedStats();
+        // Load stats once the repository has finished loading; they are computed in the
+        // background and shared with the other screens. The records, training load and pace
+        // distribution are built from the run history, so they are only fetched once it
+        // has loaded as well.
+        MainActivity activity = (MainActivity) requireActivity();
+        activity.getInitializationState().observe(getViewLifecycleOwner(), ready -> {
+            if (ready) {
+                recordsManager = application.getRecordsManager();
+                trainingLoadManager = application.getTrainingLoadManager();
+                distributionManager = application.getDistributionManager();
+                statisticsCache.getStatistics().observe(getViewLifecycleOwner(), this::showStats);
+            }
+        });
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        // Reload stats when coming back to this fragment
-        loadAdvancedStats();
+        // Recompute stats if runs changed while away
+        if (runStatistics != null) {
+            statisticsCache.refresh();
+        }
     }
 
     /**
@@ -98,24 +137,27 @@ public class AdvancedStatsFragment extends Fragment {
         tvLongestRun = view.findViewById(R.id.tvLongestRun);
         tvLongestDuration = view.findViewById(R.id.tvLongestDuration);
         tvBestPace = view.findViewById(R.id.tvBestPace);
+        tvBiggestWeek = view.findViewById(R.id.tvBiggestWeek);
+        tvBiggestMonth = view.findViewById(R.id.tvBiggestMonth);
         tvCurrentStreak = view.findViewById(R.id.tvCurrentStreak);
         tvLongestStreak = view.findViewById(R.id.tvLongestStreak);
         tvAvgRunsPerWeek = view.findViewById(R.id.tvAvgRunsPerWeek);
         tvMostActiveDay = view.findViewById(R.id.tvMostActiveDay);
+        tvMedianPace = view.findViewById(R.id.tvMedianPace);
+        tvPaceRange = view.findViewById(R.id.tvPaceRange);
+        tvMedianSplitPace = view.findViewById(R.id.tvMedianSplitPace);
         chartMonthly = view.findViewById(R.id.chartMonthly);
         chartHourly = view.findViewById(R.id.chartHourly);
         chartWeekday = view.findViewById(R.id.chartWeekday);
+        chartTrainingLoad = view.findViewById(R.id.chartTrainingLoad);
     }
 
     /**
-     * Load and display advanced run statistics
+     * Display advanced run statistics
+     * @param statistics Shared statistics; read-only
      */
-    private void loadAdvancedStats() {
-        // Get all completed runs
-        List<Run> runs = runRepository.getCompletedRuns();
-
-        // Calculate stats
-        runStatistics.calculateStats(runs);
+    private void showStats(RunStatistics statistics) {
+        runStatistics = statistics;
 
         // Update UI with stats
         updateStats();
@@ -127,17 +169,20 @@ public class AdvancedStatsFragment extends Fragment {
      */
     private void updateStats() {
         // Get distance unit preference
-        String distanceUnit = sharedPreferences.getString(Constants.PREF_DISTANCE_UNIT, Constants.UNIT_KM);
-        boolean useMetric = distanceUnit.equals(Constants.UNIT_KM);
+        boolean useMetric = settingsManager.get().isMetric();
 
         // Update records section
-        double longestDistance = runStatistics.getLongestRunDistance();
-        if (!useMetric) {
-            longestDistance *= 0.621371; // Convert to miles
-        }
-        tvLongestRun.setText(FormatUtils.formatDistance(longestDistance));
-        tvLongestDuration.setText(FormatUtils.formatDuration(runStatistics.getLongestDuration()));
-        tvBestPace.setText(FormatUtils.formatPace(runStatistics.getBestPace()));
+        PersonalRecord longestRun = showRecord(tvLongestRun, PersonalRecord.TYPE_LONGEST_DISTANCE);
+        tvLongestRun.setText(formatDistance(longestRun, useMetric));
+        PersonalRecord longestDuration = showRecord(tvLongestDuration, PersonalRecord.TYPE_LONGEST_DURATION);
+        tvLongestDuration.setText(FormatUtils.formatDuration(
+                longestDuration != null ? (long) longestDuration.getValue() / 1000 : 0));
+        PersonalRecord bestPace = showRecord(tvBestPace, PersonalRecord.TYPE_FASTEST_PACE);
+        tvBestPace.setText(FormatUtils.formatPace(bestPace != null ? bestPace.getValue() : 0));
+        tvBiggestWeek.setText(formatDistance(
+                showRecord(tvBiggestWeek, PersonalRecord.TYPE_BIGGEST_WEEK), useMetric));
+        tvBiggestMonth.setText(formatDistance(
+                showRecord(tvBiggestMonth, PersonalRecord.TYPE_BIGGEST_MONTH), useMetric));
 
         // Update streaks section
         tvCurrentStreak.setText(getString(R.string.days_count, runStatistics.getCurrentStreak()));
@@ -155,6 +200,62 @@ public class AdvancedStatsFragment extends Fragment {
         } else {
             tvMostActiveDay.setText(R.string.not_enough_data);
         }
+
+        updatePaceDistribution();
+    }
+
+    /**
+     * Update the pace distribution section from the monthly sketches
+     */
+    private void updatePaceDistribution() {
+        Calendar calendar = Calendar.getInstance();
+        long to = calendar.getTimeInMillis() + 1;
+        calendar.add(Calendar.MONTH, 1 - DISTRIBUTION_MONTHS);
+        long from = calendar.getTimeInMillis();
+
+        double[] pace = distributionManager.getQuantiles(DistributionManager.METRIC_PACE,
+                from, to, 0.1, 0.5, 0.9);
+        double splitPace = distributionManager.getMedian(DistributionManager.METRIC_SPLIT_PACE, from, to);
+
+        // NaN means there were no runs in the range; formatPace shows 0 as missing
+        tvMedianPace.setText(FormatUtils.formatPace(Double.isNaN(pace[1]) ? 0 : pace[1]));
+        tvPaceRange.setText(Double.isNaN(pace[0]) ? getString(R.string.not_enough_data)
+                : FormatUtils.formatPaceRange(pace[0], pace[2]));
+        tvMedianSplitPace.setText(FormatUtils.formatPace(Double.isNaN(splitPace) ? 0 : splitPace));
+    }
+
+    /**
+     * Get the best record of a type and let its row open the run it was set in
+     * @param valueView Text view showing the record
+     * @param type PersonalRecord type
+     * @return Record or null if there are no runs
+     */
+    private PersonalRecord showRecord(TextView valueView, int type) {
+        PersonalRecord record = recordsManager.getRecord(type);
+        View row = (View) valueView.getParent();
+        if (record != null && record.getRunId() != null) {
+            String runId = record.getRunId();
+            row.setOnClickListener(v -> Navigation.findNavController(v).navigate(R.id.runDetailFragment,
+                    new RunDetailFragmentArgs.Builder(runId).build().toBundle()));
+        } else {
+            row.setOnClickListener(null);
+            row.setClickable(false);
+        }
+        return record;
+    }
+
+    /**
+     * Format the distance of a record in the user's unit
+     * @param record Record, may be null
+     * @param useMetric true for kilometers, false for miles
+     * @return Formatted distance
+     */
+    private static String formatDistance(PersonalRecord record, boolean useMetric) {
+        double distance = record != null ? record.getValue() : 0;
+        if (!useMetric) {
+            distance *= 0.621371; // Convert to miles
+        }
+        return FormatUtils.formatDistance(distance);
     }
 
     /**
@@ -164,6 +265,7 @@ public class AdvancedStatsFragment extends Fragment {
         updateMonthlyChart();
         updateHourlyChart();
         updateWeekdayChart();
+        updateTrainingLoadChart();
     }
 
     /**
@@ -212,8 +314,7 @@ public class AdvancedStatsFragment extends Fragment {
         }
         
         // Get distance unit preference
-        String distanceUnit = sharedPreferences.getString(Constants.PREF_DISTANCE_UNIT, Constants.UNIT_KM);
-        boolean useMetric = distanceUnit.equals(Constants.UNIT_KM);
+        boolean useMetric = settingsManager.get().isMetric();
         
         // Prepare data entries
         List<BarEntry> entries = new ArrayList<>();
@@ -327,8 +428,7 @@ public class AdvancedStatsFragment extends Fragment {
         }
         
         // Get distance unit preference
-        String distanceUnit = sharedPreferences.getString(Constants.PREF_DISTANCE_UNIT, Constants.UNIT_KM);
-        boolean useMetric = distanceUnit.equals(Constants.UNIT_KM);
+        boolean useMetric = settingsManager.get().isMetric();
         
         // Prepare data entries and labels
         List<BarEntry> entries = new ArrayList<>();
@@ -455,4 +555,92 @@ public class AdvancedStatsFragment extends Fragment {
         chartWeekday.getXAxis().setValueFormatter(new IndexAxisValueFormatter(weekdays));
         chartWeekday.invalidate();
     }
+    
+    /**
+     * Set up the training load chart
+     */
+    private void setupTrainingLoadChart() {
+        // Basic chart settings
+        chartTrainingLoad.getDescription().setEnabled(false);
+        chartTrainingLoad.setDrawGridBackground(false);
+        chartTrainingLoad.setPinchZoom(false);
+        chartTrainingLoad.setScaleEnabled(false);
+        chartTrainingLoad.setDoubleTapToZoomEnabled(false);
+        chartTrainingLoad.getLegend().setTextColor(
+                ContextCompat.getColor(requireContext(), R.color.text_secondary));
+        
+        // Setup X axis
+        XAxis xAxis = chartTrainingLoad.getXAxis();
+        xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
+        xAxis.setDrawGridLines(false);
+        xAxis.setGranularity(1f);
+        xAxis.setTextColor(ContextCompat.getColor(requireContext(), R.color.text_secondary));
+        
+        // Setup Y axis; form goes below zero
+        YAxis leftAxis = chartTrainingLoad.getAxisLeft();
+        leftAxis.setTextColor(ContextCompat.getColor(requireContext(), R.color.text_secondary));
+        leftAxis.setDrawGridLines(true);
+        leftAxis.setDrawZeroLine(true);
+        
+        YAxis rightAxis = chartTrainingLoad.getAxisRight();
+        rightAxis.setEnabled(false);
+    }
+    
+    /**
+     * Update the training load chart with fitness, fatigue and form for recent days
+     */
+    private void updateTrainingLoadChart() {
+        List<TrainingLoad> history = trainingLoadManager.getHistory(TRAINING_LOAD_DAYS);
+        
+        // Check if we have data
+        if (runStatistics.getTotalRuns() == 0) {
+            chartTrainingLoad.setData(null);
+            chartTrainingLoad.invalidate();
+            return;
+        }
+        
+        List<Entry> fitness = new ArrayList<>();
+        List<Entry> fatigue = new ArrayList<>();
+        List<Entry> form = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        
+        // Epoch days are local dates, so format them as UTC to keep the date unchanged
+        SimpleDateFormat sdf = new SimpleDateFormat("d MMM", Locale.getDefault());
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        
+        for (int i = 0; i < history.size(); i++) {
+            TrainingLoad load = history.get(i);
+            fitness.add(new Entry(i, (float) load.getChronic()));
+            fatigue.add(new Entry(i, (float) load.getAcute()));
+            form.add(new Entry(i, (float) load.getBalance()));
+            labels.add(sdf.format(load.getDay() * DAY_MILLIS));
+        }
+        
+        LineData lineData = new LineData(
+                createLoadDataSet(fitness, R.string.training_fitness, R.color.primary),
+                createLoadDataSet(fatigue, R.string.training_fatigue, R.color.accent),
+                createLoadDataSet(form, R.string.training_form, R.color.text_secondary));
+        
+        // Set data to chart
+        chartTrainingLoad.setData(lineData);
+        chartTrainingLoad.getXAxis().setValueFormatter(new IndexAxisValueFormatter(labels));
+        chartTrainingLoad.getXAxis().setLabelCount(4, true); // Show fewer labels
+        chartTrainingLoad.invalidate();
+    }
+    
+    /**
+     * Create one line of the training load chart
+     * @param entries Values by day
+     * @param labelResId Label string resource
+     * @param colorResId Line color resource
+     * @return Data set
+     */
+    private LineDataSet createLoadDataSet(List<Entry> entries, int labelResId, int colorResId) {
+        LineDataSet dataSet = new LineDataSet(entries, getString(labelResId));
+        dataSet.setColor(ContextCompat.getColor(requireContext(), colorResId));
+        dataSet.setLineWidth(2f);
+        dataSet.setDrawCircles(false);
+        dataSet.setDrawValues(false);
+        return dataSet;
+    }
 }
\ No newline at end of file
@@ -22,9 +22,12 @@ import androidx.preference.PreferenceManager;
 import com.runtracker.android.R;
 import com.runtracker.android.data.CoachingManager;
 import com.runtracker.android.data.models.CoachingPlan;
+import com.runtracker.android.data.models.PlanTemplate;
 import com.runtracker.android.ui.MainActivity;
 import com.runtracker.android.utils.Constants;
 
+import java.util.List;
+
 /**
  * Fragment for voice coaching settings
  */
@@ -66,21 +69,27 @@ public class CoachingSettingsFragment extends Fragment {
         super.onViewCreated(view, savedInstanceState);
         
         // Initialize dependencies
-        MainActivity activity = (MainActivity) requireActivity();
-        coachingManager = activity.getCoachingManager();
         preferences = PreferenceManager.getDefaultSharedPreferences(requireContext());
         
         // Initialize UI components
         initUI(view);
         
-        // Load current settings
-        loadSettings();
-        
-        // Setup listeners
-        setupListeners();
-        
-        // Update UI
-        updateUI();
+        // Load settings once the coaching manager has finished loading
+        MainActivity activity = (MainActivity) requireActivity();
+        activity.getInitializationState().observe(getViewLifecycleOwner(), ready -> {
+            if (ready) {
+                coachingManager = activity.getCoachingManager();
+                
+                // Load current settings
+                loadSettings();
+                
+                // Setup listeners
+                setupListeners();
+                
+                // Update UI
+                updateUI();
+            }
+        });
     }
     
     /**
@@ -165,8 +174,9 @@ public class CoachingSettingsFragment extends Fragment {
             // Navigate to plan selection screen
             // In a real app, this would navigate to a plan selection screen
             // For this prototype, we'll just select the first plan
-            if (!coachingManager.getAllPlans().isEmpty()) {
-                selectedPlan = coachingManager.getAllPlans().get(0);
+            List<PlanTemplate> templates = coachingManager.getPlanTemplates();
+            if (!templates.isEmpty()) {
+                selectedPlan = coachingManager.getPlan(templates.get(0).getId());
                 updateUI();
             }
         });
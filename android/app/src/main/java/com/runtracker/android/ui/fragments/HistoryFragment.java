@@ -48,23 +48,28 @@ public class HistoryFragment extends Fragment implements RunAdapter.RunClickList
         tvNoRuns = view.findViewById(R.id.tvNoRuns);
         rvRuns = view.findViewById(R.id.rvRuns);
         
-        // Get dependencies
-        runRepository = ((MainActivity) requireActivity()).getRunRepository();
-        
         // Set up RecyclerView
         rvRuns.setLayoutManager(new LinearLayoutManager(requireContext()));
         runAdapter = new RunAdapter(requireContext(), this);
         rvRuns.setAdapter(runAdapter);
         
-        // Load runs
-        loadRuns();
+        // Load runs once the repository has finished loading
+        MainActivity activity = (MainActivity) requireActivity();
+        activity.getInitializationState().observe(getViewLifecycleOwner(), ready -> {
+            if (ready) {
+                runRepository = activity.getRunRepository();
+                loadRuns();
+            }
+        });
     }
     
     @Override
     public void onResume() {
         super.onResume();
         // Reload runs when coming back to this fragment
-        loadRuns();
+        if (runRepository != null) {
+            loadRuns();
+        }
     }
     
     /**
@@ -14,6 +14,13 @@ import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 import androidx.navigation.Navigation;
 
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.components.XAxis;
+import com.github.mikephil.charting.components.YAxis;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
+import com.github.mikephil.charting.formatter.ValueFormatter;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
@@ -22,13 +29,20 @@ import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.PolylineOptions;
 import com.runtracker.android.R;
+import com.runtracker.android.RunTrackerApplication;
+import com.runtracker.android.data.RouteMatcher;
+import com.runtracker.android.data.RunProfileCache;
+import com.runtracker.android.data.models.Course;
 import com.runtracker.android.data.models.Run;
+import com.runtracker.android.data.models.RunProfile;
 import com.runtracker.android.data.repositories.RunRepository;
 import com.runtracker.android.ui.MainActivity;
+import com.runtracker.android.utils.Constants;
 import com.runtracker.android.utils.FormatUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Fragment for displaying details of a specific run
@@ -41,10 +55,16 @@ public class RunDetailFragment extends Fragment implements OnMapReadyCallback {
     private TextView tvDetailDistance;
     private TextView tvDetailPace;
     private TextView tvDetailCalories;
+    private TextView tvDetailElevation;
+    private TextView tvDetailCourse;
+    private TextView tvDetailSplits;
+    private LineChart chartProfile;
     private ImageButton btnBack;
     private ImageButton btnDelete;
     
     private RunRepository runRepository;
+    private RunProfileCache runProfileCache;
+    private RouteMatcher routeMatcher;
     private GoogleMap map;
     private Run run;
     private String runId;
@@ -66,25 +86,36 @@ public class RunDetailFragment extends Fragment implements OnMapReadyCallback {
         tvDetailDistance = view.findViewById(R.id.tvDetailDistance);
         tvDetailPace = view.findViewById(R.id.tvDetailPace);
         tvDetailCalories = view.findViewById(R.id.tvDetailCalories);
+        tvDetailElevation = view.findViewById(R.id.tvDetailElevation);
+        tvDetailCourse = view.findViewById(R.id.tvDetailCourse);
+        tvDetailSplits = view.findViewById(R.id.tvDetailSplits);
+        chartProfile = view.findViewById(R.id.chartProfile);
         btnBack = view.findViewById(R.id.btnBack);
         btnDelete = view.findViewById(R.id.btnDelete);
         
-        // Get dependencies
-        runRepository = ((MainActivity) requireActivity()).getRunRepository();
+        runProfileCache = RunTrackerApplication.from(requireContext()).getRunProfileCache();
+        setupProfileChart();
         
         // Get run ID from arguments
         RunDetailFragmentArgs args = RunDetailFragmentArgs.fromBundle(requireArguments());
         runId = args.getRunId();
         
-        // Load run data
-        loadRunData();
-        
-        // Set up map
-        SupportMapFragment mapFragment = (SupportMapFragment) getChildFragmentManager()
-                .findFragmentById(R.id.mapViewDetail);
-        if (mapFragment != null) {
-            mapFragment.getMapAsync(this);
-        }
+        // Load run data once the repository has finished loading
+        MainActivity activity = (MainActivity) requireActivity();
+        activity.getInitializationState().observe(getViewLifecycleOwner(), ready -> {
+            if (ready) {
+                runRepository = activity.getRunRepository();
+                routeMatcher = RunTrackerApplication.from(requireContext()).getRouteMatcher();
+                loadRunData();
+                
+                // Set up map
+                SupportMapFragment mapFragment = (SupportMapFragment) getChildFragmentManager()
+                        .findFragmentById(R.id.mapViewDetail);
+                if (mapFragment != null) {
+                    mapFragment.getMapAsync(this);
+                }
+            }
+        });
         
         // Set up button listeners
         btnBack.setOnClickListener(v -> Navigation.findNavController(view).popBackStack());
@@ -119,7 +150,181 @@ public class RunDetailFragment extends Fragment implements OnMapReadyCallback {
             
             tvDetailCalories.setText(getString(R.string.run_calories, 
                     FormatUtils.formatCalories(run.getCaloriesBurned())));
+            
+            showElevation();
+            showCourse();
+            showSplits();
+            showProfile();
+        }
+    }
+    
+    /**
+     * Show the elevation gain and loss, if the run recorded altitude
+     */
+    private void showElevation() {
+        if (run.getElevationProfile() == null) {
+            tvDetailElevation.setVisibility(View.GONE);
+            return;
+        }
+        
+        tvDetailElevation.setText(getString(R.string.run_elevation,
+                FormatUtils.formatElevation(run.getElevationGain()),
+                FormatUtils.formatElevation(run.getElevationLoss())));
+        tvDetailElevation.setVisibility(View.VISIBLE);
+    }
+    
+    /**
+     * Show how the run ranks among the attempts at its route, if it was run more than once
+     */
+    private void showCourse() {
+        Course course = routeMatcher.getCourseForRun(run.getId());
+        if (course == null || course.getAttempts().size() < 2) {
+            tvDetailCourse.setVisibility(View.GONE);
+            return;
+        }
+        
+        tvDetailCourse.setText(getString(R.string.run_course,
+                course.getRank(run.getId()),
+                course.getAttempts().size(),
+                FormatUtils.formatDuration(course.getCourseTime(course.getFastest()) / 1000)));
+        tvDetailCourse.setVisibility(View.VISIBLE);
+    }
+    
+    /**
+     * Show the stored kilometer splits of the run
+     */
+    private void showSplits() {
+        List<Run.Split> splits = run.getSplits(Constants.UNIT_KILOMETERS);
+        if (splits.isEmpty()) {
+            tvDetailSplits.setVisibility(View.GONE);
+            return;
         }
+        
+        StringBuilder text = new StringBuilder(getString(R.string.run_splits));
+        for (Run.Split split : splits) {
+            text.append('\n').append(getString(R.string.split_row, 
+                    split.getNumber(),
+                    FormatUtils.formatDuration(split.getDuration() / 1000),
+                    FormatUtils.formatPace(split.getPace())));
+        }
+        
+        tvDetailSplits.setText(text);
+        tvDetailSplits.setVisibility(View.VISIBLE);
+    }
+    
+    /**
+     * Set up the pace and elevation profile chart
+     */
+    private void setupProfileChart() {
+        // Basic chart settings; zoom along the distance axis only
+        chartProfile.getDescription().setEnabled(false);
+        chartProfile.setDrawGridBackground(false);
+        chartProfile.setScaleYEnabled(false);
+        chartProfile.setNoDataText("");
+        chartProfile.getLegend().setTextColor(
+                ContextCompat.getColor(requireContext(), R.color.text_secondary));
+        
+        // Setup X axis with the distance
+        XAxis xAxis = chartProfile.getXAxis();
+        xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
+        xAxis.setDrawGridLines(false);
+        xAxis.setTextColor(ContextCompat.getColor(requireContext(), R.color.text_secondary));
+        xAxis.setValueFormatter(new ValueFormatter() {
+            @Override
+            public String getFormattedValue(float value) {
+                return String.format(Locale.getDefault(), "%.1f", value);
+            }
+        });
+        
+        // Pace on the left, inverted so faster is higher
+        YAxis leftAxis = chartProfile.getAxisLeft();
+        leftAxis.setInverted(true);
+        leftAxis.setTextColor(ContextCompat.getColor(requireContext(), R.color.text_secondary));
+        leftAxis.setValueFormatter(new ValueFormatter() {
+            @Override
+            public String getFormattedValue(float value) {
+                return FormatUtils.formatPace(value);
+            }
+        });
+        
+        // Elevation on the right
+        YAxis rightAxis = chartProfile.getAxisRight();
+        rightAxis.setDrawGridLines(false);
+        rightAxis.setTextColor(ContextCompat.getColor(requireContext(), R.color.text_secondary));
+    }
+    
+    /**
+     * Load the profile of the run for the chart's width in the background
+     */
+    private void showProfile() {
+        if (run.getLocationPoints().size() < 2) {
+            chartProfile.setVisibility(View.GONE);
+            return;
+        }
+        
+        // The point budget is the chart width, which is only known after layout
+        chartProfile.post(() -> {
+            if (getView() == null || chartProfile.getWidth() == 0) {
+                return;
+            }
+            runProfileCache.getProfile(run, chartProfile.getWidth())
+                    .observe(getViewLifecycleOwner(), this::updateProfileChart);
+        });
+    }
+    
+    /**
+     * Update the profile chart with a computed profile
+     * @param profile Pace and elevation profile
+     */
+    private void updateProfileChart(RunProfile profile) {
+        LineData lineData = new LineData();
+        
+        if (profile.getPace().size() > 0) {
+            LineDataSet pace = createProfileDataSet(profile.getPace(), R.string.profile_pace, R.color.primary);
+            pace.setAxisDependency(YAxis.AxisDependency.LEFT);
+            lineData.addDataSet(pace);
+        }
+        
+        RunProfile.Series elevationSeries = profile.getElevation();
+        if (elevationSeries != null && elevationSeries.size() > 0) {
+            LineDataSet elevation = createProfileDataSet(elevationSeries, R.string.profile_elevation,
+                    R.color.text_secondary);
+            elevation.setAxisDependency(YAxis.AxisDependency.RIGHT);
+            elevation.setDrawFilled(true);
+            elevation.setFillColor(ContextCompat.getColor(requireContext(), R.color.text_secondary));
+            lineData.addDataSet(elevation);
+        }
+        chartProfile.getAxisRight().setEnabled(elevationSeries != null && elevationSeries.size() > 0);
+        
+        if (lineData.getDataSetCount() == 0) {
+            chartProfile.setVisibility(View.GONE);
+            return;
+        }
+        
+        chartProfile.setData(lineData);
+        chartProfile.invalidate();
+    }
+    
+    /**
+     * Create one line of the profile chart
+     * @param series Values against distance
+     * @param labelResId Label string resource
+     * @param colorResId Line color resource
+     * @return Data set
+     */
+    private LineDataSet createProfileDataSet(RunProfile.Series series, int labelResId, int colorResId) {
+        List<Entry> entries = new ArrayList<>(series.size());
+        for (int i = 0; i < series.size(); i++) {
+            entries.add(new Entry((float) series.getDistance(i), (float) series.getValue(i)));
+        }
+        
+        LineDataSet dataSet = new LineDataSet(entries, getString(labelResId));
+        dataSet.setColor(ContextCompat.getColor(requireContext(), colorResId));
+        dataSet.setLineWidth(1.5f);
+        dataSet.setDrawCircles(false);
+        dataSet.setDrawValues(false);
+        dataSet.setHighlightEnabled(false);
+        return dataSet;
     }
     
     @Override
@@ -192,7 +397,7 @@ public class RunDetailFragment extends Fragment implements OnMapReadyCallback {
      * Delete the run and navigate back
      */
     private void deleteRun() {
-        if (runRepository.deleteRun(runId)) {
+        if (runRepository != null && runRepository.deleteRun(runId)) {
             // Navigate back
             Navigation.findNavController(requireView()).popBackStack();
         }
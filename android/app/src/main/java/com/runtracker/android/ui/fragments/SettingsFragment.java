@@ -18,6 +18,7 @@ import com.google.android.material.button.MaterialButton;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 import com.google.android.material.textfield.TextInputEditText;
 import com.runtracker.android.R;
+import com.runtracker.android.RunTrackerApplication;
 import com.runtracker.android.utils.Constants;
 
 /**
@@ -109,7 +110,7 @@ public class SettingsFragment extends Fragment {
         }
 
         // Units
-        if (sharedPreferences.getString(Constants.PREF_DISTANCE_UNIT, Constants.UNIT_KM).equals(Constants.UNIT_KM)) {
+        if (RunTrackerApplication.from(requireContext()).getSettingsManager().get().isMetric()) {
             rbKilometers.setChecked(true);
         } else {
             rbMiles.setChecked(true);
@@ -122,8 +123,8 @@ public class SettingsFragment extends Fragment {
         }
 
         // Notifications
-        switchAudioCues.setChecked(sharedPreferences.getBoolean(Constants.PREF_AUDIO_CUES, true));
-        switchMilestoneAlerts.setChecked(sharedPreferences.getBoolean(Constants.PREF_MILESTONE_ALERTS, true));
+        switchAudioCues.setChecked(sharedPreferences.getBoolean(Constants.PREF_AUDIO_CUES_ENABLED, true));
+        switchMilestoneAlerts.setChecked(sharedPreferences.getBoolean(Constants.PREF_MILESTONE_CUES, true));
     }
 
     /**
@@ -147,13 +148,13 @@ public class SettingsFragment extends Fragment {
 
             // Save units
             editor.putString(Constants.PREF_DISTANCE_UNIT, 
-                rbKilometers.isChecked() ? Constants.UNIT_KM : Constants.UNIT_MILES);
+                rbKilometers.isChecked() ? Constants.UNIT_KM : Constants.UNIT_MI);
             editor.putString(Constants.PREF_WEIGHT_UNIT, 
                 rbKilograms.isChecked() ? Constants.UNIT_KG : Constants.UNIT_LB);
 
             // Save notification settings
-            editor.putBoolean(Constants.PREF_AUDIO_CUES, switchAudioCues.isChecked());
-            editor.putBoolean(Constants.PREF_MILESTONE_ALERTS, switchMilestoneAlerts.isChecked());
+            editor.putBoolean(Constants.PREF_AUDIO_CUES_ENABLED, switchAudioCues.isChecked());
+            editor.putBoolean(Constants.PREF_MILESTONE_CUES, switchMilestoneAlerts.isChecked());
 
             // Apply changes
             editor.apply();
@@ -67,22 +67,27 @@ public class StatsFragment extends Fragment {
         chartWeek = view.findViewById(R.id.chartWeek);
         chartMonth = view.findViewById(R.id.chartMonth);
         
-        // Get dependencies
-        runRepository = ((MainActivity) requireActivity()).getRunRepository();
-        
         // Set up charts
         setupWeekChart();
         setupMonthChart();
         
-        // Load stats
-        loadStats();
+        // Load stats once the repository has finished loading
+        MainActivity activity = (MainActivity) requireActivity();
+        activity.getInitializationState().observe(getViewLifecycleOwner(), ready -> {
+            if (ready) {
+                runRepository = activity.getRunRepository();
+                loadStats();
+            }
+        });
     }
     
     @Override
     public void onResume() {
         super.onResume();
         // Reload stats when coming back to this fragment
-        loadStats();
+        if (runRepository != null) {
+            loadStats();
+        }
     }
     
     /**
@@ -4,7 +4,6 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
-import android.content.SharedPreferences;
 import android.location.Location;
 import android.os.Bundle;
 import android.os.IBinder;
@@ -17,7 +16,6 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
-import androidx.preference.PreferenceManager;
 
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
@@ -28,9 +26,13 @@ import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.PolylineOptions;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.runtracker.android.R;
+import com.runtracker.android.RunTrackerApplication;
 import com.runtracker.android.data.CoachingManager;
+import com.runtracker.android.data.metrics.LiveMetricsSnapshot;
 import com.runtracker.android.data.models.CoachingWorkout;
 import com.runtracker.android.data.models.Run;
+import com.runtracker.android.data.models.Settings;
+import com.runtracker.android.data.models.WorkoutTimeline;
 import com.runtracker.android.services.AudioCueManager;
 import com.runtracker.android.services.LocationTrackingService;
 import com.runtracker.android.services.VoiceCoach;
@@ -70,6 +72,7 @@ public class TrackFragment extends Fragment implements OnMapReadyCallback,
     private boolean isTracking = false;
     private boolean isPaused = false;
     private Run currentRun;
+    private final LiveMetricsSnapshot liveMetrics = new LiveMetricsSnapshot();
     
     // Coaching state
     private boolean isCoachingEnabled = true;
@@ -117,14 +120,18 @@ public class TrackFragment extends Fragment implements OnMapReadyCallback,
         // Initialize UI elements
         initUI(view);
         
-        // Get dependencies
+        // Get dependencies once they have finished loading
         MainActivity activity = (MainActivity) requireActivity();
-        audioCueManager = activity.getAudioCueManager();
-        voiceCoach = activity.getVoiceCoach();
-        coachingManager = activity.getCoachingManager();
-        
-        // Load coaching settings
-        loadCoachingSettings();
+        activity.getInitializationState().observe(getViewLifecycleOwner(), ready -> {
+            if (ready) {
+                audioCueManager = activity.getAudioCueManager();
+                voiceCoach = activity.getVoiceCoach();
+                coachingManager = activity.getCoachingManager();
+                
+                // Load coaching settings
+                loadCoachingSettings();
+            }
+        });
         
         // Initialize map
         SupportMapFragment mapFragment = (SupportMapFragment) getChildFragmentManager()
@@ -158,16 +165,15 @@ public class TrackFragment extends Fragment implements OnMapReadyCallback,
      * Load coaching settings from preferences
      */
     private void loadCoachingSettings() {
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(requireContext());
-        isCoachingEnabled = preferences.getBoolean(Constants.PREF_COACHING_ENABLED, true);
-        coachingType = preferences.getInt(Constants.PREF_COACHING_TYPE, Constants.COACHING_TYPE_BASIC);
+        Settings settings = RunTrackerApplication.from(requireContext()).getSettingsManager().get();
+        isCoachingEnabled = settings.isCoachingEnabled();
+        coachingType = settings.getCoachingType();
         
         // If workout coaching is enabled, get the active workout
         if (coachingType == Constants.COACHING_TYPE_WORKOUT) {
-            String activePlanId = preferences.getString(Constants.PREF_ACTIVE_PLAN_ID, null);
-            if (activePlanId != null) {
-                // Get next scheduled workout
-                activeWorkout = coachingManager.getNextScheduledWorkout();
+            if (settings.getActivePlanId() != null) {
+                // Get the next workout, eased off if fatigue is high
+                activeWorkout = coachingManager.getRecommendedWorkout();
                 
                 if (activeWorkout != null) {
                     updateWorkoutInfo();
@@ -224,6 +230,33 @@ public class TrackFragment extends Fragment implements OnMapReadyCallback,
         }
     }
     
+    /**
+     * Show the current segment of the workout being coached, read from the
+     * tracking service's workout timeline
+     */
+    private void updateWorkoutProgress() {
+        if (trackingService == null || trackingService.getActiveWorkout() == null) {
+            return;
+        }
+        
+        long activeTime = trackingService.getActiveTime();
+        WorkoutTimeline.Entry entry = trackingService.getActiveWorkout()
+                .getTimeline().getEntryAt(activeTime);
+        
+        if (entry != null) {
+            StringBuilder info = new StringBuilder(
+                    FormatUtils.formatWorkoutSegment(requireContext(), entry, activeTime));
+            if (entry.isActive()) {
+                info.append('\n').append(getString(R.string.target_pace_format, 
+                        FormatUtils.formatPaceRange(entry.getTargetPaceMin(), entry.getTargetPaceMax())));
+            }
+            tvWorkoutInfo.setText(info);
+        } else {
+            tvWorkoutInfo.setText(R.string.workout_complete);
+        }
+        tvWorkoutInfo.setVisibility(View.VISIBLE);
+    }
+    
     /**
      * Set up button click listeners
      */
@@ -357,7 +390,13 @@ public class TrackFragment extends Fragment implements OnMapReadyCallback,
                 tvDistance.setText(FormatUtils.formatDistance(currentRun.getTotalDistance()));
                 tvDuration.setText(FormatUtils.formatDuration(currentRun.getActiveDuration()));
                 
+                // Show the rolling pace once there is enough recent movement
                 double pace = currentRun.getPace();
+                if (trackingService != null) {
+                    trackingService.readLiveMetrics(liveMetrics);
+                    pace = liveMetrics.getCurrentPace(pace);
+                }
+                
                 if (pace > 0) {
                     tvPace.setText(FormatUtils.formatPace(pace));
                 } else {
@@ -366,6 +405,9 @@ public class TrackFragment extends Fragment implements OnMapReadyCallback,
                 
                 tvCalories.setText(FormatUtils.formatCalories(currentRun.getCaloriesBurned()));
             }
+            
+            // Show the current workout segment
+            updateWorkoutProgress();
         } else {
             // Reset to initial state
             fabStartPause.setImageResource(R.drawable.ic_play);
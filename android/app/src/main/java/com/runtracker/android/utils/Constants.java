@@ -12,11 +12,17 @@ public class Constants {
     public static final int UNIT_KILOMETERS = 0;
     public static final int UNIT_MILES = 1;
     
+    // Stored values of the distance unit preference
+    public static final String UNIT_KM = "km";
+    public static final String UNIT_MI = "mi";
+    
     // Audio cue settings
     public static final String PREF_AUDIO_CUES_ENABLED = "audio_cues_enabled";
     public static final String PREF_MILESTONE_CUES = "milestone_cues";
     public static final String PREF_PERIODIC_CUES = "periodic_cues";
-    public static final String PREF_CUE_INTERVAL = "cue_interval";
+    public static final String PREF_CUE_INTERVAL = "cue_interval"; // minutes
+    public static final int DEFAULT_CUE_INTERVAL_MINUTES = 5;
+    public static final String PREF_CUSTOM_MILESTONES = "custom_milestones"; // comma separated, in the distance unit
     
     // Coaching settings
     public static final String PREF_COACHING_ENABLED = "coaching_enabled";
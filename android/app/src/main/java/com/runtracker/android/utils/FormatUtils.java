@@ -1,9 +1,12 @@
 package com.runtracker.android.utils;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 
-import androidx.preference.PreferenceManager;
+import com.runtracker.android.R;
+import com.runtracker.android.RunTrackerApplication;
+import com.runtracker.android.data.models.CoachingWorkout;
+import com.runtracker.android.data.models.Settings;
+import com.runtracker.android.data.models.WorkoutTimeline;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -32,10 +35,9 @@ public class FormatUtils {
      * @return Formatted distance string
      */
     public static String formatDistanceWithUnit(Context context, double kilometers) {
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-        int unit = preferences.getInt(Constants.PREF_DISTANCE_UNIT, Constants.UNIT_KILOMETERS);
+        Settings settings = RunTrackerApplication.from(context).getSettingsManager().get();
         
-        if (unit == Constants.UNIT_MILES) {
+        if (!settings.isMetric()) {
             double miles = kilometers * 0.621371;
             return String.format(Locale.getDefault(), "%.2f mi", miles);
         } else {
@@ -172,6 +174,24 @@ public class FormatUtils {
         return timeFormat.format(date);
     }
     
+    /**
+     * Format the current workout segment and the time left in it, e.g. "Active 2/4 · 01:30 left"
+     * @param context Context for string resources
+     * @param entry Current timeline entry
+     * @param activeTime Active time since the start of the workout in milliseconds
+     * @return Formatted segment status
+     */
+    public static String formatWorkoutSegment(Context context, WorkoutTimeline.Entry entry, long activeTime) {
+        String name = CoachingWorkout.WorkoutSegment.getTypeName(entry.getType());
+        if (entry.getRepeatCount() > 1) {
+            name = context.getString(R.string.workout_segment_repeat, 
+                    name, entry.getRepeat(), entry.getRepeatCount());
+        }
+        
+        return context.getString(R.string.workout_segment_status, 
+                name, formatDuration((entry.getTimeRemaining(activeTime) + 999) / 1000));
+    }
+    
     /**
      * Format elevation gain
      * @param elevationGain Elevation gain in meters
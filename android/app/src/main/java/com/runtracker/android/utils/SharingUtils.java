@@ -19,6 +19,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Utility class for sharing run data and images
@@ -125,6 +126,20 @@ public class SharingUtils {
                 FormatUtils.formatPace(run.getPace())));
         shareText.append("\n");
         
+        // Add stored kilometer splits
+        List<Run.Split> splits = run.getSplits(Constants.UNIT_KILOMETERS);
+        if (!splits.isEmpty()) {
+            shareText.append(context.getString(R.string.share_splits));
+            shareText.append("\n");
+            for (Run.Split split : splits) {
+                shareText.append(context.getString(R.string.split_row, 
+                        split.getNumber(),
+                        FormatUtils.formatDuration(split.getDuration() / 1000),
+                        FormatUtils.formatPace(split.getPace())));
+                shareText.append("\n");
+            }
+        }
+        
         shareText.append(context.getString(R.string.share_calories, 
                 FormatUtils.formatCalories(run.getCaloriesBurned())));
         
@@ -0,0 +1,98 @@
+package com.runtracker.android.data.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Throughput of {@link QuantileSketch} for the work the distribution manager does:
+ * adding run metrics, merging monthly sketches and reading quantiles. Results are
+ * printed rather than asserted, since they depend on the machine.
+ *
+ * Skipped unless the {@code benchmarks} system property is set, so they do not slow down
+ * every test run; use {@code ./gradlew test -Pbenchmarks=true} to run them.
+ */
+public class QuantileSketchBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int VALUE_COUNT = 1000000;
+    private static final int MONTH_COUNT = 120;
+    private static final int VALUES_PER_MONTH = 200;
+    private static final int QUERY_COUNT = 1000;
+
+    @Before
+    public void requireBenchmarks() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmarks"));
+    }
+
+    @Test
+    public void addThroughput() {
+        double[] values = new double[VALUE_COUNT];
+        Random random = new Random(1);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 6 + random.nextGaussian() * 0.8;
+        }
+
+        QuantileSketch sketch = null;
+        long elapsed = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            sketch = new QuantileSketch();
+            for (double value : values) {
+                sketch.add(value);
+            }
+            sketch.quantile(0.5);
+            elapsed = System.nanoTime() - start;
+        }
+
+        assertEquals(VALUE_COUNT, sketch.getCount());
+        report("add", VALUE_COUNT, "values", elapsed);
+    }
+
+    @Test
+    public void mergeThroughput() {
+        // Ten years of monthly sketches, as a range query over the whole history sees them
+        QuantileSketch[] months = new QuantileSketch[MONTH_COUNT];
+        Random random = new Random(2);
+        for (int month = 0; month < MONTH_COUNT; month++) {
+            months[month] = new QuantileSketch();
+            for (int i = 0; i < VALUES_PER_MONTH; i++) {
+                months[month].add(6 + random.nextGaussian() * 0.8);
+            }
+        }
+
+        long elapsed = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int query = 0; query < QUERY_COUNT; query++) {
+                QuantileSketch merged = new QuantileSketch();
+                for (QuantileSketch month : months) {
+                    merged.merge(month);
+                }
+                merged.quantile(0.1);
+                merged.quantile(0.5);
+                merged.quantile(0.9);
+            }
+            elapsed = System.nanoTime() - start;
+        }
+
+        report("merge " + MONTH_COUNT + " months", QUERY_COUNT, "queries", elapsed);
+    }
+
+    /**
+     * Print a throughput result
+     * @param name Benchmark name
+     * @param operations Operations timed
+     * @param unit Name of an operation
+     * @param elapsed Time taken in nanoseconds
+     */
+    private static void report(String name, int operations, String unit, long elapsed) {
+        System.out.println(String.format(Locale.US, "QuantileSketch %s: %.0f %s/s (%.1f ms)",
+                name, operations * 1e9 / elapsed, unit, elapsed / 1e6));
+    }
+}
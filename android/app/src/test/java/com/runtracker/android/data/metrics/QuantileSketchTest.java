@@ -0,0 +1,226 @@
+package com.runtracker.android.data.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for {@link QuantileSketch}, checking estimates against the exact ranks of the data
+ */
+public class QuantileSketchTest {
+
+    private static final int VALUE_COUNT = 100000;
+    private static final double[] QUANTILES = {0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999};
+
+    /**
+     * Largest rank error allowed at a quantile; the sketch is most accurate in the tails
+     * @param q Quantile
+     * @return Allowed difference between q and the rank of the estimate
+     */
+    private static double allowedRankError(double q) {
+        return Math.max(0.0005, 0.02 * Math.sqrt(q * (1 - q)));
+    }
+
+    /**
+     * Get the rank of a value in sorted data, counting ties as half
+     * @param sorted Sorted values
+     * @param value Value to look up
+     * @return Fraction of the values below it
+     */
+    private static double rank(double[] sorted, double value) {
+        int below = 0;
+        int equal = 0;
+        for (double v : sorted) {
+            if (v < value) {
+                below++;
+            } else if (v == value) {
+                equal++;
+            }
+        }
+        return (below + equal / 2.0) / sorted.length;
+    }
+
+    private static double[] uniform(Random random) {
+        double[] values = new double[VALUE_COUNT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble() * 100;
+        }
+        return values;
+    }
+
+    private static double[] normal(Random random) {
+        double[] values = new double[VALUE_COUNT];
+        for (int i = 0; i < values.length; i++) {
+            // Roughly paces in min/km
+            values[i] = 6 + random.nextGaussian() * 0.8;
+        }
+        return values;
+    }
+
+    private static double[] exponential(Random random) {
+        double[] values = new double[VALUE_COUNT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = -Math.log(1 - random.nextDouble()) * 10;
+        }
+        return values;
+    }
+
+    private static QuantileSketch sketchOf(double[] values) {
+        QuantileSketch sketch = new QuantileSketch();
+        for (double value : values) {
+            sketch.add(value);
+        }
+        return sketch;
+    }
+
+    /**
+     * Check every tested quantile of a sketch against the exact ranks of its data
+     * @param values Data added to the sketch
+     * @param sketch Sketch to check
+     */
+    private static void assertRankErrors(double[] values, QuantileSketch sketch) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : QUANTILES) {
+            double error = Math.abs(rank(sorted, sketch.quantile(q)) - q);
+            assertTrue("Rank error " + error + " at q=" + q, error <= allowedRankError(q));
+        }
+    }
+
+    @Test
+    public void estimatesUniformData() {
+        double[] values = uniform(new Random(1));
+        assertRankErrors(values, sketchOf(values));
+    }
+
+    @Test
+    public void estimatesNormalData() {
+        double[] values = normal(new Random(2));
+        assertRankErrors(values, sketchOf(values));
+    }
+
+    @Test
+    public void estimatesSkewedData() {
+        double[] values = exponential(new Random(3));
+        assertRankErrors(values, sketchOf(values));
+    }
+
+    @Test
+    public void estimatesSortedData() {
+        double[] values = uniform(new Random(4));
+        Arrays.sort(values);
+        assertRankErrors(values, sketchOf(values));
+    }
+
+    @Test
+    public void keepsExactExtremes() {
+        double[] values = normal(new Random(5));
+        QuantileSketch sketch = sketchOf(values);
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        assertEquals(VALUE_COUNT, sketch.getCount());
+        assertEquals(sorted[0], sketch.getMin(), 0);
+        assertEquals(sorted[sorted.length - 1], sketch.getMax(), 0);
+        assertEquals(sorted[0], sketch.quantile(0), 0);
+        assertEquals(sorted[sorted.length - 1], sketch.quantile(1), 0);
+    }
+
+    @Test
+    public void mergedSketchMatchesSingleSketch() {
+        double[] values = exponential(new Random(6));
+        QuantileSketch single = sketchOf(values);
+
+        // One sketch per "month", as the distribution manager keeps them
+        int parts = 12;
+        QuantileSketch merged = new QuantileSketch();
+        for (int part = 0; part < parts; part++) {
+            int from = part * values.length / parts;
+            int to = (part + 1) * values.length / parts;
+            merged.merge(sketchOf(Arrays.copyOfRange(values, from, to)));
+        }
+
+        assertEquals(single.getCount(), merged.getCount());
+        assertEquals(single.getMin(), merged.getMin(), 0);
+        assertEquals(single.getMax(), merged.getMax(), 0);
+        assertRankErrors(values, merged);
+
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : QUANTILES) {
+            double difference = Math.abs(rank(sorted, merged.quantile(q)) - rank(sorted, single.quantile(q)));
+            assertTrue("Merged differs by " + difference + " at q=" + q, difference <= allowedRankError(q));
+        }
+    }
+
+    @Test
+    public void mergeLeavesOtherSketchUnchanged() {
+        double[] values = uniform(new Random(7));
+        QuantileSketch other = sketchOf(values);
+        double median = other.quantile(0.5);
+
+        new QuantileSketch().merge(other);
+        assertEquals(VALUE_COUNT, other.getCount());
+        assertEquals(median, other.quantile(0.5), 0);
+    }
+
+    @Test
+    public void emptySketchHasNoEstimates() {
+        QuantileSketch sketch = new QuantileSketch();
+        assertEquals(0, sketch.getCount());
+        assertTrue(Double.isNaN(sketch.getMin()));
+        assertTrue(Double.isNaN(sketch.getMax()));
+        for (double q : new double[] {0, 0.5, 1}) {
+            assertTrue(Double.isNaN(sketch.quantile(q)));
+        }
+    }
+
+    @Test
+    public void mergingEmptySketchesChangesNothing() {
+        QuantileSketch empty = new QuantileSketch();
+        empty.merge(new QuantileSketch());
+        assertEquals(0, empty.getCount());
+        assertTrue(Double.isNaN(empty.quantile(0.5)));
+
+        QuantileSketch sketch = sketchOf(new double[] {1, 2, 3});
+        sketch.merge(new QuantileSketch());
+        assertEquals(3, sketch.getCount());
+        assertEquals(1, sketch.getMin(), 0);
+        assertEquals(3, sketch.getMax(), 0);
+
+        empty.merge(sketch);
+        assertEquals(3, empty.getCount());
+        assertEquals(1, empty.getMin(), 0);
+        assertEquals(3, empty.getMax(), 0);
+    }
+
+    @Test
+    public void ignoresNaNAndInfiniteValues() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(Double.NaN);
+        sketch.add(Double.POSITIVE_INFINITY);
+        sketch.add(Double.NEGATIVE_INFINITY);
+        assertEquals(0, sketch.getCount());
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+
+        sketch.add(5);
+        sketch.add(Double.NaN);
+        sketch.add(7);
+        assertEquals(2, sketch.getCount());
+        assertEquals(5, sketch.getMin(), 0);
+        assertEquals(7, sketch.getMax(), 0);
+        assertEquals(6, sketch.quantile(0.5), 1e-9);
+    }
+
+    @Test
+    public void singleValueIsEveryQuantile() {
+        QuantileSketch sketch = sketchOf(new double[] {4.5});
+        for (double q : QUANTILES) {
+            assertEquals(4.5, sketch.quantile(q), 0);
+        }
+    }
+}
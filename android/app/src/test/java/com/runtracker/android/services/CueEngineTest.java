@@ -0,0 +1,280 @@
+package com.runtracker.android.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link CueEngine}, driven by a fake clock and a fake speaker
+ */
+public class CueEngineTest {
+
+    private static final int LOW = SpeechEngine.PRIORITY_LOW;
+    private static final int NORMAL = SpeechEngine.PRIORITY_NORMAL;
+    private static final int HIGH = SpeechEngine.PRIORITY_HIGH;
+
+    /**
+     * Clock that only moves when told to
+     */
+    private static class FakeClock implements CueEngine.Clock {
+        long time = 1000;
+
+        @Override
+        public long now() {
+            return time;
+        }
+
+        void advance(long millis) {
+            time += millis;
+        }
+    }
+
+    /**
+     * Speaker that records what it was asked to say
+     */
+    private static class FakeSpeaker implements CueEngine.Speaker {
+        int speakingPriority = CueEngine.NOT_SPEAKING;
+        final List<List<String>> spoken = new ArrayList<>();
+        final List<Integer> priorities = new ArrayList<>();
+
+        @Override
+        public int getSpeakingPriority() {
+            return speakingPriority;
+        }
+
+        @Override
+        public void speak(List<String> fragments, int priority) {
+            spoken.add(fragments);
+            priorities.add(priority);
+        }
+    }
+
+    private FakeClock clock;
+    private FakeSpeaker speaker;
+    private CueEngine engine;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        speaker = new FakeSpeaker();
+        engine = new CueEngine(clock, speaker);
+    }
+
+    @Test
+    public void speaksNothingWithoutCues() {
+        assertNull(engine.tick());
+        assertTrue(speaker.spoken.isEmpty());
+    }
+
+    @Test
+    public void speaksHighestPriorityCueFirst() {
+        Cue low = new Cue(CueEngine.SOURCE_COACHING, "low", LOW, "low");
+        Cue high = new Cue(CueEngine.SOURCE_PERIODIC, "high", HIGH, "high");
+        Cue normal = new Cue(CueEngine.SOURCE_MILESTONE, "normal", NORMAL, "normal");
+        engine.offer(low);
+        engine.offer(high);
+        engine.offer(normal);
+
+        assertSame(high, engine.tick());
+        assertEquals(Arrays.asList("high"), speaker.spoken.get(0));
+        assertEquals(HIGH, (int) speaker.priorities.get(0));
+
+        assertSame(normal, engine.tick());
+    }
+
+    @Test
+    public void preemptsLowerPrioritySpeech() {
+        speaker.speakingPriority = LOW;
+        Cue cue = new Cue(CueEngine.SOURCE_MILESTONE, "milestone", NORMAL, "One kilometer");
+        engine.offer(cue);
+
+        assertSame(cue, engine.tick());
+        assertEquals(1, speaker.spoken.size());
+    }
+
+    @Test
+    public void waitsForSpeechOfEqualOrHigherPriority() {
+        speaker.speakingPriority = NORMAL;
+        Cue cue = new Cue(CueEngine.SOURCE_MILESTONE, "milestone", NORMAL, "One kilometer");
+        engine.offer(cue);
+
+        assertNull(engine.tick());
+        assertTrue(engine.hasPendingCues());
+
+        speaker.speakingPriority = HIGH;
+        clock.advance(1000);
+        assertNull(engine.tick());
+
+        speaker.speakingPriority = CueEngine.NOT_SPEAKING;
+        clock.advance(1000);
+        assertSame(cue, engine.tick());
+        assertFalse(engine.hasPendingCues());
+    }
+
+    @Test
+    public void breaksPriorityTiesBySource() {
+        Cue periodic = new Cue(CueEngine.SOURCE_PERIODIC, "periodic", NORMAL, "periodic");
+        Cue coaching = new Cue(CueEngine.SOURCE_COACHING, "coaching", NORMAL, "coaching");
+        engine.offer(periodic);
+        engine.offer(coaching);
+
+        assertSame(coaching, engine.tick());
+        assertSame(periodic, engine.tick());
+    }
+
+    @Test
+    public void breaksSourceTiesByAge() {
+        Cue older = new Cue(CueEngine.SOURCE_MILESTONE, "first", NORMAL, "first");
+        engine.offer(older);
+        clock.advance(500);
+        Cue newer = new Cue(CueEngine.SOURCE_MILESTONE, "second", NORMAL, "second");
+        engine.offer(newer);
+
+        assertSame(older, engine.tick());
+        assertSame(newer, engine.tick());
+    }
+
+    @Test
+    public void dropsCuesPastTheirDeadline() {
+        engine.offer(new Cue(CueEngine.SOURCE_PERIODIC, "low", LOW, "low"));
+        engine.offer(new Cue(CueEngine.SOURCE_MILESTONE, "normal", NORMAL, "normal"));
+        engine.offer(new Cue(CueEngine.SOURCE_COACHING, "high", HIGH, "high"));
+        speaker.speakingPriority = HIGH;
+
+        // Low priority cues expire after 5 s
+        clock.advance(5001);
+        engine.tick();
+        speaker.speakingPriority = CueEngine.NOT_SPEAKING;
+        Cue spoken = engine.tick();
+        assertEquals("high", spoken.getKey());
+        assertEquals("normal", engine.tick().getKey());
+        assertFalse(engine.hasPendingCues());
+    }
+
+    @Test
+    public void keepsCueUntilItsDeadline() {
+        Cue cue = new Cue(CueEngine.SOURCE_MILESTONE, "normal", NORMAL, "normal");
+        engine.offer(cue);
+        speaker.speakingPriority = HIGH;
+
+        // Normal priority cues may wait 15 s, but not longer
+        clock.advance(15000);
+        assertNull(engine.tick());
+        assertTrue(engine.hasPendingCues());
+
+        clock.advance(1);
+        assertNull(engine.tick());
+        assertFalse(engine.hasPendingCues());
+
+        speaker.speakingPriority = CueEngine.NOT_SPEAKING;
+        assertNull(engine.tick());
+        assertTrue(speaker.spoken.isEmpty());
+    }
+
+    @Test
+    public void highPriorityCuesWaitLongest() {
+        Cue cue = new Cue(CueEngine.SOURCE_COACHING, "segment", HIGH, "Next segment");
+        engine.offer(cue);
+        speaker.speakingPriority = HIGH;
+
+        clock.advance(60000);
+        assertNull(engine.tick());
+
+        speaker.speakingPriority = CueEngine.NOT_SPEAKING;
+        assertSame(cue, engine.tick());
+    }
+
+    @Test
+    public void dropsRecentDuplicates() {
+        engine.offer(new Cue(CueEngine.SOURCE_MILESTONE, "km:1", NORMAL, "One kilometer"));
+        assertEquals("km:1", engine.tick().getKey());
+
+        // The same key within 30 s is not repeated
+        clock.advance(29999);
+        engine.offer(new Cue(CueEngine.SOURCE_MILESTONE, "km:1", NORMAL, "One kilometer"));
+        assertNull(engine.tick());
+        assertFalse(engine.hasPendingCues());
+
+        clock.advance(1);
+        engine.offer(new Cue(CueEngine.SOURCE_MILESTONE, "km:1", NORMAL, "One kilometer"));
+        assertEquals("km:1", engine.tick().getKey());
+        assertEquals(2, speaker.spoken.size());
+    }
+
+    @Test
+    public void speaksDelayedRepeatingCueAgainOnItsNextInterval() {
+        // Pace feedback every 30 s, delayed 10 s behind a milestone the first time
+        engine.offer(new Cue(CueEngine.SOURCE_MILESTONE, "km:1", HIGH, "One kilometer"));
+        engine.offer(new Cue(CueEngine.SOURCE_COACHING, "coaching:pace", NORMAL, 0, "Good pace"));
+        assertEquals("km:1", engine.tick().getKey());
+
+        speaker.speakingPriority = HIGH;
+        clock.advance(10000);
+        assertNull(engine.tick());
+        speaker.speakingPriority = CueEngine.NOT_SPEAKING;
+        assertEquals("coaching:pace", engine.tick().getKey());
+
+        // The next feedback comes 20 s after the late one was spoken
+        clock.advance(20000);
+        engine.offer(new Cue(CueEngine.SOURCE_COACHING, "coaching:pace", NORMAL, 0, "Speed up"));
+        Cue spoken = engine.tick();
+        assertEquals(Arrays.asList("Speed up"), spoken.getFragments());
+        assertEquals(3, speaker.spoken.size());
+    }
+
+    @Test
+    public void repeatingCueStillReplacesPendingCueWithSameKey() {
+        speaker.speakingPriority = HIGH;
+        engine.offer(new Cue(CueEngine.SOURCE_COACHING, "coaching:pace", NORMAL, 0, "Good pace"));
+        engine.offer(new Cue(CueEngine.SOURCE_COACHING, "coaching:pace", NORMAL, 0, "Speed up"));
+
+        speaker.speakingPriority = CueEngine.NOT_SPEAKING;
+        assertEquals(Arrays.asList("Speed up"), engine.tick().getFragments());
+        assertNull(engine.tick());
+    }
+
+    @Test
+    public void replacesPendingCueWithSameKey() {
+        speaker.speakingPriority = HIGH;
+        engine.offer(new Cue(CueEngine.SOURCE_PERIODIC, "status", NORMAL, "old"));
+        clock.advance(1000);
+        engine.offer(new Cue(CueEngine.SOURCE_PERIODIC, "status", NORMAL, "new"));
+
+        speaker.speakingPriority = CueEngine.NOT_SPEAKING;
+        Cue spoken = engine.tick();
+        assertEquals(Arrays.asList("new"), spoken.getFragments());
+        assertEquals(clock.now(), spoken.getOfferedAt());
+        assertFalse(engine.hasPendingCues());
+    }
+
+    @Test
+    public void dropsLowPriorityCuesOnceSomethingIsSaid() {
+        engine.offer(new Cue(CueEngine.SOURCE_PERIODIC, "status", LOW, "status"));
+        engine.offer(new Cue(CueEngine.SOURCE_MILESTONE, "km:1", NORMAL, "One kilometer"));
+
+        assertEquals("km:1", engine.tick().getKey());
+        assertFalse(engine.hasPendingCues());
+    }
+
+    @Test
+    public void resetForgetsPendingAndSpokenCues() {
+        engine.offer(new Cue(CueEngine.SOURCE_MILESTONE, "km:1", NORMAL, "One kilometer"));
+        engine.tick();
+        engine.offer(new Cue(CueEngine.SOURCE_MILESTONE, "km:2", NORMAL, "Two kilometers"));
+
+        engine.reset();
+        assertFalse(engine.hasPendingCues());
+
+        engine.offer(new Cue(CueEngine.SOURCE_MILESTONE, "km:1", NORMAL, "One kilometer"));
+        assertEquals("km:1", engine.tick().getKey());
+    }
+}